@@ -15,6 +15,8 @@
 package com.botbox.util;
 
 import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,62 +29,37 @@ import java.util.logging.Logger;
  * @version $Revision: 3765 $, $Date: 2008-02-24 11:03:02 -0600 (Sun, 24 Feb
  *          2008) $
  */
-public final class PoolThread extends Thread implements JobStatus {
+public final class PoolThread extends ForkJoinWorkerThread implements
+		JobStatus {
 
 	static final Logger log = Logger.getLogger(PoolThread.class.getName());
 
 	private static final boolean VERBOSE_DEBUG = false;
 
 	// 0 => not initialized,
-	// 1 => not initialized (start idle),
 	// 2 => waiting,
 	// 3 => invoking,
 	// 4 => dead
-	private int status = 0;
-	private ThreadPool pool;
+	private volatile int status = 0;
+	private final ThreadPool pool;
 
-	private Runnable nextJob = null;
+	private volatile String description = null;
+	private volatile Runnable runningJob = null;
+	private volatile long startTime;
 
-	private String description = null;
-	private Runnable runningJob = null;
-	private long startTime;
+	private volatile int activeCount = 0;
 
-	/** Information for the ThreadPool */
-	private int threadIndex = -1;
-	private int idleIndex = -1;
-
-	private int activeCount = 0;
-
-	PoolThread(ThreadPool pool, String name, boolean isIdle) {
-		super(name);
+	PoolThread(ThreadPool pool, ForkJoinPool executor) {
+		super(executor);
 		this.pool = pool;
-		if (isIdle) {
-			status = 1;
-		}
+		setName(pool.nextThreadName());
 		setDaemon(pool.isDaemon());
-		start();
 	}
 
 	// -------------------------------------------------------------------
 	// Information for the thread pool
 	// -------------------------------------------------------------------
 
-	final int getThreadIndex() {
-		return threadIndex;
-	}
-
-	final void setThreadIndex(int threadIndex) {
-		this.threadIndex = threadIndex;
-	}
-
-	final int getIdleIndex() {
-		return idleIndex;
-	}
-
-	final void setIdleIndex(int idleIndex) {
-		this.idleIndex = idleIndex;
-	}
-
 	final boolean isWorking() {
 		return status == 3;
 	}
@@ -120,9 +97,6 @@ public final class PoolThread extends Thread implements JobStatus {
 				sb.append(',').append(startTime % 1000);
 			}
 		}
-		if (idleIndex >= 0) {
-			sb.append(",idle");
-		}
 		sb.append(",active=").append(activeCount);
 		return sb.append(']');
 	}
@@ -147,111 +121,59 @@ public final class PoolThread extends Thread implements JobStatus {
 	// Job handling
 	// -------------------------------------------------------------------
 
-	void invoke(Runnable job, String description) {
-		this.description = description;
-		invoke(job);
-	}
-
-	synchronized void invoke(Runnable job) {
-		this.nextJob = job;
-		this.startTime = System.currentTimeMillis();
-		notify();
+	protected void onStart() {
+		super.onStart();
+		status = 2;
+		pool.threadStarted(this);
 	}
 
-	private synchronized Runnable getJob() {
-		Runnable newJob;
-		while ((newJob = this.nextJob) == null) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-			}
-		}
-		this.nextJob = null;
-		this.runningJob = newJob;
-		return newJob;
+	protected void onTermination(Throwable exception) {
+		status = 4;
+		pool.threadDied(this);
+		super.onTermination(exception);
 	}
 
-	// This should not need to be synchronized because it can only
-	// happen after the thread has finished a job and before it has
-	// become available for the thread pool.
-	private void clearJob() {
-		this.runningJob = null;
-		this.description = null;
+	/**
+	 * Runs a job in this thread. Any exception thrown by the job is passed
+	 * on to the caller.
+	 */
+	final void handleJob(Runnable job, String description) {
+		int priority = getPriority();
+		this.description = description;
+		this.runningJob = job;
+		this.startTime = System.currentTimeMillis();
 		this.activeCount = 0;
-	}
-
-	public void run() {
+		this.status = 3;
 		try {
-			if (status == 1 && !pool.addThread(this)) {
-				// No more need for this thread because the pool is already
-				// full of idle threads
-
-			} else {
-				status = 2;
-				handleJobs();
+			if (VERBOSE_DEBUG) {
+				log.info(getName() + " START "
+						+ (description != null ? description : "") + ' '
+						+ job);
+			}
+			job.run();
+			if (VERBOSE_DEBUG) {
+				log.info(getName() + " EXIT "
+						+ (description != null ? description : "") + ' '
+						+ job);
 			}
-
 		} finally {
-			status = 4;
-			pool.threadDied(this);
-		}
-	}
-
-	private void handleJobs() {
-		int priority = getPriority();
-
-		do {
-			Runnable myJob = getJob();
-
-			if (myJob != null) {
-				try {
-					status = 3;
-					activeCount = 0;
-					if (VERBOSE_DEBUG) {
-						log.info(getName() + " START "
-								+ (description != null ? description : "")
-								+ ' ' + myJob);
-					}
-					myJob.run();
-					if (VERBOSE_DEBUG) {
-						log.info(getName() + " EXIT "
-								+ (description != null ? description : "")
-								+ ' ' + myJob);
-					}
-
-				} catch (ThreadDeath e) {
-					log.log(Level.SEVERE, "thread was killed", e);
-					// Rethrow thread death
-					throw e;
-				} catch (Throwable e) {
-					log
-							.log(Level.SEVERE, "could not execute job "
-									+ (description != null ? description : "")
-									+ ":", e);
-				} finally {
-					status = 2;
-					clearJob();
-				}
-
-				// Restore the thread priority if it has changed
-				// Should this be done this way?
-				if (getPriority() != priority) {
-					setPriority(priority);
-				}
-
-				// Clear the interrupted flag in case its been set
-				if (interrupted()) {
-					// Should we have debug output here???
-					log.log(Level.SEVERE, "***interrupted");
-				}
-
-				long currentTime = System.currentTimeMillis();
-				pool.checkWorkingThreads(currentTime);
-
-				// \TODO Add statistics about the job!!!
+			status = 2;
+			this.runningJob = null;
+			this.description = null;
+			this.activeCount = 0;
+
+			// Restore the thread priority if it has changed
+			// Should this be done this way?
+			if (getPriority() != priority) {
+				setPriority(priority);
 			}
 
-		} while (pool.addThread(this));
+			// Clear the interrupted flag in case its been set
+			if (interrupted()) {
+				// Should we have debug output here???
+				log.log(Level.SEVERE, "***interrupted");
+			}
+		}
 	}
 
 }
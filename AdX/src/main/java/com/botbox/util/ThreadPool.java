@@ -14,12 +14,29 @@
 
 package com.botbox.util;
 
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * This class implements a thread pool for reusing threads. Since only a maximal
- * number of threads may exist in the pool it is important that the threads in
- * the pool is not absorbed by long duration tasks that drains the pool.
+ * This class implements a thread pool for reusing threads. The jobs are run
+ * by a work-stealing {@link ForkJoinPool} with at most the maximal number of
+ * threads running jobs at the same time. Jobs that block for longer periods,
+ * for example waiting for I/O, should be invoked with
+ * {@link #invokeBlocking(Runnable, String)} to let the pool create additional
+ * threads while they block instead of draining the pool.
+ * <p>
+ * The pool keeps statistics about the number of jobs, the time jobs wait in
+ * the queue before running, and the time they run.
  * 
  * @author Joakim Eriksson (joakim.eriksson@botbox.com)
  * @author Niclas Finne (niclas.finne@botbox.com)
@@ -27,7 +44,10 @@ import java.util.Hashtable;
  * @version $Revision: 4088 $, $Date: 2008-04-11 19:13:08 -0500 (Fri, 11 Apr
  *          2008) $
  */
-public final class ThreadPool {
+public final class ThreadPool implements Executor {
+
+	private static final Logger log = Logger.getLogger(ThreadPool.class
+			.getName());
 
 	private static Hashtable poolTable = new Hashtable();
 
@@ -59,15 +79,14 @@ public final class ThreadPool {
 
 	private String name;
 
-	/** The idle (waiting) threads */
-	private PoolThread[] idleThreads = null;
-	private int idleThreadCount = 0;
+	/** The executor, created when the first job is invoked */
+	private volatile ForkJoinPool executor;
 
 	/** All living threads */
-	private PoolThread[] poolThreads = null;
-	private int threadCount;
+	private final Set<PoolThread> poolThreads = Collections
+			.newSetFromMap(new ConcurrentHashMap<PoolThread, Boolean>());
 
-	private int threadID = 0;
+	private final AtomicLong threadID = new AtomicLong();
 
 	private int minThreads = 1;
 	private int maxThreads = 255;
@@ -75,12 +94,18 @@ public final class ThreadPool {
 
 	private boolean isDaemon = true;
 
-	private ArrayQueue pendingJobs = null;
-	private int pendingJobCount = 0;
-
 	private int millisBetweenChecks;
 	private int millisBeforeInterrupt = 0;
-	private long nextWorkingThreadCheck;
+	private volatile long nextWorkingThreadCheck;
+
+	/** Job statistics */
+	private final AtomicLong invokedJobs = new AtomicLong();
+	private final AtomicLong completedJobs = new AtomicLong();
+	private final AtomicLong failedJobs = new AtomicLong();
+	private final AtomicLong rejectedJobs = new AtomicLong();
+	private final AtomicLong totalQueueNanos = new AtomicLong();
+	private final AtomicLong maxQueueNanos = new AtomicLong();
+	private final AtomicLong totalRunNanos = new AtomicLong();
 
 	private Object lock = new Object();
 
@@ -93,14 +118,16 @@ public final class ThreadPool {
 	}
 
 	public int getThreads() {
-		return threadCount;
+		return poolThreads.size();
 	}
 
 	/**
 	 * Returns the current number of idle threads
 	 */
 	public int getIdleThreads() {
-		return idleThreadCount;
+		ForkJoinPool executor = this.executor;
+		return executor == null ? 0 : executor.getPoolSize()
+				- executor.getActiveThreadCount();
 	}
 
 	/**
@@ -112,19 +139,18 @@ public final class ThreadPool {
 	}
 
 	public StringBuffer getThreadStatus(StringBuffer sb) {
-		int count = threadCount;
 		sb.append("ThreadPool ").append(getName()).append(" (threads=").append(
-				count).append(" idle=").append(idleThreadCount).append(')');
-		if (count > 0) {
-			PoolThread[] threads = this.poolThreads;
-			int index = 0;
-			for (int i = 0; i < count; i++) {
-				PoolThread pt = threads[i];
-				if (pt != null) {
-					sb.append('\n').append(++index).append(": ");
-					pt.getStatus(sb);
-				}
-			}
+				getThreads()).append(" idle=").append(getIdleThreads())
+				.append(" queue=").append(getQueueSize()).append(" jobs=")
+				.append(getCompletedJobs()).append(" failed=").append(
+						getFailedJobs()).append(" rejected=").append(
+						getRejectedJobs()).append(" queueTime=").append(
+						getQueueTime()).append("/").append(getMaxQueueTime())
+				.append(" ms runTime=").append(getRunTime()).append(" ms)");
+		int index = 0;
+		for (PoolThread pt : poolThreads) {
+			sb.append('\n').append(++index).append(": ");
+			pt.getStatus(sb);
 		}
 		return sb;
 	}
@@ -145,6 +171,10 @@ public final class ThreadPool {
 		return minThreads;
 	}
 
+	/**
+	 * Sets the minimal number of threads. The threads are created when
+	 * needed and this setting is kept for compatibility only.
+	 */
 	public void setMinThreads(int minThreads) {
 		this.minThreads = minThreads;
 	}
@@ -153,14 +183,37 @@ public final class ThreadPool {
 		return maxThreads;
 	}
 
+	/**
+	 * Sets the maximal number of threads running jobs at the same time, not
+	 * counting the threads added while jobs invoked as blocking are blocked.
+	 * Jobs already invoked are not affected by a change.
+	 */
 	public void setMaxThreads(int maxThreads) {
-		this.maxThreads = maxThreads;
+		if (maxThreads <= 0) {
+			throw new IllegalArgumentException("maxThreads must be positive");
+		}
+		synchronized (lock) {
+			if (this.maxThreads != maxThreads) {
+				this.maxThreads = maxThreads;
+				ForkJoinPool executor = this.executor;
+				if (executor != null) {
+					// Let the current executor finish its jobs
+					this.executor = null;
+					executor.shutdown();
+				}
+			}
+		}
 	}
 
 	public int getMaxIdleThreads() {
 		return maxIdleThreads;
 	}
 
+	/**
+	 * Sets the maximal number of idle threads. Idle threads are terminated
+	 * by the executor after a while and this setting is kept for
+	 * compatibility only.
+	 */
 	public void setMaxIdleThreads(int maxIdleThreads) {
 		this.maxIdleThreads = maxIdleThreads;
 	}
@@ -187,12 +240,72 @@ public final class ThreadPool {
 	// Thread job queue information
 	// -------------------------------------------------------------------
 
+	/**
+	 * Returns the number of jobs waiting to run.
+	 */
 	public int getQueueSize() {
-		return pendingJobCount;
+		ForkJoinPool executor = this.executor;
+		if (executor == null) {
+			return 0;
+		}
+		long size = executor.getQueuedSubmissionCount()
+				+ executor.getQueuedTaskCount();
+		return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
 	}
 
+	/**
+	 * Returns the average time in milliseconds jobs have waited in the queue
+	 * before running.
+	 */
 	public long getQueueTime() {
-		return 0L;
+		long started = completedJobs.get() + failedJobs.get();
+		return started == 0 ? 0L : totalQueueNanos.get() / started / 1000000;
+	}
+
+	/**
+	 * Returns the longest time in milliseconds a job has waited in the queue
+	 * before running.
+	 */
+	public long getMaxQueueTime() {
+		return maxQueueNanos.get() / 1000000;
+	}
+
+	/**
+	 * Returns the average time in milliseconds jobs have run.
+	 */
+	public long getRunTime() {
+		long started = completedJobs.get() + failedJobs.get();
+		return started == 0 ? 0L : totalRunNanos.get() / started / 1000000;
+	}
+
+	/**
+	 * Returns the number of jobs invoked.
+	 */
+	public long getInvokedJobs() {
+		return invokedJobs.get();
+	}
+
+	/**
+	 * Returns the number of jobs that have finished normally.
+	 */
+	public long getCompletedJobs() {
+		return completedJobs.get();
+	}
+
+	/**
+	 * Returns the number of jobs that have finished by throwing an
+	 * exception.
+	 */
+	public long getFailedJobs() {
+		return failedJobs.get();
+	}
+
+	/**
+	 * Returns the number of jobs that the executor has rejected. Rejected
+	 * jobs are run by the invoking thread.
+	 */
+	public long getRejectedJobs() {
+		return rejectedJobs.get();
 	}
 
 	// -------------------------------------------------------------------
@@ -211,153 +324,207 @@ public final class ThreadPool {
 	}
 
 	public void invokeLater(Runnable job, String description) {
-		PoolThread thread;
+		submit(new Job(this, job, description, false));
+	}
 
-		synchronized (lock) {
-			if (idleThreadCount > 0) {
-				thread = idleThreads[--idleThreadCount];
-				thread.setIdleIndex(-1);
-				idleThreads[idleThreadCount] = null;
+	/**
+	 * Invokes the specified job as soon as possible. The job may block, for
+	 * example waiting for I/O, without reducing the number of threads
+	 * available for other jobs.
+	 * 
+	 * @param job
+	 *            the job to invoke
+	 * @param description
+	 *            a description of the job or <CODE>null</CODE>
+	 */
+	public void invokeBlocking(Runnable job, String description) {
+		submit(new Job(this, job, description, true));
+	}
+
+	/**
+	 * Same as {@link #invokeLater(Runnable)}.
+	 */
+	public void execute(Runnable job) {
+		invokeLater(job, null);
+	}
 
-			} else if (threadCount < maxThreads) {
-				thread = createThread(false);
+	private void submit(Job job) {
+		if (job.job == null) {
+			throw new NullPointerException();
+		}
+		invokedJobs.incrementAndGet();
+		try {
+			getExecutor().execute(job);
+		} catch (RejectedExecutionException e) {
+			rejectedJobs.incrementAndGet();
+			log.log(Level.WARNING, name + ": job rejected, running "
+					+ job.job + " in " + Thread.currentThread().getName(), e);
+			job.run();
+		}
+		checkWorkingThreads(System.currentTimeMillis());
+	}
 
-			} else {
-				// All threads busy and no more threads allowed => add to job
-				// queue
-				if (pendingJobs == null) {
-					pendingJobs = new ArrayQueue();
+	private ForkJoinPool getExecutor() {
+		ForkJoinPool executor = this.executor;
+		if (executor == null) {
+			synchronized (lock) {
+				executor = this.executor;
+				if (executor == null) {
+					// Async mode runs the jobs in the order they are invoked
+					executor = this.executor = new ForkJoinPool(maxThreads,
+							new PoolThreadFactory(this), null, true);
 				}
-				pendingJobs.add(job);
-				pendingJobs.add(description);
-				pendingJobCount++;
-				thread = null;
 			}
 		}
+		return executor;
+	}
 
-		if (thread != null) {
-			thread.invoke(job, description);
-		} else {
-			checkWorkingThreads(System.currentTimeMillis());
-		}
+	// -------------------------------------------------------------------
+	// Interface to the PoolThreads and jobs
+	// -------------------------------------------------------------------
+
+	final String nextThreadName() {
+		return getName() + '.' + threadID.incrementAndGet();
+	}
+
+	final void threadStarted(PoolThread thread) {
+		poolThreads.add(thread);
 	}
 
-	// NOTE: MAY ONLY BE CALLED SYNCHRONIZED ON LOCK
-	private PoolThread createThread(boolean isIdle) {
-		PoolThread thread;
+	final void threadDied(PoolThread thread) {
+		poolThreads.remove(thread);
+	}
 
-		if (poolThreads == null) {
-			poolThreads = new PoolThread[10];
-		} else if (poolThreads.length == threadCount) {
-			poolThreads = (PoolThread[]) ArrayUtils.setSize(poolThreads,
-					threadCount + 100);
+	final void jobStarted(long queueNanos) {
+		totalQueueNanos.addAndGet(queueNanos);
+		long max;
+		while (queueNanos > (max = maxQueueNanos.get())
+				&& !maxQueueNanos.compareAndSet(max, queueNanos))
+			;
+	}
+
+	final void jobFinished(long runNanos, boolean isCompleted) {
+		totalRunNanos.addAndGet(runNanos);
+		if (isCompleted) {
+			completedJobs.incrementAndGet();
+		} else {
+			failedJobs.incrementAndGet();
 		}
+	}
 
-		String threadName = getName() + '.' + (++threadID);
-		thread = poolThreads[threadCount] = new PoolThread(this, threadName,
-				isIdle);
-		thread.setThreadIndex(threadCount);
-		threadCount++;
+	final void checkWorkingThreads(long currentTime) {
+		if (millisBeforeInterrupt > 0 && currentTime > nextWorkingThreadCheck) {
+			nextWorkingThreadCheck = currentTime + millisBetweenChecks;
 
-		return thread;
+			// Time to check all working threads
+			for (Iterator<PoolThread> iterator = poolThreads.iterator(); iterator
+					.hasNext();) {
+				PoolThread pt = iterator.next();
+				if (pt.isWorking() && pt.addActive(1) > 3) {
+					PoolThread.log.warning("interrupting overdue job "
+							+ pt.getStatus());
+					pt.interrupt();
+					// Do not interrupt immediately again at next check
+					pt.stillAlive();
+				}
+			}
+		}
 	}
 
 	// -------------------------------------------------------------------
-	// Interface to the PoolThreads
+	// Jobs and threads
 	// -------------------------------------------------------------------
 
-	/**
-	 * Adds a PoolThread object to the thread pool.
-	 * 
-	 * @param thread
-	 *            the thread to add to the thread pool.
-	 * @return true if the thread was added to the pool and false if the pool
-	 *         was full and the thread should die
-	 */
-	final boolean addThread(PoolThread thread) {
-		int idleIndex = thread.getIdleIndex();
-		if (idleIndex >= 0) {
-			return true;
-		}
+	private static class PoolThreadFactory implements
+			ForkJoinPool.ForkJoinWorkerThreadFactory {
 
-		Runnable job;
-		String description;
-		synchronized (lock) {
-			if (pendingJobCount > 0) {
-				pendingJobCount--;
-				job = (Runnable) pendingJobs.remove(0);
-				description = (String) pendingJobs.remove(0);
-
-			} else if (idleThreadCount < maxIdleThreads) {
-				if (idleThreads == null) {
-					idleThreads = new PoolThread[maxIdleThreads];
-				} else if (idleThreads.length <= idleThreadCount) {
-					idleThreads = (PoolThread[]) ArrayUtils.setSize(
-							idleThreads, maxIdleThreads);
-				}
-				idleThreads[idleThreadCount] = thread;
-				thread.setIdleIndex(idleThreadCount);
-				idleThreadCount++;
-				return true;
+		private final ThreadPool pool;
 
-			} else {
-				return false;
-			}
+		PoolThreadFactory(ThreadPool pool) {
+			this.pool = pool;
 		}
 
-		thread.invoke(job, description);
-		return true;
+		public ForkJoinWorkerThread newThread(ForkJoinPool executor) {
+			return new PoolThread(pool, executor);
+		}
 	}
 
-	final void threadDied(PoolThread thread) {
-		synchronized (lock) {
-			threadCount--;
-
-			// Remove the thread if it is among the idle threads
-			int idleIndex = thread.getIdleIndex();
-			if (idleIndex >= 0 && idleIndex < idleThreadCount
-					&& idleThreads[idleIndex] == thread) {
-				idleThreadCount--;
-				idleThreads[idleIndex] = idleThreads[idleThreadCount];
-				idleThreads[idleThreadCount] = null;
-				if (idleThreads[idleIndex] != null) {
-					idleThreads[idleIndex].setIdleIndex(idleIndex);
-				}
-				thread.setIdleIndex(-1);
+	private static class Job implements Runnable, ForkJoinPool.ManagedBlocker {
+
+		private final ThreadPool pool;
+		private final Runnable job;
+		private final String description;
+		private final boolean isBlocking;
+		private final long invokeTime = System.nanoTime();
+		private boolean isDone;
+
+		Job(ThreadPool pool, Runnable job, String description,
+				boolean isBlocking) {
+			this.pool = pool;
+			this.job = job;
+			this.description = description;
+			this.isBlocking = isBlocking;
+		}
+
+		public void run() {
+			Thread thread = Thread.currentThread();
+			if (!(thread instanceof PoolThread)) {
+				// Rejected job run by the invoking thread
+				block();
+				return;
 			}
 
-			// Remove the thread from the existing pool threads
-			int index = thread.getThreadIndex();
-			if (index < threadCount && index >= 0
-					&& poolThreads[index] == thread) {
-				threadCount--;
-				poolThreads[index] = poolThreads[threadCount];
-				poolThreads[threadCount] = null;
-				if (poolThreads[index] != null) {
-					poolThreads[index].setThreadIndex(index);
+			if (isBlocking) {
+				try {
+					ForkJoinPool.managedBlock(this);
+				} catch (InterruptedException e) {
+					// Interrupted before the job was run
+					block();
 				}
-				thread.setThreadIndex(-1);
+			} else {
+				block();
 			}
 		}
-	}
-
-	final void checkWorkingThreads(long currentTime) {
-		if (millisBeforeInterrupt > 0 && currentTime > nextWorkingThreadCheck) {
-			nextWorkingThreadCheck = currentTime + millisBetweenChecks;
 
-			// Time to check all working threads
-			synchronized (lock) {
-				for (int i = 0; i < threadCount; i++) {
-					PoolThread pt = poolThreads[i];
-					if (pt.isWorking() && pt.addActive(1) > 3) {
-						pt.log.warning("interrupting overdue job "
-								+ pt.getStatus());
-						pt.interrupt();
-						// Do not interrupt immediately again at next check
-						pt.stillAlive();
+		public boolean block() {
+			if (!isDone) {
+				isDone = true;
+				long startTime = System.nanoTime();
+				pool.jobStarted(startTime - invokeTime);
+				boolean isCompleted = false;
+				Thread thread = Thread.currentThread();
+				PoolThread pt = thread instanceof PoolThread ? (PoolThread) thread
+						: null;
+				try {
+					if (pt != null) {
+						pt.handleJob(job, description);
+					} else {
+						job.run();
 					}
+					isCompleted = true;
+				} catch (ThreadDeath e) {
+					log.log(Level.SEVERE, "thread was killed", e);
+					// Rethrow thread death
+					throw e;
+				} catch (Throwable e) {
+					log.log(Level.SEVERE, "could not execute job "
+							+ (description != null ? description : "") + ":",
+							e);
+				} finally {
+					pool.jobFinished(System.nanoTime() - startTime,
+							isCompleted);
 				}
+				pool.checkWorkingThreads(System.currentTimeMillis());
 			}
+			return true;
+		}
+
+		public boolean isReleasable() {
+			return isDone;
+		}
+
+		public String toString() {
+			return description != null ? description : String.valueOf(job);
 		}
 	}
 
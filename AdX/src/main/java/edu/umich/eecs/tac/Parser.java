@@ -63,6 +63,11 @@ public abstract class Parser {
 
 	private final LogReader logReader;
 
+	/** The days to parse and the day of the current chunk */
+	private int firstDay = Integer.MIN_VALUE;
+	private int lastDay = Integer.MAX_VALUE;
+	private int currentDay = -1;
+
 	protected Parser(LogReader logReader) {
 		this.logReader = logReader;
 		ContextFactory aaInfo = new AdxInfoContextFactory(); // Make sure this works
@@ -85,21 +90,69 @@ public abstract class Parser {
 	 *             if an error occurs
 	 */
 	public final void start() throws IOException, ParseException {
+		start(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Starts the log parsing procedure for the days <code>firstDay</code> to
+	 * <code>lastDay</code>. Anything logged before <code>firstDay</code> or
+	 * after <code>lastDay</code> is skipped. Seekable log files are
+	 * positioned directly at <code>firstDay</code>, which also allows
+	 * separate parsers to process different days of the same log file
+	 * concurrently.
+	 * 
+	 * @param firstDay
+	 *            the first day to parse
+	 * @param lastDay
+	 *            the last day to parse
+	 * @throws IOException
+	 *             if an error occurs
+	 * @throws ParseException
+	 *             if an error occurs
+	 * @see LogReader#seekToTimeUnit(int)
+	 */
+	public final void start(int firstDay, int lastDay) throws IOException,
+			ParseException {
+		this.firstDay = firstDay;
+		this.lastDay = lastDay;
 		try {
 			parseStarted();
+			if (firstDay > currentDay && logReader.isSeekable()) {
+				logReader.seekToTimeUnit(firstDay);
+			}
 			while (logReader.hasMoreChunks()) {
 				TransportReader reader = logReader.nextChunk();
-				handleNodes(reader);
+				if (!handleNodes(reader)) {
+					break;
+				}
 			}
 		} finally {
 			stop();
 		}
 	}
 
-	private void handleNodes(TransportReader reader) throws ParseException {
+	/**
+	 * Handles the nodes of a chunk.
+	 * 
+	 * @return <code>false</code> if the last day to parse has ended
+	 */
+	private boolean handleNodes(TransportReader reader) throws ParseException {
 		while (reader.nextNode(false)) {
 
-			if (reader.isNode("intUpdated")) {
+			if (reader.isNode("nextTimeUnit")) {
+				currentDay = reader.getAttributeAsInt("unit");
+				if (currentDay > lastDay) {
+					return false;
+				}
+				if (currentDay >= firstDay) {
+					long time = reader.getAttributeAsLong("time", 0L);
+					nextDay(currentDay, time);
+				}
+
+			} else if (currentDay < firstDay) {
+				// Skip anything before the first day to parse
+
+			} else if (reader.isNode("intUpdated")) {
 				int type = reader.getAttributeAsInt("type", 0);
 				int agentIndex = reader.getAttributeAsInt("agent", -1);
 				int value = reader.getAttributeAsInt("value");
@@ -144,9 +197,13 @@ public abstract class Parser {
 				int role = reader.getAttributeAsInt("role");
 				reader.enterNode();
 				reader.nextNode(true);
-				Transportable content = reader.readTransportable();
-				reader.exitNode();
-				messageToRole(sender, role, content);
+				if (isContentHandled(reader.getNodeName())) {
+					Transportable content = reader.readTransportable();
+					reader.exitNode();
+					messageToRole(sender, role, content);
+				} else {
+					reader.exitNode();
+				}
 
 			} else if (reader.isNode("message")) {
 				int receiver = reader.getAttributeAsInt("receiver");
@@ -156,10 +213,14 @@ public abstract class Parser {
 					reader.enterNode();
 					reader.nextNode(true);
 
-					Transportable content = reader.readTransportable();
-					reader.exitNode();
+					if (isContentHandled(reader.getNodeName())) {
+						Transportable content = reader.readTransportable();
+						reader.exitNode();
 
-					message(sender, receiver, content);
+						message(sender, receiver, content);
+					} else {
+						reader.exitNode();
+					}
 				}
 
 			} else if (reader.isNode("objectUpdated")) {
@@ -167,12 +228,16 @@ public abstract class Parser {
 				int type = reader.getAttributeAsInt("type", 0);
 				reader.enterNode();
 				reader.nextNode(true);
-				Transportable content = reader.readTransportable();
-				reader.exitNode();
-				if (agentIndex >= 0) {
-					dataUpdated(agentIndex, type, content);
+				if (isContentHandled(reader.getNodeName())) {
+					Transportable content = reader.readTransportable();
+					reader.exitNode();
+					if (agentIndex >= 0) {
+						dataUpdated(agentIndex, type, content);
+					} else {
+						dataUpdated(type, content);
+					}
 				} else {
-					dataUpdated(type, content);
+					reader.exitNode();
 				}
 
       //Transaction exists here because it is not contained within a Message
@@ -182,11 +247,6 @@ public abstract class Parser {
 				double amount = reader.getAttributeAsDouble("amount");
 				transaction(source, recipient, amount);
 
-			} else if (reader.isNode("nextTimeUnit")) {
-				int date = reader.getAttributeAsInt("unit");
-				long time = reader.getAttributeAsLong("time", 0L);
-				nextDay(date, time);
-
 			} else if (reader.isNode(CONFIG_NAME)) {
 				Transportable content = reader.readTransportable();
 				data(content);
@@ -195,6 +255,7 @@ public abstract class Parser {
 				unhandledNode(reader.getNodeName());
 			}
 		}
+		return true;
 	}
 
 	/**
@@ -209,6 +270,19 @@ public abstract class Parser {
 	// Parser callbacks
 	// -------------------------------------------------------------------
 
+	/**
+	 * Returns true if message and data update content with the specified
+	 * transport name should be decoded and passed to the callbacks. Skipping
+	 * content that is not needed saves most of the parse time. The default
+	 * implementation returns true.
+	 * 
+	 * @param transportName
+	 *            the transport name of the content
+	 */
+	protected boolean isContentHandled(String transportName) {
+		return true;
+	}
+
 	/**
 	 * Invoked when the parse process starts.
 	 */
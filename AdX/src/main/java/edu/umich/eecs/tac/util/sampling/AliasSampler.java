@@ -0,0 +1,213 @@
+/*
+ * AliasSampler.java
+ *
+ * COPYRIGHT  2008
+ * THE REGENTS OF THE UNIVERSITY OF MICHIGAN
+ * ALL RIGHTS RESERVED
+ *
+ * PERMISSION IS GRANTED TO USE, COPY, CREATE DERIVATIVE WORKS AND REDISTRIBUTE THIS
+ * SOFTWARE AND SUCH DERIVATIVE WORKS FOR NONCOMMERCIAL EDUCATION AND RESEARCH
+ * PURPOSES, SO LONG AS NO FEE IS CHARGED, AND SO LONG AS THE COPYRIGHT NOTICE
+ * ABOVE, THIS GRANT OF PERMISSION, AND THE DISCLAIMER BELOW APPEAR IN ALL COPIES
+ * MADE; AND SO LONG AS THE NAME OF THE UNIVERSITY OF MICHIGAN IS NOT USED IN ANY
+ * ADVERTISING OR PUBLICITY PERTAINING TO THE USE OR DISTRIBUTION OF THIS SOFTWARE
+ * WITHOUT SPECIFIC, WRITTEN PRIOR AUTHORIZATION.
+ *
+ * THIS SOFTWARE IS PROVIDED AS IS, WITHOUT REPRESENTATION FROM THE UNIVERSITY OF
+ * MICHIGAN AS TO ITS FITNESS FOR ANY PURPOSE, AND WITHOUT WARRANTY BY THE
+ * UNIVERSITY OF MICHIGAN OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT
+ * LIMITATION THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE. THE REGENTS OF THE UNIVERSITY OF MICHIGAN SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES, INCLUDING SPECIAL, INDIRECT, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, WITH
+ * RESPECT TO ANY CLAIM ARISING OUT OF OR IN CONNECTION WITH THE USE OF THE SOFTWARE,
+ * EVEN IF IT HAS BEEN OR IS HEREAFTER ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ */
+package edu.umich.eecs.tac.util.sampling;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Alias method sampling (Walker, with Vose's construction). After an O(n)
+ * table construction, every sample costs one random number and a single table
+ * lookup, independent of the number of states.
+ */
+public class AliasSampler<T> implements MutableSampler<T> {
+	/**
+	 * The random number generator used to select the values.
+	 */
+	private final Random random;
+	/**
+	 * The possible values.
+	 */
+	private Object[] states;
+	/**
+	 * The weights associated with the {@link #states}.
+	 */
+	private double[] weights;
+	/**
+	 * The number of states added.
+	 */
+	private int size;
+	/**
+	 * The probability of keeping column <code>i</code> rather than taking its
+	 * alias.
+	 */
+	private double[] probability;
+	/**
+	 * The alias of column <code>i</code>.
+	 */
+	private int[] alias;
+	/**
+	 * The <code>dirty</code> flag indicates whether the alias tables need to
+	 * be rebuilt before sampling a value.
+	 */
+	private volatile boolean dirty;
+
+	/**
+	 * Create an {@link AliasSampler} with a new random number generator.
+	 */
+	public AliasSampler() {
+		this(new Random());
+	}
+
+	/**
+	 * Create an {@link AliasSampler} with a given random number generator.
+	 * 
+	 * @param random
+	 *            the random number generator.
+	 */
+	public AliasSampler(Random random) {
+		this.random = random;
+		this.states = new Object[4];
+		this.weights = new double[4];
+		dirty = true;
+	}
+
+	/**
+	 * Add a new state with its associated weight in the distribution.
+	 * 
+	 * @param weight
+	 *            the weight of the state in the distribution
+	 * @param state
+	 *            the state
+	 * @throws IllegalArgumentException
+	 *             if the weight is negative.
+	 */
+	public synchronized void addState(double weight, T state) {
+		if (weight < 0.0)
+			throw new IllegalArgumentException("weight cannot be negative");
+
+		if (size == states.length) {
+			states = Arrays.copyOf(states, size * 2);
+			weights = Arrays.copyOf(weights, size * 2);
+		}
+		states[size] = state;
+		weights[size] = weight;
+		size++;
+
+		// Mark the sampler as dirty so that the tables are rebuilt.
+		dirty = true;
+	}
+
+	/**
+	 * Get a sample from a discrete random variable.
+	 * 
+	 * @return the sample.
+	 */
+	public T getSample() {
+		return getSample(random);
+	}
+
+	/**
+	 * Get a sample from a discrete random variable, drawing from the given
+	 * random number generator instead of the sampler's own.
+	 * 
+	 * @param random
+	 *            the random number generator.
+	 * @return the sample.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getSample(Random random) {
+		// JIT cleaning
+		if (dirty)
+			clean();
+
+		// Check for an empty state space.
+		int n = probability.length;
+		if (n == 0)
+			return null;
+
+		// Check for a trivial state space.
+		if (n == 1)
+			return (T) states[0];
+
+		// A single draw selects both the column and the coin flip.
+		double dart = random.nextDouble() * n;
+		int column = (int) dart;
+		if (dart - column < probability[column])
+			return (T) states[column];
+		return (T) states[alias[column]];
+	}
+
+	/**
+	 * The clean method builds the probability and alias tables using Vose's
+	 * method.
+	 */
+	private synchronized void clean() {
+		if (!dirty)
+			return;
+
+		int n = size;
+		double[] probability = new double[n];
+		int[] alias = new int[n];
+
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			sum += weights[i];
+		}
+
+		if (sum <= 0.0) {
+			// Degenerate distribution: every column aliases the first state.
+			if (n > 0)
+				probability[0] = 1.0;
+		} else {
+			double[] scaled = new double[n];
+			int[] small = new int[n];
+			int[] large = new int[n];
+			int smallCount = 0;
+			int largeCount = 0;
+			for (int i = 0; i < n; i++) {
+				scaled[i] = weights[i] * n / sum;
+				if (scaled[i] < 1.0)
+					small[smallCount++] = i;
+				else
+					large[largeCount++] = i;
+			}
+
+			while (smallCount > 0 && largeCount > 0) {
+				int less = small[--smallCount];
+				int more = large[--largeCount];
+
+				probability[less] = scaled[less];
+				alias[less] = more;
+
+				scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+				if (scaled[more] < 1.0)
+					small[smallCount++] = more;
+				else
+					large[largeCount++] = more;
+			}
+
+			// Whatever remains is (up to rounding) exactly full.
+			while (largeCount > 0)
+				probability[large[--largeCount]] = 1.0;
+			while (smallCount > 0)
+				probability[small[--smallCount]] = 1.0;
+		}
+
+		this.alias = alias;
+		this.probability = probability;
+		dirty = false;
+	}
+}
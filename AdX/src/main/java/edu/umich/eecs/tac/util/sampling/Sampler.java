@@ -24,6 +24,8 @@
  */
 package edu.umich.eecs.tac.util.sampling;
 
+import java.util.Random;
+
 /**
  * Sampler provides a method for sampling a discrete random variable.
  * 
@@ -42,4 +44,14 @@ public interface Sampler<T> {
 	 * @return the sample.
 	 */
 	public T getSample();
+
+	/**
+	 * Get a sample from a discrete random variable, using the given random
+	 * number generator instead of the sampler's own.
+	 * 
+	 * @param random
+	 *            the random number generator.
+	 * @return the sample.
+	 */
+	public T getSample(Random random);
 }
@@ -24,6 +24,8 @@
  */
 package edu.umich.eecs.tac.util.sampling;
 
+import java.util.Random;
+
 /**
  * SynchronizedSampler provides synchronization support to a
  * {@link MutableSampler}.
@@ -62,4 +64,13 @@ public class SynchronizedMutableSampler<T> implements MutableSampler<T> {
 		}
 
 	}
+
+	public T getSample(Random random) {
+
+		synchronized (lock) {
+
+			return mutableSampler.getSample(random);
+
+		}
+	}
 }
@@ -24,6 +24,8 @@
  */
 package edu.umich.eecs.tac.util.sampling;
 
+import java.util.Random;
+
 /**
  * SynchronizedSampler provides synchronization support to a {@link Sampler}.
  * 
@@ -53,4 +55,13 @@ public class SynchronizedSampler<T> implements Sampler<T> {
 
 		}
 	}
+
+	public T getSample(Random random) {
+
+		synchronized (lock) {
+
+			return sampler.getSample(random);
+
+		}
+	}
 }
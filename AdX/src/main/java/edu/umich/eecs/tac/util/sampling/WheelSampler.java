@@ -48,7 +48,7 @@ public class WheelSampler<T> implements MutableSampler<T> {
 	 * The
 	 * <code>dirty</cody> flag indicates whether sorting needs to be performed before sampling a value.
 	 */
-	private boolean dirty;
+	private volatile boolean dirty;
 	/**
 	 * The <code>sum</code> valuable holds the sum of the state weights.
 	 */
@@ -95,6 +95,19 @@ public class WheelSampler<T> implements MutableSampler<T> {
 	 * @return the sample.
 	 */
 	public T getSample() {
+		return getSample(random);
+	}
+
+	/**
+	 * Get a sample from a discrete random variable, drawing the random
+	 * cumulative value from the given random number generator instead of the
+	 * sampler's own.
+	 *
+	 * @param random
+	 *            the random number generator.
+	 * @return the sample.
+	 */
+	public T getSample(Random random) {
 		// Check for an empty state space.
 		if (slots.isEmpty())
 			return null;
@@ -123,9 +136,13 @@ public class WheelSampler<T> implements MutableSampler<T> {
 
 	/**
 	 * The clean method sorts the slots in decreasing order and sums the
-	 * weights.
+	 * weights. It is synchronized so that a sampler shared by several threads
+	 * is only cleaned once.
 	 */
-	private void clean() {
+	private synchronized void clean() {
+		if (!dirty)
+			return;
+
 		Collections.sort(slots, Collections.reverseOrder());
 
 		sum = 0.0;
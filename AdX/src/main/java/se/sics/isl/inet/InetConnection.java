@@ -218,7 +218,7 @@ public abstract class InetConnection {
 			isOpen = false;
 			isClosed = true;
 			if (useThread) {
-				getThreadPool().invokeLater(new ConnectionCloser(this));
+				getThreadPool().invokeBlocking(new ConnectionCloser(this), null);
 			} else {
 				doClose();
 			}
@@ -253,7 +253,7 @@ public abstract class InetConnection {
 						messageWriter = new MessageWriter(this);
 					}
 					writerRunning = true;
-					getThreadPool().invokeLater(messageWriter);
+					getThreadPool().invokeBlocking(messageWriter, null);
 				} else {
 					outBuffer.notify();
 				}
@@ -287,7 +287,7 @@ public abstract class InetConnection {
 						messageDeliverer = new MessageDeliverer(this);
 					}
 					delivererRunning = true;
-					getThreadPool().invokeLater(messageDeliverer);
+					getThreadPool().invokeBlocking(messageDeliverer, null);
 				} else {
 					inBuffer.notify();
 				}
@@ -383,7 +383,8 @@ public abstract class InetConnection {
 						if (!outBuffer.isEmpty() && !connection.isClosed) {
 							log.warning("reinvoking writer for "
 									+ connection.fullName);
-							connection.getThreadPool().invokeLater(this);
+							connection.getThreadPool().invokeBlocking(this,
+									null);
 						} else {
 							log.warning("writer for " + connection.fullName
 									+ " exiting");
@@ -485,7 +486,8 @@ public abstract class InetConnection {
 						if (!inBuffer.isEmpty()) {
 							log.warning("reinvoking deliverer for "
 									+ connection.fullName);
-							connection.getThreadPool().invokeLater(this);
+							connection.getThreadPool().invokeBlocking(this,
+									null);
 						} else {
 							log.warning("deliverer for " + connection.fullName
 									+ " exiting");
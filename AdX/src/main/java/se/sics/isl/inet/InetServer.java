@@ -31,6 +31,8 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -101,22 +103,33 @@ public abstract class InetServer {
 
 	protected abstract void newConnection(Socket socket) throws IOException;
 
+	/**
+	 * Called with each accepted connection, which is in blocking mode.
+	 * Servers handling the connections with non-blocking I/O override this
+	 * method. The default implementation delegates to
+	 * {@link #newConnection(Socket)}.
+	 */
+	protected void newConnection(SocketChannel channel) throws IOException {
+		newConnection(channel.socket());
+	}
+
 	// -------------------------------------------------------------------
 	// Listening thread
 	// -------------------------------------------------------------------
 
 	private static class Server extends Thread {
 		private boolean stopped = false;
-		private ServerSocket socket;
+		private ServerSocketChannel socket;
 		private InetServer inet;
 
 		Server(InetServer inet, String host, int port) throws IOException {
 			super(inet.name);
+			socket = ServerSocketChannel.open();
+			ServerSocket serverSocket = socket.socket();
 			if (host != null) {
-				socket = new ServerSocket();
-				socket.bind(new InetSocketAddress(host, port));
+				serverSocket.bind(new InetSocketAddress(host, port));
 			} else {
-				socket = new ServerSocket(port);
+				serverSocket.bind(new InetSocketAddress(port));
 			}
 			this.inet = inet;
 		}
@@ -135,7 +148,7 @@ public abstract class InetServer {
 		public void run() {
 			try {
 				while (!stopped) {
-					Socket connection = socket.accept();
+					SocketChannel connection = socket.accept();
 					try {
 						inet.newConnection(connection);
 					} catch (ThreadDeath e) {
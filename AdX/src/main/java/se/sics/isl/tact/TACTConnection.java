@@ -26,12 +26,19 @@
  */
 package se.sics.isl.tact;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,6 +48,12 @@ import com.botbox.util.ThreadPool;
 
 /**
  * - One thread for receiving and deliverying data - Threadpool for sending data
+ * <p>
+ * Server connections created with a {@link TACTReactor} are instead served by
+ * one of the selector threads of the reactor, which reads and frames the
+ * messages and writes the queued messages, several messages at a time. The
+ * messages read are delivered in order by a job in the thread pool, so a
+ * slow handler never holds up the other connections of the selector thread.
  */
 public abstract class TACTConnection {
 
@@ -59,6 +72,11 @@ public abstract class TACTConnection {
 	// Maximum - 2 megabyte of data in messages!!!
 	private static final int MAX_BUFFER_SIZE = 2 * 1024 * 1024;
 
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+	// Maximum number of buffers written at once by a selector thread
+	private static final int MAX_GATHER = 64;
+
 	private ThreadPool threadPool;
 
 	private String name;
@@ -91,6 +109,27 @@ public abstract class TACTConnection {
 	private TACTWriter tactWriter;
 	private TACTReader tactReader;
 
+	// Non-blocking mode, only accessed by the selector thread except
+	// for the channel and the worker
+	private SocketChannel channel;
+	private TACTReactor reactor;
+	private TACTReactor.Worker worker;
+	private SelectionKey selectionKey;
+	private ByteBuffer readBuffer;
+	private boolean hasReadHeader;
+	private ByteBuffer[] pendingWrite;
+	private int pendingIndex;
+	private int pendingCount;
+	private long pendingBytes;
+	private byte[] copyBuffer;
+
+	// Messages read by the selector thread and waiting to be delivered
+	private ArrayQueue inBuffer;
+	private int inBufferBytes;
+	private boolean deliveryRunning = false;
+	private boolean isReadSuspended = false;
+	private TACTDeliverer tactDeliverer;
+
 	// MUST NOT START EVERYTHING in HERE BECAUSE THE CHILD MUST BE
 	// INITIALIZED BEFORE THE READER THREAD STARTS
 	public TACTConnection(String name, String host, int port) {
@@ -112,6 +151,27 @@ public abstract class TACTConnection {
 		this.connectTime = System.currentTimeMillis();
 	}
 
+	/**
+	 * Creates a server connection served by the selector threads of the
+	 * specified reactor instead of by its own reader thread.
+	 */
+	public TACTConnection(String name, SocketChannel channel,
+			TACTReactor reactor) {
+		if (channel == null) {
+			throw new NullPointerException("channel cannot be null");
+		}
+		if (reactor == null) {
+			throw new NullPointerException("reactor cannot be null");
+		}
+		this.name = name;
+		this.fullName = name;
+		this.channel = channel;
+		this.socket = channel.socket();
+		this.reactor = reactor;
+		this.isServerConnection = true;
+		this.connectTime = System.currentTimeMillis();
+	}
+
 	public String getName() {
 		return fullName;
 	}
@@ -162,10 +222,14 @@ public abstract class TACTConnection {
 	}
 
 	public final void start() throws IOException {
-		if (this.input != null) {
+		if (this.input != null || this.worker != null) {
 			// Already initialized
 			return;
 		}
+		if (channel != null) {
+			startChannel();
+			return;
+		}
 
 		if (isServerConnection) {
 			InetAddress remoteAddress = socket.getInetAddress();
@@ -178,9 +242,12 @@ public abstract class TACTConnection {
 		}
 
 		this.input = new DataInputStream(socket.getInputStream());
-		this.output = new DataOutputStream(socket.getOutputStream());
+		// Buffered to send the size and all parts of a message at once
+		this.output = new DataOutputStream(new BufferedOutputStream(socket
+				.getOutputStream()));
 		if (!isServerConnection) {
 			this.output.write(TACT_HEADER);
+			this.output.flush();
 		}
 		this.isOpen = true;
 
@@ -192,9 +259,51 @@ public abstract class TACTConnection {
 		connectionOpened();
 	}
 
+	private void startChannel() throws IOException {
+		InetAddress remoteAddress = socket.getInetAddress();
+		this.remoteHost = remoteAddress.getHostAddress();
+		this.remotePort = socket.getPort();
+		log.finest(fullName + ": new connection from " + remoteHost + ':'
+				+ remotePort);
+
+		channel.configureBlocking(false);
+		this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		this.pendingWrite = new ByteBuffer[MAX_GATHER];
+		this.isOpen = true;
+
+		outBuffer = new ArrayQueue();
+		inBuffer = new ArrayQueue();
+
+		// Messages written when opened are sent once registered
+		this.worker = reactor.nextWorker();
+		connectionOpened();
+		worker.register(this);
+	}
+
 	public void write(byte[] data) {
-		if (isOpen && data != null) {
-			requestedSentBytes += data.length;
+		if (data != null) {
+			addMessage(data, data.length);
+		}
+	}
+
+	/**
+	 * Sends a message consisting of several parts. The parts are sent
+	 * together as one message and must not be modified afterwards, which
+	 * allows the same part to be sent to several connections.
+	 */
+	public void write(byte[][] parts) {
+		if (parts != null) {
+			int length = 0;
+			for (int i = 0, n = parts.length; i < n; i++) {
+				length += parts[i].length;
+			}
+			addMessage(parts.length == 1 ? parts[0] : parts, length);
+		}
+	}
+
+	private void addMessage(Object data, int length) {
+		if (isOpen) {
+			requestedSentBytes += length;
 			if ((requestedSentBytes - sentBytes) > maxBuffer) {
 				log.log(Level.SEVERE, fullName + ": could not send data",
 						new IOException("out buffer overflow: "
@@ -221,12 +330,12 @@ public abstract class TACTConnection {
 		closeImmediately(true);
 	}
 
-	private void closeImmediately(boolean useThread) {
+	void closeImmediately(boolean useThread) {
 		if (!isClosed) {
 			isOpen = false;
 			isClosed = true;
 			if (useThread) {
-				getThreadPool().invokeLater(new ConnectionCloser(this));
+				getThreadPool().invokeBlocking(new ConnectionCloser(this), null);
 			} else {
 				doClose();
 			}
@@ -243,10 +352,14 @@ public abstract class TACTConnection {
 							+ ": failed to close connection", e);
 		}
 		try {
-			tactReader.interrupt();
-			output.close();
-			input.close();
-			socket.close();
+			if (channel != null) {
+				channel.close();
+			} else {
+				tactReader.interrupt();
+				output.close();
+				input.close();
+				socket.close();
+			}
 		} catch (Exception e) {
 			log.log(Level.SEVERE, fullName + ": could not close connection", e);
 		}
@@ -259,15 +372,39 @@ public abstract class TACTConnection {
 
 	protected abstract void dataRead(byte[] data, int start, int len);
 
-	private void addOutBuffer(byte[] data) {
+	/**
+	 * Called with each message read. The buffer is reused for the next
+	 * message and its content must not be kept after this method returns.
+	 * The default implementation delegates to
+	 * {@link #dataRead(byte[], int, int)}.
+	 */
+	protected void dataRead(ByteBuffer data) {
+		if (data.hasArray()) {
+			dataRead(data.array(), data.arrayOffset() + data.position(),
+					data.remaining());
+		} else {
+			int len = data.remaining();
+			byte[] buffer = copyBuffer;
+			if (buffer == null || buffer.length < len) {
+				buffer = copyBuffer = new byte[Math.max(len, 8192)];
+			}
+			data.duplicate().get(buffer, 0, len);
+			dataRead(buffer, 0, len);
+		}
+	}
+
+	private void addOutBuffer(Object data) {
 		synchronized (outBuffer) {
 			outBuffer.add(data);
-			if (!writerRunning) {
+			if (!writerRunning && worker != null) {
+				writerRunning = true;
+				worker.requestWrite(this);
+			} else if (!writerRunning) {
 				if (tactWriter == null) {
 					tactWriter = new TACTWriter(this);
 				}
 				writerRunning = true;
-				getThreadPool().invokeLater(tactWriter);
+				getThreadPool().invokeBlocking(tactWriter, null);
 			} else {
 				outBuffer.notify();
 			}
@@ -286,7 +423,7 @@ public abstract class TACTConnection {
 		}
 
 		public void run() {
-			byte[] data = null;
+			Object data = null;
 			boolean ok = false;
 			JobStatus jobStatus = ThreadPool.getJobStatus();
 
@@ -305,7 +442,7 @@ public abstract class TACTConnection {
 						}
 
 						if (!connection.outBuffer.isEmpty()) {
-							data = (byte[]) connection.outBuffer.remove(0);
+							data = connection.outBuffer.remove(0);
 						} else {
 							connection.writerRunning = false;
 							ok = true;
@@ -320,10 +457,7 @@ public abstract class TACTConnection {
 						if (jobStatus != null) {
 							jobStatus.stillAlive();
 						}
-						connection.sentBytes += data.length;
-						connection.output.writeInt(data.length);
-						connection.output.write(data);
-						connection.output.flush();
+						connection.send(data);
 					}
 				}
 
@@ -348,7 +482,8 @@ public abstract class TACTConnection {
 								&& !connection.isClosed) {
 							log.warning("reinvoking writer for "
 									+ connection.fullName);
-							connection.getThreadPool().invokeLater(this);
+							connection.getThreadPool().invokeBlocking(this,
+									null);
 						} else {
 							log.warning("writer for " + connection.fullName
 									+ " exiting");
@@ -369,6 +504,28 @@ public abstract class TACTConnection {
 		}
 	}
 
+	// Note: MAY ONLY BE CALLED BY THE WRITER
+	private void send(Object data) throws IOException {
+		if (data instanceof byte[]) {
+			byte[] buffer = (byte[]) data;
+			sentBytes += buffer.length;
+			output.writeInt(buffer.length);
+			output.write(buffer);
+		} else {
+			byte[][] parts = (byte[][]) data;
+			int length = 0;
+			for (int i = 0, n = parts.length; i < n; i++) {
+				length += parts[i].length;
+			}
+			sentBytes += length;
+			output.writeInt(length);
+			for (int i = 0, n = parts.length; i < n; i++) {
+				output.write(parts[i]);
+			}
+		}
+		output.flush();
+	}
+
 	// -------------------------------------------------------------------
 	// Data reception
 	// -------------------------------------------------------------------
@@ -384,6 +541,7 @@ public abstract class TACTConnection {
 
 		public void run() {
 			byte[] buffer = new byte[8192];
+			ByteBuffer message = ByteBuffer.wrap(buffer);
 			int len;
 			int lastPos;
 			try {
@@ -408,10 +566,13 @@ public abstract class TACTConnection {
 							throw new IOException("in buffer overflow: " + size);
 						}
 						buffer = new byte[size + 8192];
+						message = ByteBuffer.wrap(buffer);
 					}
 					connection.input.readFully(buffer, 0, size);
+					message.clear();
+					message.limit(size);
 					try {
-						connection.dataRead(buffer, 0, size);
+						connection.dataRead(message);
 					} catch (Throwable e) {
 						log.log(Level.SEVERE, connection.fullName
 								+ ": could not deliver data: " + size, e);
@@ -436,6 +597,304 @@ public abstract class TACTConnection {
 		}
 	}
 
+	// -------------------------------------------------------------------
+	// Non-blocking mode, called by the selector thread
+	// -------------------------------------------------------------------
+
+	void channelRegistered(Selector selector) {
+		try {
+			selectionKey = channel.register(selector, SelectionKey.OP_READ,
+					this);
+		} catch (ClosedChannelException e) {
+			// Closed before being registered
+			return;
+		}
+		// Send any messages written before the registration
+		flushChannel();
+	}
+
+	void channelSelected(SelectionKey key) {
+		try {
+			if (key.isValid() && key.isWritable()) {
+				flushChannel();
+			}
+			if (key.isValid() && key.isReadable()) {
+				readChannel();
+			}
+		} catch (CancelledKeyException e) {
+			// The connection was closed by another thread
+		}
+	}
+
+	private void readChannel() {
+		if (!isOpen) {
+			// No more data is delivered after close
+			selectionKey.interestOps(selectionKey.interestOps()
+					& ~SelectionKey.OP_READ);
+			return;
+		}
+		try {
+			if (channel.read(readBuffer) < 0) {
+				throw new EOFException();
+			}
+			readBuffer.flip();
+			if (!hasReadHeader) {
+				if (readBuffer.remaining() < TACT_HEADER.length) {
+					readBuffer.compact();
+					return;
+				}
+				// Only the four first bytes identifies the protocol
+				// followed by two bytes describing the version and
+				// two reserved bytes.
+				for (int i = 0; i < 4; i++) {
+					if (readBuffer.get(i) != TACT_HEADER[i]) {
+						byte[] header = new byte[TACT_HEADER.length];
+						readBuffer.get(header);
+						throw new IOException("illegal protocol header: "
+								+ new String(header));
+					}
+				}
+				readBuffer.position(TACT_HEADER.length);
+				hasReadHeader = true;
+			}
+
+			int required = 0;
+			while (isOpen && readBuffer.remaining() >= 4) {
+				int position = readBuffer.position();
+				int size = readBuffer.getInt(position);
+				if (size < 0 || size > getMaxBuffer()) {
+					throw new IOException("in buffer overflow: " + size);
+				}
+				if (readBuffer.remaining() - 4 < size) {
+					required = size + 4;
+					break;
+				}
+				byte[] message = new byte[size];
+				readBuffer.position(position + 4);
+				readBuffer.get(message);
+				addInBuffer(message);
+			}
+			synchronized (inBuffer) {
+				if (inBufferBytes > getMaxBuffer() && selectionKey.isValid()) {
+					// Continue reading when the handler has caught up
+					isReadSuspended = true;
+					selectionKey.interestOps(selectionKey.interestOps()
+							& ~SelectionKey.OP_READ);
+				}
+			}
+
+			readBuffer.compact();
+			if (required > readBuffer.capacity()) {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(required
+						+ READ_BUFFER_SIZE);
+				readBuffer.flip();
+				buffer.put(readBuffer);
+				readBuffer = buffer;
+			}
+		} catch (EOFException e) {
+			// Connection was closed from other side
+			log.severe(fullName + ": closed from other side");
+			closeImmediately(false);
+		} catch (Throwable e) {
+			if (isOpen || DEBUG) {
+				log.log(Level.SEVERE, fullName + ": reading error ", e);
+			}
+			closeImmediately(false);
+			if (e instanceof ThreadDeath) {
+				throw (ThreadDeath) e;
+			}
+		}
+	}
+
+	/**
+	 * Resumes reading after the delivery of the messages read has caught up.
+	 */
+	void resumeRead() {
+		synchronized (inBuffer) {
+			SelectionKey key = selectionKey;
+			if (!isReadSuspended && key != null && key.isValid()) {
+				try {
+					key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+				} catch (CancelledKeyException e) {
+					// The connection was closed by another thread
+				}
+			}
+		}
+	}
+
+	private void addInBuffer(byte[] message) {
+		synchronized (inBuffer) {
+			inBuffer.add(message);
+			inBufferBytes += message.length;
+			if (!deliveryRunning) {
+				if (tactDeliverer == null) {
+					tactDeliverer = new TACTDeliverer(this);
+				}
+				deliveryRunning = true;
+				getThreadPool().invokeBlocking(tactDeliverer, null);
+			}
+		}
+	}
+
+	/**
+	 * Writes the queued messages, combining several messages in each write,
+	 * until all messages have been written or the socket buffer is full in
+	 * which case the writing continues when the channel becomes writable.
+	 */
+	void flushChannel() {
+		try {
+			while (!isClosed) {
+				if (pendingIndex == pendingCount && !takePending()) {
+					return;
+				}
+				channel.write(pendingWrite, pendingIndex, pendingCount
+						- pendingIndex);
+				while (pendingIndex < pendingCount
+						&& !pendingWrite[pendingIndex].hasRemaining()) {
+					pendingWrite[pendingIndex++] = null;
+				}
+				if (pendingIndex < pendingCount) {
+					// Continue when the channel becomes writable
+					setWriteInterest(true);
+					return;
+				}
+				sentBytes += pendingBytes;
+				pendingBytes = 0;
+			}
+		} catch (Throwable e) {
+			log.log(Level.SEVERE, fullName + ": could not send data", e);
+			// Close the connection if failed to send data
+			closeImmediately(false);
+			if (e instanceof ThreadDeath) {
+				throw (ThreadDeath) e;
+			}
+		}
+	}
+
+	// Moves queued messages to the pending buffers. Returns false if
+	// there is nothing more to write.
+	private boolean takePending() {
+		pendingIndex = pendingCount = 0;
+		synchronized (outBuffer) {
+			while (!outBuffer.isEmpty()) {
+				Object data = outBuffer.get(0);
+				if (data == null) {
+					if (pendingCount > 0) {
+						// Close after the pending messages have been written
+						break;
+					}
+					outBuffer.remove(0);
+					closeImmediately(false);
+					return false;
+				}
+				int parts = data instanceof byte[] ? 1
+						: ((byte[][]) data).length;
+				if (pendingCount > 0 && pendingCount + 1 + parts > MAX_GATHER) {
+					break;
+				}
+				outBuffer.remove(0);
+				if (pendingCount + 1 + parts > pendingWrite.length) {
+					ByteBuffer[] tmp = new ByteBuffer[pendingCount + 1 + parts];
+					System.arraycopy(pendingWrite, 0, tmp, 0, pendingCount);
+					pendingWrite = tmp;
+				}
+
+				ByteBuffer header = ByteBuffer.allocate(4);
+				pendingWrite[pendingCount++] = header;
+				int length = 0;
+				if (parts == 1 && data instanceof byte[]) {
+					byte[] buffer = (byte[]) data;
+					length = buffer.length;
+					pendingWrite[pendingCount++] = ByteBuffer.wrap(buffer);
+				} else {
+					byte[][] buffers = (byte[][]) data;
+					for (int i = 0; i < parts; i++) {
+						length += buffers[i].length;
+						pendingWrite[pendingCount++] = ByteBuffer
+								.wrap(buffers[i]);
+					}
+				}
+				header.putInt(0, length);
+				pendingBytes += length;
+			}
+
+			if (pendingCount == 0) {
+				writerRunning = false;
+				setWriteInterest(false);
+				return false;
+			}
+			return true;
+		}
+	}
+
+	private void setWriteInterest(boolean isWriting) {
+		SelectionKey key = selectionKey;
+		// Interest is set when registered if the channel is not yet
+		// registered
+		if (key != null && key.isValid()) {
+			int ops = key.interestOps();
+			key.interestOps(isWriting ? ops | SelectionKey.OP_WRITE : ops
+					& ~SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * Delivers the messages read by the selector thread, one at a time and in
+	 * the order they were read.
+	 */
+	private static class TACTDeliverer implements Runnable {
+
+		private final TACTConnection connection;
+
+		TACTDeliverer(TACTConnection connection) {
+			this.connection = connection;
+		}
+
+		public void run() {
+			JobStatus jobStatus = ThreadPool.getJobStatus();
+			while (true) {
+				byte[] data;
+				synchronized (connection.inBuffer) {
+					// Messages read before the connection was closed are
+					// still delivered
+					if (connection.inBuffer.isEmpty()) {
+						connection.deliveryRunning = false;
+						return;
+					}
+					data = (byte[]) connection.inBuffer.remove(0);
+					connection.inBufferBytes -= data.length;
+					if (connection.isReadSuspended
+							&& connection.inBufferBytes <= connection
+									.getMaxBuffer()) {
+						connection.isReadSuspended = false;
+						connection.worker.requestRead(connection);
+					}
+				}
+				if (jobStatus != null) {
+					jobStatus.stillAlive();
+				}
+				try {
+					connection.dataRead(ByteBuffer.wrap(data));
+				} catch (Throwable e) {
+					log.log(Level.SEVERE, connection.fullName
+							+ ": could not deliver data: " + data.length, e);
+					if (e instanceof ThreadDeath) {
+						synchronized (connection.inBuffer) {
+							connection.deliveryRunning = false;
+						}
+						throw (ThreadDeath) e;
+					}
+				}
+			}
+		}
+
+		public String toString() {
+			return "TACTDeliverer[" + connection.fullName + ','
+					+ connection.inBuffer.size() + ',' + connection.remoteHost
+					+ ']';
+		}
+	}
+
 	// -------------------------------------------------------------------
 	// ConnectionCloser
 	// -------------------------------------------------------------------
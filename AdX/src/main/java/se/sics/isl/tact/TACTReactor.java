@@ -0,0 +1,235 @@
+/**
+ * SICS ISL Java Utilities
+ * http://www.sics.se/tac/    tac-dev@sics.se
+ *
+ * Copyright (c) 2001-2005 SICS AB. All rights reserved.
+ *
+ * SICS grants you the right to use, modify, and redistribute this
+ * software for noncommercial purposes, on the conditions that you:
+ * (1) retain the original headers, including the copyright notice and
+ * this text, (2) clearly document the difference between any derived
+ * software and the original, and (3) acknowledge your use of this
+ * software in pertaining publications and reports.  SICS provides
+ * this software "as is", without any warranty of any kind.  IN NO
+ * EVENT SHALL SICS BE LIABLE FOR ANY DIRECT, SPECIAL OR INDIRECT,
+ * PUNITIVE, INCIDENTAL OR CONSEQUENTIAL LOSSES OR DAMAGES ARISING OUT
+ * OF THE USE OF THE SOFTWARE.
+ *
+ * -----------------------------------------------------------------
+ *
+ * TACTReactor
+ *
+ * Purpose : A small fixed set of selector threads serving non-blocking
+ *           TACT connections. Each connection is assigned to one thread,
+ *           which reads and frames its messages into a direct buffer and
+ *           writes its queued messages with gathering writes. The messages
+ *           read are handed to the thread pool of the connection for
+ *           delivery, so the selector threads never run message handlers.
+ *
+ */
+package se.sics.isl.tact;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class TACTReactor {
+
+	private static final Logger log = Logger.getLogger(TACTReactor.class
+			.getName());
+
+	private final String name;
+	private final Worker[] workers;
+	private int next = 0;
+	private boolean isStarted = false;
+	private boolean isShutdown = false;
+
+	/**
+	 * Creates a new reactor. The selector threads are started when the first
+	 * connection is started.
+	 * 
+	 * @param name
+	 *            the name of the reactor, used for the thread names
+	 * @param threads
+	 *            the number of selector threads
+	 */
+	public TACTReactor(String name, int threads) {
+		if (name == null) {
+			throw new NullPointerException("name cannot be null");
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.name = name;
+		this.workers = new Worker[threads];
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getThreadCount() {
+		return workers.length;
+	}
+
+	/**
+	 * Stops the selector threads. Connections still registered are left
+	 * open but will no longer be served.
+	 */
+	public synchronized void shutdown() {
+		if (!isShutdown) {
+			isShutdown = true;
+			for (Worker worker : workers) {
+				if (worker != null) {
+					worker.shutdown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the selector thread to serve the next connection. The
+	 * connection is served when registered with the thread.
+	 */
+	synchronized Worker nextWorker() throws IOException {
+		if (isShutdown) {
+			throw new IOException("reactor " + name + " is shut down");
+		}
+		if (!isStarted) {
+			for (int i = 0; i < workers.length; i++) {
+				workers[i] = new Worker(name + "-selector-" + (i + 1),
+						Selector.open());
+				workers[i].start();
+			}
+			isStarted = true;
+		}
+		Worker worker = workers[next];
+		next = (next + 1) % workers.length;
+		return worker;
+	}
+
+	// -------------------------------------------------------------------
+	// Selector thread
+	// -------------------------------------------------------------------
+
+	static final class Worker extends Thread {
+
+		private final Selector selector;
+		private final ConcurrentLinkedQueue<TACTConnection> registrations = new ConcurrentLinkedQueue<TACTConnection>();
+		private final ConcurrentLinkedQueue<TACTConnection> writeRequests = new ConcurrentLinkedQueue<TACTConnection>();
+		private final ConcurrentLinkedQueue<TACTConnection> readRequests = new ConcurrentLinkedQueue<TACTConnection>();
+		private volatile boolean isRunning = true;
+
+		Worker(String name, Selector selector) {
+			super(name);
+			this.selector = selector;
+			setDaemon(true);
+		}
+
+		void register(TACTConnection connection) {
+			registrations.add(connection);
+			selector.wakeup();
+		}
+
+		/**
+		 * Requests the queued messages of the connection to be written by
+		 * this thread.
+		 */
+		void requestWrite(TACTConnection connection) {
+			writeRequests.add(connection);
+			selector.wakeup();
+		}
+
+		/**
+		 * Requests this thread to resume reading from the connection, after
+		 * reading was suspended while its handler caught up.
+		 */
+		void requestRead(TACTConnection connection) {
+			readRequests.add(connection);
+			selector.wakeup();
+		}
+
+		void shutdown() {
+			isRunning = false;
+			selector.wakeup();
+		}
+
+		/**
+		 * Closes a connection that failed on this thread. The other
+		 * connections of the selector are still served.
+		 */
+		private void connectionFailed(TACTConnection connection, Throwable e) {
+			log.log(Level.SEVERE, getName() + ": connection "
+					+ connection.getName() + " failed", e);
+			try {
+				connection.closeImmediately(false);
+			} catch (Throwable t) {
+				log.log(Level.SEVERE, getName() + ": could not close "
+						+ connection.getName(), t);
+			}
+			if (e instanceof ThreadDeath) {
+				throw (ThreadDeath) e;
+			}
+		}
+
+		public void run() {
+			try {
+				while (isRunning) {
+					selector.select();
+
+					TACTConnection connection;
+					while ((connection = registrations.poll()) != null) {
+						try {
+							connection.channelRegistered(selector);
+						} catch (Throwable e) {
+							connectionFailed(connection, e);
+						}
+					}
+					while ((connection = writeRequests.poll()) != null) {
+						try {
+							connection.flushChannel();
+						} catch (Throwable e) {
+							connectionFailed(connection, e);
+						}
+					}
+					while ((connection = readRequests.poll()) != null) {
+						try {
+							connection.resumeRead();
+						} catch (Throwable e) {
+							connectionFailed(connection, e);
+						}
+					}
+
+					Iterator<SelectionKey> keys = selector.selectedKeys()
+							.iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						connection = (TACTConnection) key.attachment();
+						try {
+							connection.channelSelected(key);
+						} catch (Throwable e) {
+							connectionFailed(connection, e);
+						}
+					}
+				}
+			} catch (Throwable e) {
+				log.log(Level.SEVERE, getName() + ": selector failed", e);
+				if (e instanceof ThreadDeath) {
+					throw (ThreadDeath) e;
+				}
+			} finally {
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// Ignore any problems when closing the selector
+				}
+			}
+		}
+	}
+
+} // TACTReactor
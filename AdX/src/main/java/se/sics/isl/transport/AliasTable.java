@@ -0,0 +1,72 @@
+/**
+ * SICS ISL Java Utilities
+ * http://www.sics.se/tac/    tac-dev@sics.se
+ *
+ * Copyright (c) 2001-2005 SICS AB. All rights reserved.
+ *
+ * SICS grants you the right to use, modify, and redistribute this
+ * software for noncommercial purposes, on the conditions that you:
+ * (1) retain the original headers, including the copyright notice and
+ * this text, (2) clearly document the difference between any derived
+ * software and the original, and (3) acknowledge your use of this
+ * software in pertaining publications and reports.  SICS provides
+ * this software "as is", without any warranty of any kind.  IN NO
+ * EVENT SHALL SICS BE LIABLE FOR ANY DIRECT, SPECIAL OR INDIRECT,
+ * PUNITIVE, INCIDENTAL OR CONSEQUENTIAL LOSSES OR DAMAGES ARISING OUT
+ * OF THE USE OF THE SOFTWARE.
+ *
+ * -----------------------------------------------------------------
+ *
+ * AliasTable
+ *
+ * Purpose : Alias ids shared by several binary transport writers, for
+ *           example all connections of a gateway, so that the same name
+ *           has the same alias on all connections and content can be
+ *           encoded once for all of them.
+ *
+ */
+package se.sics.isl.transport;
+
+import java.util.HashMap;
+
+public final class AliasTable {
+
+	/** Aliases are written as unsigned shorts */
+	private static final int MAX_ALIASES = 0xffff;
+
+	private final HashMap<String, Integer> aliases = new HashMap<String, Integer>();
+
+	public AliasTable() {
+	}
+
+	/**
+	 * Returns the alias id of the specified name, allocating a new id the
+	 * first time the name is seen.
+	 * 
+	 * @exception IllegalStateException
+	 *                if all alias ids are in use
+	 */
+	public synchronized int getID(String name) {
+		if (name == null) {
+			throw new NullPointerException("name cannot be null");
+		}
+		Integer id = aliases.get(name);
+		if (id == null) {
+			int size = aliases.size();
+			if (size >= MAX_ALIASES) {
+				throw new IllegalStateException("alias table full");
+			}
+			id = size;
+			aliases.put(name, id);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * Returns the number of aliases in this table.
+	 */
+	public synchronized int size() {
+		return aliases.size();
+	}
+
+} // AliasTable
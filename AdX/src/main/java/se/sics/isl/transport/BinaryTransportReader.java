@@ -27,11 +27,24 @@
 package se.sics.isl.transport;
 
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.text.ParseException;
-import java.util.Hashtable;
+import java.util.HashMap;
 
 import com.botbox.util.ArrayUtils;
 
+/**
+ * Reads messages written by {@link BinaryTransportWriter}. Messages are
+ * parsed in place, either from a byte array or from a heap, direct or
+ * memory mapped {@link ByteBuffer}.
+ * <p>
+ * A reader is meant to be used for all messages of a connection or log:
+ * besides the aliases, it keeps the class of each read transportable and
+ * the recently read short string values, such as publisher names and enum
+ * constants, which are returned without decoding them again. Numeric
+ * attributes are read without allocation.
+ */
 public class BinaryTransportReader extends TransportReader implements
 		BinaryTransport {
 
@@ -41,7 +54,15 @@ public class BinaryTransportReader extends TransportReader implements
 	private int currentNode = -1;
 	private int currentValue = -1;
 
+	/** Size of the string value table, must be a power of two */
+	private static final int STRING_TABLE_SIZE = 512;
+
+	/** Maximal byte length of string values kept in the string table */
+	private static final int MAX_TABLE_STRING = 48;
+
+	private ByteBuffer data;
 	private byte[] messageData;
+	private ByteBuffer messageBuffer;
 	private int dataOffset;
 	private int dataLen;
 
@@ -50,7 +71,17 @@ public class BinaryTransportReader extends TransportReader implements
 	private boolean nodeEntered = false;
 
 	private String[] aliases = new String[48];
-	private Hashtable nameLookup = new Hashtable();
+	private HashMap<String, Integer> nameLookup = new HashMap<String, Integer>();
+
+	// Recently read string values by hash of their bytes
+	private final byte[][] tableBytes = new byte[STRING_TABLE_SIZE][];
+	private final String[] tableStrings = new String[STRING_TABLE_SIZE];
+	private char[] chars = new char[MAX_TABLE_STRING];
+
+	private final HashMap<String, Class<?>> classLookup = new HashMap<String, Class<?>>();
+
+	// The type of the attribute last found by findAttribute()
+	private int attributeType;
 
 	public BinaryTransportReader() {
 	}
@@ -63,9 +94,35 @@ public class BinaryTransportReader extends TransportReader implements
 		if ((offset | length | (messageData.length - offset - length)) < 0) {
 			throw new IndexOutOfBoundsException();
 		}
-		this.messageData = messageData;
+		if (this.messageData != messageData) {
+			// The buffer is reused as long as the message array is
+			this.messageData = messageData;
+			this.messageBuffer = ByteBuffer.wrap(messageData);
+		}
+		setData(messageBuffer, offset, offset + length);
+	}
+
+	/**
+	 * Sets the message to the remaining bytes of the buffer, which are parsed
+	 * in place. The position and limit of the buffer are neither used nor
+	 * changed after this call but the bytes must not change while the message
+	 * is read.
+	 * 
+	 * @param buffer
+	 *            a heap, direct or memory mapped buffer holding the message
+	 */
+	public void setMessage(ByteBuffer buffer) {
+		ByteBuffer data = buffer;
+		if (buffer.order() != ByteOrder.BIG_ENDIAN) {
+			data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		}
+		setData(data, buffer.position(), buffer.limit());
+	}
+
+	private void setData(ByteBuffer data, int offset, int end) {
+		this.data = data;
 		this.dataOffset = offset;
-		this.dataLen = offset + length;
+		this.dataLen = end;
 		nodeLevel = 0;
 		reset();
 	}
@@ -74,7 +131,29 @@ public class BinaryTransportReader extends TransportReader implements
 		nodeLevel = 0;
 		dataOffset = dataLen = 0;
 		reset();
+		data = null;
 		messageData = null;
+		messageBuffer = null;
+	}
+
+	/**
+	 * Creates a transportable, caching the class of each class name.
+	 */
+	protected Transportable createTransportable(String className)
+			throws ParseException {
+		Class<?> type = classLookup.get(className);
+		if (type != null) {
+			try {
+				return (Transportable) type.newInstance();
+			} catch (Exception e) {
+				// Let the default implementation report the error
+			}
+		} else {
+			Transportable object = super.createTransportable(className);
+			classLookup.put(className, object.getClass());
+			return object;
+		}
+		return super.createTransportable(className);
 	}
 
 	public void reset() {
@@ -95,12 +174,12 @@ public class BinaryTransportReader extends TransportReader implements
 	}
 
 	private int getAlias(String alias) {
-		Integer i = (Integer) nameLookup.get(alias);
+		Integer i = nameLookup.get(alias);
 		return i == null ? -1 : i.intValue();
 	}
 
 	private int addAliases(int pos) throws ParseException {
-		while ((pos < dataLen) && ((messageData[pos] & 0xff) == ALIAS)) {
+		while ((pos < dataLen) && ((data.get(pos) & 0xff) == ALIAS)) {
 			pos = addAlias(pos);
 		}
 		return pos;
@@ -111,16 +190,14 @@ public class BinaryTransportReader extends TransportReader implements
 			throw new ParseException("unexpected EOF", pos);
 		}
 		pos++;
-		int id = ((messageData[pos] & 0xff) << 8)
-				+ (messageData[pos + 1] & 0xff);
+		int id = getUShort(pos);
 		pos += 2;
-		int len = ((messageData[pos] & 0xff) << 8)
-				+ (messageData[pos + 1] & 0xff);
+		int len = getUShort(pos);
 		pos += 2;
 
 		String alias = getSValue(pos, len);
 		if (nameLookup.get(alias) == null) {
-			nameLookup.put(alias, new Integer(id));
+			nameLookup.put(alias, id);
 		}
 
 		// System.out.println("Adding alias " + alias + " = " + id);
@@ -151,9 +228,9 @@ public class BinaryTransportReader extends TransportReader implements
 	public boolean nextNode(boolean isRequired) throws ParseException {
 		// go to next node
 		if (skipToNextNode()) {
-			// int attNo = messageData[currentPosition + 1] & 0xff;
-			// int nameID = ((messageData[currentPosition + 2] & 0xff) << 8) +
-			// (messageData[currentPosition + 3] & 0xff);
+			// int attNo = data.get(currentPosition + 1) & 0xff;
+			// int nameID = ((data.get(currentPosition + 2) & 0xff) << 8) +
+			// (data.get(currentPosition + 3) & 0xff);
 			// String name = getName(nameID);
 			// System.out.println(">> Node: " + name + " attCount = " + attNo);
 			return true;
@@ -179,7 +256,7 @@ public class BinaryTransportReader extends TransportReader implements
 				return false;
 			}
 			currentPosition = dataOffset;
-			if ((messageData[currentPosition] & 0xff) == TABLE) {
+			if ((data.get(currentPosition) & 0xff) == TABLE) {
 				throw new ParseException("table without type", currentPosition);
 			}
 			currentNode = currentPosition;
@@ -189,7 +266,7 @@ public class BinaryTransportReader extends TransportReader implements
 
 		// Ok we are at a node, that we should skip...
 		int pos = currentPosition;
-		int op = messageData[pos] & 0xff;
+		int op = data.get(pos) & 0xff;
 
 		// If we have entered an automatically-ended node there are no
 		// subnodes...
@@ -209,7 +286,7 @@ public class BinaryTransportReader extends TransportReader implements
 			// - can only be at end or alias between...
 			pos = addAliases(pos);
 			if (pos < dataLen) {
-				switch (messageData[pos] & 0xff) {
+				switch (data.get(pos) & 0xff) {
 				case NODE:
 				case START_NODE:
 					currentPosition = pos;
@@ -238,7 +315,7 @@ public class BinaryTransportReader extends TransportReader implements
 			int levelTarget = nodeEntered ? 1 : 0;
 			int lastNode = currentNode;
 			while (pos < dataLen && level >= 0) {
-				op = messageData[pos] & 0xff;
+				op = data.get(pos) & 0xff;
 				switch (op) {
 				case END_NODE:
 					level--;
@@ -294,7 +371,7 @@ public class BinaryTransportReader extends TransportReader implements
 	}
 
 	private int getValuePosForNode(int node) {
-		return node + 4 + 3 * (messageData[node + 1] & 0xFF);
+		return node + 4 + 3 * (data.get(node + 1) & 0xff);
 	}
 
 	private int skipNode(int nodePos, int valPos) {
@@ -304,12 +381,12 @@ public class BinaryTransportReader extends TransportReader implements
 			return dataLen;
 		}
 
-		int attNo = messageData[nodePos + 1] & 0xff;
+		int attNo = data.get(nodePos + 1) & 0xff;
 		// System.out.println("-- skipping node: at " + pos +
 		// " atts = " + attNo);
 		nodePos += 4;
 		for (int i = 0; i < attNo; i++) {
-			switch (messageData[nodePos] & 0xff) {
+			switch (data.get(nodePos) & 0xff) {
 			case INT:
 			case FLOAT:
 				valPos += 4;
@@ -319,8 +396,7 @@ public class BinaryTransportReader extends TransportReader implements
 				valPos += 8;
 				break;
 			case STRING: {
-				int slen = ((messageData[valPos] & 0xff) << 8)
-						+ (messageData[valPos + 1] & 0xff);
+				int slen = getUShort(valPos);
 				valPos += slen + 2;
 				break;
 			}
@@ -328,8 +404,7 @@ public class BinaryTransportReader extends TransportReader implements
 				valPos += 2;
 				break;
 			case INT_ARR: {
-				int slen = ((messageData[valPos] & 0xff) << 8)
-						+ (messageData[valPos + 1] & 0xff);
+				int slen = getUShort(valPos);
 				valPos += slen * 4 + 2;
 				break;
 			}
@@ -339,23 +414,16 @@ public class BinaryTransportReader extends TransportReader implements
 		return valPos;
 	}
 
+	private int getUShort(int pos) {
+		return data.getShort(pos) & 0xffff;
+	}
+
 	private int getIValue(int pos) {
-		return ((messageData[pos] & 0xff) << 24)
-				+ ((messageData[pos + 1] & 0xff) << 16)
-				+ ((messageData[pos + 2] & 0xff) << 8)
-				+ (messageData[pos + 3] & 0xff);
+		return data.getInt(pos);
 	}
 
 	private long getLValue(int pos) {
-		long v = ((messageData[pos] & 0xffL) << 56)
-				+ ((messageData[pos + 1] & 0xffL) << 48)
-				+ ((messageData[pos + 2] & 0xffL) << 40)
-				+ ((messageData[pos + 3] & 0xffL) << 32)
-				+ ((messageData[pos + 4] & 0xffL) << 24)
-				+ ((messageData[pos + 5] & 0xffL) << 16)
-				+ ((messageData[pos + 6] & 0xffL) << 8)
-				+ (messageData[pos + 7] & 0xffL);
-		return v;
+		return data.getLong(pos);
 	}
 
 	private String getSValue(int pos, int length) throws ParseException {
@@ -363,15 +431,51 @@ public class BinaryTransportReader extends TransportReader implements
 		if (end > dataLen) {
 			throw new ParseException("unexpected EOF", pos);
 		}
+		if (length > MAX_TABLE_STRING) {
+			return decodeString(pos, length);
+		}
+
+		int hash = length;
+		for (int i = pos; i < end; i++) {
+			hash = 31 * hash + data.get(i);
+		}
+		int index = (hash ^ (hash >>> 16)) & (STRING_TABLE_SIZE - 1);
+		byte[] bytes = tableBytes[index];
+		if (bytes != null && bytes.length == length) {
+			int i = 0;
+			while (i < length && bytes[i] == data.get(pos + i)) {
+				i++;
+			}
+			if (i == length) {
+				return tableStrings[index];
+			}
+		}
+
+		String value = decodeString(pos, length);
+		bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = data.get(pos + i);
+		}
+		// Replaces any other string with the same index
+		tableBytes[index] = bytes;
+		tableStrings[index] = value;
+		return value;
+	}
+
+	private String decodeString(int pos, int length) throws ParseException {
+		int end = pos + length;
 		// Allocate char for max length
-		char[] buf = new char[length];
+		if (chars.length < length) {
+			chars = new char[length];
+		}
+		char[] buf = chars;
 
 		// This code has been "inspired" from Core JavaTM Technologies Tech
 		// Tips, January 10, 2003 and java.io.Data{Input,Output}Stream.
 		int index = 0;
 		int c, char2, char3;
 		while (pos < end) {
-			c = messageData[pos] & 0xff;
+			c = data.get(pos) & 0xff;
 
 			switch (c >> 4) {
 			case 0:
@@ -393,7 +497,7 @@ public class BinaryTransportReader extends TransportReader implements
 				if (pos > end) {
 					throw new ParseException("malformed UTF-8", pos);
 				}
-				char2 = messageData[pos - 1] & 0xff;
+				char2 = data.get(pos - 1) & 0xff;
 				if ((char2 & 0xC0) != 0x80) {
 					throw new ParseException("malformed UTF-8", pos - 2);
 				}
@@ -404,8 +508,8 @@ public class BinaryTransportReader extends TransportReader implements
 				pos += 3;
 				if (pos > end)
 					throw new ParseException("malformed UTF-8", pos);
-				char2 = messageData[pos - 2] & 0xff;
-				char3 = messageData[pos - 1] & 0xff;
+				char2 = data.get(pos - 2) & 0xff;
+				char3 = data.get(pos - 1) & 0xff;
 				if (((char2 & 0xC0) != 0x80) || ((char3 & 0xC0) != 0x80)) {
 					throw new ParseException("malformed UTF-8", pos - 3);
 				}
@@ -422,8 +526,7 @@ public class BinaryTransportReader extends TransportReader implements
 	}
 
 	private String getCValue(int pos) throws ParseException {
-		int id = ((messageData[pos] & 0xff) << 8)
-				+ (messageData[pos + 1] & 0xff);
+		int id = getUShort(pos);
 		return getName(id);
 	}
 
@@ -462,8 +565,7 @@ public class BinaryTransportReader extends TransportReader implements
 		if (currentNode < 0) {
 			throw new ParseException("before first node", 0);
 		}
-		int nameID = ((messageData[currentNode + 2] & 0xff) << 8)
-				+ (messageData[currentNode + 3] & 0xff);
+		int nameID = getUShort(currentNode + 2);
 		return getName(nameID);
 	}
 
@@ -475,8 +577,7 @@ public class BinaryTransportReader extends TransportReader implements
 		if (currentNode < 0) {
 			return false;
 		}
-		int nameID = ((messageData[currentNode + 2] & 0xff) << 8)
-				+ (messageData[currentNode + 3] & 0xff);
+		int nameID = getUShort(currentNode + 2);
 		return nameID == getAlias(name);
 	}
 
@@ -501,7 +602,7 @@ public class BinaryTransportReader extends TransportReader implements
 		if (nodeLevel > 0) {
 			nodeLevel--;
 			currentPosition = nodeStack[nodeLevel];
-			if ((messageData[currentPosition] & 0xFF) == TABLE) {
+			if ((data.get(currentPosition) & 0xff) == TABLE) {
 				currentValue = currentPosition + 1;
 			} else {
 				currentNode = currentPosition;
@@ -518,7 +619,7 @@ public class BinaryTransportReader extends TransportReader implements
 
 	public int getAttributeCount() {
 		if (currentNode >= 0) {
-			return messageData[currentNode + 1] & 0xff;
+			return data.get(currentNode + 1) & 0xff;
 		}
 		return 0;
 	}
@@ -531,77 +632,80 @@ public class BinaryTransportReader extends TransportReader implements
 		}
 
 		int pos = currentNode + 5 + index * 3;
-		int nid = ((messageData[pos] & 0xff) << 8)
-				+ (messageData[pos + 1] & 0xff);
+		int nid = getUShort(pos);
 		return getName(nid);
 	}
 
-	private Object getAttributeAsObject(int id) throws ParseException {
+	/**
+	 * Finds the value of an attribute of the current node and sets
+	 * <code>attributeType</code> to the type of the attribute.
+	 * 
+	 * @return the position of the value or -1 if the attribute was not found
+	 */
+	private int findAttribute(int id) {
 		if (currentNode < 0) {
-			return null;
+			return -1;
 		}
 
-		int attNo = messageData[currentNode + 1] & 0xff;
+		int attNo = data.get(currentNode + 1) & 0xff;
 		int pos = currentNode + 4;
 		int valPos = currentValue;
 		for (int i = 0; i < attNo; i++) {
-			int nid = ((messageData[pos + 1] & 0xff) << 8)
-					+ (messageData[pos + 2] & 0xff);
-			switch (messageData[pos] & 0xff) {
+			int type = data.get(pos) & 0xff;
+			if (getUShort(pos + 1) == id) {
+				attributeType = type;
+				return valPos;
+			}
+			switch (type) {
 			case INT:
-				if (nid == id) {
-					return Integer.toString(getIValue(valPos));
-				}
-				valPos += 4;
-				break;
-			case LONG:
-				if (nid == id) {
-					return Long.toString(getLValue(valPos));
-				}
-				valPos += 8;
-				break;
 			case FLOAT:
-				if (nid == id) {
-					return Float.toString(Float
-							.intBitsToFloat(getIValue(valPos)));
-				}
 				valPos += 4;
 				break;
+			case LONG:
 			case DOUBLE: // Modified by Lee Callender
-				if (nid == id) {
-					return Double.toString(Double
-							.longBitsToDouble(getLValue(valPos)));
-				}
 				valPos += 8;
 				break;
-			case STRING: {
-				int slen = ((messageData[valPos] & 0xff) << 8)
-						+ (messageData[valPos + 1] & 0xff);
-				if (nid == id) {
-					return getSValue(valPos + 2, slen);
-				}
-				valPos += slen + 2;
+			case STRING:
+				valPos += getUShort(valPos) + 2;
 				break;
-			}
 			case CONSTANT_STRING:
-				if (nid == id) {
-					return getCValue(valPos);
-				}
 				valPos += 2;
 				break;
-			case INT_ARR: {
-				int slen = ((messageData[valPos] & 0xff) << 8)
-						+ (messageData[valPos + 1] & 0xff);
-				// Only return if correct ID otherwise step on...
-				if (nid == id) {
-					return getAttributeAsIntArray(valPos + 2, slen);
-				}
-				valPos += slen * 4 + 2;
+			case INT_ARR:
+				valPos += getUShort(valPos) * 4 + 2;
 				break;
 			}
-			}
 			pos += 3;
 		}
+		return -1;
+	}
+
+	private int findAttribute(String name) {
+		Integer id = nameLookup.get(name);
+		return id != null ? findAttribute(id.intValue()) : -1;
+	}
+
+	private Object getAttributeAsObject(int id) throws ParseException {
+		int valPos = findAttribute(id);
+		if (valPos < 0) {
+			return null;
+		}
+		switch (attributeType) {
+		case INT:
+			return Integer.toString(getIValue(valPos));
+		case LONG:
+			return Long.toString(getLValue(valPos));
+		case FLOAT:
+			return Float.toString(Float.intBitsToFloat(getIValue(valPos)));
+		case DOUBLE:
+			return Double.toString(Double.longBitsToDouble(getLValue(valPos)));
+		case STRING:
+			return getSValue(valPos + 2, getUShort(valPos));
+		case CONSTANT_STRING:
+			return getCValue(valPos);
+		case INT_ARR:
+			return getAttributeAsIntArray(valPos + 2, getUShort(valPos));
+		}
 		return null;
 	}
 
@@ -631,7 +735,7 @@ public class BinaryTransportReader extends TransportReader implements
 
 	protected String getAttribute(String name, String defaultValue,
 			boolean isRequired) throws ParseException {
-		Integer id = (Integer) nameLookup.get(name);
+		Integer id = nameLookup.get(name);
 		String value = id != null ? getAttributeAsString(id.intValue()) : null;
 		if (value == null) {
 			if (isRequired) {
@@ -644,6 +748,56 @@ public class BinaryTransportReader extends TransportReader implements
 		}
 	}
 
+	// -------------------------------------------------------------------
+	// Numeric attributes, read without allocation when the attribute was
+	// written with the requested type. Other conversions are left to
+	// TransportReader to keep their semantics.
+	// -------------------------------------------------------------------
+
+	protected int getAttributeAsInt(String name, int defaultValue,
+			boolean isRequired) throws ParseException {
+		int valPos = findAttribute(name);
+		if (valPos >= 0 && attributeType == INT) {
+			return getIValue(valPos);
+		}
+		return super.getAttributeAsInt(name, defaultValue, isRequired);
+	}
+
+	protected long getAttributeAsLong(String name, long defaultValue,
+			boolean isRequired) throws ParseException {
+		int valPos = findAttribute(name);
+		if (valPos >= 0) {
+			if (attributeType == LONG) {
+				return getLValue(valPos);
+			} else if (attributeType == INT) {
+				return getIValue(valPos);
+			}
+		}
+		return super.getAttributeAsLong(name, defaultValue, isRequired);
+	}
+
+	protected float getAttributeAsFloat(String name, float defaultValue,
+			boolean isRequired) throws ParseException {
+		int valPos = findAttribute(name);
+		if (valPos >= 0 && attributeType == FLOAT) {
+			return Float.intBitsToFloat(getIValue(valPos));
+		}
+		return super.getAttributeAsFloat(name, defaultValue, isRequired);
+	}
+
+	public double getAttributeAsDouble(String name, double defaultValue,
+			boolean isRequired) throws ParseException {
+		int valPos = findAttribute(name);
+		if (valPos >= 0) {
+			if (attributeType == DOUBLE) {
+				return Double.longBitsToDouble(getLValue(valPos));
+			} else if (attributeType == INT) {
+				return getIValue(valPos);
+			}
+		}
+		return super.getAttributeAsDouble(name, defaultValue, isRequired);
+	}
+
 	private int[] getAttributeAsIntArray(int valPos, int slen) {
 		int[] tmp = new int[slen];
 		for (int i = 0, n = slen; i < n; i++) {
@@ -654,7 +808,7 @@ public class BinaryTransportReader extends TransportReader implements
 
 	protected int[] getAttributeAsIntArray(String name, boolean isRequired)
 			throws ParseException {
-		Integer id = (Integer) nameLookup.get(name);
+		Integer id = nameLookup.get(name);
 		Object val = id != null ? getAttributeAsObject(id.intValue()) : null;
 		if (val != null) {
 			if (val instanceof int[]) {
@@ -42,11 +42,28 @@ package se.sics.isl.transport;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.botbox.util.ArrayUtils;
 
+/**
+ * Writes messages in the compact binary format read by
+ * {@link BinaryTransportReader}.
+ * <p>
+ * The message is written to fixed size chunks that are shared by all
+ * writers through a pool, so a message grows without copying and the
+ * memory is reused after {@link #clear()}.
+ * <p>
+ * Writers created with an {@link AliasTable} use the alias ids of the table
+ * and append the encoding of a {@link SharedTransportable} without encoding
+ * it again. The shared encoding is never copied into the writer:
+ * {@link #getByteParts()} returns it as a separate part that can be written
+ * with a gathering write.
+ */
 public class BinaryTransportWriter extends TransportWriter implements
 		BinaryTransport {
 
@@ -55,12 +72,21 @@ public class BinaryTransportWriter extends TransportWriter implements
 
 	private static final int DEF_SIZE = 10;
 	private static final int ALIAS_SIZE = 256;
-	private static final int DATA_SIZE = 1024;
+
+	/** Size of the pooled chunks */
+	private static final int CHUNK_SIZE = 4096;
+
+	/** Maximal number of unused chunks kept in the pool */
+	private static final int MAX_POOLED_CHUNKS = 512;
+
+	private static final ConcurrentLinkedQueue<byte[]> chunkPool = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger pooledChunks = new AtomicInteger();
 
 	private static final int TYPE_POS = 0;
 	private static final int NAME_POS = 1;
 
-	private Hashtable constantLookup = new Hashtable();
+	private final HashMap<String, Integer> constantLookup = new HashMap<String, Integer>();
+	private final AliasTable aliasTable;
 
 	private boolean inNode = false; // Defining a node
 	private int nodeLevel = 0;
@@ -86,10 +112,30 @@ public class BinaryTransportWriter extends TransportWriter implements
 	private byte[] aliasData = new byte[ALIAS_SIZE];
 	private int aliasSize = 0;
 
-	private byte[] byteData = new byte[DATA_SIZE]; // Current 'message' buffer
-	private int nrOfBytes;
+	// Completed chunks of the current 'message'. Shared chunks belong to a
+	// shared encoding and are never returned to the pool.
+	private byte[][] chunks = new byte[DEF_SIZE][];
+	private int[] chunkSizes = new int[DEF_SIZE];
+	private boolean[] chunkShared = new boolean[DEF_SIZE];
+	private int chunkCount = 0;
+
+	private byte[] byteData; // Current chunk
+	private int dataPos;
+	private int nrOfBytes; // Total size of the 'message'
 
 	public BinaryTransportWriter() {
+		this(null);
+	}
+
+	/**
+	 * Creates a new writer using the alias ids of the specified table.
+	 * 
+	 * @param aliasTable
+	 *            the alias table or <code>null</code> to use aliases local to
+	 *            this writer
+	 */
+	public BinaryTransportWriter(AliasTable aliasTable) {
+		this.aliasTable = aliasTable;
 		clear();
 	}
 
@@ -115,62 +161,49 @@ public class BinaryTransportWriter extends TransportWriter implements
 	// apis for writing a block of data
 	// -------------------------------------------------------------------
 
-	// \TODO HACK!!!! BECAUSE ALIASES ARE PER CONNECTION BUT WE WANT TO USE
-	// BROADCAST.
-
-	private void writeInit() {
-		Enumeration enumb = constantLookup.keys();
-		while (enumb.hasMoreElements()) {
-			String name = (String) enumb.nextElement();
-			int id = ((Integer) constantLookup.get(name)).intValue();
-			writeByte(ALIAS);
-			writeShort(id);
-			writeString(name);
-		}
-	}
+	// The aliases are per connection (or log) and all aliases must be
+	// resent when starting over, for example in each block of a log. Content
+	// sent to several connections is shared using SharedTransportable.
 
 	public int getInitSize() {
-		int oldPos = nrOfBytes;
-		writeInit();
-		int len = nrOfBytes - oldPos;
-		nrOfBytes = oldPos;
-		return len;
+		byte[] buffer = getInitBytes();
+		return buffer == null ? 0 : buffer.length;
 	}
 
 	public byte[] getInitBytes() {
-		int oldPos = nrOfBytes;
-		writeInit();
-		if (oldPos != nrOfBytes) {
-			int size = nrOfBytes - oldPos;
-			byte[] buffer = new byte[size];
-			System.arraycopy(byteData, oldPos, buffer, 0, size);
-			nrOfBytes = oldPos;
-			return buffer;
+		if (constantLookup.isEmpty()) {
+			return null;
+		}
+		int maxSize = 0;
+		for (String name : constantLookup.keySet()) {
+			maxSize += 3 + getMaxUTF8Size(name);
+		}
+		byte[] buffer = new byte[maxSize];
+		int size = 0;
+		for (Map.Entry<String, Integer> entry : constantLookup.entrySet()) {
+			int id = entry.getValue().intValue();
+			buffer[size++] = (byte) (ALIAS & 0xff);
+			buffer[size++] = (byte) ((id >> 8) & 0xff);
+			buffer[size++] = (byte) (id & 0xff);
+			size += writeUTF8(buffer, size, entry.getKey());
 		}
-		return null;
+		return size == maxSize ? buffer : ArrayUtils.setSize(buffer, size);
 	}
 
 	public void writeInit(ByteBuffer buffer) {
-		int oldPos = nrOfBytes;
-		writeInit();
-		if (oldPos != nrOfBytes) {
-			buffer.put(byteData, oldPos, nrOfBytes - oldPos);
-			nrOfBytes = oldPos;
+		byte[] init = getInitBytes();
+		if (init != null) {
+			buffer.put(init);
 		}
 	}
 
 	public void writeInit(OutputStream stream) throws IOException {
-		int oldPos = nrOfBytes;
-		writeInit();
-		if (oldPos != nrOfBytes) {
-			stream.write(byteData, oldPos, nrOfBytes - oldPos);
-			nrOfBytes = oldPos;
+		byte[] init = getInitBytes();
+		if (init != null) {
+			stream.write(init);
 		}
 	}
 
-	// \TODO HACK!!!! BECAUSE ALIASES ARE PER CONNECTION BUT WE WANT TO USE
-	// BROADCAST.
-
 	public int size() {
 		return aliasSize + nrOfBytes;
 	}
@@ -179,8 +212,11 @@ public class BinaryTransportWriter extends TransportWriter implements
 		if (aliasSize > 0) {
 			buffer.put(aliasData, 0, aliasSize);
 		}
-		if (nrOfBytes > 0) {
-			buffer.put(byteData, 0, nrOfBytes);
+		for (int i = 0; i < chunkCount; i++) {
+			buffer.put(chunks[i], 0, chunkSizes[i]);
+		}
+		if (dataPos > 0) {
+			buffer.put(byteData, 0, dataPos);
 		}
 	}
 
@@ -188,8 +224,11 @@ public class BinaryTransportWriter extends TransportWriter implements
 		if (aliasSize > 0) {
 			stream.write(aliasData, 0, aliasSize);
 		}
-		if (nrOfBytes > 0) {
-			stream.write(byteData, 0, nrOfBytes);
+		for (int i = 0; i < chunkCount; i++) {
+			stream.write(chunks[i], 0, chunkSizes[i]);
+		}
+		if (dataPos > 0) {
+			stream.write(byteData, 0, dataPos);
 		}
 	}
 
@@ -202,22 +241,85 @@ public class BinaryTransportWriter extends TransportWriter implements
 		if (aliasSize > 0) {
 			System.arraycopy(aliasData, 0, buffer, 0, aliasSize);
 		}
-		if (nrOfBytes > 0) {
-			System.arraycopy(byteData, 0, buffer, aliasSize, nrOfBytes);
-		}
+		copyData(0, chunkCount, true, buffer, aliasSize);
 	}
 
 	public byte[] getBytes() {
 		byte[] buffer = new byte[aliasSize + nrOfBytes];
-		if (aliasSize > 0) {
-			System.arraycopy(aliasData, 0, buffer, 0, aliasSize);
+		write(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Returns the 'message' as consecutive parts. Shared encodings are
+	 * returned as they are, without being copied, and must not be modified.
+	 * All other data is copied to new arrays.
+	 */
+	public byte[][] getByteParts() {
+		ArrayList<byte[]> parts = new ArrayList<byte[]>();
+		int start = 0;
+		int size = aliasSize;
+		for (int i = 0; i < chunkCount; i++) {
+			if (chunkShared[i]) {
+				if (size > 0) {
+					parts.add(getPart(start, i, false, size));
+				}
+				parts.add(chunks[i]);
+				start = i + 1;
+				size = 0;
+			} else {
+				size += chunkSizes[i];
+			}
 		}
-		if (nrOfBytes > 0) {
-			System.arraycopy(byteData, 0, buffer, aliasSize, nrOfBytes);
+		size += dataPos;
+		if (size > 0) {
+			parts.add(getPart(start, chunkCount, true, size));
 		}
+		return parts.toArray(new byte[parts.size()][]);
+	}
+
+	private byte[] getPart(int fromChunk, int toChunk, boolean withCurrent,
+			int size) {
+		byte[] buffer = new byte[size];
+		int offset = 0;
+		if (fromChunk == 0 && aliasSize > 0) {
+			System.arraycopy(aliasData, 0, buffer, 0, aliasSize);
+			offset = aliasSize;
+		}
+		copyData(fromChunk, toChunk, withCurrent, buffer, offset);
 		return buffer;
 	}
 
+	private int copyData(int fromChunk, int toChunk, boolean withCurrent,
+			byte[] buffer, int offset) {
+		for (int i = fromChunk; i < toChunk; i++) {
+			System.arraycopy(chunks[i], 0, buffer, offset, chunkSizes[i]);
+			offset += chunkSizes[i];
+		}
+		if (withCurrent && dataPos > 0) {
+			System.arraycopy(byteData, 0, buffer, offset, dataPos);
+			offset += dataPos;
+		}
+		return offset;
+	}
+
+	/**
+	 * Returns the aliases and data written since last cleared, for use as a
+	 * shared encoding.
+	 */
+	SharedTransportable.Encoding getEncoding() {
+		int[] ids = new int[constantLookup.size()];
+		String[] names = new String[ids.length];
+		int index = 0;
+		for (Map.Entry<String, Integer> entry : constantLookup.entrySet()) {
+			ids[index] = entry.getValue().intValue();
+			names[index++] = entry.getKey();
+		}
+		byte[] data = new byte[nrOfBytes];
+		copyData(0, chunkCount, true, data, 0);
+		return new SharedTransportable.Encoding(ids, names, data);
+	}
+
 	// -------------------------------------------------------------------
 	// TransportWriter API
 	// -------------------------------------------------------------------
@@ -297,6 +399,41 @@ public class BinaryTransportWriter extends TransportWriter implements
 		return this;
 	}
 
+	public TransportWriter write(Transportable object) {
+		if (aliasTable != null && object instanceof SharedTransportable) {
+			writeShared(((SharedTransportable) object).getEncoding(aliasTable,
+					isTablesSupported));
+			return this;
+		}
+		return super.write(object);
+	}
+
+	private void writeShared(SharedTransportable.Encoding encoding) {
+		for (int i = 0, n = encoding.aliasIDs.length; i < n; i++) {
+			String name = encoding.aliasNames[i];
+			if (!constantLookup.containsKey(name)) {
+				int id = encoding.aliasIDs[i];
+				constantLookup.put(name, id);
+				writeAlias(id, name);
+			}
+		}
+		if (inNode) {
+			writeCurrentNode(START_NODE, currentPos);
+			inNode = false;
+		}
+		// The shared content can not be continued as a table
+		nodeName[currentPos] = -1;
+		nodeWritten[currentPos] = true;
+
+		if (dataPos > 0) {
+			addChunk(byteData, dataPos, false);
+			byteData = null;
+			dataPos = 0;
+		}
+		addChunk(encoding.data, encoding.data.length, true);
+		nrOfBytes += encoding.data.length;
+	}
+
 	public int getNodeLevel() {
 		return nodeLevel;
 	}
@@ -404,36 +541,38 @@ public class BinaryTransportWriter extends TransportWriter implements
 	}
 
 	private void writeByte(int data) {
-		if (nrOfBytes >= byteData.length) {
-			byteData = (byte[]) ArrayUtils.setSize(byteData, nrOfBytes
-					+ DATA_SIZE);
+		if (byteData == null || dataPos >= byteData.length) {
+			nextChunk(1);
 		}
-		// System.out.println("Writing byte: " + data + " (0x"
-		// + Integer.toHexString(data) + ") to " + nrOfBytes);
-		byteData[nrOfBytes++] = (byte) (data & 0xff);
+		byteData[dataPos++] = (byte) (data & 0xff);
+		nrOfBytes++;
 	}
 
 	private void writeShort(int data) {
-		writeByte((data >> 8) & 0xff);
-		writeByte(data & 0xff);
+		ensureCapacity(2);
+		byte[] buffer = byteData;
+		int pos = dataPos;
+		buffer[pos] = (byte) ((data >> 8) & 0xff);
+		buffer[pos + 1] = (byte) (data & 0xff);
+		dataPos = pos + 2;
+		nrOfBytes += 2;
 	}
 
 	private void writeInt(int data) {
-		writeByte((int) (data >>> 24) & 0xff);
-		writeByte((int) (data >>> 16) & 0xff);
-		writeByte((int) (data >>> 8) & 0xff);
-		writeByte((int) data & 0xff);
+		ensureCapacity(4);
+		byte[] buffer = byteData;
+		int pos = dataPos;
+		buffer[pos] = (byte) (data >>> 24);
+		buffer[pos + 1] = (byte) (data >>> 16);
+		buffer[pos + 2] = (byte) (data >>> 8);
+		buffer[pos + 3] = (byte) data;
+		dataPos = pos + 4;
+		nrOfBytes += 4;
 	}
 
 	private void writeLong(long data) {
-		writeByte((int) (data >>> 56) & 0xff);
-		writeByte((int) (data >>> 48) & 0xff);
-		writeByte((int) (data >>> 40) & 0xff);
-		writeByte((int) (data >>> 32) & 0xff);
-		writeByte((int) (data >>> 24) & 0xff);
-		writeByte((int) (data >>> 16) & 0xff);
-		writeByte((int) (data >>> 8) & 0xff);
-		writeByte((int) (data & 0xff));
+		writeInt((int) (data >>> 32));
+		writeInt((int) data);
 	}
 
 	private void writeFloat(float data) {
@@ -451,12 +590,9 @@ public class BinaryTransportWriter extends TransportWriter implements
 	private void writeString(String value) {
 		// Make sure there is room for the maximum encoded string size
 		// where each character takes three bytes.
-		int maxSize = getMaxUTF8Size(value);
-		if (nrOfBytes + maxSize > byteData.length) {
-			byteData = (byte[]) ArrayUtils.setSize(byteData, nrOfBytes
-					+ maxSize + DATA_SIZE);
-		}
-		int len = writeUTF8(byteData, nrOfBytes, value);
+		ensureCapacity(getMaxUTF8Size(value));
+		int len = writeUTF8(byteData, dataPos, value);
+		dataPos += len;
 		nrOfBytes += len;
 	}
 
@@ -510,16 +646,65 @@ public class BinaryTransportWriter extends TransportWriter implements
 		// Make sure there is room for the maximum int arr
 		// where each int takes 4 bytes.
 		int len = value.length;
-		if (nrOfBytes + len * 4 >= byteData.length) {
-			byteData = (byte[]) ArrayUtils.setSize(byteData, nrOfBytes + len
-					* 4 + DATA_SIZE);
-		}
+		ensureCapacity(2 + len * 4);
 		writeShort(len);
 		for (int i = 0, n = len; i < n; i++) {
 			writeInt(value[i]);
 		}
 	}
 
+	// -------------------------------------------------------------------
+	// Chunk handling
+	// -------------------------------------------------------------------
+
+	private void ensureCapacity(int size) {
+		if (byteData == null || byteData.length - dataPos < size) {
+			nextChunk(size);
+		}
+	}
+
+	private void nextChunk(int minSize) {
+		if (dataPos > 0) {
+			addChunk(byteData, dataPos, false);
+		} else if (byteData != null) {
+			releaseChunk(byteData);
+		}
+		byteData = minSize <= CHUNK_SIZE ? takeChunk() : new byte[minSize];
+		dataPos = 0;
+	}
+
+	private void addChunk(byte[] data, int size, boolean isShared) {
+		if (chunkCount == chunks.length) {
+			int newSize = chunkCount + DEF_SIZE;
+			chunks = (byte[][]) ArrayUtils.setSize(chunks, newSize);
+			chunkSizes = ArrayUtils.setSize(chunkSizes, newSize);
+			chunkShared = ArrayUtils.setSize(chunkShared, newSize);
+		}
+		chunks[chunkCount] = data;
+		chunkSizes[chunkCount] = size;
+		chunkShared[chunkCount++] = isShared;
+	}
+
+	private static byte[] takeChunk() {
+		byte[] chunk = chunkPool.poll();
+		if (chunk == null) {
+			return new byte[CHUNK_SIZE];
+		}
+		pooledChunks.decrementAndGet();
+		return chunk;
+	}
+
+	private static void releaseChunk(byte[] chunk) {
+		// Larger chunks are only used for large values and never pooled
+		if (chunk.length == CHUNK_SIZE) {
+			if (pooledChunks.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+				chunkPool.offer(chunk);
+			} else {
+				pooledChunks.decrementAndGet();
+			}
+		}
+	}
+
 	// private void writeBytes(byte[] bytes) {
 	// if (nrOfBytes + bytes.length >= byteData.length) {
 	// byteData = (byte[])
@@ -530,17 +715,17 @@ public class BinaryTransportWriter extends TransportWriter implements
 	// }
 
 	private int getConstantID(String name) {
-		Integer alias = (Integer) constantLookup.get(name);
+		Integer alias = constantLookup.get(name);
 		return (alias != null) ? alias.intValue() : -1;
 	}
 
 	private int createConstantID(String name) {
-		Integer alias = (Integer) constantLookup.get(name);
+		Integer alias = constantLookup.get(name);
 		if (alias != null) {
 			return alias.intValue();
 		} else {
-			int id = nextID++;
-			constantLookup.put(name, new Integer(id));
+			int id = aliasTable != null ? aliasTable.getID(name) : nextID++;
+			constantLookup.put(name, id);
 			writeAlias(id, name);
 			return id;
 		}
@@ -556,6 +741,14 @@ public class BinaryTransportWriter extends TransportWriter implements
 	}
 
 	public void clear() {
+		for (int i = 0; i < chunkCount; i++) {
+			if (!chunkShared[i]) {
+				releaseChunk(chunks[i]);
+			}
+			chunks[i] = null;
+		}
+		chunkCount = 0;
+		dataPos = 0;
 		aliasSize = 0;
 		nrOfBytes = 0;
 		nodeLevel = 0;
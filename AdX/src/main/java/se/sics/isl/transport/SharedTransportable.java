@@ -0,0 +1,108 @@
+/**
+ * SICS ISL Java Utilities
+ * http://www.sics.se/tac/    tac-dev@sics.se
+ *
+ * Copyright (c) 2001-2005 SICS AB. All rights reserved.
+ *
+ * SICS grants you the right to use, modify, and redistribute this
+ * software for noncommercial purposes, on the conditions that you:
+ * (1) retain the original headers, including the copyright notice and
+ * this text, (2) clearly document the difference between any derived
+ * software and the original, and (3) acknowledge your use of this
+ * software in pertaining publications and reports.  SICS provides
+ * this software "as is", without any warranty of any kind.  IN NO
+ * EVENT SHALL SICS BE LIABLE FOR ANY DIRECT, SPECIAL OR INDIRECT,
+ * PUNITIVE, INCIDENTAL OR CONSEQUENTIAL LOSSES OR DAMAGES ARISING OUT
+ * OF THE USE OF THE SOFTWARE.
+ *
+ * -----------------------------------------------------------------
+ *
+ * SharedTransportable
+ *
+ * Purpose : Transportable sent unchanged to several receivers, such as a
+ *           message to all agents with a role. The binary encoding of the
+ *           content is created once and then appended by each binary
+ *           transport writer without being encoded or copied again.
+ *
+ */
+package se.sics.isl.transport;
+
+import java.text.ParseException;
+
+public final class SharedTransportable implements Transportable {
+
+	/** The binary encoding of a transportable */
+	static final class Encoding {
+		final int[] aliasIDs;
+		final String[] aliasNames;
+		final byte[] data;
+
+		Encoding(int[] aliasIDs, String[] aliasNames, byte[] data) {
+			this.aliasIDs = aliasIDs;
+			this.aliasNames = aliasNames;
+			this.data = data;
+		}
+	}
+
+	private final Transportable content;
+
+	private AliasTable aliasTable;
+	// One encoding without and one with tables
+	private final Encoding[] encodings = new Encoding[2];
+
+	public SharedTransportable(Transportable content) {
+		if (content == null) {
+			throw new NullPointerException("content cannot be null");
+		}
+		this.content = content;
+	}
+
+	public Transportable getContent() {
+		return content;
+	}
+
+	/**
+	 * Returns the encoding of the content using aliases from the specified
+	 * table. Constants are never used since they differ between writers.
+	 */
+	synchronized Encoding getEncoding(AliasTable aliasTable,
+			boolean isTablesSupported) {
+		if (this.aliasTable != aliasTable) {
+			this.aliasTable = aliasTable;
+			encodings[0] = encodings[1] = null;
+		}
+		int index = isTablesSupported ? 1 : 0;
+		Encoding encoding = encodings[index];
+		if (encoding == null) {
+			BinaryTransportWriter writer = new BinaryTransportWriter(aliasTable);
+			writer.setSupported(BinaryTransportWriter.SUPPORT_TABLES,
+					isTablesSupported);
+			writer.write(content);
+			writer.finish();
+			encoding = encodings[index] = writer.getEncoding();
+			writer.clear();
+		}
+		return encoding;
+	}
+
+	// -------------------------------------------------------------------
+	// Transportable API
+	// -------------------------------------------------------------------
+
+	public String getTransportName() {
+		return content.getTransportName();
+	}
+
+	public void read(TransportReader reader) throws ParseException {
+		throw new IllegalStateException("shared content can not be read");
+	}
+
+	public void write(TransportWriter writer) {
+		content.write(writer);
+	}
+
+	public String toString() {
+		return content.toString();
+	}
+
+} // SharedTransportable
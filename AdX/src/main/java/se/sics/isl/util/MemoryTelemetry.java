@@ -0,0 +1,496 @@
+/**
+ * SICS ISL Java Utilities
+ * http://www.sics.se/tac/    tac-dev@sics.se
+ *
+ * Copyright (c) 2001-2005 SICS AB. All rights reserved.
+ *
+ * SICS grants you the right to use, modify, and redistribute this
+ * software for noncommercial purposes, on the conditions that you:
+ * (1) retain the original headers, including the copyright notice and
+ * this text, (2) clearly document the difference between any derived
+ * software and the original, and (3) acknowledge your use of this
+ * software in pertaining publications and reports.  SICS provides
+ * this software "as is", without any warranty of any kind.  IN NO
+ * EVENT SHALL SICS BE LIABLE FOR ANY DIRECT, SPECIAL OR INDIRECT,
+ * PUNITIVE, INCIDENTAL OR CONSEQUENTIAL LOSSES OR DAMAGES ARISING OUT
+ * OF THE USE OF THE SOFTWARE.
+ *
+ * -----------------------------------------------------------------
+ *
+ * MemoryTelemetry
+ *
+ * Purpose : Records the memory allocated by the simulation thread and its
+ *           worker threads during each day and its phases, the heap
+ *           occupancy and the garbage collections, and requests garbage
+ *           collections according to an explicit policy.
+ *
+ */
+package se.sics.isl.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+public class MemoryTelemetry {
+
+	private static final Logger log = Logger.getLogger(MemoryTelemetry.class
+			.getName());
+
+	public static final String STATUS_NAME = "Memory";
+
+	/** When garbage collections are requested */
+	public enum CollectionPolicy {
+		/** Leave all collections to the JVM */
+		NONE,
+		/** Request a collection after each day */
+		DAILY,
+		/** Request a collection after a day if the heap occupancy is high */
+		HEAP;
+
+		/**
+		 * Returns the policy with the specified name, ignoring case.
+		 * 
+		 * @throws IllegalArgumentException
+		 *             if there is no such policy
+		 */
+		public static CollectionPolicy parse(String name) {
+			return valueOf(name.trim().toUpperCase());
+		}
+	}
+
+	private static final long MB = 1024 * 1024;
+
+	/** The last day recorded by any telemetry in this JVM */
+	private static volatile String lastDayReport;
+
+	private static boolean isMonitorAdded = false;
+
+	private final String name;
+	private final String[] phaseNames;
+	private final CollectionPolicy policy;
+	private final double heapThreshold;
+
+	private final ThreadMXBean threadBean = ManagementFactory
+			.getThreadMXBean();
+	private final boolean isAllocationSupported;
+
+	// Worker threads whose allocations are added to those of the simulation
+	// thread. Threads are added by any thread and then moved to the map of
+	// last seen allocations by the simulation thread.
+	private final ConcurrentLinkedQueue<Thread> addedThreads = new ConcurrentLinkedQueue<Thread>();
+	private final Map<Thread, Long> threadAllocated = new HashMap<Thread, Long>();
+	private long terminatedAllocated;
+
+	// Current day, only accessed by the simulation thread
+	private int day = -1;
+	private long dayStartTime;
+	private long dayStartAllocated;
+	private long dayStartCollections;
+	private long dayStartCollectionTime;
+	private long phaseStartAllocated;
+	private int currentPhase = -1;
+	private final long[] dayPhaseAllocated;
+
+	// Last recorded day
+	private volatile int lastDay = -1;
+	private volatile long allocatedBytes = -1;
+	private volatile long allocationRate = -1;
+	private final long[] phaseAllocated;
+	private volatile long heapUsed;
+	private volatile long heapMax;
+	private volatile long collections;
+	private volatile long collectionTime;
+	private volatile int requestedCollections;
+
+	/**
+	 * @param name
+	 *            the name used in the log, for example the simulation
+	 * @param phaseNames
+	 *            the names of the phases of a day
+	 * @param policy
+	 *            when to request garbage collections
+	 * @param heapThreshold
+	 *            the heap occupancy, between 0 and 1, above which a
+	 *            collection is requested by the {@link CollectionPolicy#HEAP}
+	 *            policy
+	 */
+	public MemoryTelemetry(String name, String[] phaseNames,
+			CollectionPolicy policy, double heapThreshold) {
+		if (name == null) {
+			throw new NullPointerException("name cannot be null");
+		}
+		if (policy == null) {
+			throw new NullPointerException("policy cannot be null");
+		}
+		if (heapThreshold <= 0 || heapThreshold > 1) {
+			throw new IllegalArgumentException(
+					"heapThreshold must be in (0, 1]: " + heapThreshold);
+		}
+		this.name = name;
+		this.phaseNames = phaseNames.clone();
+		this.policy = policy;
+		this.heapThreshold = heapThreshold;
+		this.dayPhaseAllocated = new long[phaseNames.length];
+		this.phaseAllocated = new long[phaseNames.length];
+
+		boolean isSupported = false;
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+			try {
+				if (bean.isThreadAllocatedMemorySupported()) {
+					if (!bean.isThreadAllocatedMemoryEnabled()) {
+						bean.setThreadAllocatedMemoryEnabled(true);
+					}
+					isSupported = true;
+				}
+			} catch (UnsupportedOperationException e) {
+				// Not supported by this JVM
+			}
+		}
+		this.isAllocationSupported = isSupported;
+
+		addMonitor();
+	}
+
+	private static synchronized void addMonitor() {
+		if (!isMonitorAdded) {
+			AdminMonitor adminMonitor = AdminMonitor.getDefault();
+			if (adminMonitor != null) {
+				adminMonitor.addMonitor(STATUS_NAME, new StatusMonitor());
+			}
+			isMonitorAdded = true;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public CollectionPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Adds a worker thread of the simulation, such as a thread running user
+	 * shards, whose allocations are recorded together with those of the
+	 * simulation thread. The allocations of a thread that terminates are
+	 * recorded up to the last time they were sampled, at the start or end
+	 * of a day or phase.
+	 */
+	public void addThread(Thread thread) {
+		if (thread == null) {
+			throw new NullPointerException("thread cannot be null");
+		}
+		if (isAllocationSupported) {
+			addedThreads.add(thread);
+		}
+	}
+
+	// -------------------------------------------------------------------
+	// Recording, called by the simulation thread
+	// -------------------------------------------------------------------
+
+	/**
+	 * Starts recording a new day, ending the previous day if any.
+	 */
+	public void startDay(int day) {
+		if (this.day >= 0) {
+			endDay();
+		}
+		this.day = day;
+		this.dayStartTime = System.currentTimeMillis();
+		this.dayStartAllocated = getAllocatedBytes();
+		this.dayStartCollections = getCollectionCount();
+		this.dayStartCollectionTime = getCollectionTimeMillis();
+		for (int i = 0; i < dayPhaseAllocated.length; i++) {
+			dayPhaseAllocated[i] = 0;
+		}
+	}
+
+	public void startPhase(int phase) {
+		currentPhase = phase;
+		phaseStartAllocated = getAllocatedBytes();
+	}
+
+	public void endPhase(int phase) {
+		if (currentPhase == phase) {
+			currentPhase = -1;
+			dayPhaseAllocated[phase] += getAllocatedBytes()
+					- phaseStartAllocated;
+		}
+	}
+
+	/**
+	 * Ends the current day, records its statistics and logs them.
+	 */
+	public void endDay() {
+		if (day < 0) {
+			return;
+		}
+		long time = System.currentTimeMillis() - dayStartTime;
+		long allocated = isAllocationSupported ? getAllocatedBytes()
+				- dayStartAllocated : -1;
+		for (int i = 0; i < phaseAllocated.length; i++) {
+			phaseAllocated[i] = isAllocationSupported ? dayPhaseAllocated[i]
+					: -1;
+		}
+		this.allocatedBytes = allocated;
+		this.allocationRate = allocated < 0 ? -1 : allocated * 1000
+				/ Math.max(time, 1);
+		this.collections = getCollectionCount() - dayStartCollections;
+		this.collectionTime = getCollectionTimeMillis()
+				- dayStartCollectionTime;
+		updateHeap();
+		this.lastDay = day;
+		this.day = -1;
+
+		String report = getDayReport(new StringBuilder()).toString();
+		lastDayReport = report;
+		log.info(report);
+	}
+
+	/**
+	 * Requests a garbage collection if required by the policy. Should be
+	 * called when the simulation is idle.
+	 * 
+	 * @return true if a collection was requested
+	 */
+	public boolean collectIfNeeded() {
+		boolean isCollecting;
+		switch (policy) {
+		case DAILY:
+			isCollecting = true;
+			break;
+		case HEAP:
+			updateHeap();
+			isCollecting = heapMax > 0
+					&& heapUsed >= heapThreshold * heapMax;
+			break;
+		default:
+			isCollecting = false;
+			break;
+		}
+		if (isCollecting) {
+			requestedCollections++;
+			log.fine(name + ": requesting garbage collection by policy "
+					+ policy);
+			System.gc();
+		}
+		return isCollecting;
+	}
+
+	// -------------------------------------------------------------------
+	// Statistics of the last recorded day
+	// -------------------------------------------------------------------
+
+	public int getLastDay() {
+		return lastDay;
+	}
+
+	/**
+	 * Returns the bytes allocated by the simulation thread and its worker
+	 * threads during the last day or -1 if not supported by the JVM.
+	 */
+	public long getDayAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Returns the bytes allocated by the simulation thread and its worker
+	 * threads during the specified phase of the last day or -1 if not
+	 * supported by the JVM.
+	 */
+	public long getPhaseAllocatedBytes(int phase) {
+		return phaseAllocated[phase];
+	}
+
+	/**
+	 * Returns the allocation rate in bytes per second of the simulation
+	 * thread and its worker threads during the last day or -1 if not
+	 * supported by the JVM.
+	 */
+	public long getAllocationRate() {
+		return allocationRate;
+	}
+
+	public long getHeapUsed() {
+		return heapUsed;
+	}
+
+	/**
+	 * Returns the maximal heap size or -1 if undefined.
+	 */
+	public long getHeapMax() {
+		return heapMax;
+	}
+
+	/**
+	 * Returns the number of garbage collections during the last day.
+	 */
+	public long getDayCollections() {
+		return collections;
+	}
+
+	/**
+	 * Returns the time in milliseconds spent in garbage collections during
+	 * the last day.
+	 */
+	public long getDayCollectionTime() {
+		return collectionTime;
+	}
+
+	/**
+	 * Returns the number of collections requested by the policy.
+	 */
+	public int getRequestedCollections() {
+		return requestedCollections;
+	}
+
+	// -------------------------------------------------------------------
+	// Memory status
+	// -------------------------------------------------------------------
+
+	private static class StatusMonitor implements AMonitor {
+		public String getStatus(String propertyName) {
+			return propertyName == STATUS_NAME ? getMemoryStatus() : null;
+		}
+	}
+
+	/**
+	 * Returns the current heap occupancy by memory pool and the last day
+	 * recorded in this JVM.
+	 */
+	public static String getMemoryStatus() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("--- Memory ---");
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				MemoryUsage usage = pool.getUsage();
+				sb.append('\n').append(pool.getName()).append(":\t");
+				appendMB(sb, usage.getUsed());
+				if (usage.getMax() > 0) {
+					sb.append(" / ");
+					appendMB(sb, usage.getMax());
+				}
+			}
+		}
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			sb.append('\n').append(gc.getName()).append(":\t").append(
+					gc.getCollectionCount()).append(" collections (").append(
+					gc.getCollectionTime()).append(" ms)");
+		}
+		String report = lastDayReport;
+		if (report != null) {
+			sb.append('\n').append(report);
+		}
+		return sb.toString();
+	}
+
+	// -------------------------------------------------------------------
+	// Utilities
+	// -------------------------------------------------------------------
+
+	private StringBuilder getDayReport(StringBuilder sb) {
+		sb.append(name).append(" day ").append(lastDay).append(": heap ");
+		appendMB(sb, heapUsed);
+		if (heapMax > 0) {
+			sb.append(" / ");
+			appendMB(sb, heapMax);
+		}
+		if (allocatedBytes >= 0) {
+			sb.append(", allocated ");
+			appendMB(sb, allocatedBytes);
+			sb.append(" (");
+			appendMB(sb, allocationRate);
+			sb.append("/s)");
+			for (int i = 0; i < phaseNames.length; i++) {
+				sb.append(", ").append(phaseNames[i]).append(' ');
+				appendMB(sb, phaseAllocated[i]);
+			}
+		}
+		sb.append(", ").append(collections).append(" gc (").append(
+				collectionTime).append(" ms)");
+		return sb;
+	}
+
+	private static void appendMB(StringBuilder sb, long bytes) {
+		long tenths = bytes * 10 / MB;
+		sb.append(tenths / 10).append('.').append(tenths % 10).append(" MB");
+	}
+
+	// Note: MAY ONLY BE CALLED BY THE SIMULATION THREAD
+	private long getAllocatedBytes() {
+		if (!isAllocationSupported) {
+			return 0;
+		}
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+		long allocated = bean.getThreadAllocatedBytes(Thread.currentThread()
+				.getId());
+		Thread thread;
+		while ((thread = addedThreads.poll()) != null) {
+			if (!threadAllocated.containsKey(thread)) {
+				threadAllocated.put(thread, 0L);
+			}
+		}
+		for (Iterator<Map.Entry<Thread, Long>> iterator = threadAllocated
+				.entrySet().iterator(); iterator.hasNext();) {
+			Map.Entry<Thread, Long> entry = iterator.next();
+			Thread.State state = entry.getKey().getState();
+			if (state == Thread.State.NEW) {
+				// Not yet started
+				continue;
+			}
+			long bytes = state == Thread.State.TERMINATED ? -1 : bean
+					.getThreadAllocatedBytes(entry.getKey().getId());
+			if (bytes < 0) {
+				// Terminated: keep what it allocated when last sampled
+				terminatedAllocated += entry.getValue();
+				iterator.remove();
+			} else {
+				entry.setValue(bytes);
+				allocated += bytes;
+			}
+		}
+		return allocated + terminatedAllocated;
+	}
+
+	private void updateHeap() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				used += pool.getUsage().getUsed();
+			}
+		}
+		long max = Runtime.getRuntime().maxMemory();
+		this.heapUsed = used;
+		this.heapMax = max == Long.MAX_VALUE ? -1 : max;
+	}
+
+	private static long getCollectionCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			count += Math.max(gc.getCollectionCount(), 0);
+		}
+		return count;
+	}
+
+	private static long getCollectionTimeMillis() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			time += Math.max(gc.getCollectionTime(), 0);
+		}
+		return time;
+	}
+
+} // MemoryTelemetry
@@ -28,6 +28,7 @@ package se.sics.tasim.aw;
 
 import java.text.ParseException;
 
+import se.sics.isl.transport.SharedTransportable;
 import se.sics.isl.transport.Transportable;
 import se.sics.isl.transport.TransportReader;
 import se.sics.isl.transport.TransportWriter;
@@ -43,6 +44,7 @@ public class Message implements Transportable {
 	private String sender;
 	private String receiver;
 	private Transportable content;
+	private SharedTransportable sharedContent;
 
 	public Message(String receiver, Transportable content) {
 		if (receiver == null) {
@@ -60,6 +62,15 @@ public class Message implements Transportable {
 		this.sender = sender;
 	}
 
+	/**
+	 * Creates a message with content that is sent unchanged to several
+	 * receivers. The content is only encoded once for all receivers.
+	 */
+	public Message(String sender, String receiver, SharedTransportable content) {
+		this(sender, receiver, content.getContent());
+		this.sharedContent = content;
+	}
+
 	public Message() {
 	}
 
@@ -126,7 +137,7 @@ public class Message implements Transportable {
 		}
 		writer.attr("sender", sender);
 		writer.attr("receiver", receiver);
-		writer.write(content);
+		writer.write(sharedContent != null ? sharedContent : content);
 	}
 
 } // Message
@@ -37,6 +37,7 @@ import org.mortbay.http.HttpFields;
 import org.mortbay.http.HttpRequest;
 import org.mortbay.http.HttpResponse;
 import org.mortbay.util.ByteArrayISO8859Writer;
+import se.sics.isl.util.MemoryTelemetry;
 import se.sics.tasim.is.SimulationInfo;
 
 /**
@@ -504,6 +505,11 @@ public class AdminPage extends HttpPage {
 		page.append("</textarea><br> <input type='submit' "
 				+ "value='Set Server Message' "
 				+ "name='setServerMessage'></form>\r\n");
+
+		// Memory usage of the server and of the last simulated day
+		page.append("<p><font face=arial size='+1'>Memory</font><p>\r\n"
+				+ "<pre>").append(MemoryTelemetry.getMemoryStatus()).append(
+				"</pre>\r\n");
 		return pageEnd(page);
 	}
 
@@ -28,10 +28,13 @@ package se.sics.tasim.is.common;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import se.sics.isl.tact.TACTConnection;
+import se.sics.isl.tact.TACTReactor;
 import se.sics.isl.transport.BinaryTransportReader;
 import se.sics.isl.transport.Context;
 
@@ -55,6 +58,15 @@ public class BlockingViewerChannel extends TACTConnection {
 		this.viewerServer.addViewerConnection(this);
 	}
 
+	public BlockingViewerChannel(BlockingViewerServer server,
+			SocketChannel channel, TACTReactor reactor, Context context)
+			throws IOException {
+		super(server.getName() + '-' + (++channelCounter), channel, reactor);
+		this.viewerServer = server;
+		this.reader.setContext(context);
+		this.viewerServer.addViewerConnection(this);
+	}
+
 	// -------------------------------------------------------------------
 	// TACTonnection API
 	// -------------------------------------------------------------------
@@ -73,7 +85,15 @@ public class BlockingViewerChannel extends TACTConnection {
 
 	protected void dataRead(byte[] buffer, int offset, int length) {
 		reader.setMessage(buffer, offset, length);
+		messageRead();
+	}
+
+	protected void dataRead(ByteBuffer data) {
+		reader.setMessage(data);
+		messageRead();
+	}
 
+	private void messageRead() {
 		SimServer server = this.simServer;
 		if (server == null) {
 			// Not yet logged in
@@ -28,11 +28,13 @@ package se.sics.tasim.is.common;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.logging.Logger;
 
 import com.botbox.util.ArrayUtils;
 import com.botbox.util.ThreadPool;
 import se.sics.isl.inet.InetServer;
+import se.sics.isl.tact.TACTReactor;
 import se.sics.isl.transport.Context;
 import se.sics.isl.util.AMonitor;
 import se.sics.isl.util.AdminMonitor;
@@ -52,6 +54,9 @@ public class BlockingViewerServer extends InetServer implements AMonitor {
 	private BlockingViewerChannel[] viewerConnections;
 
 	private ThreadPool viewerThreadPool;
+	// Serves the viewer connections with non-blocking I/O or null if
+	// each connection has its own reader thread
+	private TACTReactor reactor;
 
 	public BlockingViewerServer(InfoServer infoServer) {
 		super("viewer", infoServer.getConfig().getProperty(CONF + "host",
@@ -71,6 +76,12 @@ public class BlockingViewerServer extends InetServer implements AMonitor {
 		this.viewerThreadPool.setMaxIdleThreads(maxIdleThreads);
 		this.viewerThreadPool.setInterruptThreadsAfter(120000);
 
+		int selectorThreads = config.getPropertyAsInt(CONF
+				+ "selectorThreads", 2);
+		if (selectorThreads > 0) {
+			this.reactor = new TACTReactor("viewer", selectorThreads);
+		}
+
 		AdminMonitor adminMonitor = AdminMonitor.getDefault();
 		if (adminMonitor != null) {
 			adminMonitor.addMonitor(STATUS_NAME, this);
@@ -108,6 +119,18 @@ public class BlockingViewerServer extends InetServer implements AMonitor {
 		channel.start();
 	}
 
+	protected void newConnection(SocketChannel socketChannel)
+			throws IOException {
+		if (reactor == null) {
+			super.newConnection(socketChannel);
+		} else {
+			BlockingViewerChannel channel = new BlockingViewerChannel(this,
+					socketChannel, reactor, transportContext);
+			channel.setThreadPool(viewerThreadPool);
+			channel.start();
+		}
+	}
+
 	// -------------------------------------------------------------------
 	// API towards Viewer Channels
 	// -------------------------------------------------------------------
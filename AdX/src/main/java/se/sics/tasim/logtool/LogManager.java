@@ -216,7 +216,10 @@ public class LogManager {
 	void processDataFile(String filename) {
 		LogReader reader = null;
 		try {
-			reader = new LogReader(getDataStream(filename));
+			File fp = new File(filename);
+			// Uncompressed log files are read as files to allow seeking
+			reader = fp.isFile() && !filename.endsWith(".gz") ? new LogReader(
+					fp) : new LogReader(getDataStream(filename));
 			System.out.println("Processing game " + reader.getSimulationID()
 					+ " (" + filename + ')');
 			String simType = reader.getSimulationType();
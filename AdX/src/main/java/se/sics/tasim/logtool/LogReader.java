@@ -26,14 +26,20 @@
  */
 package se.sics.tasim.logtool;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.ParseException;
+import java.util.zip.DataFormatException;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
 
 import com.botbox.util.ArrayUtils;
 import se.sics.isl.transport.BinaryTransportReader;
@@ -42,6 +48,10 @@ import se.sics.isl.transport.TransportReader;
 
 /**
  * Utility for parsing server logs (not used by the AgentWare).
+ * <p>
+ * Reads both the original and the indexed log format written by
+ * <code>se.sics.tasim.sim.LogWriter</code>. Indexed logs opened as files can be positioned at the
+ * start of any time unit using {@link #seekToTimeUnit(int)}.
  */
 public class LogReader implements Closeable{
 
@@ -50,6 +60,16 @@ public class LogReader implements Closeable{
 
 	private static final int DEFAULT_MAX_BUFFER_SIZE = 5 * 1024 * 1024;
 
+	/** Major version of the indexed log format */
+	private static final int INDEXED_VERSION = 2;
+
+	/** Magic ending an indexed log with a complete index */
+	private static final int INDEX_MAGIC = ('T' << 24) | ('I' << 16)
+			| ('D' << 8) | 'X';
+
+	/** Sanity limit for the size of a block in an indexed log */
+	private static final int MAX_BLOCK_SIZE = 256 * 1024 * 1024;
+
 	private DataInputStream input;
 	private BinaryTransportReader reader;
 	private int maxBufferSize = DEFAULT_MAX_BUFFER_SIZE;
@@ -77,10 +97,60 @@ public class LogReader implements Closeable{
 	private ParticipantInfo[] participants;
 	private boolean isCancelled = false;
 
+	// Indexed log format
+	private boolean isIndexed;
+	private FileInputStream file;
+	private int[] indexTimeUnits;
+	private long[] indexOffsets;
+	private Inflater inflater;
+	private byte[] compressed;
+	private byte[] block;
+	private ByteBuffer blockBuffer;
+	private int blockPosition;
+	private int blockSize;
+
+	// Memory mapped log file in the original log format. The mapping is
+	// only released when the buffer is garbage collected, so close() drops
+	// every reference to it, including the one of the transport reader.
+	private FileChannel channel;
+	private ByteBuffer mapped;
+
 	public LogReader(InputStream in) throws IOException, ParseException {
 		this(in, true);
 	}
 
+	/**
+	 * Creates a log reader for the specified log file. The reader can seek
+	 * the time units of an indexed log.
+	 * 
+	 * @param file
+	 *            the log file
+	 */
+	public LogReader(File file) throws IOException, ParseException {
+		this(new FileInputStream(file));
+	}
+
+	private LogReader(FileInputStream in) throws IOException, ParseException {
+		this.file = in;
+		this.input = new DataInputStream(new BufferedInputStream(in));
+		this.reader = new BinaryTransportReader();
+		try {
+			readTACTHeader();
+			if (isIndexed) {
+				readIndex();
+			} else {
+				mapFile();
+			}
+			readHeader();
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (ParseException e) {
+			close();
+			throw e;
+		}
+	}
+
 	private LogReader(InputStream in, boolean readHeader) throws IOException,
 			ParseException {
 		this.input = new DataInputStream(in);
@@ -104,7 +174,71 @@ public class LogReader implements Closeable{
 		} else {
 			majorVersion = buffer[4] & 0xff;
 			minorVersion = buffer[5] & 0xff;
+			if (majorVersion == INDEXED_VERSION) {
+				isIndexed = true;
+			} else if (majorVersion != 0) {
+				throw new IOException("unsupported simulation log version "
+						+ majorVersion + '.' + minorVersion);
+			}
+		}
+	}
+
+	private void readIndex() throws IOException {
+		FileChannel channel = file.getChannel();
+		long size = channel.size();
+		if (size < 20) {
+			// Too short to have an index
+			return;
+		}
+		ByteBuffer trailer = ByteBuffer.allocate(12);
+		readFully(channel, trailer, size - 12);
+		long indexOffset = trailer.getLong();
+		if (trailer.getInt() != INDEX_MAGIC || indexOffset < 8
+				|| indexOffset > size - 16) {
+			// The log is incomplete and has no index
+			return;
+		}
+
+		ByteBuffer data = ByteBuffer.allocate((int) (size - 12 - indexOffset));
+		readFully(channel, data, indexOffset);
+		int count = data.getInt();
+		if (count < 0 || count * 12 != data.remaining()) {
+			throw new IOException("illegal simulation log index");
+		}
+		int[] timeUnits = new int[count];
+		long[] offsets = new long[count];
+		for (int i = 0; i < count; i++) {
+			timeUnits[i] = data.getInt();
+			offsets[i] = data.getLong();
+		}
+		this.indexTimeUnits = timeUnits;
+		this.indexOffsets = offsets;
+	}
+
+	/**
+	 * Maps a log file in the original log format, whose chunks are then
+	 * parsed directly from the mapped file. The mapping lives until the
+	 * reader is closed; chunks returned by {@link #nextChunk()} must not be
+	 * used after that.
+	 */
+	private void mapFile() throws IOException {
+		channel = file.getChannel();
+		long size = channel.size();
+		if (size <= Integer.MAX_VALUE) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			// Skip the already read header
+			mapped.position(8);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException();
+			}
 		}
+		buffer.flip();
 	}
 
 	private void readHeader() throws IOException, ParseException {
@@ -212,6 +346,73 @@ public class LogReader implements Closeable{
 		return isComplete;
 	}
 
+	/**
+	 * Returns true if the log file is in the indexed log format
+	 */
+	public boolean isIndexed() {
+		return isIndexed;
+	}
+
+	/**
+	 * Returns true if this reader can seek the time units of the log, i.e.
+	 * if the log is an indexed log file with a complete index.
+	 */
+	public boolean isSeekable() {
+		return indexTimeUnits != null;
+	}
+
+	/**
+	 * Returns the time units that can be sought, in increasing order, or
+	 * <code>null</code> if this reader is not seekable.
+	 */
+	public int[] getTimeUnits() {
+		if (indexTimeUnits == null) {
+			return null;
+		}
+		// Skip the block logged before the first time unit
+		int start = 0;
+		while (start < indexTimeUnits.length && indexTimeUnits[start] < 0) {
+			start++;
+		}
+		int[] timeUnits = new int[indexTimeUnits.length - start];
+		System.arraycopy(indexTimeUnits, start, timeUnits, 0,
+				timeUnits.length);
+		return timeUnits;
+	}
+
+	/**
+	 * Positions this reader at the start of the specified time unit, or of
+	 * the last time unit before it if the time unit was never logged. The
+	 * next chunk will be the first chunk of that time unit, starting with its
+	 * <code>nextTimeUnit</code> node.
+	 * 
+	 * @param timeUnit
+	 *            the time unit to seek
+	 * @exception IllegalStateException
+	 *                if this reader is not seekable
+	 * @exception IOException
+	 *                if the reader has been closed or the log could not be
+	 *                read
+	 */
+	public synchronized void seekToTimeUnit(int timeUnit) throws IOException {
+		if (indexTimeUnits == null) {
+			throw new IllegalStateException("log is not seekable");
+		}
+		if (reader == null) {
+			throw new IOException("log reader is closed");
+		}
+		int index = 0;
+		for (int i = 1; i < indexTimeUnits.length; i++) {
+			if (indexTimeUnits[i] <= timeUnit) {
+				index = i;
+			}
+		}
+		file.getChannel().position(indexOffsets[index]);
+		input = new DataInputStream(new BufferedInputStream(file));
+		blockPosition = blockSize = 0;
+		dataRead = false;
+	}
+
 	public ParticipantInfo[] getParticipants() {
 		return participants;
 	}
@@ -261,16 +462,37 @@ public class LogReader implements Closeable{
 		return reader != null;
 	}
 
+	/**
+	 * Closes the log and releases the memory mapped file, if any. The
+	 * transport reader returned by {@link #nextChunk()} is cleared and may
+	 * not be used afterwards.
+	 */
 	public synchronized void close() {
 		if (reader != null) {
 			dataRead = false;
+			reader.clear();
 			reader = null;
+			mapped = null;
+			if (inflater != null) {
+				inflater.end();
+				inflater = null;
+			}
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (Exception e) {
+					// Ignore any problems when closing the file
+				} finally {
+					channel = null;
+				}
+			}
 			try {
 				input.close();
 			} catch (Exception e) {
 				// Ignore any problems when closing the file
 			} finally {
 				input = null;
+				file = null;
 			}
 		}
 	}
@@ -294,6 +516,14 @@ public class LogReader implements Closeable{
 			dataRead = false;
 			return;
 		}
+		if (isIndexed) {
+			readIndexed();
+			return;
+		}
+		if (mapped != null) {
+			readMapped();
+			return;
+		}
 
 		int p1 = input.read();
 		int p2 = input.read();
@@ -345,6 +575,147 @@ public class LogReader implements Closeable{
 		}
 	}
 
+	// Note: MAY ONLY BE CALLED SYNCHRONIZED
+	private void readMapped() throws IOException {
+		int position = mapped.position();
+		if (mapped.remaining() < 4) {
+			// No more data in the file (unexpected EOF)
+			throw new EOFException();
+		}
+		int len = mapped.getInt(position);
+		if (len == 0) {
+			// End of complete log indicator.
+			isComplete = true;
+			if (mapped.remaining() > 4) {
+				System.err.println("LogReader: "
+						+ "unexpected data after log complete data");
+			}
+			close();
+
+		} else if (len < 0 || len > mapped.remaining() - 4) {
+			throw new EOFException();
+		} else if (len > maxBufferSize) {
+			throw new IOException("too large data block: " + len);
+		} else {
+			mapped.limit(position + 4 + len);
+			mapped.position(position + 4);
+			reader.setMessage(mapped);
+			mapped.limit(mapped.capacity());
+			mapped.position(position + 4 + len);
+			dataRead = true;
+		}
+	}
+
+	// Note: MAY ONLY BE CALLED SYNCHRONIZED
+	private void readIndexed() throws IOException {
+		while (blockPosition >= blockSize) {
+			if (!readBlock()) {
+				return;
+			}
+		}
+		int len = getInt(block, blockPosition);
+		if (len <= 0 || len > blockSize - blockPosition - 4) {
+			throw new IOException("illegal data block size: " + len);
+		} else if (len > maxBufferSize) {
+			throw new IOException("too large data block: " + len);
+		}
+		blockBuffer.clear();
+		blockBuffer.position(blockPosition + 4);
+		blockBuffer.limit(blockPosition + 4 + len);
+		reader.setMessage(blockBuffer);
+		blockPosition += 4 + len;
+		dataRead = true;
+	}
+
+	// Note: MAY ONLY BE CALLED SYNCHRONIZED
+	private boolean readBlock() throws IOException {
+		int compressedSize = readInt();
+		if (compressedSize == 0) {
+			// End of complete log indicator, which is followed by the index
+			isComplete = true;
+			close();
+			return false;
+		}
+		// The time unit of the block is only needed by the index
+		readInt();
+		int size = readInt();
+		if (compressedSize < 0 || compressedSize > MAX_BLOCK_SIZE || size < 4
+				|| size > MAX_BLOCK_SIZE) {
+			throw new IOException("illegal compressed block size: "
+					+ compressedSize + " (" + size + ')');
+		}
+		if (compressed == null || compressed.length < compressedSize) {
+			compressed = new byte[compressedSize + 1024];
+		}
+		input.readFully(compressed, 0, compressedSize);
+		if (block == null || block.length < size) {
+			block = new byte[size + 1024];
+			blockBuffer = ByteBuffer.wrap(block);
+		}
+		if (inflater == null) {
+			inflater = new Inflater();
+		} else {
+			inflater.reset();
+		}
+		inflater.setInput(compressed, 0, compressedSize);
+		try {
+			int inflated = 0;
+			while (inflated < size && !inflater.finished()) {
+				int n = inflater.inflate(block, inflated, size - inflated);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += n;
+			}
+			if (inflated != size) {
+				throw new IOException("corrupt compressed block");
+			}
+		} catch (DataFormatException e) {
+			throw (IOException) new IOException("corrupt compressed block")
+					.initCause(e);
+		}
+
+		// Register the aliases leading the block
+		int aliasSize = getInt(block, 0);
+		if (aliasSize < 0 || aliasSize > size - 4) {
+			throw new IOException("illegal alias size: " + aliasSize);
+		}
+		if (aliasSize > 0) {
+			blockBuffer.clear();
+			blockBuffer.position(4);
+			blockBuffer.limit(4 + aliasSize);
+			reader.setMessage(blockBuffer);
+			try {
+				reader.nextNode(false);
+			} catch (ParseException e) {
+				throw (IOException) new IOException("illegal aliases")
+						.initCause(e);
+			}
+		}
+		blockPosition = 4 + aliasSize;
+		blockSize = size;
+		return true;
+	}
+
+	private int readInt() throws IOException {
+		int p1 = input.read();
+		int p2 = input.read();
+		int p3 = input.read();
+		int p4 = input.read();
+		if ((p1 | p2 | p3 | p4) < 0) {
+			// No more data in the file (unexpected EOF)
+			throw new EOFException();
+		}
+		return (p1 << 24) + (p2 << 16) + (p3 << 8) + p4;
+	}
+
+	private static int getInt(byte[] data, int position) {
+		return ((data[position] & 0xff) << 24)
+				+ ((data[position + 1] & 0xff) << 16)
+				+ ((data[position + 2] & 0xff) << 8)
+				+ (data[position + 3] & 0xff);
+	}
+
 	static void generateXML(InputStream input) throws IOException,
 			ParseException {
 		generateXML(input, true);
@@ -82,6 +82,9 @@ public class Main extends java.awt.event.WindowAdapter {
 		config.addOption("adnet", "Show adnet messages");
 		config.addOption("all", "Show all messages");
 		config.addOption("verify", "Verify messages");
+		config.addOption("fromDay", "day",
+				"set the first day to parse (seeks indexed logs)");
+		config.addOption("toDay", "day", "set the last day to parse");
 
 		config.addOption("version", "show the version");
 		config.addHelp("h", "show this help message");
@@ -58,7 +58,7 @@ import com.botbox.util.ArrayQueue;
 import com.botbox.util.ArrayUtils;
 import com.botbox.util.ThreadPool;
 
-public final class Admin {
+public final class Admin extends SimulationHost {
 
 	private static final Logger log = Logger.getLogger(Admin.class.getName());
 
@@ -0,0 +1,146 @@
+/**
+ * TAC Supply Chain Management Simulator
+ * http://www.sics.se/tac/    tac-dev@sics.se
+ *
+ * Copyright (c) 2001-2005 SICS AB. All rights reserved.
+ *
+ * SICS grants you the right to use, modify, and redistribute this
+ * software for noncommercial purposes, on the conditions that you:
+ * (1) retain the original headers, including the copyright notice and
+ * this text, (2) clearly document the difference between any derived
+ * software and the original, and (3) acknowledge your use of this
+ * software in pertaining publications and reports.  SICS provides
+ * this software "as is", without any warranty of any kind.  IN NO
+ * EVENT SHALL SICS BE LIABLE FOR ANY DIRECT, SPECIAL OR INDIRECT,
+ * PUNITIVE, INCIDENTAL OR CONSEQUENTIAL LOSSES OR DAMAGES ARISING OUT
+ * OF THE USE OF THE SOFTWARE.
+ *
+ * -----------------------------------------------------------------
+ *
+ * EventDrivenTicker
+ *
+ * Purpose : Schedules time units on demand. The first time unit starts
+ *           after an initial delay and every following time unit starts
+ *           when it is requested, or when the maximal length of a time
+ *           unit has passed, whichever comes first.
+ *
+ */
+package se.sics.tasim.sim;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+abstract class EventDrivenTicker {
+
+	private final int maxMillisPerTimeUnit;
+
+	/** Guards the timer and the time unit counter */
+	private final Object lock = new Object();
+
+	private Timer timer;
+	private TimerTask tickTask;
+
+	/** The next time unit to start */
+	private int nextTimeUnit;
+
+	/**
+	 * Creates a new ticker.
+	 *
+	 * @param maxMillisPerTimeUnit
+	 *            the maximal length of a time unit in milliseconds
+	 */
+	EventDrivenTicker(int maxMillisPerTimeUnit) {
+		if (maxMillisPerTimeUnit <= 0) {
+			throw new IllegalArgumentException(
+					"maxMillisPerTimeUnit must be positive: "
+							+ maxMillisPerTimeUnit);
+		}
+		this.maxMillisPerTimeUnit = maxMillisPerTimeUnit;
+	}
+
+	/**
+	 * Called on the timer thread when a time unit starts.
+	 *
+	 * @param timeUnit
+	 *            the time unit that starts
+	 */
+	protected abstract void tick(int timeUnit);
+
+	/**
+	 * Starts the ticks.
+	 *
+	 * @param delay
+	 *            the delay in milliseconds before the first time unit
+	 */
+	void start(long delay) {
+		synchronized (lock) {
+			if (timer != null) {
+				throw new IllegalStateException("ticker already started");
+			}
+			timer = new Timer();
+			schedule(0, Math.max(0L, delay));
+		}
+	}
+
+	/**
+	 * Requests the time unit following the specified one to start now.
+	 * Ignored unless the specified time unit is the last one started, so
+	 * requests that come too late have no effect.
+	 *
+	 * @param timeUnit
+	 *            the time unit that has been completed
+	 * @return true if the next time unit was started
+	 */
+	boolean request(int timeUnit) {
+		synchronized (lock) {
+			if (timer == null || nextTimeUnit != timeUnit + 1) {
+				return false;
+			}
+			if (tickTask != null) {
+				tickTask.cancel();
+			}
+			schedule(timeUnit + 1, 0L);
+			return true;
+		}
+	}
+
+	/**
+	 * Stops the ticks. No time unit starts after this call returns.
+	 */
+	void stop() {
+		synchronized (lock) {
+			if (tickTask != null) {
+				tickTask.cancel();
+				tickTask = null;
+			}
+			if (timer != null) {
+				timer.cancel();
+				timer = null;
+			}
+		}
+	}
+
+	// Must be called with the lock held
+	private void schedule(final int timeUnit, long delay) {
+		tickTask = new TimerTask() {
+			public void run() {
+				performTick(timeUnit);
+			}
+		};
+		timer.schedule(tickTask, delay);
+	}
+
+	private void performTick(int timeUnit) {
+		synchronized (lock) {
+			if (timer == null || nextTimeUnit != timeUnit) {
+				// Already started by a request or the ticker is stopped
+				return;
+			}
+			nextTimeUnit++;
+			// Start the next time unit when the maximal length has passed
+			// unless it is requested earlier.
+			schedule(nextTimeUnit, maxMillisPerTimeUnit);
+		}
+		tick(timeUnit);
+	}
+}
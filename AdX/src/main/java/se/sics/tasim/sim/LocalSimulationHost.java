@@ -0,0 +1,210 @@
+/**
+ * TAC Supply Chain Management Simulator
+ * http://www.sics.se/tac/    tac-dev@sics.se
+ *
+ * Copyright (c) 2001-2005 SICS AB. All rights reserved.
+ *
+ * SICS grants you the right to use, modify, and redistribute this
+ * software for noncommercial purposes, on the conditions that you:
+ * (1) retain the original headers, including the copyright notice and
+ * this text, (2) clearly document the difference between any derived
+ * software and the original, and (3) acknowledge your use of this
+ * software in pertaining publications and reports.  SICS provides
+ * this software "as is", without any warranty of any kind.  IN NO
+ * EVENT SHALL SICS BE LIABLE FOR ANY DIRECT, SPECIAL OR INDIRECT,
+ * PUNITIVE, INCIDENTAL OR CONSEQUENTIAL LOSSES OR DAMAGES ARISING OUT
+ * OF THE USE OF THE SOFTWARE.
+ *
+ * -----------------------------------------------------------------
+ *
+ * LocalSimulationHost
+ *
+ * Purpose : Plays a single simulation in-process, without server, info
+ *           server or external agents. All participants must be builtin
+ *           (dummy) agents, which exchange messages through the
+ *           simulation's message dispatcher.
+ *
+ */
+package se.sics.tasim.sim;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import se.sics.isl.transport.Transportable;
+import se.sics.isl.util.ConfigManager;
+import se.sics.isl.util.IllegalConfigurationException;
+import se.sics.tasim.aw.Message;
+import se.sics.tasim.is.EventWriter;
+import se.sics.tasim.is.SimulationInfo;
+
+public class LocalSimulationHost extends SimulationHost {
+
+	private static final Logger log = Logger
+			.getLogger(LocalSimulationHost.class.getName());
+
+	private static final EventWriter NO_EVENTS = new NullEventWriter();
+
+	private final ConfigManager config;
+	private final String serverName;
+
+	private boolean isStopped = false;
+
+	public LocalSimulationHost(ConfigManager config, String serverName) {
+		if (config == null) {
+			throw new NullPointerException("config cannot be null");
+		}
+		if (serverName == null) {
+			throw new NullPointerException("serverName cannot be null");
+		}
+		this.config = config;
+		this.serverName = serverName;
+	}
+
+	/**
+	 * Plays the simulation, starting now, and returns when it has stopped.
+	 * A host plays a single simulation.
+	 *
+	 * @param simulation
+	 *            the simulation to play
+	 * @param info
+	 *            the simulation information, with the simulation id set
+	 * @param logFileName
+	 *            the name of the simulation log file
+	 * @exception IllegalConfigurationException
+	 *                if the simulation could not be setup
+	 * @exception InterruptedException
+	 *                if interrupted while waiting for the simulation to stop,
+	 *                in which case the simulation is requested to stop
+	 */
+	public void run(Simulation simulation, SimulationInfo info,
+			String logFileName) throws IllegalConfigurationException,
+			InterruptedException {
+		info.setStartTime(getServerTime());
+		// No external agents and therefore no thread pool for agent channels
+		simulation.init(this, info, logFileName, null);
+		boolean isStarted = false;
+		try {
+			simulation.setup();
+			simulation.start();
+			isStarted = true;
+		} finally {
+			if (!isStarted) {
+				simulation.close();
+			}
+		}
+
+		try {
+			synchronized (this) {
+				while (!isStopped) {
+					wait();
+				}
+			}
+		} catch (InterruptedException e) {
+			simulation.requestStopSimulation();
+			throw e;
+		}
+	}
+
+	// -------------------------------------------------------------------
+	// SimulationHost
+	// -------------------------------------------------------------------
+
+	public ConfigManager getConfig() {
+		return config;
+	}
+
+	public String getServerName() {
+		return serverName;
+	}
+
+	public EventWriter getEventWriter() {
+		return NO_EVENTS;
+	}
+
+	public long getServerTime() {
+		return System.currentTimeMillis();
+	}
+
+	long getTimeDiff() {
+		return 0L;
+	}
+
+	public String getUserName(int userID) {
+		return null;
+	}
+
+	AgentChannel getAgentChannel(int userID) {
+		return null;
+	}
+
+	void simulationJoined(SimulationInfo info, int userID, int role) {
+	}
+
+	void messageReceived(Simulation simulation, Message message) {
+		log.warning("ignoring message to admin: " + message);
+	}
+
+	void stopSimulation(Simulation simulation) {
+		try {
+			simulation.completeStop();
+		} catch (Exception e) {
+			log.log(Level.SEVERE, "could not stop simulation "
+					+ simulation.getSimulationInfo().getSimulationID(), e);
+		} finally {
+			simulation.close();
+			synchronized (this) {
+				isStopped = true;
+				notifyAll();
+			}
+		}
+	}
+
+	// -------------------------------------------------------------------
+	// NullEventWriter
+	// -------------------------------------------------------------------
+
+	/**
+	 * Discards all events. The simulation log still records them.
+	 */
+	private static class NullEventWriter extends EventWriter {
+
+		public void participant(int agent, int role, String name,
+				int participantID) {
+		}
+
+		public void nextTimeUnit(int timeUnit) {
+		}
+
+		public void dataUpdated(int agent, int type, int value) {
+		}
+
+		public void dataUpdated(int agent, int type, long value) {
+		}
+
+		public void dataUpdated(int agent, int type, float value) {
+		}
+
+		public void dataUpdated(int agent, int type, double value) {
+		}
+
+		public void dataUpdated(int agent, int type, String value) {
+		}
+
+		public void dataUpdated(int agent, int type, Transportable content) {
+		}
+
+		public void dataUpdated(int type, Transportable content) {
+		}
+
+		public void interaction(int fromAgent, int toAgent, int type) {
+		}
+
+		public void interactionWithRole(int fromAgent, int role, int type) {
+		}
+
+		public void intCache(int agent, int type, int[] cache) {
+		}
+
+	} // NullEventWriter
+
+} // LocalSimulationHost
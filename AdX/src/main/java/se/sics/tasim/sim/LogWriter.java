@@ -26,16 +26,49 @@
  */
 package se.sics.tasim.sim;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 import se.sics.isl.transport.BinaryTransportWriter;
 import se.sics.isl.transport.Transportable;
 import se.sics.tasim.is.EventWriter;
 
+/**
+ * Writes the simulation log.
+ * <p>
+ * The original log format (version 0) is a TACT header followed by the
+ * committed chunks, each preceded by its size, and an ending 0.
+ * <p>
+ * The indexed log format (version 2) groups the chunks of each time unit in
+ * a block that is Deflate compressed by a background thread, off the
+ * simulation thread. Each block starts with all aliases defined so far,
+ * which makes it readable on its own. The blocks are followed by an ending
+ * 0, an index from time unit to file offset of the block, the file offset
+ * of the index and the index magic:
+ * 
+ * <pre>
+ * header   : 'T' 'A' 'C' 'T' 2 0 0 0
+ * block    : int compressedSize, int timeUnit, int size, compressed data
+ * data     : int aliasSize, aliases, (int chunkSize, chunk)*
+ * end      : int 0
+ * index    : int blocks, (int timeUnit, long offset)*
+ * trailer  : long indexOffset, 'T' 'I' 'D' 'X'
+ * </pre>
+ * 
+ * The first block, with time unit -1, holds everything logged before the
+ * first time unit.
+ */
 public class LogWriter extends EventWriter {
 
 	private static final Logger log = Logger.getLogger(LogWriter.class
@@ -47,30 +80,98 @@ public class LogWriter extends EventWriter {
 			0, 0 // reserved
 	};
 
+	/** Major version of the indexed log format */
+	private static final int INDEXED_VERSION = 2;
+
+	/** Magic ending an indexed log with a complete index */
+	private static final int INDEX_MAGIC = ('T' << 24) | ('I' << 16)
+			| ('D' << 8) | 'X';
+
+	private static final byte[] INDEXED_HEADER = { (byte) 'T', (byte) 'A',
+			(byte) 'C', (byte) 'T', INDEXED_VERSION, // major version
+			0, // minor version
+			0, 0 // reserved
+	};
+
+	/** Time unit of the block logged before the first time unit */
+	private static final int NO_TIME_UNIT = -1;
+
+	/** Maximal time to wait for the compressor when closing the log */
+	private static final long CLOSE_TIMEOUT = 60000L;
+
 	private EventWriter parentWriter;
 	private DataOutputStream out;
 	private BinaryTransportWriter writer;
 	private boolean isClosed = false;
 
+	// Indexed format. The block is written by the simulation threads while
+	// the compressor alone writes to the output stream.
+	private final boolean isIndexed;
+	private BlockBuffer block;
+	private int blockTimeUnit = NO_TIME_UNIT;
+	private ExecutorService compressor;
+	private volatile boolean isFailed = false;
+
+	// Only accessed by the compressor
+	private Deflater deflater;
+	private byte[] compressed;
+	private long position;
+	private final ArrayList<long[]> index = new ArrayList<long[]>();
+
 	public LogWriter(EventWriter parentWriter) {
 		this(parentWriter, null);
 	}
 
 	public LogWriter(EventWriter parentWriter, OutputStream out) {
+		this(parentWriter, out, false);
+	}
+
+	/**
+	 * Creates a new log writer.
+	 * 
+	 * @param parentWriter
+	 *            the event writer to forward events to
+	 * @param out
+	 *            the log output or <code>null</code> if no log is available
+	 * @param isIndexed
+	 *            <code>true</code> to write the indexed log format and
+	 *            <code>false</code> to write the original log format
+	 */
+	public LogWriter(EventWriter parentWriter, OutputStream out,
+			boolean isIndexed) {
 		if (parentWriter == null) {
 			throw new NullPointerException();
 		}
 		this.parentWriter = parentWriter;
+		this.isIndexed = isIndexed;
 		if (out == null) {
 			// No log file available
 			isClosed = true;
 		} else {
-			this.out = new DataOutputStream(out);
 			this.writer = new BinaryTransportWriter();
 
 			// Write the TACT header
 			try {
-				this.out.write(TACT_HEADER);
+				if (isIndexed) {
+					this.out = new DataOutputStream(new BufferedOutputStream(
+							out, 65536));
+					this.out.write(INDEXED_HEADER);
+					this.position = INDEXED_HEADER.length;
+					this.block = new BlockBuffer();
+					this.compressor = Executors
+							.newSingleThreadExecutor(new ThreadFactory() {
+								public Thread newThread(Runnable r) {
+									Thread thread = new Thread(r,
+											"LogWriter.compressor");
+									thread.setDaemon(true);
+									return thread;
+								}
+							});
+					startBlock(NO_TIME_UNIT);
+				} else {
+					this.out = new DataOutputStream(out);
+					this.out.write(TACT_HEADER);
+				}
 			} catch (Exception e) {
 				isClosed = true;
 				log.log(Level.SEVERE, "could not initialize log", e);
@@ -87,7 +188,15 @@ public class LogWriter extends EventWriter {
 		return isClosed;
 	}
 
+	public boolean isIndexed() {
+		return isIndexed;
+	}
+
 	public synchronized void close() {
+		if (isIndexed) {
+			closeIndexed();
+			return;
+		}
 		if (!isClosed) {
 			try {
 				commit();
@@ -114,6 +223,10 @@ public class LogWriter extends EventWriter {
 	}
 
 	public synchronized void commit() {
+		if (isIndexed) {
+			commitIndexed();
+			return;
+		}
 		if (!isClosed) {
 			writer.finish();
 
@@ -139,11 +252,200 @@ public class LogWriter extends EventWriter {
 	public synchronized void nextTimeUnit(int timeUnit, long time) {
 		parentWriter.nextTimeUnit(timeUnit);
 		if (!isClosed) {
+			nextBlock(timeUnit);
 			writer.node("nextTimeUnit").attr("unit", timeUnit).attr("time",
 					time).endNode("nextTimeUnit");
 		}
 	}
 
+	// -------------------------------------------------------------------
+	// Indexed log format
+	// -------------------------------------------------------------------
+
+	// Note: MAY ONLY BE CALLED SYNCHRONIZED
+	private void commitIndexed() {
+		if (!isClosed) {
+			if (isFailed) {
+				// The compressor could not write to the log
+				isClosed = true;
+			} else {
+				writer.finish();
+
+				int size = writer.size();
+				if (size > 0) {
+					try {
+						block.writeInt(size);
+						writer.write(block);
+					} catch (IOException e) {
+						// Can not happen when writing to memory
+						throw new IllegalStateException(e);
+					}
+				}
+			}
+			writer.clear();
+		}
+	}
+
+	// Note: MAY ONLY BE CALLED SYNCHRONIZED
+	private void nextBlock(int timeUnit) {
+		if (isIndexed) {
+			// Any pending nodes belong to the previous time unit
+			commitIndexed();
+			if (!isClosed) {
+				compress(blockTimeUnit, block);
+				block = new BlockBuffer();
+				startBlock(timeUnit);
+			}
+		}
+	}
+
+	// Note: MAY ONLY BE CALLED SYNCHRONIZED
+	private void startBlock(int timeUnit) {
+		// Start the block with all aliases defined so far to make it
+		// readable without the previous blocks.
+		blockTimeUnit = timeUnit;
+		byte[] aliases = writer.getInitBytes();
+		int size = aliases == null ? 0 : aliases.length;
+		block.writeInt(size);
+		if (size > 0) {
+			block.write(aliases, 0, size);
+		}
+	}
+
+	private void compress(final int timeUnit, final BlockBuffer data) {
+		compressor.execute(new Runnable() {
+			public void run() {
+				if (!isFailed) {
+					try {
+						writeBlock(timeUnit, data);
+					} catch (Exception e) {
+						fail("could not write to log", e);
+					}
+				}
+			}
+		});
+	}
+
+	// Note: MAY ONLY BE CALLED SYNCHRONIZED
+	private void closeIndexed() {
+		if (isClosed) {
+			return;
+		}
+		try {
+			commitIndexed();
+			if (!isClosed) {
+				compress(blockTimeUnit, block);
+				compressor.execute(new Runnable() {
+					public void run() {
+						if (!isFailed) {
+							try {
+								writeIndex();
+							} catch (Exception e) {
+								fail("could not write end of log", e);
+							}
+						}
+					}
+				});
+			}
+			compressor.shutdown();
+			try {
+				if (!compressor.awaitTermination(CLOSE_TIMEOUT,
+						TimeUnit.MILLISECONDS)) {
+					log.severe("timeout when compressing log");
+					compressor.shutdownNow();
+				}
+			} catch (InterruptedException e) {
+				compressor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		} finally {
+			isClosed = true;
+			try {
+				out.close();
+			} catch (Exception e) {
+			}
+			this.out = null;
+			this.block = null;
+			writer.clear();
+		}
+	}
+
+	// Compressor thread only
+	private void writeBlock(int timeUnit, BlockBuffer data) throws IOException {
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			compressed = new byte[65536];
+		}
+		deflater.reset();
+		deflater.setInput(data.getBuffer(), 0, data.size());
+		deflater.finish();
+		int size = 0;
+		while (!deflater.finished()) {
+			if (size == compressed.length) {
+				byte[] tmp = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, tmp, 0, size);
+				compressed = tmp;
+			}
+			size += deflater.deflate(compressed, size, compressed.length
+					- size);
+		}
+
+		index.add(new long[] { timeUnit, position });
+		out.writeInt(size);
+		out.writeInt(timeUnit);
+		out.writeInt(data.size());
+		out.write(compressed, 0, size);
+		position += 12 + size;
+	}
+
+	// Compressor thread only
+	private void writeIndex() throws IOException {
+		// Write the ending character to indicate that this is a complete
+		// log and that the file has not been truncated.
+		out.writeInt(0);
+		long indexPosition = position + 4;
+		out.writeInt(index.size());
+		for (int i = 0, n = index.size(); i < n; i++) {
+			long[] entry = index.get(i);
+			out.writeInt((int) entry[0]);
+			out.writeLong(entry[1]);
+		}
+		out.writeLong(indexPosition);
+		out.writeInt(INDEX_MAGIC);
+		out.flush();
+		if (deflater != null) {
+			deflater.end();
+		}
+	}
+
+	// Compressor thread only
+	private void fail(String message, Exception e) {
+		isFailed = true;
+		log.log(Level.SEVERE, message, e);
+	}
+
+	/**
+	 * Buffer of a block, giving the compressor direct access to its data.
+	 */
+	private static class BlockBuffer extends ByteArrayOutputStream {
+
+		public BlockBuffer() {
+			super(8192);
+		}
+
+		public byte[] getBuffer() {
+			return buf;
+		}
+
+		public void writeInt(int value) {
+			write(value >>> 24);
+			write(value >>> 16);
+			write(value >>> 8);
+			write(value);
+		}
+
+	} // BlockBuffer
+
 	// -------------------------------------------------------------------
 	// EventWriter API
 	// -------------------------------------------------------------------
@@ -155,6 +457,7 @@ public class LogWriter extends EventWriter {
 	public synchronized void nextTimeUnit(int timeUnit) {
 		parentWriter.nextTimeUnit(timeUnit);
 		if (!isClosed) {
+			nextBlock(timeUnit);
 			writer.node("nextTimeUnit").attr("unit", timeUnit).endNode(
 					"nextTimeUnit");
 		}
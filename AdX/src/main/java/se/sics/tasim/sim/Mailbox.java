@@ -0,0 +1,223 @@
+/**
+ * TAC Supply Chain Management Simulator
+ * http://www.sics.se/tac/    tac-dev@sics.se
+ *
+ * Copyright (c) 2001-2005 SICS AB. All rights reserved.
+ *
+ * SICS grants you the right to use, modify, and redistribute this
+ * software for noncommercial purposes, on the conditions that you:
+ * (1) retain the original headers, including the copyright notice and
+ * this text, (2) clearly document the difference between any derived
+ * software and the original, and (3) acknowledge your use of this
+ * software in pertaining publications and reports.  SICS provides
+ * this software "as is", without any warranty of any kind.  IN NO
+ * EVENT SHALL SICS BE LIABLE FOR ANY DIRECT, SPECIAL OR INDIRECT,
+ * PUNITIVE, INCIDENTAL OR CONSEQUENTIAL LOSSES OR DAMAGES ARISING OUT
+ * OF THE USE OF THE SOFTWARE.
+ *
+ * -----------------------------------------------------------------
+ *
+ * Mailbox
+ *
+ * Purpose : Lock-free multi-producer/single-consumer queue. Producers
+ *           link nodes with a single atomic swap of the tail and never
+ *           block; the consumer drains the nodes in batches and parks
+ *           when the mailbox is empty. Keeps queue depth and queueing
+ *           latency statistics.
+ *
+ */
+package se.sics.tasim.sim;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+final class Mailbox {
+
+	/** Node of the mailbox. A node can only be offered once. */
+	static class Node {
+		volatile Node next;
+		long enqueueTime;
+	}
+
+	private final Thread consumer;
+
+	/** The last node linked by a producer */
+	private final AtomicReference<Node> tail;
+
+	/** The last node taken by the consumer (consumer only) */
+	private Node head;
+
+	/** Set by the consumer before it parks */
+	private volatile boolean isWaiting = false;
+
+	private final AtomicInteger depth = new AtomicInteger();
+
+	// Statistics, only written by the consumer
+	private volatile int maxDepth;
+	private volatile long taken;
+	private volatile long batches;
+	private volatile long totalLatency;
+	private volatile long maxLatency;
+
+	/**
+	 * Creates a new mailbox.
+	 *
+	 * @param consumer
+	 *            the only thread that will take nodes from the mailbox
+	 */
+	Mailbox(Thread consumer) {
+		if (consumer == null) {
+			throw new NullPointerException("consumer cannot be null");
+		}
+		this.consumer = consumer;
+		this.head = new Node();
+		this.tail = new AtomicReference<Node>(head);
+	}
+
+	/**
+	 * Adds a node to the mailbox. May be called by any thread.
+	 */
+	void offer(Node node) {
+		node.enqueueTime = System.nanoTime();
+		node.next = null;
+		Node previous = tail.getAndSet(node);
+		depth.incrementAndGet();
+		// Links the node, which makes it visible to the consumer
+		previous.next = node;
+		if (isWaiting) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * Takes up to <code>batch.length</code> nodes, waiting at most the
+	 * specified time for the first one. Must only be called by the consumer.
+	 *
+	 * @return the number of nodes taken, 0 if the time elapsed
+	 */
+	int take(Node[] batch, long timeoutMillis) {
+		int count = drain(batch);
+		if (count == 0) {
+			long deadline = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			isWaiting = true;
+			try {
+				while ((count = drain(batch)) == 0) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						break;
+					}
+					LockSupport.parkNanos(this, remaining);
+				}
+			} finally {
+				isWaiting = false;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Takes up to <code>batch.length</code> nodes without waiting. Must only
+	 * be called by the consumer.
+	 *
+	 * @return the number of nodes taken
+	 */
+	int drain(Node[] batch) {
+		int count = 0;
+		Node node = head;
+		while (count < batch.length) {
+			Node next = node.next;
+			if (next == null) {
+				if (node == tail.get()) {
+					// Empty
+					break;
+				}
+				// A producer has swapped the tail but not yet linked its
+				// node: it is about to do so.
+				Thread.yield();
+				continue;
+			}
+			batch[count++] = next;
+			node = next;
+		}
+		if (count > 0) {
+			// The last node taken becomes the new head (and is no longer
+			// referenced from the previous head)
+			Node previous = head;
+			head = node;
+			previous.next = null;
+			updateStatistics(batch, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Discards all nodes in the mailbox. Must only be called by the consumer.
+	 */
+	void clear() {
+		Node[] batch = new Node[64];
+		while (drain(batch) > 0) {
+		}
+	}
+
+	private void updateStatistics(Node[] batch, int count) {
+		int currentDepth = depth.get();
+		if (currentDepth > maxDepth) {
+			maxDepth = currentDepth;
+		}
+		depth.addAndGet(-count);
+
+		long now = System.nanoTime();
+		long total = totalLatency;
+		long max = maxLatency;
+		for (int i = 0; i < count; i++) {
+			long latency = now - batch[i].enqueueTime;
+			total += latency;
+			if (latency > max) {
+				max = latency;
+			}
+		}
+		totalLatency = total;
+		maxLatency = max;
+		taken += count;
+		batches++;
+	}
+
+	// -------------------------------------------------------------------
+	// Statistics
+	// -------------------------------------------------------------------
+
+	/** Returns the number of nodes waiting in the mailbox */
+	int getDepth() {
+		return depth.get();
+	}
+
+	/** Returns the largest number of nodes seen waiting in the mailbox */
+	int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/** Returns the number of nodes taken by the consumer */
+	long getTaken() {
+		return taken;
+	}
+
+	/** Returns the number of non-empty batches taken by the consumer */
+	long getBatches() {
+		return batches;
+	}
+
+	/** Returns the average time in nanoseconds a taken node waited */
+	long getAverageLatency() {
+		long count = taken;
+		return count == 0 ? 0L : totalLatency / count;
+	}
+
+	/** Returns the longest time in nanoseconds a taken node waited */
+	long getMaxLatency() {
+		return maxLatency;
+	}
+
+} // Mailbox
@@ -26,13 +26,16 @@
  */
 package se.sics.tasim.sim;
 
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.botbox.util.ArrayQueue;
+import se.sics.isl.transport.SharedTransportable;
 import se.sics.isl.transport.Transportable;
+import se.sics.isl.util.AMonitor;
+import se.sics.isl.util.AdminMonitor;
 import se.sics.tasim.aw.Message;
-import tau.tac.adx.report.demand.InitialCampaignMessage;
 
 final class MessageDispatcher extends Thread {
 
@@ -41,85 +44,61 @@ final class MessageDispatcher extends Thread {
 	private static final Logger log = Logger.getLogger(MessageDispatcher.class
 			.getName());
 
-	private final Admin admin;
+	/** Maximal number of envelopes taken from the mailbox at a time */
+	private static final int BATCH_SIZE = 64;
+
+	private static final String STATUS_NAME = "Dispatchers";
+
+	/** The running dispatchers, for the admin monitor */
+	private static final CopyOnWriteArraySet<MessageDispatcher> dispatchers = new CopyOnWriteArraySet<MessageDispatcher>();
+	private static boolean isMonitorRegistered = false;
+
+	private final SimulationHost admin;
 	private Simulation simulation;
-	private ArrayQueue messageQueue = new ArrayQueue();
+	private final Mailbox mailbox = new Mailbox(this);
 	private boolean isRunning = true;
 
-	public MessageDispatcher(Admin admin, Simulation simulation, String name) {
+	public MessageDispatcher(SimulationHost admin, Simulation simulation,
+			String name) {
 		super(name);
 		this.admin = admin;
 		this.simulation = simulation;
 	}
 
 	public void startDispatcher() {
+		registerMonitor();
+		dispatchers.add(this);
 		start();
 	}
 
 	public void stopDispatcher() {
-		doDeliver("stop");
+		doDeliver(new Envelope(Envelope.STOP));
 	}
 
-	private synchronized void doDeliver(Object message) {
-		messageQueue.add(message);
-		notify();
-	}
-
-	private synchronized Object getNext() {
-		while (messageQueue.size() == 0) {
-			try {
-				wait(5000);
-			} catch (InterruptedException e) {
-				log.log(Level.WARNING, "*** interrupted", e);
-			}
-		}
-
-		return messageQueue.remove(0);
+	private void doDeliver(Envelope envelope) {
+		mailbox.offer(envelope);
 	}
 
 	public void run() {
+		Mailbox.Node[] batch = new Mailbox.Node[BATCH_SIZE];
 		try {
-			do {
-				Object message = getNext();
-				if (!isRunning) {
-					// Should stop running immediately
-					break;
-
-				} else if (message instanceof Message) {
-					if (((Message)message).getContent() instanceof InitialCampaignMessage) {
-						int i =1;
+			simulation.dispatcherStarted();
+			while (isRunning) {
+				int count = mailbox.take(batch, 5000);
+				for (int i = 0; i < count; i++) {
+					Envelope envelope = (Envelope) batch[i];
+					batch[i] = null;
+					if (isRunning) {
+						envelope.perform(this);
 					}
-					deliverMessage((Message) message);
-
-				} else if (message instanceof Delivery) {
-					((Delivery) message).perform(this);
-
-				} else if (message instanceof SimulationAgent) {
-					simulation.callRecoverAgent((SimulationAgent) message);
-
-				} else if (message instanceof Runnable) {
-					call((Runnable) message);
-
-				} else if (message == "prepareStop") {
-					simulation.prepareStop();
-
-				} else if (message == "stop") {
-					// Time to stop this simulation (and this dispatcher)
-					isRunning = false;
-					admin.stopSimulation(simulation);
-					break;
-
-				} else {
-					log.severe("*** unknown delivery type: " + message);
 				}
-			} while (isRunning);
+			}
 		} finally {
 			log.finer("message dispatcher " + getName() + " stopped");
+			dispatchers.remove(this);
 			// Ease for the garbage collector
 			simulation = null;
-			messageQueue.clear();
-
-			System.gc();
+			mailbox.clear();
 		}
 	}
 
@@ -128,32 +107,32 @@ final class MessageDispatcher extends Thread {
 	// -------------------------------------------------------------------
 
 	final void deliver(Message message) {
-		doDeliver(message);
+		doDeliver(new Envelope(message));
 	}
 
 	final void deliverToRole(SimulationAgent senderAgent, int role,
 			Transportable content) {
-		doDeliver(new Delivery(senderAgent, role, content));
+		doDeliver(new Envelope(senderAgent, role, content));
 	}
 
 	final void callRunnable(Runnable target) {
-		doDeliver(target);
+		doDeliver(new Envelope(target));
 	}
 
 	final void callAgentUnblock(SimulationAgent agentToUnblock) {
-		doDeliver(new Delivery(Delivery.UNBLOCK, agentToUnblock));
+		doDeliver(new Envelope(Envelope.UNBLOCK, agentToUnblock));
 	}
 
 	final void callAgentRecovery(SimulationAgent agentToRecover) {
-		doDeliver(agentToRecover);
+		doDeliver(new Envelope(Envelope.RECOVER, agentToRecover));
 	}
 
 	final void callNextTimeUnit(int timeUnit) {
-		doDeliver(new Delivery(Delivery.TIMECALL, timeUnit));
+		doDeliver(new Envelope(Envelope.TIMECALL, timeUnit));
 	}
 
 	final void callPrepareStop() {
-		doDeliver("prepareStop");
+		doDeliver(new Envelope(Envelope.PREPARE_STOP));
 	}
 
 	// -------------------------------------------------------------------
@@ -215,6 +194,7 @@ final class MessageDispatcher extends Thread {
 			SimulationAgent[] agents = simulation.getAgents(role);
 			if (agents != null) {
 				log.finest("delivering to role " + role + ": " + content);
+				SharedTransportable shared = new SharedTransportable(content);
 				for (int i = 0, n = agents.length; i < n; i++) {
 					SimulationAgent agent = agents[i];
 					try {
@@ -222,7 +202,7 @@ final class MessageDispatcher extends Thread {
 						if (DEBUG)
 							log.finest("delivering to " + receiver);
 						agent.messageReceived(simulation, new Message(
-								Simulation.COORDINATOR, receiver, content));
+								Simulation.COORDINATOR, receiver, shared));
 						if (DEBUG)
 							log.finest("delivered to " + receiver);
 					} catch (ThreadDeath e) {
@@ -246,6 +226,7 @@ final class MessageDispatcher extends Thread {
 			SimulationAgent[] agents = simulation.getAgents(role);
 			if (agents != null) {
 				String senderAddress = senderAgent.getAddress();
+				SharedTransportable shared = new SharedTransportable(content);
 				log.finest("delivering from " + senderName + " ("
 						+ senderAddress + ") to role " + role + ": " + content);
 				for (int i = 0, n = agents.length; i < n; i++) {
@@ -256,7 +237,7 @@ final class MessageDispatcher extends Thread {
 							if (DEBUG)
 								log.finest("delivering to " + receiver);
 							a.messageReceived(simulation, new Message(
-									senderAddress, receiver, content));
+									senderAddress, receiver, shared));
 							if (DEBUG)
 								log.finest("delivered to " + receiver);
 						} catch (ThreadDeath e) {
@@ -276,60 +257,145 @@ final class MessageDispatcher extends Thread {
 		}
 	}
 
+	private void stopSimulation() {
+		// Time to stop this simulation (and this dispatcher)
+		isRunning = false;
+		admin.stopSimulation(simulation);
+	}
+
 	// -------------------------------------------------------------------
-	// Data container for event delivery
+	// Admin monitor
 	// -------------------------------------------------------------------
 
-	private static class Delivery {
+	private static synchronized void registerMonitor() {
+		if (!isMonitorRegistered) {
+			isMonitorRegistered = true;
+			AdminMonitor adminMonitor = AdminMonitor.getDefault();
+			if (adminMonitor != null) {
+				adminMonitor.addMonitor(STATUS_NAME, new AMonitor() {
+					public String getStatus(String propertyName) {
+						return propertyName == STATUS_NAME ? getDispatcherStatus()
+								: null;
+					}
+				});
+			}
+		}
+	}
+
+	private static String getDispatcherStatus() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("--- Message Dispatchers ---");
+		Iterator<MessageDispatcher> iterator = dispatchers.iterator();
+		if (!iterator.hasNext()) {
+			sb.append("\n<no running dispatchers>");
+		}
+		while (iterator.hasNext()) {
+			MessageDispatcher dispatcher = iterator.next();
+			Mailbox mailbox = dispatcher.mailbox;
+			sb.append('\n').append(dispatcher.getName()).append(':')
+					.append("\n  Queue Depth:\t").append(mailbox.getDepth())
+					.append(" (max ").append(mailbox.getMaxDepth()).append(')')
+					.append("\n  Delivered:\t").append(mailbox.getTaken())
+					.append(" in ").append(mailbox.getBatches())
+					.append(" batches").append("\n  Queue Latency:\t")
+					.append(mailbox.getAverageLatency() / 1000)
+					.append(" us avg, ").append(mailbox.getMaxLatency() / 1000)
+					.append(" us max");
+		}
+		return sb.toString();
+	}
 
-		public static final int MESSAGE = 0;
-		public static final int TIMECALL = 1;
-		public static final int UNBLOCK = 2;
+	// -------------------------------------------------------------------
+	// Data container for event delivery
+	// -------------------------------------------------------------------
 
-		private final int flag;
+	private static class Envelope extends Mailbox.Node {
 
-		private final SimulationAgent senderAgent;
+		public static final int MESSAGE = 0;
+		public static final int ROLE_MESSAGE = 1;
+		public static final int TIMECALL = 2;
+		public static final int UNBLOCK = 3;
+		public static final int RECOVER = 4;
+		public static final int RUNNABLE = 5;
+		public static final int PREPARE_STOP = 6;
+		public static final int STOP = 7;
+
+		private final int type;
+
+		private Message message;
+		private SimulationAgent agent;
 		private int role;
 		private Transportable content;
-
+		private Runnable target;
 		private int timeUnit;
 
-		public Delivery(SimulationAgent senderAgent, int role,
+		public Envelope(Message message) {
+			this.type = MESSAGE;
+			this.message = message;
+		}
+
+		public Envelope(SimulationAgent senderAgent, int role,
 				Transportable content) {
-			this.flag = MESSAGE;
-			this.senderAgent = senderAgent;
+			this.type = ROLE_MESSAGE;
+			this.agent = senderAgent;
 			this.role = role;
 			this.content = content;
 		}
 
-		public Delivery(int flag, SimulationAgent agent) {
-			this.flag = flag;
-			this.senderAgent = agent;
+		public Envelope(int type, SimulationAgent agent) {
+			this.type = type;
+			this.agent = agent;
 		}
 
-		public Delivery(int flag, int timeUnit) {
-			this.flag = flag;
-			this.senderAgent = null;
+		public Envelope(int type, int timeUnit) {
+			this.type = type;
 			this.timeUnit = timeUnit;
 		}
 
+		public Envelope(Runnable target) {
+			this.type = RUNNABLE;
+			this.target = target;
+		}
+
+		public Envelope(int type) {
+			this.type = type;
+		}
+
 		public void perform(MessageDispatcher dispatcher) {
-			switch (flag) {
+			switch (type) {
 			case MESSAGE:
-				if (senderAgent == null) {
+				dispatcher.deliverMessage(message);
+				break;
+			case ROLE_MESSAGE:
+				if (agent == null) {
 					dispatcher.deliverMessageToRole(role, content);
 				} else {
-					dispatcher.deliverMessageToRole(senderAgent, role, content);
+					dispatcher.deliverMessageToRole(agent, role, content);
 				}
 				break;
 			case TIMECALL:
 				dispatcher.nextTimeUnit(timeUnit);
 				break;
 			case UNBLOCK:
-				if (senderAgent != null) {
-					senderAgent.setBlocked(false);
+				if (agent != null) {
+					agent.setBlocked(false);
 				}
 				break;
+			case RECOVER:
+				dispatcher.simulation.callRecoverAgent(agent);
+				break;
+			case RUNNABLE:
+				dispatcher.call(target);
+				break;
+			case PREPARE_STOP:
+				dispatcher.simulation.prepareStop();
+				break;
+			case STOP:
+				dispatcher.stopSimulation();
+				break;
+			default:
+				log.severe("*** unknown delivery type: " + type);
+				break;
 			}
 		}
 	}
@@ -71,7 +71,7 @@ public abstract class Simulation {
 
 	private Random random = new Random();
 
-	private Admin admin;
+	private SimulationHost admin;
 	private ConfigManager config;
 	public SimulationInfo info;
 	private EventWriter rootEventWriter;
@@ -98,6 +98,12 @@ public abstract class Simulation {
 	private Timer timer;
 	private TimerTask tickTask;
 
+	/**
+	 * The ticker in event driven mode, or null if the ticks are paced at a
+	 * fixed rate.
+	 */
+	private volatile EventDrivenTicker ticker;
+
 	private SimulationAgent[] agentsToRecover;
 	private boolean hasAgentsToRecover = false;
 
@@ -111,8 +117,8 @@ public abstract class Simulation {
 		this.config = config;
 	}
 
-	final void init(Admin admin, SimulationInfo info, String logFileName,
-			ThreadPool simulationThreadPool) {
+	final void init(SimulationHost admin, SimulationInfo info,
+			String logFileName, ThreadPool simulationThreadPool) {
 		this.admin = admin;
 		this.info = info;
 		this.logFileName = logFileName;
@@ -126,6 +132,13 @@ public abstract class Simulation {
 				+ info.getSimulationID());
 	}
 
+	/**
+	 * Called on the message dispatcher thread before it delivers any message
+	 * or time unit, e.g. to bind thread local state of the simulation to it.
+	 */
+	protected void dispatcherStarted() {
+	}
+
 	// Called by the admin when it is time to setup the simulation
 	final void setup() throws IllegalConfigurationException {
 		if (runtimeStatus == INIT_STATUS) {
@@ -267,15 +280,7 @@ public abstract class Simulation {
 			log.fine("Simulation " + info.getSimulationID()
 					+ " is being stopped");
 
-			if (tickTask != null) {
-				tickTask.cancel();
-				tickTask = null;
-			}
-
-			if (timer != null) {
-				timer.cancel();
-				timer = null;
-			}
+			cancelTickTimer();
 
 			// Stop all agents
 			SimulationAgent[] agents = getAgents();
@@ -383,15 +388,7 @@ public abstract class Simulation {
 
 		// No more ticks and timer events because the simulation is going to
 		// stop
-		if (tickTask != null) {
-			tickTask.cancel();
-			tickTask = null;
-		}
-
-		if (timer != null) {
-			timer.cancel();
-			timer = null;
-		}
+		cancelTickTimer();
 
 		clearTimeListeners();
 		if (runtimeStatus == STARTED_STATUS) {
@@ -445,7 +442,8 @@ public abstract class Simulation {
 				if (logWriter == null) {
 					try {
 						FileOutputStream out = new FileOutputStream(logFileName);
-						logWriter = new LogWriter(rootEventWriter, out);
+						logWriter = new LogWriter(rootEventWriter, out, config
+								.getPropertyAsBoolean("simlog.indexed", true));
 						// Use the log writer as the default event writer
 						eventWriter = logWriter;
 					} catch (Exception e) {
@@ -630,6 +628,82 @@ public abstract class Simulation {
 		dispatcher.callNextTimeUnit(timeUnit);
 	}
 
+	/**
+	 * Starts event driven ticks: the first time unit starts at the specified
+	 * server time and every following time unit starts as soon as the
+	 * simulation calls {@link #requestNextTimeUnit(int)}, but at most
+	 * <code>maxMillisPerTimeUnit</code> milliseconds after the start of the
+	 * previous time unit.
+	 * 
+	 * @param startServerTime
+	 *            the server time of the first time unit
+	 * @param maxMillisPerTimeUnit
+	 *            the maximal length of a time unit in milliseconds
+	 */
+	protected void startEventDrivenTicks(long startServerTime,
+			int maxMillisPerTimeUnit) {
+		if (runtimeStatus == STOPPED_STATUS) {
+			throw new IllegalStateException("simulation has ended");
+		}
+		if (this.timer != null || this.ticker != null) {
+			throw new IllegalStateException("timer already started");
+		}
+
+		EventDrivenTicker ticker = new EventDrivenTicker(maxMillisPerTimeUnit) {
+			protected void tick(int timeUnit) {
+				log.finest("***** START OF TIME " + timeUnit
+						+ " REQUESTED *****");
+				dispatcher.callNextTimeUnit(timeUnit);
+			}
+		};
+		this.ticker = ticker;
+		// Must handle the difference between the server time and the system
+		// time
+		long startTime = startServerTime - admin.getTimeDiff();
+		ticker.start(startTime - System.currentTimeMillis());
+	}
+
+	/**
+	 * Requests the time unit following the specified one to start now, e.g.
+	 * because all agents have acted for the specified time unit. Ignored
+	 * unless ticks are event driven and the specified time unit is the last
+	 * one started, so requests that come too late have no effect.
+	 * 
+	 * @param timeUnit
+	 *            the time unit that has been completed
+	 */
+	protected void requestNextTimeUnit(int timeUnit) {
+		EventDrivenTicker ticker = this.ticker;
+		if (ticker != null) {
+			ticker.request(timeUnit);
+		}
+	}
+
+	/**
+	 * @return true if the time units are event driven and false if they are
+	 *         paced at a fixed rate
+	 */
+	protected boolean isEventDrivenTicks() {
+		return ticker != null;
+	}
+
+	private void cancelTickTimer() {
+		if (tickTask != null) {
+			tickTask.cancel();
+			tickTask = null;
+		}
+
+		if (timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+
+		EventDrivenTicker ticker = this.ticker;
+		if (ticker != null) {
+			ticker.stop();
+		}
+	}
+
 	protected TimeListener[] getTimeListeners() {
 		return timeListeners;
 	}
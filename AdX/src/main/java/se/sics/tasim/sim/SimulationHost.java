@@ -0,0 +1,66 @@
+/**
+ * TAC Supply Chain Management Simulator
+ * http://www.sics.se/tac/    tac-dev@sics.se
+ *
+ * Copyright (c) 2001-2005 SICS AB. All rights reserved.
+ *
+ * SICS grants you the right to use, modify, and redistribute this
+ * software for noncommercial purposes, on the conditions that you:
+ * (1) retain the original headers, including the copyright notice and
+ * this text, (2) clearly document the difference between any derived
+ * software and the original, and (3) acknowledge your use of this
+ * software in pertaining publications and reports.  SICS provides
+ * this software "as is", without any warranty of any kind.  IN NO
+ * EVENT SHALL SICS BE LIABLE FOR ANY DIRECT, SPECIAL OR INDIRECT,
+ * PUNITIVE, INCIDENTAL OR CONSEQUENTIAL LOSSES OR DAMAGES ARISING OUT
+ * OF THE USE OF THE SOFTWARE.
+ *
+ * -----------------------------------------------------------------
+ *
+ * SimulationHost
+ *
+ * Purpose : The services a running simulation needs from its environment,
+ *           i.e. the server admin or an in-process runner.
+ *
+ */
+package se.sics.tasim.sim;
+
+import se.sics.isl.util.ConfigManager;
+import se.sics.tasim.aw.Message;
+import se.sics.tasim.is.EventWriter;
+import se.sics.tasim.is.SimulationInfo;
+
+public abstract class SimulationHost {
+
+	public abstract ConfigManager getConfig();
+
+	public abstract String getServerName();
+
+	public abstract EventWriter getEventWriter();
+
+	public abstract long getServerTime();
+
+	/** Difference between the server time and the system time */
+	abstract long getTimeDiff();
+
+	public abstract String getUserName(int userID);
+
+	/**
+	 * Returns the channel of a connected external agent or <code>null</code>
+	 * if no such agent is connected.
+	 */
+	abstract AgentChannel getAgentChannel(int userID);
+
+	/** Called when a builtin agent has joined the simulation */
+	abstract void simulationJoined(SimulationInfo info, int userID, int role);
+
+	/** Called by the simulation message dispatcher for messages to admin */
+	abstract void messageReceived(Simulation simulation, Message message);
+
+	/**
+	 * Called by the simulation message dispatcher when its time for the
+	 * simulations final stopping
+	 */
+	abstract void stopSimulation(Simulation simulation);
+
+} // SimulationHost
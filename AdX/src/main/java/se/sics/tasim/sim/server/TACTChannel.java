@@ -28,12 +28,15 @@ package se.sics.tasim.sim.server;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.text.ParseException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.botbox.util.ThreadPool;
 import se.sics.isl.tact.TACTConnection;
+import se.sics.isl.tact.TACTReactor;
 import se.sics.isl.transport.BinaryTransportReader;
 import se.sics.isl.transport.BinaryTransportWriter;
 import se.sics.isl.transport.Context;
@@ -56,7 +59,7 @@ final class TACTChannel extends AgentChannel {
 	private static int channelCounter = 0;
 
 	private BinaryTransportReader reader = new BinaryTransportReader();
-	private BinaryTransportWriter writer = new BinaryTransportWriter();
+	private final BinaryTransportWriter writer;
 
 	private final TACTGateway gateway;
 	private final TACTConnection connection;
@@ -66,25 +69,24 @@ final class TACTChannel extends AgentChannel {
 
 	TACTChannel(TACTGateway gateway, Socket socket) throws IOException {
 		this.gateway = gateway;
+		this.writer = new BinaryTransportWriter(gateway.getAliasTable());
 		reader.setContext(gateway.getContext());
 
-		this.connection = new TACTConnection(gateway.getName() + '-'
-				+ (++channelCounter), socket) {
-
-			protected void connectionOpened() {
-			}
-
-			protected void connectionClosed() {
-				TACTChannel.this.gateway
-						.removeAgentConnection(TACTChannel.this);
-				TACTChannel.this.close();
-			}
+		this.connection = new Connection(gateway.getName() + '-'
+				+ (++channelCounter), socket);
+		this.connection.setThreadPool(gateway.getThreadPool());
+		this.connection.start();
+		gateway.addAgentConnection(this);
+	}
 
-			protected void dataRead(byte[] buffer, int offset, int length) {
-				TACTChannel.this.dataRead(buffer, offset, length);
-			}
+	TACTChannel(TACTGateway gateway, SocketChannel channel,
+			TACTReactor reactor) throws IOException {
+		this.gateway = gateway;
+		this.writer = new BinaryTransportWriter(gateway.getAliasTable());
+		reader.setContext(gateway.getContext());
 
-		};
+		this.connection = new Connection(gateway.getName() + '-'
+				+ (++channelCounter), channel, reactor);
 		this.connection.setThreadPool(gateway.getThreadPool());
 		this.connection.start();
 		gateway.addAgentConnection(this);
@@ -149,12 +151,11 @@ final class TACTChannel extends AgentChannel {
 
 	public void deliverToAgent(Message message) {
 		if (!connection.isClosed()) {
-			byte[] messageData = getBytes(message);
-			connection.write(messageData);
+			connection.write(getBytes(message));
 		}
 	}
 
-	private synchronized byte[] getBytes(Message message) {
+	private synchronized byte[][] getBytes(Message message) {
 		// Must send the current content in the writer and clear
 		// afterwards because the writer may contain pending constants
 		String node = message.getTransportName();
@@ -163,7 +164,8 @@ final class TACTChannel extends AgentChannel {
 		writer.endNode(node);
 		writer.finish();
 
-		byte[] data = writer.getBytes();
+		// Content shared with other channels is not copied
+		byte[][] data = writer.getByteParts();
 		writer.clear();
 		return data;
 	}
@@ -172,8 +174,8 @@ final class TACTChannel extends AgentChannel {
 	// Message handling
 	// -------------------------------------------------------------------
 
-	private void dataRead(byte[] buffer, int offset, int length) {
-		reader.setMessage(buffer, offset, length);
+	private void dataRead(ByteBuffer data) {
+		reader.setMessage(data);
 
 		Message message;
 		while ((message = parseMessage(reader)) != null) {
@@ -304,4 +306,36 @@ final class TACTChannel extends AgentChannel {
 		}
 	}
 
+	// -------------------------------------------------------------------
+	// Connection to the agent
+	// -------------------------------------------------------------------
+
+	private class Connection extends TACTConnection {
+
+		Connection(String name, Socket socket) {
+			super(name, socket);
+		}
+
+		Connection(String name, SocketChannel channel, TACTReactor reactor) {
+			super(name, channel, reactor);
+		}
+
+		protected void connectionOpened() {
+		}
+
+		protected void connectionClosed() {
+			gateway.removeAgentConnection(TACTChannel.this);
+			TACTChannel.this.close();
+		}
+
+		protected void dataRead(byte[] buffer, int offset, int length) {
+			TACTChannel.this.dataRead(ByteBuffer.wrap(buffer, offset, length));
+		}
+
+		protected void dataRead(ByteBuffer data) {
+			TACTChannel.this.dataRead(data);
+		}
+
+	}
+
 } // TACTChannel
@@ -28,11 +28,14 @@ package se.sics.tasim.sim.server;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.logging.Logger;
 
 import com.botbox.util.ArrayUtils;
 import com.botbox.util.ThreadPool;
 import se.sics.isl.inet.InetServer;
+import se.sics.isl.tact.TACTReactor;
+import se.sics.isl.transport.AliasTable;
 import se.sics.isl.transport.Context;
 import se.sics.isl.transport.ContextFactory;
 import se.sics.isl.util.AMonitor;
@@ -51,7 +54,13 @@ public class TACTGateway extends Gateway implements AMonitor {
 	private static final String STATUS_NAME = "TACT";
 
 	private Context transportContext;
+	// Aliases of all channels, which makes content sent to several agents
+	// encodable once
+	private final AliasTable aliasTable = new AliasTable();
 	private ThreadPool threadPool;
+	// Serves the agent connections with non-blocking I/O or null if each
+	// connection has its own reader thread
+	private TACTReactor reactor;
 	private TACTServer server;
 	private TACTChannel[] agentConnections;
 	private boolean isRunning = true;
@@ -116,6 +125,12 @@ public class TACTGateway extends Gateway implements AMonitor {
 		this.threadPool.setMaxIdleThreads(maxIdleThreads);
 		this.threadPool.setInterruptThreadsAfter(120000);
 
+		int selectorThreads = config.getPropertyAsInt(CONF + name
+				+ ".selectorThreads", 2);
+		if (selectorThreads > 0) {
+			this.reactor = new TACTReactor(name, selectorThreads);
+		}
+
 		server = new TACTServer(this, "tact", host, port);
 		server.start();
 		log.info("TACT Server started at " + server.getBindAddress());
@@ -145,6 +160,12 @@ public class TACTGateway extends Gateway implements AMonitor {
 				connections[i].close();
 			}
 		}
+
+		TACTReactor reactor = this.reactor;
+		if (reactor != null) {
+			this.reactor = null;
+			reactor.shutdown();
+		}
 	}
 
 	// -------------------------------------------------------------------
@@ -188,6 +209,10 @@ public class TACTGateway extends Gateway implements AMonitor {
 		return transportContext;
 	}
 
+	final AliasTable getAliasTable() {
+		return aliasTable;
+	}
+
 	final void loginAgentChannel(TACTChannel channel, String name,
 			String password) {
 		super.loginAgentChannel(channel, name, password);
@@ -229,6 +254,16 @@ public class TACTGateway extends Gateway implements AMonitor {
 		protected void newConnection(Socket socket) throws IOException {
 			new TACTChannel(gateway, socket);
 		}
+
+		protected void newConnection(SocketChannel channel)
+				throws IOException {
+			TACTReactor reactor = gateway.reactor;
+			if (reactor == null) {
+				super.newConnection(channel);
+			} else {
+				new TACTChannel(gateway, channel, reactor);
+			}
+		}
 	}
 
 } // TACTGateway
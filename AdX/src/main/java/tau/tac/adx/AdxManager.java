@@ -18,6 +18,17 @@ import tau.tac.adx.sim.TACAdxSimulation;
 import com.google.common.eventbus.Subscribe;
 
 /**
+ * Per-simulation registry of publishers, campaigns and bidders.
+ * <p>
+ * {@link #getInstance()} returns the manager of the simulation the calling
+ * thread belongs to: a thread that calls {@link #createContext()} before
+ * creating a simulation gets a manager of its own. Contexts are not inherited
+ * by started threads; each thread working for a simulation, e.g. its message
+ * dispatcher, auction pipeline lanes and user activity shards, binds the
+ * simulation's manager with {@link #setContext(AdxManager)} before handling
+ * its tasks. Threads without a context share a single default manager, which
+ * is what a server running one simulation at a time uses.
+ * 
  * @author greenwald
  * 
  */
@@ -31,7 +42,8 @@ public final class AdxManager {
 	private final Map<Integer, Campaign> campaignMap = new HashMap<Integer, Campaign>();
 	private final Map<String, Bidder> bidderMap = new HashMap<String, Bidder>();
 	private TACAdxSimulation simulation;
-	private static AdxManager instance;
+	private static final AdxManager defaultInstance = new AdxManager();
+	private static final ThreadLocal<AdxManager> context = new ThreadLocal<AdxManager>();
 	private UserClassificationService userClassificationService;
 
 	/**
@@ -63,11 +75,52 @@ public final class AdxManager {
 	private AdxManager() {
 	}
 
+	/**
+	 * @return The {@link AdxManager} of the calling thread's context, or the
+	 *         default manager if the thread has no context.
+	 */
 	public static AdxManager getInstance() {
-		if (instance == null) {
-			instance = new AdxManager();
+		AdxManager manager = context.get();
+		return manager != null ? manager : defaultInstance;
+	}
+
+	/**
+	 * Binds a new {@link AdxManager} to the calling thread. Must be called
+	 * before the simulation using it is created.
+	 * 
+	 * @return The new {@link AdxManager}.
+	 */
+	public static AdxManager createContext() {
+		AdxManager manager = new AdxManager();
+		context.set(manager);
+		return manager;
+	}
+
+	/**
+	 * Binds an existing {@link AdxManager} to the calling thread, e.g. a
+	 * worker thread about to handle a task of a simulation.
+	 * 
+	 * @param manager
+	 *            The {@link AdxManager} to bind, or <code>null</code> to
+	 *            unbind the calling thread.
+	 * @return The {@link AdxManager} previously bound to the calling thread,
+	 *         or <code>null</code> if it had no context.
+	 */
+	public static AdxManager setContext(AdxManager manager) {
+		AdxManager previous = context.get();
+		if (manager == null) {
+			context.remove();
+		} else {
+			context.set(manager);
 		}
-		return instance;
+		return previous;
+	}
+
+	/**
+	 * Unbinds the calling thread from its context, if any.
+	 */
+	public static void clearContext() {
+		context.remove();
 	}
 
 	public void setup() {
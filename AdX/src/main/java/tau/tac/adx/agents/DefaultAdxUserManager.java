@@ -24,22 +24,38 @@
  */
 package tau.tac.adx.agents;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
+import se.sics.isl.util.MemoryTelemetry;
 import se.sics.tasim.aw.Message;
 import tau.tac.adx.AdxManager;
 import tau.tac.adx.auction.AdxAuctionResult;
+import tau.tac.adx.messages.AdNetworkReportsAccumulated;
 import tau.tac.adx.messages.AuctionMessage;
+import tau.tac.adx.messages.AuctionMessagePipeline;
 import tau.tac.adx.props.AdxQuery;
 import tau.tac.adx.props.PublisherCatalog;
 import tau.tac.adx.publishers.AdxPublisher;
+import tau.tac.adx.report.adn.AdNetworkReportAccumulator;
 import tau.tac.adx.sim.AdxAuctioneer;
+import tau.tac.adx.sim.TACAdxSimulation;
 import tau.tac.adx.users.AdxUser;
 import tau.tac.adx.users.AdxUserManager;
 import tau.tac.adx.users.AdxUserQueryManager;
+import tau.tac.adx.util.RandomStream;
 
 import com.google.common.eventbus.EventBus;
 
@@ -57,15 +73,68 @@ public class DefaultAdxUserManager implements AdxUserManager {
 
 	private final List<AdxUser> users;
 
-	private final Random random;
+	private final RandomStream random;
 
 	private final PublisherCatalog publisherCatalog;
 
 	private final AdxUserQueryManager queryManager;
-	
+
+	/**
+	 * Shards the daily user population is partitioned into. A single shard
+	 * means the users are handled serially on the calling thread.
+	 */
+	private final UserActivityShard[] shards;
+
+	/**
+	 * Maximal number of users each shard handles between two merges of the
+	 * shards' auction results.
+	 */
+	private final int shardRoundSize;
+
+	/**
+	 * Pool running the shards, created on first use.
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * Creates a user manager that handles the daily user activity in
+	 * <code>shardCount</code> parallel shards. Each shard samples queries,
+	 * bids and auctions with its own random number generator derived from
+	 * <code>seed</code>, so for a fixed seed and shard count the sequence of
+	 * posted {@link AuctionMessage}s is reproducible.
+	 * 
+	 * @param publisherCatalog
+	 *            {@link PublisherCatalog}.
+	 * @param users
+	 *            User population.
+	 * @param queryManager
+	 *            {@link AdxUserQueryManager}.
+	 * @param populationSize
+	 *            Population size.
+	 * @param eventBus
+	 *            {@link EventBus}.
+	 * @param shardCount
+	 *            Number of shards the users are partitioned into.
+	 * @param shardRoundSize
+	 *            Maximal number of users each shard handles before the
+	 *            shards' results are merged and posted, so that campaign
+	 *            limits reached during a round take effect in the next one.
+	 * @param seed
+	 *            Seed for the manager's and the shards' random number
+	 *            generators.
+	 */
 	public DefaultAdxUserManager(PublisherCatalog publisherCatalog,
 			List<AdxUser> users, AdxUserQueryManager queryManager,
-			int populationSize, EventBus eventBus) {
+			int populationSize, EventBus eventBus, int shardCount,
+			int shardRoundSize, long seed) {
+		this(publisherCatalog, users, queryManager, populationSize, eventBus,
+				shardCount, shardRoundSize, new RandomStream(seed));
+	}
+
+	private DefaultAdxUserManager(PublisherCatalog publisherCatalog,
+			List<AdxUser> users, AdxUserQueryManager queryManager,
+			int populationSize, EventBus eventBus, int shardCount,
+			int shardRoundSize, RandomStream random) {
 		lock = new Object();
 
 		if (publisherCatalog == null) {
@@ -89,10 +158,25 @@ public class DefaultAdxUserManager implements AdxUserManager {
 			throw new NullPointerException("Event bus cannot be null");
 		}
 
+		if (shardCount < 1) {
+			throw new IllegalArgumentException(
+					"Shard count must be positive");
+		}
+
+		if (shardRoundSize < 1) {
+			throw new IllegalArgumentException(
+					"Shard round size must be positive");
+		}
+
 		this.publisherCatalog = publisherCatalog;
-		this.random = new Random();
 		this.queryManager = queryManager;
 		this.users = users;
+		this.shardRoundSize = shardRoundSize;
+		this.shards = new UserActivityShard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new UserActivityShard(random.split());
+		}
+		this.random = random;
 	}
 
 	@Override
@@ -120,8 +204,12 @@ public class DefaultAdxUserManager implements AdxUserManager {
 			//FIXME: remove debugging code
 			log.fine("##################################### S-Invoking users activity");
 			pre = System.currentTimeMillis();
-			for (AdxUser user : users) {
-                handleUserActivity(user, auctioneer);
+			if (shards.length == 1) {
+				for (AdxUser user : users) {
+					handleUserActivity(user, auctioneer);
+				}
+			} else {
+				handleShardedUserActivity(auctioneer);
 			}
 			post = System.currentTimeMillis();
 			log.fine("##################################### E-Invoking users activity - total time in millis: " +(post - pre));
@@ -162,12 +250,222 @@ public class DefaultAdxUserManager implements AdxUserManager {
 
 		if (query != null) {
 			AdxAuctionResult auctionResult = auctioneer.runAuction(query);
-			AdxManager.getInstance().getSimulation().getEventBus().post(new AuctionMessage(auctionResult, query, user));
+			post(new AuctionMessage(auctionResult, query, user));
 		} else {
 			log.severe("Could not generate query for user - " + user);
 		}
 	}
 
+	/**
+	 * Partitions the users into contiguous slices, one per shard, and runs the
+	 * shards in bulk-synchronous rounds. After each round the auction results
+	 * buffered by the shards are posted in shard order, which keeps the
+	 * sequence of events independent of thread scheduling. The shards record
+	 * the ad network reports themselves; their accumulators are merged, in
+	 * shard order, at the end of the day.
+	 * 
+	 * @param auctioneer
+	 *            {@link AdxAuctioneer}.
+	 */
+	private void handleShardedUserActivity(AdxAuctioneer auctioneer) {
+		int size = users.size();
+		for (int i = 0; i < shards.length; i++) {
+			int from = (int) ((long) size * i / shards.length);
+			int to = (int) ((long) size * (i + 1) / shards.length);
+			shards[i].assign(users.subList(from, to), auctioneer,
+					AdxManager.getInstance());
+		}
+
+		List<UserActivityShard> pending = new ArrayList<UserActivityShard>(
+				shards.length);
+		do {
+			pending.clear();
+			for (UserActivityShard shard : shards) {
+				if (shard.hasRemaining()) {
+					pending.add(shard);
+				}
+			}
+			if (pending.isEmpty()) {
+				break;
+			}
+
+			for (Future<Void> future : getPool().invokeAll(pending)) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+
+			for (UserActivityShard shard : pending) {
+				shard.postResults();
+			}
+		} while (true);
+
+		Map<String, AdNetworkReportAccumulator> reports = new HashMap<String, AdNetworkReportAccumulator>();
+		for (UserActivityShard shard : shards) {
+			for (Entry<String, AdNetworkReportAccumulator> entry : shard.reports
+					.entrySet()) {
+				AdNetworkReportAccumulator report = reports.get(entry.getKey());
+				if (report == null) {
+					reports.put(entry.getKey(), entry.getValue());
+				} else {
+					report.merge(entry.getValue());
+				}
+			}
+			shard.assign(null, null, null);
+		}
+		AdxManager.getInstance().getSimulation().getEventBus()
+				.post(new AdNetworkReportsAccumulated(reports));
+	}
+
+	private synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			TACAdxSimulation simulation = AdxManager.getInstance()
+					.getSimulation();
+			final MemoryTelemetry telemetry = simulation == null ? null
+					: simulation.getMemoryTelemetry();
+			// The allocations of the shards are recorded with those of the
+			// simulation thread
+			pool = new ForkJoinPool(Math.min(shards.length, Runtime
+					.getRuntime().availableProcessors()),
+					new ForkJoinWorkerThreadFactory() {
+						@Override
+						public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+							ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+									.newThread(pool);
+							if (telemetry != null) {
+								telemetry.addThread(thread);
+							}
+							return thread;
+						}
+					}, null, false);
+		}
+		return pool;
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * A slice of the daily user population handled by a single worker. Each
+	 * shard owns its random number generator and its day's
+	 * {@link AdNetworkReportAccumulator}s, and buffers its
+	 * {@link AuctionMessage}s until the end of the current round.
+	 */
+	private class UserActivityShard implements Callable<Void> {
+
+		private final Random random;
+
+		private final List<AuctionMessage> results = new ArrayList<AuctionMessage>();
+
+		/**
+		 * The day's {@link AdNetworkReportAccumulator}s by ad network name.
+		 */
+		private Map<String, AdNetworkReportAccumulator> reports = new HashMap<String, AdNetworkReportAccumulator>();
+
+		private List<AdxUser> users;
+
+		private AdxAuctioneer auctioneer;
+
+		/**
+		 * Context of the simulation, bound to the worker running the shard.
+		 */
+		private AdxManager manager;
+
+		private int cursor;
+
+		public UserActivityShard(Random random) {
+			this.random = random;
+		}
+
+		public void assign(List<AdxUser> users, AdxAuctioneer auctioneer,
+				AdxManager manager) {
+			this.users = users;
+			this.auctioneer = auctioneer;
+			this.manager = manager;
+			this.cursor = 0;
+			this.results.clear();
+			if (!reports.isEmpty()) {
+				// The merged accumulators are handed over to the report manager
+				reports = new HashMap<String, AdNetworkReportAccumulator>();
+			}
+		}
+
+		public boolean hasRemaining() {
+			return users != null && cursor < users.size();
+		}
+
+		@Override
+		public Void call() {
+			AdxManager previous = AdxManager.setContext(manager);
+			try {
+				runRound();
+			} finally {
+				AdxManager.setContext(previous);
+			}
+			return null;
+		}
+
+		private void runRound() {
+			int end = Math.min(users.size(), cursor + shardRoundSize);
+			for (; cursor < end; cursor++) {
+				AdxUser user = users.get(cursor);
+				int times = 0;
+				do {
+					times++;
+					AdxQuery query = queryManager.generateQuery(user, random);
+					if (query != null) {
+						AdxAuctionResult auctionResult = auctioneer.runAuction(
+								query, random);
+						AuctionMessage message = new AuctionMessage(
+								auctionResult, query, user, true);
+						AdNetworkReportAccumulator.addAuction(reports, message);
+						results.add(message);
+					} else {
+						log.severe("Could not generate query for user - "
+								+ user);
+					}
+				} while (user.getpContinue() > random.nextDouble()
+						&& times < MAX_USER_DAILY_IMPRESSION);
+			}
+		}
+
+		public void postResults() {
+			for (AuctionMessage message : results) {
+				post(message);
+			}
+			results.clear();
+		}
+	}
+
+	/**
+	 * Posts an {@link AuctionMessage} through the simulation's
+	 * {@link AuctionMessagePipeline}, or directly to its {@link EventBus} if
+	 * there is none.
+	 * 
+	 * @param message
+	 *            {@link AuctionMessage} to post.
+	 */
+	private void post(AuctionMessage message) {
+		TACAdxSimulation simulation = AdxManager.getInstance().getSimulation();
+		AuctionMessagePipeline pipeline = simulation
+				.getAuctionMessagePipeline();
+		if (pipeline != null) {
+			pipeline.post(message);
+		} else {
+			simulation.getEventBus().post(message);
+		}
+	}
+
 	private AdxQuery generateQuery(AdxUser user) {
 		return queryManager.generateQuery(user);
 	}
@@ -24,12 +24,14 @@
  */
 package tau.tac.adx.agents;
 
+import se.sics.isl.util.MemoryTelemetry;
 import se.sics.tasim.aw.Message;
 import tau.tac.adx.AdxManager;
 import tau.tac.adx.agents.behaviors.DefaultAdxUsersBehavior;
 import tau.tac.adx.auction.AdxBidBundleWriter;
 import tau.tac.adx.props.AdxBidBundle;
 import tau.tac.adx.sim.AdxUsers;
+import tau.tac.adx.sim.TACAdxSimulation;
 import tau.tac.adx.sim.TACAdxConstants;
 import tau.tac.adx.users.AdxUsersBehavior;
 import edu.umich.eecs.tac.user.UsersBehavior;
@@ -56,10 +58,31 @@ public class DefaultAdxUsers extends AdxUsers {
 
 	@Override
 	public void nextTimeUnit(int date) {
+		TACAdxSimulation simulation = getSimulation();
+		MemoryTelemetry telemetry = simulation == null ? null : simulation
+				.getMemoryTelemetry();
 		if (date > 0) {
-			sendReportsToAll();
+			if (telemetry != null) {
+				telemetry.startPhase(TACAdxSimulation.PHASE_REPORTS);
+			}
+			try {
+				sendReportsToAll();
+			} finally {
+				if (telemetry != null) {
+					telemetry.endPhase(TACAdxSimulation.PHASE_REPORTS);
+				}
+			}
+		}
+		if (telemetry != null) {
+			telemetry.startPhase(TACAdxSimulation.PHASE_USER_ACTIVITY);
+		}
+		try {
+			usersBehavior.nextTimeUnit(date);
+		} finally {
+			if (telemetry != null) {
+				telemetry.endPhase(TACAdxSimulation.PHASE_USER_ACTIVITY);
+			}
 		}
-		usersBehavior.nextTimeUnit(date);
 	}
 
 	public void preNextTimeUnit(@SuppressWarnings("unused") int date) {
@@ -2,6 +2,7 @@
  */
 package tau.tac.adx.agents;
 
+import java.util.Collections;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.Level;
@@ -12,7 +13,10 @@ import se.sics.tasim.aw.Message;
 import tau.tac.adx.AdxManager;
 import tau.tac.adx.auction.data.AuctionState;
 import tau.tac.adx.demand.Campaign;
+import tau.tac.adx.demand.CampaignAuctioneer;
 import tau.tac.adx.demand.CampaignImpl;
+import tau.tac.adx.demand.CampaignLedger;
+import tau.tac.adx.demand.CampaignRegistry;
 import tau.tac.adx.demand.QualityManager;
 import tau.tac.adx.demand.QualityManagerImpl;
 import tau.tac.adx.demand.UserClassificationService;
@@ -33,6 +37,7 @@ import tau.tac.adx.sim.TACAdxConstants;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.DeadEvent;
 import com.google.common.eventbus.Subscribe;
 
@@ -43,41 +48,45 @@ import com.google.common.eventbus.Subscribe;
  */
 public class DemandAgent extends Builtin {
 
-	private int day;
+	private volatile int day;
 
 	private static final int TOTAL_POPULATION_DEFAULT = 10000;
 	private static final double CMP_VC_DEFAULT = 2.0;
-	private static double   cmp_vc;
+	private double   cmp_vc;
 
 	private static final double CMP_MC_DEFAULT = 1.5;
-	private static double   cmp_mc;
+	private double   cmp_mc;
 
 	private static final double CMP_VC_OFFSET_DEFAULT = 2.0;
-	private static double   cmp_vc_offset;
+	private double   cmp_vc_offset;
 
 	private static final double CMP_MC_OFFSET_DEFAULT = 1.5;
-	private static double   cmp_mc_offset;
+	private double   cmp_mc_offset;
 
 	
-	private static Random random;
+	private Random random;
 
 	private static int[] CMP_LENGTHS_DEFAULT = { 3, 5, 10 };
 	private static int   CMP_LENGTHS_COUNT_DEFAULT = 3;
 	
-	private static int[] cmp_lengths;
-	private static int   cmp_lengths_count;
+	private int[] cmp_lengths;
+	private int   cmp_lengths_count;
 
 	private static Double[] CMP_REACHLEVELS_DEFAULT = { 0.2, 0.5, 0.8 };
 	private static int   CMP_REACHLEVELS_COUNT_DEFAULT = 3;
 	
-	private static Double[] cmp_reachlevels;
-	private static int   cmp_reachlevels_count;
+	private Double[] cmp_reachlevels;
+	private int   cmp_reachlevels_count;
 
 	private Logger log;
 
 	private QualityManager qualityManager;
 	private ListMultimap<String, Campaign> adNetCampaigns;
+	/* allocated campaigns still accepting limit commands */
+	private CampaignRegistry campaignRegistry;
 	private Campaign pendingCampaign;
+	/* clears the day's pending campaigns in one batch */
+	private CampaignAuctioneer campaignAuctioneer;
 
 	private UserClassificationService ucs;
 
@@ -101,6 +110,10 @@ public class DemandAgent extends Builtin {
 
 			for (Campaign campaign : adNetCampaigns.values()) {
 				campaign.preNextTimeUnit(date);
+				if (date > campaign.getDayEnd()) {
+					/* limits no longer apply once the campaign has ended */
+					campaignRegistry.unregister(campaign);
+				}
 			}
 			reportAuctionResutls(day);
 		}
@@ -121,15 +134,13 @@ public class DemandAgent extends Builtin {
 
 		if (lastCmpDay < 60) {
 
-			Set<MarketSegment> target = MarketSegment.randomMarketSegment();
+			Set<MarketSegment> target = MarketSegment.randomMarketSegment(random);
 			int reach = (int) (cmp_reachlevels[random.nextInt(cmp_reachlevels_count)] * MarketSegment.marketSegmentSize(target) * cmplength);
 			
 			pendingCampaign = new CampaignImpl(qualityManager,
 					reach, day + 2, lastCmpDay,
 					target, cmp_vc + cmp_vc_offset*random.nextDouble(),
-					cmp_mc + cmp_mc_offset*random.nextDouble());
-
-			pendingCampaign.registerToEventBus();
+					cmp_mc + cmp_mc_offset*random.nextDouble(), random);
 
 			log.log(Level.INFO,
 					"Day " + day + " :"
@@ -181,13 +192,15 @@ public class DemandAgent extends Builtin {
 			 */
 			if (date >= 2) {
 				CampaignReport report = new CampaignReport();
-				for (Campaign campaign : adNetCampaigns.values()) {
+				for (Campaign campaign : adNetCampaigns.get(advertiser)) {
 					if (campaign.isAllocated()
 							&& (campaign.getDayStart() < date)
 							&& (advertiser.equals(campaign.getAdvertiser()))
 							&& (campaign.shouldReport())) {
 						report.addStatsEntry(campaign.getId(),
-								campaign.getTotals());
+								campaign.getTotalTargetedImps(),
+								campaign.getTotalOtherImps(),
+								campaign.getTotalCost());
 					}
 				}
 				getSimulation().sendCampaignReport(advertiser, report);
@@ -221,13 +234,15 @@ public class DemandAgent extends Builtin {
 		if (pendingCampaign != null) {
 			log.log(Level.INFO, "Day " + day + " : Auction pending campaign: "
 					+ pendingCampaign.logToString());
-			CampaignAuctionReport campaignAuctionReport = pendingCampaign.auction();
+			CampaignAuctionReport campaignAuctionReport = campaignAuctioneer
+					.auction(Collections.singletonList(pendingCampaign)).get(0);
 			if (campaignAuctionReport != null) {
 				getSimulation().sendCampaignAuctionReport(campaignAuctionReport);				
 			}
 			if (pendingCampaign.isAllocated()) {
 				adNetCampaigns.put(pendingCampaign.getAdvertiser(),
 						pendingCampaign);
+				campaignRegistry.register(pendingCampaign);
 
 				/* notify regarding newly allocate campaign */
 				getSimulation().getEventBus().post(
@@ -249,7 +264,7 @@ public class DemandAgent extends Builtin {
 	 */
 	@Override
 	protected void setup() {
-		random = new Random();
+		random = getSimulation().getRandomStream().split("demand");
 		
 		getSimulation().getConfig().getPropertyAsInt(
 				"adxusers.population_size", TOTAL_POPULATION_DEFAULT);
@@ -295,12 +310,19 @@ public class DemandAgent extends Builtin {
 		log.info("setting up...");
 
 		getSimulation().getEventBus().register(this);
+		if (getSimulation().getAuctionMessagePipeline() != null) {
+			getSimulation().getAuctionMessagePipeline().register(this);
+		}
 
 		adNetCampaigns = ArrayListMultimap.create();
 
+		campaignRegistry = new CampaignRegistry();
+		getSimulation().getEventBus().register(campaignRegistry);
+
 		qualityManager = new QualityManagerImpl();
 
-		ucs = new UserClassificationServiceImpl();
+		ucs = new UserClassificationServiceImpl(random);
+		campaignAuctioneer = new CampaignAuctioneer(random);
 		AdxManager.getInstance().setUserClassificationService(ucs);
 
 		log.fine("Finished setup");
@@ -313,7 +335,7 @@ public class DemandAgent extends Builtin {
 		for (String advertiser : getAdxAdvertiserAddresses()) {
 
 			int cmplength = cmp_lengths[1];
-			Set<MarketSegment> target = MarketSegment.randomMarketSegment2();
+			Set<MarketSegment> target = MarketSegment.randomMarketSegment2(random);
 			int reach = (int) (cmp_reachlevels[1] * MarketSegment.marketSegmentSize(target) * cmplength);
 			 
 			qualityManager.addAdvertiser(advertiser);
@@ -321,12 +343,12 @@ public class DemandAgent extends Builtin {
 			Campaign campaign = new CampaignImpl(qualityManager,
 					reach, 1, cmplength,
 					target, cmp_vc + cmp_vc_offset*random.nextDouble(),
-					cmp_mc + cmp_mc_offset*random.nextDouble());
+					cmp_mc + cmp_mc_offset*random.nextDouble(), random);
 
 			campaign.allocateToAdvertiser(advertiser);
 			log.log(Level.FINE,
 					"Allocating initial campaign : " + campaign.logToString());
-			campaign.registerToEventBus();
+			campaignRegistry.register(campaign);
 
 			adNetCampaigns.put(advertiser, campaign);
 
@@ -358,6 +380,8 @@ public class DemandAgent extends Builtin {
 	@Override
 	protected void shutdown() {
 		getSimulation().getEventBus().unregister(this);
+		getSimulation().getEventBus().unregister(campaignRegistry);
+		campaignRegistry.clear();
 	}
 
 	/**
@@ -404,29 +428,35 @@ public class DemandAgent extends Builtin {
 
 	}
 
+	/*
+	 * Called concurrently by the auction threads: campaigns charge their
+	 * impressions through a lock-free ledger, see CampaignLedger
+	 */
 	@Subscribe
-	public synchronized void impressed(AuctionMessage message) {
+	@AllowConcurrentEvents
+	public void impressed(AuctionMessage message) {
 		/* fetch campaign */
 		Campaign cmpn = message.getAuctionResult().getCampaign();
 		AuctionState auctionState = message.getAuctionResult()
 				.getAuctionState();
 		if (auctionState == AuctionState.AUCTION_COPMLETED) {
 
-			boolean impressedWithoutLimit = cmpn.impress(message.getUser(), message.getQuery().getAdType(),
+			CampaignLedger.Charge charge = cmpn.charge(message.getUser(), message.getQuery().getAdType(),
 					message.getQuery().getDevice(), message.getAuctionResult()
 							.getWinningPrice());
 
-			// warn/post to adx only once in a while
-			if (!impressedWithoutLimit) {	
+			// post to adx only once a day, when the limit is reached
+			if (charge.isLimitReached()) {	
 				/* notify on transition campaign limit expiration */
 				CampaignLimitReached event = new CampaignLimitReached(cmpn.getId(), cmpn
 						.getAdvertiser());
 				getSimulation().getEventBus().post(
 						event);
-				log.log(Level.SEVERE,
+				log.log(charge.isCharged() ? Level.INFO : Level.SEVERE,
 						"Day "
 								+ day
-								+ " :Campaign limit expired Impressed while over limit: "
+								+ (charge.isCharged() ? " :Campaign limit reached: "
+										: " :Campaign limit expired Impressed while over limit: ")
 								+ cmpn.getId() + ", daily limit was: "
 								+ cmpn.getImpressionLimit() + ", "
 								+ cmpn.getBudgetlimit() +  " values are: "
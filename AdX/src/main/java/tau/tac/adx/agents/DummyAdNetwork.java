@@ -61,7 +61,7 @@ import edu.umich.eecs.tac.props.Ad;
  * @author Mariano Schain
  */
 
-public class DummyAdNetwork extends Agent {
+public class DummyAdNetwork extends Agent implements SeededAgent {
 
 	private final Logger log = Logger.getLogger(DummyAdNetwork.class.getName());
 
@@ -75,7 +75,8 @@ public class DummyAdNetwork extends Agent {
 	 */
 	private AdxQuery[] queries;
 
-	private Random randomGenerator;
+	/* seeded by the simulation when run as a builtin agent */
+	private Random randomGenerator = new Random();
 	private InitialCampaignMessage initialCampaignMessage;
 	private CampaignOpportunityMessage campaignOpportunityMessage;
 	private CampaignReport campaignReport;
@@ -90,6 +91,14 @@ public class DummyAdNetwork extends Agent {
 	public DummyAdNetwork() {
 	}
 
+	@Override
+	public void setRandom(Random random) {
+		if (random == null) {
+			throw new NullPointerException("random cannot be null");
+		}
+		randomGenerator = random;
+	}
+
 	@Override
 	protected void messageReceived(Message message) {
 		try {
@@ -240,8 +249,6 @@ public class DummyAdNetwork extends Agent {
 
 		myCampaigns = new HashMap<Integer, CampaignData>();
 
-		randomGenerator = new Random();
-
 		// Add the advertiser name to the logger name for convenient
 		// logging. Note: this is usually a bad idea because the logger
 		// objects will never be garbaged but since the dummy names always
@@ -276,8 +283,6 @@ public class DummyAdNetwork extends Agent {
 				 * over the active campaigns)
 				 */
 
-				Random rnd = new Random();
-
 				for (int i = 0; i < queries.length; i++) {
 					Set<MarketSegment> segmentsList = queries[i]
 							.getMarketSegments();
@@ -285,7 +290,8 @@ public class DummyAdNetwork extends Agent {
 					// if (campaign.targetSegment == segmentsList.iterator()
 					// .next())
 					bidBundle.addQuery(queries[i],
-							(1 + rnd.nextLong() % 1000) / 1000.0, new Ad(null),
+							(1 + randomGenerator.nextLong() % 1000) / 1000.0,
+							new Ad(null),
 							campaign.id, 1);
 				}
 
@@ -42,7 +42,7 @@ import edu.umich.eecs.tac.props.BankStatus;
  * @author Mariano Schain
  * 
  */
-public class GreedyLuckyAdNetwork extends Agent {
+public class GreedyLuckyAdNetwork extends Agent implements SeededAgent {
 
 	private final Logger log = Logger.getLogger(GreedyLuckyAdNetwork.class.getName());
 
@@ -102,6 +102,11 @@ public class GreedyLuckyAdNetwork extends Agent {
 
 	private UcsModel ucsModel;
 
+	/*
+	 * Seeded by the simulation when run as a builtin agent
+	 */
+	private Random random = new Random();
+
 	public GreedyLuckyAdNetwork() {
 		demandAgentAddress = null;
 		adxAgentAddress = null;
@@ -115,6 +120,14 @@ public class GreedyLuckyAdNetwork extends Agent {
 		cmpBidMillis = new Double(0.0);
 	}
 
+	@Override
+	public void setRandom(Random random) {
+		if (random == null) {
+			throw new NullPointerException("random cannot be null");
+		}
+		this.random = random;
+	}
+
 	@Override
 	protected void messageReceived(Message message) {
 		try {
@@ -387,8 +400,6 @@ public class GreedyLuckyAdNetwork extends Agent {
 
 		int dayBiddingFor = day + 1;
 
-		Random random = new Random();
-
 		/* A random bid, fixed for all queries of the campaign */
 		/*
 		 * Note: bidding per 1000 imps (CPM) - no more than average budget
@@ -556,8 +567,6 @@ public class GreedyLuckyAdNetwork extends Agent {
 		 * The current bid and targetted percentile for the user classification
 		 * service
 		 */
-		private Random random;
-
 		private double ucsBid;
 		private double ucsBidPercentile;
 
@@ -578,8 +587,6 @@ public class GreedyLuckyAdNetwork extends Agent {
 		private double ucsDelta;
 
 		public UcsModel() {
-			random = new Random();
-
 			ucsLevel = 1.0;
 			ucsCost = 0.0;
 			ucsBidPercentile = 0.8;
@@ -44,7 +44,7 @@ import edu.umich.eecs.tac.props.BankStatus;
  * @author Mariano Schain Test plug-in
  * 
  */
-public class SampleAdNetwork extends Agent {
+public class SampleAdNetwork extends Agent implements SeededAgent {
 
 	private final Logger log = Logger
 			.getLogger(SampleAdNetwork.class.getName());
@@ -116,10 +116,23 @@ public class SampleAdNetwork extends Agent {
 	private String[] publisherNames;
 	private CampaignData currCampaign;
 
+	/*
+	 * Seeded by the simulation when run as a builtin agent
+	 */
+	private Random random = new Random();
+
 	public SampleAdNetwork() {
 		campaignReports = new LinkedList<CampaignReport>();
 	}
 
+	@Override
+	public void setRandom(Random random) {
+		if (random == null) {
+			throw new NullPointerException("random cannot be null");
+		}
+		this.random = random;
+	}
+
 	@Override
 	protected void messageReceived(Message message) {
 		try {
@@ -248,7 +261,6 @@ public class SampleAdNetwork extends Agent {
 		 * (upper bound) price for the auction.
 		 */
 
-		Random random = new Random();
 		long cmpimps = com.getReachImps();
 		long cmpBidMillis = random.nextInt((int) cmpimps);
 
@@ -340,7 +352,6 @@ public class SampleAdNetwork extends Agent {
 
 		int dayBiddingFor = day + 1;
 
-		Random random = new Random();
 
 		/* A random bid, fixed for all queries of the campaign */
 		/*
@@ -462,7 +473,6 @@ public class SampleAdNetwork extends Agent {
 
 	@Override
 	protected void simulationSetup() {
-		Random random = new Random();
 
 		day = 0;
 		bidBundle = new AdxBidBundle();
@@ -0,0 +1,18 @@
+package tau.tac.adx.agents;
+
+import java.util.Random;
+
+/**
+ * An ad network agent whose random choices can be seeded by the simulation.
+ * When run as a builtin agent, the simulation gives it a stream split from
+ * its own seed before the game is set up, so seeded simulations are
+ * reproducible. Agents run by the agentware draw from an unseeded source.
+ */
+public interface SeededAgent {
+
+	/**
+	 * @param random
+	 *            Source of all random choices of the agent.
+	 */
+	void setRandom(Random random);
+}
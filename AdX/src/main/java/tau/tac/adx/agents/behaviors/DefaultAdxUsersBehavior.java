@@ -33,6 +33,8 @@ import se.sics.tasim.aw.Message;
 import tau.tac.adx.AdxManager;
 import tau.tac.adx.auction.AdxBidBundleWriter;
 import tau.tac.adx.auction.manager.AdxBidManager;
+import tau.tac.adx.messages.AuctionMessage;
+import tau.tac.adx.messages.AuctionMessagePipeline;
 import tau.tac.adx.props.AdxBidBundle;
 import tau.tac.adx.report.adn.AdNetworkReportManager;
 import tau.tac.adx.report.adn.AdNetworkReportManagerImpl;
@@ -44,6 +46,7 @@ import tau.tac.adx.sim.AdxAgentRepository;
 import tau.tac.adx.users.AdxUserBehaviorBuilder;
 import tau.tac.adx.users.AdxUserManager;
 import tau.tac.adx.users.AdxUsersBehavior;
+import tau.tac.adx.util.RandomStream;
 import edu.umich.eecs.tac.auction.BidManager;
 import edu.umich.eecs.tac.props.Query;
 import edu.umich.eecs.tac.props.Ranking;
@@ -188,6 +191,27 @@ public class DefaultAdxUsersBehavior implements AdxUsersBehavior {
 			userManager.nextTimeUnit(date);
 			userManager.triggerBehavior(AdxManager.getInstance()
 					.getSimulation().getAuctioneer());
+			awaitAuctionMessages();
+		}
+	}
+
+	/**
+	 * @return The users' stream of the simulation's {@link RandomStream}.
+	 */
+	private Random createRandom() {
+		return AdxManager.getInstance().getSimulation().getRandomStream()
+				.split("users");
+	}
+
+	/**
+	 * End-of-day barrier: waits until the day's {@link AuctionMessage}s have
+	 * been consumed by the report managers and the demand agent.
+	 */
+	private void awaitAuctionMessages() {
+		AuctionMessagePipeline pipeline = AdxManager.getInstance()
+				.getSimulation().getAuctionMessagePipeline();
+		if (pipeline != null) {
+			pipeline.awaitCompletion();
 		}
 	}
 
@@ -205,7 +229,7 @@ public class DefaultAdxUsersBehavior implements AdxUsersBehavior {
 			AdxUserBehaviorBuilder<AdxUserManager> managerBuilder = createBuilder();
 
 			userManager = managerBuilder.build(config, agentRepository,
-					new Random());
+					createRandom());
 
 		} catch (ClassNotFoundException e) {
 			throw new RuntimeException(e);
@@ -253,7 +277,9 @@ public class DefaultAdxUsersBehavior implements AdxUsersBehavior {
 	 */
 	@Override
 	public void stopped() {
-		// no implementation.
+		if (userManager != null) {
+			userManager.shutdown();
+		}
 	}
 
 	/**
@@ -293,6 +319,7 @@ public class DefaultAdxUsersBehavior implements AdxUsersBehavior {
 	 */
 	@Override
 	public void sendReportsToAll() {
+		awaitAuctionMessages();
 		publisherReportManager.sendReportsToAll();
 		adNetworkReportManager.sendReportsToAll();
 	}
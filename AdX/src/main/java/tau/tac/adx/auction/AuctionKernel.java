@@ -0,0 +1,122 @@
+package tau.tac.adx.auction;
+
+import java.util.Random;
+
+import tau.tac.adx.auction.data.AuctionOrder;
+
+/**
+ * Allocation-free selection of the best and second best bids of an auction.
+ * Bids are given as a primitive array, whose positions are mapped back to
+ * bidders (e.g., advertiser indices) by the caller. Ties for the best bid are
+ * broken uniformly at random by reservoir sampling, which replaces shuffling
+ * the bids before the auction.
+ * <p>
+ * A kernel keeps the result of its last {@link #solve} call and is therefore
+ * not thread safe; use one kernel per thread.
+ */
+public final class AuctionKernel {
+
+	/**
+	 * Index of the winning bid, or <code>-1</code>.
+	 */
+	private int winner;
+
+	/**
+	 * The winning bid, or the {@link AuctionOrder} sentinel if there is no
+	 * winner.
+	 */
+	private double winningBid;
+
+	/**
+	 * The second best bid, or the {@link AuctionOrder} sentinel if there is
+	 * none.
+	 */
+	private double secondBid;
+
+	/**
+	 * Selects the best and second best of the first <code>length</code> bids.
+	 * Only bids strictly better than {@link #sentinel(AuctionOrder)} can win.
+	 *
+	 * @param bids
+	 *            Bid values.
+	 * @param length
+	 *            Number of bids to consider.
+	 * @param auctionOrder
+	 *            {@link AuctionOrder} in which bids are to be ordered.
+	 * @param random
+	 *            Random number generator used to break ties.
+	 * @return The index of the winning bid, or <code>-1</code> if there is no
+	 *         winner.
+	 */
+	public int solve(double[] bids, int length, AuctionOrder auctionOrder,
+			Random random) {
+		boolean highestWins = highestWins(auctionOrder);
+		double best = sentinel(auctionOrder);
+		double second = best;
+		int bestIndex = -1;
+		int ties = 0;
+		for (int i = 0; i < length; i++) {
+			double bid = bids[i];
+			if (highestWins ? bid > best : bid < best) {
+				second = best;
+				best = bid;
+				bestIndex = i;
+				ties = 1;
+			} else if (bid == best && bestIndex >= 0) {
+				second = bid;
+				if (random.nextInt(++ties) == 0) {
+					bestIndex = i;
+				}
+			} else if (highestWins ? bid > second : bid < second) {
+				second = bid;
+			}
+		}
+		winner = bestIndex;
+		winningBid = best;
+		secondBid = second;
+		return bestIndex;
+	}
+
+	/**
+	 * @return The index of the winning bid of the last {@link #solve}, or
+	 *         <code>-1</code> if there was no winner.
+	 */
+	public int getWinner() {
+		return winner;
+	}
+
+	/**
+	 * @return The winning bid of the last {@link #solve}.
+	 */
+	public double getWinningBid() {
+		return winningBid;
+	}
+
+	/**
+	 * @return The second best bid of the last {@link #solve}.
+	 */
+	public double getSecondBid() {
+		return secondBid;
+	}
+
+	/**
+	 * @param auctionOrder
+	 *            {@link AuctionOrder}.
+	 * @return The initial (worst) bid value for the given {@link AuctionOrder}
+	 *         .
+	 */
+	public static double sentinel(AuctionOrder auctionOrder) {
+		return highestWins(auctionOrder) ? Double.MIN_VALUE : Double.MAX_VALUE;
+	}
+
+	private static boolean highestWins(AuctionOrder auctionOrder) {
+		switch (auctionOrder) {
+		case HIGHEST_WINS:
+			return true;
+		case LOWEST_WINS:
+			return false;
+		default:
+			throw SimpleAuctionManager.switchCaseException(auctionOrder);
+		}
+	}
+}
@@ -3,10 +3,10 @@
  */
 package tau.tac.adx.auction;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import tau.tac.adx.AdxManager;
 import tau.tac.adx.auction.data.AuctionData;
@@ -15,11 +15,10 @@ import tau.tac.adx.auction.data.AuctionResult;
 import tau.tac.adx.auction.data.AuctionState;
 import tau.tac.adx.bids.BidInfo;
 import tau.tac.adx.props.AdxQuery;
-import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.report.adn.MarketSegmentSet;
 import tau.tac.adx.sim.AuctionReport;
 import tau.tac.adx.sim.TACAdxSimulation;
 
-import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
 /**
@@ -30,6 +29,17 @@ import com.google.inject.Inject;
  */
 public class SimpleAuctionManager implements AuctionManager {
 
+	/**
+	 * Per-thread {@link AuctionKernel} and bid buffers, so that concurrent
+	 * auctions do not allocate.
+	 */
+	private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
+
 	/**
 	 * Empty constructor.
 	 */
@@ -42,31 +52,44 @@ public class SimpleAuctionManager implements AuctionManager {
 	 */
 	@Override
 	public AdxAuctionResult runAuction(AuctionData auctionData, AdxQuery query) {
-		BidInfo winningBid = initializeByAuctionOrder(auctionData
-				.getAuctionOrder());
-		BidInfo secondBid = initializeByAuctionOrder(auctionData
-				.getAuctionOrder());
+		AuctionOrder auctionOrder = auctionData.getAuctionOrder();
 		List<BidInfo> bidInfos = auctionData.getBidInfos();
-		Collections.shuffle(bidInfos);
-		for (BidInfo bidInfo : bidInfos) {
-			if (betterBid(bidInfo, winningBid, auctionData.getAuctionOrder())) {
-				secondBid = winningBid;
-				winningBid = bidInfo;
-			} else if (betterBid(bidInfo, secondBid,
-					auctionData.getAuctionOrder())) {
-				secondBid = bidInfo;
-			}
+		Random random = auctionData.getRandom();
+		if (random == null) {
+			random = ThreadLocalRandom.current();
+		}
+
+		Workspace workspace = workspaces.get();
+		int size = workspace.load(bidInfos);
+		int winner = workspace.kernel.solve(workspace.bids, size,
+				auctionOrder, random);
+		BidInfo winningBid = winner < 0 ? null : workspace.bidInfos[winner];
+		workspace.clear(size);
+		double winningBidValue = workspace.kernel.getWinningBid();
+		double secondBidValue = workspace.kernel.getSecondBid();
+
+		TACAdxSimulation simulation = AdxManager.getInstance().getSimulation();
+		if (simulation != null) {
+			AuctionReport auctionReport = new AuctionReport(winningBidValue,
+					secondBidValue, auctionData.getReservePrice(), query);
+			simulation.getEventWriter().dataUpdated(0, auctionReport);
+		}
+
+		if (winningBid == null) {
+			return new AdxAuctionResult(AuctionState.NO_BIDS, null, Double.NaN,
+					bidInfos);
+		}
+		if (!passedReservePrice(winningBidValue, auctionData)) {
+			return new AdxAuctionResult(AuctionState.LOW_BIDS, null, null,
+					bidInfos);
 		}
-		
-		AuctionReport auctionReport = new AuctionReport(winningBid.getBid(), secondBid.getBid(), auctionData.getReservePrice(), query);
-		AdxManager.getInstance().getSimulation().getEventWriter().dataUpdated(0, auctionReport);
-		
 		BidInfo adjustedWinningBid = (BidInfo) winningBid.clone();
-		Set<MarketSegment> marketSegments = Sets.intersection(
-				query.getMarketSegments(), winningBid.getMarketSegments());
-		adjustedWinningBid.setMarketSegments(marketSegments);
-		return calculateAuctionResult(adjustedWinningBid, secondBid,
-				auctionData);
+		adjustedWinningBid.setMarketSegments(new MarketSegmentSet(query
+				.getMarketSegmentMask()
+				& MarketSegmentSet.maskOf(winningBid.getMarketSegments())));
+		return new AdxAuctionResult(AuctionState.AUCTION_COPMLETED,
+				adjustedWinningBid, calculateWinningPrice(winningBidValue,
+						secondBidValue, auctionData), bidInfos);
 	}
 
 	/**
@@ -138,23 +161,37 @@ public class SimpleAuctionManager implements AuctionManager {
 			return new AdxAuctionResult(AuctionState.LOW_BIDS, null, null,
 					auctionData.getBidInfos());
 		}
+		return new AdxAuctionResult(AuctionState.AUCTION_COPMLETED,
+				winningBid, calculateWinningPrice(winningBid.getBid(),
+						secondBid.getBid(), auctionData),
+				auctionData.getBidInfos());
+	}
+
+	/**
+	 * Calculates the price paid by the winner of an auction, according to the
+	 * {@link AuctionData#auctionPriceType}.
+	 * 
+	 * @param winningBid
+	 *            The winning bid (in millis).
+	 * @param secondBid
+	 *            The second best bid (in millis).
+	 * @param auctionData
+	 *            {@link AuctionData} for the auction.
+	 * @return The winning price (in millis).
+	 */
+	protected static double calculateWinningPrice(double winningBid,
+			double secondBid, AuctionData auctionData) {
 		switch (auctionData.getAuctionPriceType()) {
 		case GENERALIZED_FIRST_PRICE:
-			return new AdxAuctionResult(AuctionState.AUCTION_COPMLETED,
-					winningBid, winningBid.getBid(), auctionData.getBidInfos());
+			return winningBid;
 		case GENERALIZED_SECOND_PRICE:
-			double winningPrice;
 			if (!passedReservePrice(secondBid, auctionData)) {
-				winningPrice = auctionData.getReservePrice() * 1000;
-			} else {
-				winningPrice = secondBid.getBid();
+				return auctionData.getReservePrice() * 1000;
 			}
-			return new AdxAuctionResult(AuctionState.AUCTION_COPMLETED,
-					winningBid, winningPrice, auctionData.getBidInfos());
+			return secondBid;
 		default:
 			throw switchCaseException(auctionData);
 		}
-
 	}
 
 	/**
@@ -167,16 +204,8 @@ public class SimpleAuctionManager implements AuctionManager {
 	 * @return An initial {@link BidInfo} to be used when performing an auction.
 	 */
 	protected static BidInfo initializeByAuctionOrder(AuctionOrder auctionOrder) {
-		switch (auctionOrder) {
-		case HIGHEST_WINS:
-			return new BidInfo(Double.MIN_VALUE, null, null,
-					new HashSet<MarketSegment>(), null);
-		case LOWEST_WINS:
-			return new BidInfo(Double.MAX_VALUE, null, null,
-					new HashSet<MarketSegment>(), null);
-		default:
-			throw switchCaseException(auctionOrder);
-		}
+		return new BidInfo(AuctionKernel.sentinel(auctionOrder), null, null,
+				new MarketSegmentSet(), null);
 	}
 
 	/**
@@ -192,10 +221,25 @@ public class SimpleAuctionManager implements AuctionManager {
 	 *         price, <code>false</code> otherwise.
 	 */
 	protected static boolean passedReservePrice(BidInfo bid, AuctionData auctionData) {
+		return passedReservePrice(bid.getBid(), auctionData);
+	}
+
+	/**
+	 * Determines whether a bid (in millis) passes a reserve price.
+	 * 
+	 * @param bid
+	 *            Bid to check (in millis).
+	 * @param auctionData
+	 *            {@link AuctionData} to retrieve information from.
+	 * @return <code>true</code> if the bid passes the reserve price,
+	 *         <code>false</code> otherwise.
+	 */
+	protected static boolean passedReservePrice(double bid,
+			AuctionData auctionData) {
 		if (auctionData.getReservePrice().equals(Double.NaN)) {
 			return true;
 		}
-		return betterThan(bid.getBid() / 1000, auctionData.getReservePrice(),
+		return betterThan(bid / 1000, auctionData.getReservePrice(),
 				auctionData.getAuctionOrder());
 	}
 
@@ -212,4 +256,33 @@ public class SimpleAuctionManager implements AuctionManager {
 		return new UnsupportedOperationException(object.getClass().getName()
 				+ " given type is not supporterd: " + object);
 	}
+
+	/**
+	 * Reusable buffers holding an auction's bids as primitive values, and the
+	 * matching {@link BidInfo}s by position.
+	 */
+	private static final class Workspace {
+		private final AuctionKernel kernel = new AuctionKernel();
+		private double[] bids = new double[16];
+		private BidInfo[] bidInfos = new BidInfo[16];
+
+		public int load(List<BidInfo> bidInfoList) {
+			int size = bidInfoList.size();
+			if (size > bids.length) {
+				int capacity = Math.max(size, bids.length * 2);
+				bids = Arrays.copyOf(bids, capacity);
+				bidInfos = Arrays.copyOf(bidInfos, capacity);
+			}
+			int i = 0;
+			for (BidInfo bidInfo : bidInfoList) {
+				bids[i] = bidInfo.getBid();
+				bidInfos[i++] = bidInfo;
+			}
+			return size;
+		}
+
+		public void clear(int size) {
+			Arrays.fill(bidInfos, 0, size, null);
+		}
+	}
 }
@@ -5,6 +5,7 @@ package tau.tac.adx.auction.data;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Random;
 
 import tau.tac.adx.bids.BidInfo;
 
@@ -32,6 +33,11 @@ public class AuctionData {
 	 * Reserve price value. {@link Double#NaN} if not existing.
 	 */
 	private Double reservePrice;
+	/**
+	 * {@link Random} used to break ties between equal bids. <code>null</code>
+	 * if the auction manager's default should be used.
+	 */
+	private Random random;
 
 	/**
 	 * @param auctionOrder
@@ -49,6 +55,21 @@ public class AuctionData {
 		this.reservePrice = reservePrice;
 	}
 
+	/**
+	 * @param auctionOrder
+	 * @param auctionPriceType
+	 * @param bidInfos
+	 * @param reservePrice
+	 * @param random
+	 *            {@link Random} used to break ties between equal bids.
+	 */
+	public AuctionData(AuctionOrder auctionOrder,
+			AuctionPriceType auctionPriceType,
+			List<BidInfo> bidInfos, Double reservePrice, Random random) {
+		this(auctionOrder, auctionPriceType, bidInfos, reservePrice);
+		this.random = random;
+	}
+
 	/**
 	 * @return the auctionOrder
 	 */
@@ -108,6 +129,13 @@ public class AuctionData {
 		this.reservePrice = reservePrice;
 	}
 
+	/**
+	 * @return the random
+	 */
+	public Random getRandom() {
+		return random;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#hashCode()
 	 */
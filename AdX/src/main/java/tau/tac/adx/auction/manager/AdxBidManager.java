@@ -24,6 +24,7 @@
  */
 package tau.tac.adx.auction.manager;
 
+import java.util.Random;
 import java.util.Set;
 
 import se.sics.tasim.aw.TimeListener;
@@ -45,6 +46,20 @@ public interface AdxBidManager extends TimeListener {
 
 	BidInfo getBidInfo(String advertiser, AdxQuery query);
 
+	/**
+	 * Retrieves the advertiser's bid for a query, sampling among matching bid
+	 * entries with the given random number generator.
+	 * 
+	 * @param advertiser
+	 *            the advertiser
+	 * @param query
+	 *            the query
+	 * @param random
+	 *            the random number generator
+	 * @return the bid, or <code>null</code> if the advertiser does not bid
+	 */
+	BidInfo getBidInfo(String advertiser, AdxQuery query, Random random);
+
 	void updateBids(String advertiser, AdxBidBundle bundle);
 
 	void applyBidUpdates();
@@ -27,6 +27,7 @@ package tau.tac.adx.auction.manager;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import se.sics.tasim.aw.Message;
@@ -83,6 +84,16 @@ public class AdxBidManagerImpl implements AdxBidManager {
 			return bidInfo;
 	}
 
+	@Override
+	public BidInfo getBidInfo(String advertiser, AdxQuery query, Random random) {
+		BidInfo bidInfo = bidTracker.getBidInfo(advertiser, query, random);
+
+		if (bidInfo == null || isOverspent(bidInfo.getBid(), advertiser, query))
+			return null;
+		else
+			return bidInfo;
+	}
+
 	@Override
 	public void updateBids(String advertiser, AdxBidBundle bundle) {
 
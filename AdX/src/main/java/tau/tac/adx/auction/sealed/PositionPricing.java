@@ -0,0 +1,47 @@
+package tau.tac.adx.auction.sealed;
+
+/**
+ * Position based pricing, as in the user classification service auction:
+ * every bidder is ranked by its bid, the level of position <code>i</code> is
+ * <code>decay<sup>i</sup></code> and its price is its level times the next
+ * bid.
+ */
+public class PositionPricing implements SealedBidPricing {
+
+	/**
+	 * Factor the level decreases by from one position to the next.
+	 */
+	private final double decay;
+
+	/**
+	 * @param decay
+	 *            Factor the level decreases by from one position to the next,
+	 *            in <code>(0, 1]</code>.
+	 */
+	public PositionPricing(double decay) {
+		if (!(decay > 0 && decay <= 1)) {
+			throw new IllegalArgumentException("decay must be in (0, 1]");
+		}
+		this.decay = decay;
+	}
+
+	@Override
+	public double score(double bid, double weight) {
+		return bid;
+	}
+
+	@Override
+	public int positions(int bidders) {
+		return bidders;
+	}
+
+	@Override
+	public double price(int position, double weight, double nextScore) {
+		return level(position) * nextScore;
+	}
+
+	@Override
+	public double level(int position) {
+		return Math.pow(decay, position);
+	}
+}
@@ -0,0 +1,30 @@
+package tau.tac.adx.auction.sealed;
+
+/**
+ * Quality score weighted second price for a single position, as in the
+ * campaign auction: bids are budgets, the lowest budget per unit of quality
+ * (i.e., the highest <code>quality / budget</code> score) wins and the
+ * winner's budget is the budget that would have tied the next score.
+ */
+public class QualityScorePricing implements SealedBidPricing {
+
+	@Override
+	public double score(double bid, double weight) {
+		return weight / bid;
+	}
+
+	@Override
+	public int positions(int bidders) {
+		return 1;
+	}
+
+	@Override
+	public double price(int position, double weight, double nextScore) {
+		return weight / nextScore;
+	}
+
+	@Override
+	public double level(int position) {
+		return 1.0;
+	}
+}
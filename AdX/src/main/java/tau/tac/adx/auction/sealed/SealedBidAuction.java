@@ -0,0 +1,260 @@
+package tau.tac.adx.auction.sealed;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Batched sealed-bid auction solver. Any number of items, each with its own
+ * bidders, reserve score and random allocation probability, are added and
+ * then cleared in a single {@link #solve(Random)} pass according to a
+ * {@link SealedBidPricing}.
+ * <p>
+ * Bids are kept in primitive arrays that are reused from one batch to the
+ * next, so a solver allocates only while its arrays grow. Ties are broken
+ * uniformly at random: the bidders of an item are shuffled and then sorted
+ * by a stable sort.
+ * <p>
+ * A solver and its {@link SealedBidAuctionResult} are not thread safe; use one
+ * solver per thread.
+ *
+ * @param <B>
+ *            Type of the bidders.
+ */
+public class SealedBidAuction<B> {
+
+	private static final int INITIAL_BIDS = 16;
+
+	/* below this many bidders ranges are sorted by insertion */
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private final SealedBidPricing pricing;
+
+	private final SealedBidAuctionResult<B> result = new SealedBidAuctionResult<B>();
+
+	private Object[] bidders = new Object[INITIAL_BIDS];
+	private double[] bids = new double[INITIAL_BIDS];
+	private double[] weights = new double[INITIAL_BIDS];
+	private double[] scores = new double[INITIAL_BIDS];
+	private int[] order = new int[INITIAL_BIDS];
+	private int[] scratch = new int[INITIAL_BIDS];
+	private boolean[] allocated = new boolean[INITIAL_BIDS];
+	private double[] prices = new double[INITIAL_BIDS];
+	private double[] levels = new double[INITIAL_BIDS];
+	private int size;
+
+	private int[] itemStarts = new int[2];
+	private double[] reserveScores = new double[1];
+	private double[] randomAllocationProbabilities = new double[1];
+	private int[] winners = new int[1];
+	private boolean[] randomAllocations = new boolean[1];
+	private int items;
+
+	/**
+	 * @param pricing
+	 *            {@link SealedBidPricing} of the auction.
+	 */
+	public SealedBidAuction(SealedBidPricing pricing) {
+		if (pricing == null) {
+			throw new NullPointerException("pricing cannot be null");
+		}
+		this.pricing = pricing;
+	}
+
+	/**
+	 * Removes all items and bids.
+	 */
+	public void clear() {
+		Arrays.fill(bidders, 0, size, null);
+		size = 0;
+		items = 0;
+		result.items = 0;
+	}
+
+	/**
+	 * Starts a new item; bids added until the next item are bids for it.
+	 *
+	 * @param reserveScore
+	 *            Minimal score of an allocated bid.
+	 * @param randomAllocationProbability
+	 *            Probability that the first position is allocated to a
+	 *            bidder picked at random, who pays its bid.
+	 * @return Index of the item.
+	 */
+	public int addItem(double reserveScore, double randomAllocationProbability) {
+		if (items == reserveScores.length) {
+			int length = items * 2;
+			itemStarts = Arrays.copyOf(itemStarts, length + 1);
+			reserveScores = Arrays.copyOf(reserveScores, length);
+			randomAllocationProbabilities = Arrays.copyOf(
+					randomAllocationProbabilities, length);
+			winners = Arrays.copyOf(winners, length);
+			randomAllocations = Arrays.copyOf(randomAllocations, length);
+		}
+		reserveScores[items] = reserveScore;
+		randomAllocationProbabilities[items] = randomAllocationProbability;
+		itemStarts[items] = size;
+		itemStarts[items + 1] = size;
+		return items++;
+	}
+
+	/**
+	 * Adds a bid for the last added item.
+	 *
+	 * @param bidder
+	 *            The bidder.
+	 * @param bid
+	 *            The bid.
+	 * @param weight
+	 *            The bidder's weight, see
+	 *            {@link SealedBidPricing#score(double, double)}.
+	 */
+	public void addBid(B bidder, double bid, double weight) {
+		if (items == 0) {
+			throw new IllegalStateException("no item to bid for");
+		}
+		if (size == bids.length) {
+			int length = size * 2;
+			bidders = Arrays.copyOf(bidders, length);
+			bids = Arrays.copyOf(bids, length);
+			weights = Arrays.copyOf(weights, length);
+			scores = Arrays.copyOf(scores, length);
+			order = Arrays.copyOf(order, length);
+			scratch = Arrays.copyOf(scratch, length);
+			allocated = Arrays.copyOf(allocated, length);
+			prices = Arrays.copyOf(prices, length);
+			levels = Arrays.copyOf(levels, length);
+		}
+		bidders[size] = bidder;
+		bids[size] = bid;
+		weights[size] = weight;
+		size++;
+		itemStarts[items] = size;
+	}
+
+	/**
+	 * Clears all items.
+	 *
+	 * @param random
+	 *            Random number generator used to break ties and for random
+	 *            allocations.
+	 * @return The {@link SealedBidAuctionResult}, valid until the auction is
+	 *         cleared or solved again.
+	 */
+	public SealedBidAuctionResult<B> solve(Random random) {
+		for (int i = 0; i < size; i++) {
+			scores[i] = pricing.score(bids[i], weights[i]);
+			order[i] = i;
+		}
+		Arrays.fill(allocated, 0, size, false);
+		Arrays.fill(prices, 0, size, 0.0);
+		Arrays.fill(levels, 0, size, 0.0);
+		for (int item = 0; item < items; item++) {
+			int from = itemStarts[item];
+			int to = itemStarts[item + 1];
+			shuffle(from, to, random);
+			sort(from, to);
+			solveItem(item, from, to, random);
+		}
+
+		result.bidders = bidders;
+		result.bids = bids;
+		result.scores = scores;
+		result.itemStarts = itemStarts;
+		result.items = items;
+		result.order = order;
+		result.allocated = allocated;
+		result.prices = prices;
+		result.levels = levels;
+		result.winners = winners;
+		result.randomAllocations = randomAllocations;
+		return result;
+	}
+
+	private void solveItem(int item, int from, int to, Random random) {
+		int count = to - from;
+		winners[item] = -1;
+		randomAllocations[item] = false;
+		if (count == 0) {
+			return;
+		}
+		double probability = randomAllocationProbabilities[item];
+		if (probability > 0 && random.nextDouble() < probability) {
+			int position = random.nextInt(count);
+			allocated[from + position] = true;
+			prices[from + position] = bids[order[from + position]];
+			levels[from + position] = pricing.level(0);
+			winners[item] = position;
+			randomAllocations[item] = true;
+			return;
+		}
+		double reserveScore = reserveScores[item];
+		int positions = Math.min(pricing.positions(count), count);
+		for (int position = 0; position < positions; position++) {
+			int index = from + position;
+			// NaN scores are sorted last and never meet the reserve
+			if (!(scores[order[index]] >= reserveScore)) {
+				break;
+			}
+			double nextScore = reserveScore;
+			if (position + 1 < count && scores[order[index + 1]] > reserveScore) {
+				nextScore = scores[order[index + 1]];
+			}
+			allocated[index] = true;
+			prices[index] = pricing.price(position, weights[order[index]],
+					nextScore);
+			levels[index] = pricing.level(position);
+			if (winners[item] < 0) {
+				winners[item] = position;
+			}
+		}
+	}
+
+	private void shuffle(int from, int to, Random random) {
+		for (int i = to - 1; i > from; i--) {
+			int j = from + random.nextInt(i - from + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+	}
+
+	/* stable sort of order[from, to) by decreasing score */
+	private void sort(int from, int to) {
+		if (to - from < INSERTION_SORT_THRESHOLD) {
+			for (int i = from + 1; i < to; i++) {
+				int index = order[i];
+				int j = i - 1;
+				while (j >= from && before(index, order[j])) {
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = index;
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sort(from, middle);
+		sort(middle, to);
+		if (!before(order[middle], order[middle - 1])) {
+			return;
+		}
+		System.arraycopy(order, from, scratch, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to
+					|| (left < middle && !before(scratch[right], scratch[left]))) {
+				order[i] = scratch[left++];
+			} else {
+				order[i] = scratch[right++];
+			}
+		}
+	}
+
+	/* whether bid a is ranked strictly before bid b, NaN scores last */
+	private boolean before(int a, int b) {
+		double scoreA = scores[a];
+		double scoreB = scores[b];
+		return scoreA > scoreB || (Double.isNaN(scoreB) && !Double.isNaN(scoreA));
+	}
+}
@@ -0,0 +1,150 @@
+package tau.tac.adx.auction.sealed;
+
+/**
+ * Results of a {@link SealedBidAuction#solve}: for every item its bidders in
+ * ranked order, with the price and level of each allocated position. The
+ * results are kept in primitive arrays owned by the auction and remain valid
+ * until the auction is cleared or solved again.
+ *
+ * @param <B>
+ *            Type of the bidders.
+ */
+public class SealedBidAuctionResult<B> {
+
+	/* set by SealedBidAuction#solve */
+	Object[] bidders;
+	double[] bids;
+	double[] scores;
+	int[] itemStarts;
+	int items;
+	/* bid index of each ranked position, indexed like the bids */
+	int[] order;
+	boolean[] allocated;
+	double[] prices;
+	double[] levels;
+	/* per item */
+	int[] winners;
+	boolean[] randomAllocations;
+
+	SealedBidAuctionResult() {
+	}
+
+	/**
+	 * @return Number of items.
+	 */
+	public int getItemCount() {
+		return items;
+	}
+
+	/**
+	 * @param item
+	 *            Index of the item.
+	 * @return Number of bidders of the item.
+	 */
+	public int getBidderCount(int item) {
+		checkItem(item);
+		return itemStarts[item + 1] - itemStarts[item];
+	}
+
+	/**
+	 * @param item
+	 *            Index of the item.
+	 * @param position
+	 *            Ranked position, starting at <code>0</code>.
+	 * @return The bidder at the position.
+	 */
+	@SuppressWarnings("unchecked")
+	public B getBidder(int item, int position) {
+		return (B) bidders[order[index(item, position)]];
+	}
+
+	/**
+	 * @param item
+	 *            Index of the item.
+	 * @param position
+	 *            Ranked position, starting at <code>0</code>.
+	 * @return The bid at the position.
+	 */
+	public double getBid(int item, int position) {
+		return bids[order[index(item, position)]];
+	}
+
+	/**
+	 * @param item
+	 *            Index of the item.
+	 * @param position
+	 *            Ranked position, starting at <code>0</code>.
+	 * @return The score of the bid at the position.
+	 */
+	public double getScore(int item, int position) {
+		return scores[order[index(item, position)]];
+	}
+
+	/**
+	 * @param item
+	 *            Index of the item.
+	 * @param position
+	 *            Ranked position, starting at <code>0</code>.
+	 * @return Whether the bidder at the position was allocated.
+	 */
+	public boolean isAllocated(int item, int position) {
+		return allocated[index(item, position)];
+	}
+
+	/**
+	 * @param item
+	 *            Index of the item.
+	 * @param position
+	 *            Ranked position, starting at <code>0</code>.
+	 * @return The price of the position, <code>0</code> if not allocated.
+	 */
+	public double getPrice(int item, int position) {
+		return prices[index(item, position)];
+	}
+
+	/**
+	 * @param item
+	 *            Index of the item.
+	 * @param position
+	 *            Ranked position, starting at <code>0</code>.
+	 * @return The level of the position, <code>0</code> if not allocated.
+	 */
+	public double getLevel(int item, int position) {
+		return levels[index(item, position)];
+	}
+
+	/**
+	 * @param item
+	 *            Index of the item.
+	 * @return The position of the best ranked allocated bidder, or
+	 *         <code>-1</code> if the item was not allocated.
+	 */
+	public int getWinner(int item) {
+		checkItem(item);
+		return winners[item];
+	}
+
+	/**
+	 * @param item
+	 *            Index of the item.
+	 * @return Whether the item was allocated to a bidder picked at random.
+	 */
+	public boolean isRandomAllocation(int item) {
+		checkItem(item);
+		return randomAllocations[item];
+	}
+
+	private int index(int item, int position) {
+		if (position < 0 || position >= getBidderCount(item)) {
+			throw new IndexOutOfBoundsException("position " + position
+					+ " of item " + item);
+		}
+		return itemStarts[item] + position;
+	}
+
+	private void checkItem(int item) {
+		if (item < 0 || item >= items) {
+			throw new IndexOutOfBoundsException("item " + item);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package tau.tac.adx.auction.sealed;
+
+/**
+ * Scoring and pricing rule of a {@link SealedBidAuction}. Bids are ranked by
+ * decreasing {@link #score(double, double)}, the first
+ * {@link #positions(int)} bidders that meet the reserve score are allocated
+ * and each allocated position is priced from the score of the next position.
+ */
+public interface SealedBidPricing {
+
+	/**
+	 * @param bid
+	 *            The bid.
+	 * @param weight
+	 *            The bidder's weight, e.g., its quality score.
+	 * @return The score the bid is ranked by, higher is better.
+	 */
+	double score(double bid, double weight);
+
+	/**
+	 * @param bidders
+	 *            Number of bidders of an item.
+	 * @return Maximal number of positions of the item that are allocated.
+	 */
+	int positions(int bidders);
+
+	/**
+	 * @param position
+	 *            Allocated position, starting at <code>0</code>.
+	 * @param weight
+	 *            Weight of the bidder at the position.
+	 * @param nextScore
+	 *            Score of the next position, or the reserve score if that is
+	 *            higher or there is no next position.
+	 * @return The price of the position.
+	 */
+	double price(int position, double weight, double nextScore);
+
+	/**
+	 * @param position
+	 *            Allocated position, starting at <code>0</code>.
+	 * @return The share of the item allocated at the position, e.g., a
+	 *         service level.
+	 */
+	double level(int position);
+}
@@ -24,6 +24,7 @@
  */
 package tau.tac.adx.auction.tracker;
 
+import java.util.Random;
 import java.util.Set;
 
 import tau.tac.adx.bids.BidInfo;
@@ -72,6 +73,20 @@ public interface AdxBidTracker {
 	 */
 	BidInfo getBidInfo(String advertiser, AdxQuery query);
 
+	/**
+	 * Get a {@link BidInfo} for the advertiser for a given query, sampled with
+	 * the given random number generator.
+	 *
+	 * @param advertiser
+	 *            the advertiser
+	 * @param query
+	 *            the query
+	 * @param random
+	 *            the random number generator
+	 * @return the bid for the advertiser for a given query.
+	 */
+	BidInfo getBidInfo(String advertiser, AdxQuery query, Random random);
+
 	/**
 	 * Get the daily spend limit for the advertiser for a given query.
 	 * 
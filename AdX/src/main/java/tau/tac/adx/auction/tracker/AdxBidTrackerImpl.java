@@ -24,30 +24,33 @@
  */
 package tau.tac.adx.auction.tracker;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 
 import tau.tac.adx.AdxManager;
+import tau.tac.adx.ads.properties.AdType;
 import tau.tac.adx.bids.BidInfo;
 import tau.tac.adx.bids.Bidder;
+import tau.tac.adx.devices.Device;
 import tau.tac.adx.messages.CampaignLimitReached;
 import tau.tac.adx.messages.CampaignLimitSet;
 import tau.tac.adx.props.AdxBidBundle;
 import tau.tac.adx.props.AdxBidBundle.BidEntry;
 import tau.tac.adx.props.AdxQuery;
+import tau.tac.adx.report.adn.MarketSegmentSet;
 
 import com.botbox.util.ArrayUtils;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 
-import edu.umich.eecs.tac.util.sampling.WheelSampler;
-
 /**
  * @author greenwald
  * @author Patrick Jordan
@@ -57,9 +60,14 @@ public class AdxBidTrackerImpl implements AdxBidTracker {
 	private final static Logger logger = Logger.getLogger(AdxBidTrackerImpl.class
 			.getName());
 
-	private String[] advertisers;
-	private int advertisersCount;
-	private AdxQueryBid[] queryBid;
+	/*
+	 * Advertisers are only added under the tracker's lock, and each one's
+	 * AdxQueryBid is created with it. Bids are read without locking: the
+	 * arrays are published before the count that makes a new entry visible.
+	 */
+	private volatile String[] advertisers;
+	private volatile int advertisersCount;
+	private volatile AdxQueryBid[] queryBid;
 	private AdxQuery[] querySpace;
 
 	@Inject
@@ -83,39 +91,52 @@ public class AdxBidTrackerImpl implements AdxBidTracker {
 	}
 
 	private synchronized int doAddAdvertiser(String advertiser) {
-		if (advertisersCount == advertisers.length) {
-			int newSize = advertisersCount + 8;
-			advertisers = (String[]) ArrayUtils.setSize(advertisers, newSize);
-			queryBid = (AdxQueryBid[]) ArrayUtils.setSize(queryBid, newSize);
+		int count = advertisersCount;
+		int index = ArrayUtils.indexOf(advertisers, 0, count, advertiser);
+		if (index >= 0) {
+			return index;
+		}
+		String[] newAdvertisers = advertisers;
+		AdxQueryBid[] newQueryBid = queryBid;
+		if (count == newAdvertisers.length) {
+			int newSize = count + 8;
+			newAdvertisers = (String[]) ArrayUtils.setSize(newAdvertisers,
+					newSize);
+			newQueryBid = (AdxQueryBid[]) ArrayUtils.setSize(newQueryBid,
+					newSize);
 		}
 
-		advertisers[advertisersCount] = advertiser;
+		newAdvertisers[count] = advertiser;
+		newQueryBid[count] = new AdxQueryBid(advertiser, 0);
+		advertisers = newAdvertisers;
+		queryBid = newQueryBid;
+		advertisersCount = count + 1;
+		return count;
+	}
 
-		return advertisersCount++;
+	/**
+	 * @return The index of the advertiser, or <code>-1</code>. Lock-free.
+	 */
+	private int indexOf(String advertiser) {
+		int count = advertisersCount;
+		return ArrayUtils.indexOf(advertisers, 0, count, advertiser);
 	}
 
 	@Override
 	public void addAdvertiser(String advertiser) {
-		int index = ArrayUtils.indexOf(advertisers, 0, advertisersCount,
-				advertiser);
-		if (index < 0) {
+		if (indexOf(advertiser) < 0) {
 			doAddAdvertiser(advertiser);
 		}
 	}
 
 	@Override
 	public double getDailySpendLimit(String advertiser) {
-		int index = ArrayUtils.indexOf(advertisers, 0, advertisersCount,
-				advertiser);
+		int index = indexOf(advertiser);
 
 		if (index < 0) {
 			return DEFAULT_SPEND_LIMIT;
 		}
 
-		if (queryBid[index] == null) {
-			queryBid[index] = new AdxQueryBid(advertiser, 0);
-		}
-
 		return queryBid[index].getCampaignSpendLimit();
 	}
 
@@ -138,18 +159,24 @@ public class AdxBidTrackerImpl implements AdxBidTracker {
 
 	@Override
 	public BidInfo getBidInfo(String advertiser, AdxQuery query) {
-		int index = ArrayUtils.indexOf(advertisers, 0, advertisersCount,
-				advertiser);
+		int index = indexOf(advertiser);
 
 		if (index < 0) {
 			return null;
 		}
 
-		if (queryBid[index] == null) {
-			queryBid[index] = new AdxQueryBid(advertiser, 0);
+		return queryBid[index].generateBid(query);
+	}
+
+	@Override
+	public BidInfo getBidInfo(String advertiser, AdxQuery query, Random random) {
+		int index = indexOf(advertiser);
+
+		if (index < 0) {
+			return null;
 		}
 
-		return queryBid[index].generateBid(query);
+		return queryBid[index].generateBid(query, random);
 	}
 
 	// @Override
@@ -170,17 +197,12 @@ public class AdxBidTrackerImpl implements AdxBidTracker {
 
 	@Override
 	public void updateBids(String advertiser, AdxBidBundle bundle) {
-		int index = ArrayUtils.indexOf(advertisers, 0, advertisersCount,
-				advertiser);
+		int index = indexOf(advertiser);
 
 		if (index < 0) {
 			index = doAddAdvertiser(advertiser);
 		}
 
-		if (queryBid[index] == null) {
-			queryBid[index] = new AdxQueryBid(advertiser, 0);
-		}
-
 		if (!Double.isNaN(bundle.getCampaignDailySpendLimit())) {
 			queryBid[index].setCampaignSpendLimit(bundle
 					.getCampaignDailySpendLimit());
@@ -197,6 +219,7 @@ public class AdxBidTrackerImpl implements AdxBidTracker {
 			// queryBid[index].setSpendLimit(query, dailyLimit);
 			// }
 		}
+		queryBid[index].rebuildIndex();
 
 		// queryBid[index].updateBidSampler(campaignDistribution)
 	}
@@ -206,16 +229,105 @@ public class AdxBidTrackerImpl implements AdxBidTracker {
 		return advertisersCount;
 	}
 
+	private static final int AD_TYPE_COUNT = AdType.values().length;
+
+	private static final int GROUP_COUNT = Device.values().length
+			* AD_TYPE_COUNT;
+
+	private static int groupIndex(Device device, AdType adType) {
+		return device.ordinal() * AD_TYPE_COUNT + adType.ordinal();
+	}
+
+	/**
+	 * The bid entries of a single (publisher, device, ad type) triple and
+	 * their {@link BidCell}s, indexed by query segment mask.
+	 */
+	private static class BidGroup {
+		private final BidEntry[] entries;
+		private final AtomicReferenceArray<BidCell> cells = new AtomicReferenceArray<BidCell>(
+				MarketSegmentSet.ALL + 1);
+
+		public BidGroup(BidEntry[] entries) {
+			this.entries = entries;
+		}
+
+		public boolean hasCampaign(int campaignId) {
+			for (BidEntry entry : entries) {
+				if (entry.getCampaignId() == campaignId) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The bid entries matching a query, with their cumulative weights, for
+	 * roulette wheel sampling by binary search.
+	 */
+	private static class BidCell {
+		private final BidEntry[] entries;
+		private final double[] cumulativeWeights;
+
+		public BidCell(BidEntry[] entries) {
+			this.entries = entries;
+			this.cumulativeWeights = new double[entries.length];
+			double sum = 0;
+			for (int i = 0; i < entries.length; i++) {
+				sum += entries[i].getWeight();
+				cumulativeWeights[i] = sum;
+			}
+		}
+
+		public boolean hasCampaign(int campaignId) {
+			for (BidEntry entry : entries) {
+				if (entry.getCampaignId() == campaignId) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public BidEntry sample(Random random) {
+			int last = entries.length - 1;
+			double sum = cumulativeWeights[last];
+			if (last == 0 || sum <= 0) {
+				return entries[0];
+			}
+			double dart = random.nextDouble() * sum;
+			// first index whose cumulative weight exceeds the dart
+			int low = 0;
+			int high = last;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (cumulativeWeights[mid] > dart) {
+					high = mid;
+				} else {
+					low = mid + 1;
+				}
+			}
+			return entries[low];
+		}
+	}
+
 	public static class AdxQueryBid {
 		private final String advertiser;
 		private final double[] spendLimits;
 		private final Set<BidEntry> querySet = new HashSet<AdxBidBundle.BidEntry>();
-		private final Map<AdxQuery, WheelSampler<BidEntry>> queryMap = new HashMap<AdxQuery, WheelSampler<BidEntry>>();
 		private final int queryCount;
-		private double campaignSpendLimit;
+		private volatile double campaignSpendLimit;
 		private final Bidder bidder;
+		private final Random random = new Random();
 
 		private final Set<Integer> excludedCampaigns = new HashSet<Integer>();
+
+		/**
+		 * Bid lookup table built by {@link #rebuildIndex()}, mapping a
+		 * publisher to its {@link BidGroup}s, indexed by
+		 * {@link #groupIndex(Device, AdType)}.
+		 */
+		private volatile Map<String, BidGroup[]> index = Collections.emptyMap();
+
 		public AdxQueryBid(final String advertiser, int queryCount) {
 			this.advertiser = advertiser;
 			logger.info("Initialized AdxQueryBid for advertiser: "+advertiser);
@@ -234,66 +346,136 @@ public class AdxBidTrackerImpl implements AdxBidTracker {
 		}
 
 		@Subscribe
-		public void limitReached(CampaignLimitReached message) {
+		public synchronized void limitReached(CampaignLimitReached message) {
 			if (message.getAdNetwork().equals(advertiser)) {
 				if(excludedCampaigns.contains(message.getCampaignId())) {
 					logger.severe("Limit request was already sent today to stop bidding for campaign #"+message.getCampaignId()+" due to limit");
 				}
 				excludedCampaigns.add(message.getCampaignId());
-				queryMap.clear();
+				invalidateCampaign(message.getCampaignId());
 				logger.info("Accepted request to stop bidding for "+message +" due to limit. My name is "+advertiser);
 			}
 		}
 
-		public void clearQueries() {
+		public synchronized void clearQueries() {
 			querySet.clear();
-			queryMap.clear();
 			excludedCampaigns.clear();
+			index = Collections.emptyMap();
 		}
 
 		public BidInfo generateBid(AdxQuery query) {
-			WheelSampler<BidEntry> sampler = queryMap.get(query);
-			if (sampler == null) {
-				sampler = new WheelSampler<AdxBidBundle.BidEntry>();
-				queryMap.put(query, sampler);
-				Collection<BidEntry> filteredQueries = Collections2.filter(
-						querySet, new BidPredicate(query, excludedCampaigns));
-				for (BidEntry bidEntry : filteredQueries) {
-					sampler.addState(bidEntry.getWeight(), bidEntry);
-				}
-			}
+			return generateBid(query, random);
+		}
 
-			BidEntry sample = sampler.getSample();
-			if (sample == null) {
+		public BidInfo generateBid(AdxQuery query, Random random) {
+			if (query.getPublisher() == null || query.getDevice() == null
+					|| query.getAdType() == null) {
+				return null;
+			}
+			BidGroup[] groups = index.get(query.getPublisher());
+			if (groups == null) {
+				return null;
+			}
+			BidGroup group = groups[groupIndex(query.getDevice(),
+					query.getAdType())];
+			if (group == null) {
 				return null;
 			}
+			BidCell cell = group.cells.get(query.getMarketSegmentMask());
+			if (cell == null) {
+				return null;
+			}
+
+			BidEntry sample = cell.sample(random);
 			BidInfo bidInfo = new BidInfo(sample.getBid(), bidder,
 					sample.getAd(), sample.getMarketSegments(), AdxManager
 							.getInstance().getCampaign(sample.getCampaignId()));
 			return bidInfo;
 		}
 
-		private class BidPredicate implements Predicate<BidEntry> {
+		/**
+		 * Builds the bid lookup table from the current bid entries. Entries
+		 * are grouped by publisher, {@link Device} and {@link AdType}, and
+		 * each group holds one {@link BidCell} per query segment mask with
+		 * the entries whose segments are a subset of that mask.
+		 */
+		protected synchronized void rebuildIndex() {
+			Map<String, List<BidEntry>[]> entriesByPublisher = new HashMap<String, List<BidEntry>[]>();
+			for (BidEntry entry : querySet) {
+				AdxQuery key = entry.getKey();
+				if (key.getPublisher() == null || key.getDevice() == null
+						|| key.getAdType() == null) {
+					continue;
+				}
+				List<BidEntry>[] lists = entriesByPublisher.get(key
+						.getPublisher());
+				if (lists == null) {
+					@SuppressWarnings("unchecked")
+					List<BidEntry>[] newLists = new List[GROUP_COUNT];
+					lists = newLists;
+					entriesByPublisher.put(key.getPublisher(), lists);
+				}
+				int groupIndex = groupIndex(key.getDevice(), key.getAdType());
+				if (lists[groupIndex] == null) {
+					lists[groupIndex] = new ArrayList<BidEntry>();
+				}
+				lists[groupIndex].add(entry);
+			}
 
-			private final AdxQuery adxQuery;
-			private final Set<Integer> excludedCampaigns;
+			Map<String, BidGroup[]> newIndex = new HashMap<String, BidGroup[]>();
+			for (Map.Entry<String, List<BidEntry>[]> publisherEntries : entriesByPublisher
+					.entrySet()) {
+				List<BidEntry>[] lists = publisherEntries.getValue();
+				BidGroup[] groups = new BidGroup[GROUP_COUNT];
+				for (int i = 0; i < GROUP_COUNT; i++) {
+					if (lists[i] != null) {
+						groups[i] = new BidGroup(lists[i]
+								.toArray(new BidEntry[lists[i].size()]));
+						for (int mask = 0; mask <= MarketSegmentSet.ALL; mask++) {
+							groups[i].cells.set(mask,
+									buildCell(groups[i], mask));
+						}
+					}
+				}
+				newIndex.put(publisherEntries.getKey(), groups);
+			}
+			index = newIndex;
+		}
 
-			public BidPredicate(AdxQuery adxQuery,
-					Set<Integer> excludedCampaigns) {
-				this.adxQuery = adxQuery;
-				this.excludedCampaigns = excludedCampaigns;
+		/**
+		 * Rebuilds only the cells currently holding an entry of the given
+		 * (newly excluded) campaign.
+		 */
+		private void invalidateCampaign(int campaignId) {
+			for (BidGroup[] groups : index.values()) {
+				for (BidGroup group : groups) {
+					if (group == null || !group.hasCampaign(campaignId)) {
+						continue;
+					}
+					for (int mask = 0; mask <= MarketSegmentSet.ALL; mask++) {
+						BidCell cell = group.cells.get(mask);
+						if (cell != null && cell.hasCampaign(campaignId)) {
+							group.cells.set(mask, buildCell(group, mask));
+						}
+					}
+				}
 			}
+		}
 
-            @Override
-            public boolean apply(BidEntry input) {
-                return ((adxQuery.getMarketSegments().containsAll(
-                        input.getMarketSegments()))
-                /* exclude campaigns over limit */
-                        && (!excludedCampaigns.contains(input.getCampaignId()))
-                        && adxQuery.getAdType() == input.getKey().getAdType()
-                        && adxQuery.getDevice() == input.getKey().getDevice()
-                        && adxQuery.getPublisher().equals(input.getKey().getPublisher()));
-            }
+		private BidCell buildCell(BidGroup group, int mask) {
+			List<BidEntry> matching = new ArrayList<BidEntry>();
+			for (BidEntry entry : group.entries) {
+				if (MarketSegmentSet.containsAll(mask,
+						entry.getMarketSegmentMask())
+				/* exclude campaigns over limit */
+						&& !excludedCampaigns.contains(entry.getCampaignId())) {
+					matching.add(entry);
+				}
+			}
+			if (matching.isEmpty()) {
+				return null;
+			}
+			return new BidCell(matching.toArray(new BidEntry[matching.size()]));
 		}
 
 		private synchronized void doAddQuery(BidEntry entry) {
@@ -1,10 +1,10 @@
 package tau.tac.adx.bids;
 
-import java.util.HashSet;
 import java.util.Set;
 
 import tau.tac.adx.demand.Campaign;
 import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.report.adn.MarketSegmentSet;
 import edu.umich.eecs.tac.props.Ad;
 
 /**
@@ -74,8 +74,8 @@ public class BidInfo implements Cloneable {
 		this.bid = bidPrice;
 		this.bidder = bidder;
 		this.bidProduct = bidProduct;
-		this.marketSegments = new HashSet<MarketSegment>();
-		this.marketSegments.add(marketSegment);
+		this.marketSegments = new MarketSegmentSet(
+				MarketSegmentSet.bit(marketSegment));
 		this.campaign = campaign;
 	}
 
@@ -12,7 +12,10 @@ import java.util.Set;
 
 import se.sics.tasim.aw.TimeListener;
 import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.auction.sealed.SealedBidAuction;
+import tau.tac.adx.auction.sealed.SealedBidAuctionResult;
 import tau.tac.adx.devices.Device;
+import tau.tac.adx.messages.CampaignLimitSet;
 import tau.tac.adx.report.adn.MarketSegment;
 import tau.tac.adx.report.demand.campaign.auction.CampaignAuctionReport;
 import tau.tac.adx.users.AdxUser;
@@ -56,6 +59,29 @@ public interface Campaign extends TimeListener {
 	 */
 	CampaignAuctionReport auction();
 
+	/**
+	 * Adds the auction among the bidding advertisers as an item of a batched
+	 * campaign auction (see {@link CampaignAuctioneer}).
+	 * 
+	 * @param auction
+	 *            the batched auction
+	 */
+	void addAuctionItem(SealedBidAuction<String> auction);
+
+	/**
+	 * Allocates to the winning advertiser of the campaign's item of a solved
+	 * batched campaign auction and sets the contract's related budget.
+	 * 
+	 * @param result
+	 *            results of the batched auction
+	 * @param item
+	 *            index of the campaign's item
+	 * @return {@link CampaignAuctionReport}, or <code>null</code> if there
+	 *         were no bids.
+	 */
+	CampaignAuctionReport allocate(SealedBidAuctionResult<String> result,
+			int item);
+
 	/**
 	 * 
 	 * @return id of allocated advertiser
@@ -83,6 +109,22 @@ public interface Campaign extends TimeListener {
 	 */
 	boolean impress(AdxUser adxUser, AdType adType, Device device, double cost);
 
+	/**
+	 * Charges an impression allocated to this campaign unless the campaign is
+	 * over its limits, see {@link CampaignLedger}. Safe to call concurrently.
+	 * 
+	 * @param adxUser
+	 * @param adType
+	 * @param device
+	 * @param cost
+	 *            : paid to the Publisher as determined by AdX auction (in milli
+	 *            units)
+	 * @return the outcome of the charge, reporting the campaign reaching its
+	 *         limits once a day
+	 */
+	CampaignLedger.Charge charge(AdxUser adxUser, AdType adType,
+			Device device, double cost);
+
 	/**
 	 * 
 	 * @return active campaign days remaining (including current, that is: 1 if
@@ -139,9 +181,32 @@ public interface Campaign extends TimeListener {
 
 	CampaignStats getTotals();
 
+	/**
+	 * @return targeted impressions of the past days, see {@link #getTotals()}
+	 */
+	double getTotalTargetedImps();
+
+	/**
+	 * @return untargeted impressions of the past days, see
+	 *         {@link #getTotals()}
+	 */
+	double getTotalOtherImps();
+
+	/**
+	 * @return cost of the past days, see {@link #getTotals()}
+	 */
+	double getTotalCost();
+
 	int getImpressionLimit();
 
-	void registerToEventBus();
+	/**
+	 * Applies a daily or total limit command addressed to this campaign, see
+	 * {@link CampaignRegistry}.
+	 * 
+	 * @param message
+	 *            the limit command
+	 */
+	void limitSet(CampaignLimitSet message);
 
 	Double getBudgetlimit();
 
@@ -0,0 +1,59 @@
+package tau.tac.adx.demand;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import tau.tac.adx.auction.sealed.QualityScorePricing;
+import tau.tac.adx.auction.sealed.SealedBidAuction;
+import tau.tac.adx.auction.sealed.SealedBidAuctionResult;
+import tau.tac.adx.report.demand.campaign.auction.CampaignAuctionReport;
+
+/**
+ * Auctions any number of campaigns in a single batched
+ * {@link SealedBidAuction} with {@link QualityScorePricing}. The auction's
+ * arrays are reused from one day to the next.
+ * <p>
+ * Not thread safe.
+ */
+public class CampaignAuctioneer {
+
+	private final SealedBidAuction<String> auction = new SealedBidAuction<String>(
+			new QualityScorePricing());
+
+	private final Random random;
+
+	/**
+	 * @param random
+	 *            breaks the ties and draws the random allocations
+	 */
+	public CampaignAuctioneer(Random random) {
+		if (random == null)
+			throw new NullPointerException("random cannot be null");
+		this.random = random;
+	}
+
+	/**
+	 * Auctions the campaigns, see {@link Campaign#auction()}.
+	 *
+	 * @param campaigns
+	 *            the campaigns to auction
+	 * @return the {@link CampaignAuctionReport} of each campaign, in the order
+	 *         of the campaigns, <code>null</code> for campaigns without bids
+	 */
+	public List<CampaignAuctionReport> auction(
+			List<? extends Campaign> campaigns) {
+		auction.clear();
+		for (Campaign campaign : campaigns) {
+			campaign.addAuctionItem(auction);
+		}
+		SealedBidAuctionResult<String> result = auction.solve(random);
+		List<CampaignAuctionReport> reports = new ArrayList<CampaignAuctionReport>(
+				campaigns.size());
+		for (int item = 0; item < campaigns.size(); item++) {
+			reports.add(campaigns.get(item).allocate(result, item));
+		}
+		auction.clear();
+		return reports;
+	}
+}
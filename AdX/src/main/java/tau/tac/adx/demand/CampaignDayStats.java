@@ -0,0 +1,180 @@
+package tau.tac.adx.demand;
+
+import java.util.Arrays;
+
+/**
+ * Per day statistics of a campaign, kept as prefix sums in primitive arrays
+ * indexed by the day relative to the first day of the campaign: entry
+ * <code>i</code> holds the sum over the days <code>first</code> to
+ * <code>first + i - 1</code>. The statistics of any range of days, including
+ * the totals, are therefore answered in constant time without allocation.
+ * <p>
+ * The arrays are sized for the campaign days and the following reporting day
+ * and only grow if days after these are stored.
+ *
+ */
+public class CampaignDayStats {
+
+	private final int firstDay;
+
+	private double[] targetedImpsSums;
+	private double[] otherImpsSums;
+	private double[] costSums;
+
+	/* number of days stored, i.e., last stored day is firstDay + days - 1 */
+	private int days;
+
+	/**
+	 * @param firstDay
+	 *            the first day statistics are stored for
+	 * @param lastDay
+	 *            the last day statistics are expected for
+	 */
+	public CampaignDayStats(int firstDay, int lastDay) {
+		int length = Math.max(lastDay - firstDay + 2, 1) + 1;
+		this.firstDay = firstDay;
+		targetedImpsSums = new double[length];
+		otherImpsSums = new double[length];
+		costSums = new double[length];
+	}
+
+	/**
+	 * Adds the statistics of a day. Days are expected to be added in
+	 * increasing order, skipped days count as empty and a day may be added
+	 * again to accumulate more statistics for it.
+	 *
+	 * @param day
+	 *            the day, not before the first day
+	 * @param stats
+	 *            the statistics of the day
+	 */
+	public void add(int day, CampaignStats stats) {
+		int index = day - firstDay;
+		if (index < 0) {
+			throw new IllegalArgumentException("day " + day
+					+ " is before the first day " + firstDay);
+		}
+		ensureDays(index + 1);
+		/* normally only the last entry, more if a previous day is updated */
+		for (int i = index + 1; i <= days; i++) {
+			targetedImpsSums[i] += stats.tartgetedImps;
+			otherImpsSums[i] += stats.otherImps;
+			costSums[i] += stats.cost;
+		}
+	}
+
+	private void ensureDays(int count) {
+		if (count <= days) {
+			return;
+		}
+		if (count >= costSums.length) {
+			int length = Math.max(count + 1, costSums.length * 2);
+			targetedImpsSums = Arrays.copyOf(targetedImpsSums, length);
+			otherImpsSums = Arrays.copyOf(otherImpsSums, length);
+			costSums = Arrays.copyOf(costSums, length);
+		}
+		for (int i = days + 1; i <= count; i++) {
+			targetedImpsSums[i] = targetedImpsSums[days];
+			otherImpsSums[i] = otherImpsSums[days];
+			costSums[i] = costSums[days];
+		}
+		days = count;
+	}
+
+	/* number of stored days before the specified day */
+	private int daysBefore(int day) {
+		int index = day - firstDay;
+		return index < 0 ? 0 : (index > days ? days : index);
+	}
+
+	/**
+	 * @return the first day statistics are stored for
+	 */
+	public int getFirstDay() {
+		return firstDay;
+	}
+
+	/**
+	 * @return the number of days stored, including skipped days
+	 */
+	public int getDays() {
+		return days;
+	}
+
+	/**
+	 * @param from
+	 *            first day, inclusive
+	 * @param to
+	 *            last day, inclusive
+	 * @return the targeted impressions of the days in the range
+	 */
+	public double getTargetedImps(int from, int to) {
+		return to < from ? 0.0 : targetedImpsSums[daysBefore(to + 1)]
+				- targetedImpsSums[daysBefore(from)];
+	}
+
+	/**
+	 * @param from
+	 *            first day, inclusive
+	 * @param to
+	 *            last day, inclusive
+	 * @return the untargeted impressions of the days in the range
+	 */
+	public double getOtherImps(int from, int to) {
+		return to < from ? 0.0 : otherImpsSums[daysBefore(to + 1)]
+				- otherImpsSums[daysBefore(from)];
+	}
+
+	/**
+	 * @param from
+	 *            first day, inclusive
+	 * @param to
+	 *            last day, inclusive
+	 * @return the cost of the days in the range
+	 */
+	public double getCost(int from, int to) {
+		return to < from ? 0.0 : costSums[daysBefore(to + 1)]
+				- costSums[daysBefore(from)];
+	}
+
+	/**
+	 * @return the targeted impressions of all stored days
+	 */
+	public double getTotalTargetedImps() {
+		return targetedImpsSums[days];
+	}
+
+	/**
+	 * @return the untargeted impressions of all stored days
+	 */
+	public double getTotalOtherImps() {
+		return otherImpsSums[days];
+	}
+
+	/**
+	 * @return the cost of all stored days
+	 */
+	public double getTotalCost() {
+		return costSums[days];
+	}
+
+	/**
+	 * @param from
+	 *            first day, inclusive
+	 * @param to
+	 *            last day, inclusive
+	 * @return the statistics of the days in the range
+	 */
+	public CampaignStats getStats(int from, int to) {
+		return new CampaignStats(getTargetedImps(from, to), getOtherImps(
+				from, to), getCost(from, to));
+	}
+
+	/**
+	 * @return the statistics of all stored days
+	 */
+	public CampaignStats getTotals() {
+		return new CampaignStats(getTotalTargetedImps(), getTotalOtherImps(),
+				getTotalCost());
+	}
+}
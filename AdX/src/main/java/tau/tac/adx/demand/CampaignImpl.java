@@ -1,11 +1,7 @@
 package tau.tac.adx.demand;
 
-import static edu.umich.eecs.tac.auction.AuctionUtils.hardSort;
-
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -16,16 +12,17 @@ import java.util.logging.Logger;
 
 import tau.tac.adx.AdxManager;
 import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.auction.sealed.SealedBidAuction;
+import tau.tac.adx.auction.sealed.SealedBidAuctionResult;
 import tau.tac.adx.devices.Device;
 import tau.tac.adx.messages.CampaignLimitSet;
 import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.report.adn.MarketSegmentSet;
 import tau.tac.adx.report.demand.campaign.auction.CampaignAuctionReport;
 import tau.tac.adx.report.demand.campaign.auction.CampaignAuctionReportEntry;
 import tau.tac.adx.report.demand.campaign.auction.CampaignAuctionReportKey;
 import tau.tac.adx.users.AdxUser;
 
-import com.google.common.eventbus.Subscribe;
-
 /**
  * 
  * @author Mariano Schain
@@ -39,7 +36,7 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 	private final static Long DEFAULT_BUDGET_FACTOR = 1L;
 	private final static Double DEFAULT_RANDOM_ALLOC_PR = new Double(0.3);
 	
-	private static Random random = new Random();
+	private final Random random;
 
 	/* maintains quality score - notified upon campaign end */
 	private QualityManager qualityManager;
@@ -50,6 +47,8 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 	private int dayStart;
 	private int dayEnd;
 	private Set<MarketSegment> targetSegments;
+	/* targetSegments as a mask, see MarketSegmentSet */
+	private int targetMask;
 	private double videoCoef;
 	private double mobileCoef;
 
@@ -65,16 +64,18 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 
 	/* current day id and accounting info */
 	protected int day;
-	private CampaignStats todays;
-	private CampaignStats totals;
+	/* today's charges, shared by the auction threads */
+	private final CampaignLedger ledger;
+	/* past days, as prefix sums */
+	private final CampaignDayStats dayStats;
 
-	private Double budgetlimit;
-	private int impressionLimit;
+	private volatile Double budgetlimit;
+	private volatile int impressionLimit;
 
-	private Double totalBudgetlimit;
-	private int totalImpressionLimit;
+	private volatile Double totalBudgetlimit;
+	private volatile int totalImpressionLimit;
 	
-	private boolean defaultLimitNotification = false;
+	private volatile boolean defaultLimitNotification = false;
 
 	/**
 	 * @return the log
@@ -136,7 +137,7 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 	 * @return the todays
 	 */
 	public CampaignStats getTodays() {
-		return todays;
+		return ledger.getStats();
 	}
 
 	/**
@@ -181,30 +182,42 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 	}
 
 	/**
-	 * @return the dayStats
+	 * @return a copy of the stored statistics of each day
 	 */
 	public SortedMap<Integer, CampaignStats> getDayStats() {
-		return dayStats;
+		SortedMap<Integer, CampaignStats> days = new TreeMap<Integer, CampaignStats>();
+		int firstDay = dayStats.getFirstDay();
+		for (int i = 0; i < dayStats.getDays(); i++) {
+			days.put(firstDay + i,
+					dayStats.getStats(firstDay + i, firstDay + i));
+		}
+		return days;
 	}
 
 	private Double tomorrowsBudgetLimit;
 	private int tomorrowsImpressionLimit;
-
-	private final SortedMap<Integer, CampaignStats> dayStats;
 	
 	//arbitrary unique value
 	private static double INITIAL_BUDGET_LIMIT = 1.0101010100101;
 
+	/**
+	 * @param random
+	 *            draws the random allocations and breaks the ties of the
+	 *            campaign's auction
+	 */
 	public CampaignImpl(QualityManager qualityManager, int reachImps,
 			int dayStart, int dayEnd, Set<MarketSegment> targetSegments,
-			double videoCoef, double mobileCoef) {
+			double videoCoef, double mobileCoef, Random random) {
 
 		if (qualityManager == null)
 			throw new NullPointerException("qualityManager cannot be null");
 
+		if (random == null)
+			throw new NullPointerException("random cannot be null");
+
 		randomAllocPr = DEFAULT_RANDOM_ALLOC_PR;
 		id = hashCode();
-		dayStats = new TreeMap<Integer, CampaignStats>();
+		dayStats = new CampaignDayStats(dayStart, dayEnd);
 		advertisersBids = new HashMap<String, Long>();
 		budgetMillis = 0;
 		advertiser = null;
@@ -222,11 +235,12 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 		this.dayStart = dayStart;
 		this.dayEnd = dayEnd;
 		this.targetSegments = targetSegments;
+		this.targetMask = MarketSegmentSet.maskOf(targetSegments);
 		this.videoCoef = videoCoef;
 		this.mobileCoef = mobileCoef;
+		this.random = random;
 
-		todays = new CampaignStats(0.0, 0.0, 0.0);
-		totals = new CampaignStats(0.0, 0.0, 0.0);
+		ledger = new CampaignLedger();
 	}
 
 	@Override
@@ -234,11 +248,6 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 		randomAllocPr = rap;
 	}
 
-	
-	@Override
-	public void registerToEventBus() {
-		AdxManager.getInstance().getSimulation().getEventBus().register(this);
-	}
 
 	@Override
 	public long getBudgetMillis() {
@@ -271,16 +280,26 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 
 	@Override
 	public boolean isOverTodaysLimit() {
-		return (budgetlimit < todays.cost)
-				|| (impressionLimit < todays.tartgetedImps);
+		return ledger.isOver(budgetlimit, impressionLimit);
 	}
 
 	@Override	
 	public boolean isOverTotalLimits() {
-		return (totalBudgetlimit < totals.cost + todays.cost)
-				|| (totalImpressionLimit < 
-									  totals.tartgetedImps +
-									  todays.tartgetedImps);
+		return ledger.isOver(totalBudgetlimit - dayStats.getTotalCost(),
+				totalImpressionLimit - dayStats.getTotalTargetedImps());
+	}
+
+	/*
+	 * the budget and targeted impressions today's charges may exceed, i.e.,
+	 * the tighter of the daily and the remaining total limits
+	 */
+	private double getBudgetHeadroom() {
+		return Math.min(budgetlimit, totalBudgetlimit - dayStats.getTotalCost());
+	}
+
+	private double getImpressionHeadroom() {
+		return Math.min(impressionLimit, totalImpressionLimit
+				- dayStats.getTotalTargetedImps());
 	}
 
 	
@@ -306,28 +325,32 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 	@Override
 	public boolean impress(AdxUser adxUser, AdType adType, Device device,
 			double costPerMille) {
+		return charge(adxUser, adType, device, costPerMille).isCharged();
+	}
+
+	@Override
+	public CampaignLedger.Charge charge(AdxUser adxUser, AdType adType,
+			Device device, double costPerMille) {
 		if(budgetlimit == INITIAL_BUDGET_LIMIT && !defaultLimitNotification){
 			log.log(Level.SEVERE, "Campaign #"+id+" impressed while budget limit was not initialized.");
 			defaultLimitNotification = true;
 		}
-		if (isAllocated() && (!isOverTodaysLimit()) && (!isOverTotalLimits())) {
-			todays.cost += costPerMille / 1000.0;
+		if (!isAllocated()) {
+			log.log(Level.SEVERE, "Campaign #"+id+" impressed while not allocated");
+			return CampaignLedger.Charge.REJECTED;
+		}
 
-			double imps = (device == Device.mobile ? mobileCoef : 1.0)
-					* (adType == AdType.video ? videoCoef : 1.0);
+		double imps = (device == Device.mobile ? mobileCoef : 1.0)
+				* (adType == AdType.video ? videoCoef : 1.0);
+		boolean targeted = MarketSegmentSet.containsAll(
+				MarketSegment.extractSegmentMask(adxUser), targetMask);
 
-			Set<MarketSegment> actualSegments = MarketSegment
-					.extractSegment(adxUser);
-			if (actualSegments.containsAll(targetSegments)) {
-				todays.tartgetedImps += imps;
-			} else {
-				todays.otherImps += imps;
-			}
-			return true;
-		}else{
-			log.log(Level.SEVERE, "Campaign #"+id+" impressed while over limit. Current cost: "+todays.cost + " Budget limit: "+budgetlimit);
-			return false;
+		CampaignLedger.Charge charge = ledger.charge(costPerMille / 1000.0,
+				imps, targeted, getBudgetHeadroom(), getImpressionHeadroom());
+		if (!charge.isCharged()) {
+			log.log(Level.FINE, "Campaign #"+id+" impressed while over limit. Current cost: "+ledger.getCost() + " Budget limit: "+budgetlimit);
 		}
+		return charge;
 	}
 
 	double effectiveReachRatio(double imps) {
@@ -350,9 +373,7 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 		 */
 		defaultLimitNotification = false;
 		if (timeUnit >= dayStart) {
-			dayStats.put(day, todays);
-			totals = totals.add(todays);
-			todays = new CampaignStats(0.0, 0.0, 0.0);
+			dayStats.add(day, ledger.nextDay());
 			day = timeUnit;
 
 			budgetlimit = tomorrowsBudgetLimit;
@@ -362,7 +383,7 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 		}
 
 		if (day == dayEnd + 1) { /* was last day - update quality score */
-			double effectiveReachRatio = effectiveReachRatio(totals.tartgetedImps);
+			double effectiveReachRatio = effectiveReachRatio(dayStats.getTotalTargetedImps());
 			qualityManager.updateQualityScore(advertiser, effectiveReachRatio);
 			AdxManager
 					.getInstance()
@@ -371,7 +392,7 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 							effectiveReachRatio * (budgetMillis/1000.0));
 
 			log.log(Level.INFO, "Campaign " + id + " ended for advertiser "
-					+ advertiser + ". Stats " + totals + " Reach " + reachImps
+					+ advertiser + ". Stats " + getTotals() + " Reach " + reachImps
 					+ " ERR " + effectiveReachRatio + " Budget " + (budgetMillis/1000.0)
 					+ " Revenue " + effectiveReachRatio * (budgetMillis/1000.0));
 		}
@@ -406,85 +427,53 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 
 	@Override
 	public CampaignAuctionReport auction() {
-		CampaignAuctionReport auctionReport = null;
-		
-		double bsecond;
-		int advCount = advertisersBids.size();
-		advertiser = "";
-		if (advCount > 0) {
-			String[] advNames = new String[advCount];
-			double[] qualityScores = new double[advCount];
-			long[] bids = new long[advCount];
-			double[] scores = new double[advCount];
-			int[] indices = new int[advCount];
-
-			int i = 0;
-			
-			List<String> advNamesList = new ArrayList<String>(advertisersBids.keySet());
-			Collections.shuffle(advNamesList);
-			
-			for (String advName : advNamesList) {
-				advNames[i] = new String(advName);
-				bids[i] = advertisersBids.get(advName);
-				qualityScores[i] = qualityManager.getQualityScore(advName);
-				scores[i] = qualityScores[i] / bids[i];
-				indices[i] = i;
-				i++;
-			}
-
-			hardSort(scores, indices);
-			boolean randomAllocation;
-			if (random.nextDouble() < randomAllocPr) { /* allocate campaign to a random bidder */
-				int ri = random.nextInt(advCount);
-				advertiser = advNames[ri]; 
-				budgetMillis = bids[ri];
-				randomAllocation = true;
-			} else {
-			
+		return new CampaignAuctioneer(random).auction(
+				Collections.singletonList(this)).get(0);
+	}
 
-				double reserveScore = 1.0 / (RESERVE_MAX_BUDGET_FACTOR * reachImps);
+	@Override
+	public void addAuctionItem(SealedBidAuction<String> auction) {
+		auction.addItem(1.0 / (RESERVE_MAX_BUDGET_FACTOR * reachImps),
+				randomAllocPr);
+		for (Map.Entry<String, Long> bid : advertisersBids.entrySet()) {
+			auction.addBid(bid.getKey(), bid.getValue(),
+					qualityManager.getQualityScore(bid.getKey()));
+		}
+	}
 
-				if (scores[indices[0]] >= reserveScore) {
-				
-					advertiser = advNames[indices[0]];
-			
-					if (advCount == 1)
-						bsecond = reserveScore;
-					else
-						bsecond = (scores[indices[1]] > reserveScore) ? scores[indices[1]]
-							: reserveScore;
-
-					budgetMillis = (long) (qualityScores[indices[0]] / bsecond);
-				}
-				randomAllocation = false;
-			}
-			
-			auctionReport = generateAuctionReport(advNames, bids, qualityScores, indices, advertiser, randomAllocation);
+	@Override
+	public CampaignAuctionReport allocate(
+			SealedBidAuctionResult<String> result, int item) {
+		advertiser = "";
+		if (result.getBidderCount(item) == 0) {
+			return null;
+		}
+		int winner = result.getWinner(item);
+		if (winner >= 0) {
+			advertiser = result.getBidder(item, winner);
+			budgetMillis = (long) result.getPrice(item, winner);
 		}
-		return auctionReport;
+		return generateAuctionReport(result, item);
 	}
 
 	/**
-	 * Generates a {@link CampaignAuctionReport} according to given parameters.
-	 * @param advNames Ad networks' names.
-	 * @param bids Given bids.
-	 * @param qualityScores Ad networks' quality scores.
-	 * @param indices 
-	 * @param winner 
-	 * @param randomAllocation Was this winner picked at random
-	 * @return {@link CampaignAuctionReport} according to given parameters.
+	 * Generates a {@link CampaignAuctionReport} from the campaign's item of a
+	 * batched auction.
+	 * @param result Results of the batched auction.
+	 * @param item Index of the campaign's item.
+	 * @return {@link CampaignAuctionReport} listing the bids in ranked order.
 	 */
-	private CampaignAuctionReport generateAuctionReport(String[] advNames, long[] bids,
-			double[] qualityScores, int[] indices, String winner, boolean randomAllocation) {
+	private CampaignAuctionReport generateAuctionReport(
+			SealedBidAuctionResult<String> result, int item) {
 		CampaignAuctionReport campaignAuctionReport = new CampaignAuctionReport(id);
-		for (int i = 0; i < advNames.length; i++) {
-			CampaignAuctionReportKey campaignReportKey = new CampaignAuctionReportKey(advNames[indices[i]]);
+		for (int i = 0; i < result.getBidderCount(item); i++) {
+			CampaignAuctionReportKey campaignReportKey = new CampaignAuctionReportKey(result.getBidder(item, i));
 			CampaignAuctionReportEntry addReportEntry = campaignAuctionReport.addReportEntry(campaignReportKey);
-			addReportEntry.setActualBid(bids[indices[i]]);
-			addReportEntry.setEffctiveBid(qualityScores[indices[i]] / bids[indices[i]]);
+			addReportEntry.setActualBid(result.getBid(item, i));
+			addReportEntry.setEffctiveBid(result.getScore(item, i));
 		}
-		campaignAuctionReport.setWinner(winner);
-		campaignAuctionReport.setRandomAllocation(randomAllocation);
+		campaignAuctionReport.setWinner(advertiser);
+		campaignAuctionReport.setRandomAllocation(result.isRandomAllocation(item));
 		return campaignAuctionReport;
 	}
 
@@ -516,22 +505,53 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 
 	@Override
 	public CampaignStats getStats(int timeUnitFrom, int timeUnitTo) {
-		CampaignStats current = (timeUnitTo >= day) ? todays : null; /*
-																	 * should
-																	 * add
-																	 * current
-																	 * stats to
-																	 * accumulated
-																	 */
-		SortedMap<Integer, CampaignStats> daysRangeStats = dayStats.subMap(
-				timeUnitFrom, timeUnitTo + 1);
-
-		return AccumulatorImpl.accumulate(this,
-				new ArrayList<CampaignStats>(daysRangeStats.values()),
-				new CampaignStats(0.0, 0.0, 0.0)).add(current);
-	}
-
-	@Subscribe
+		return new CampaignStats(getTargetedImps(timeUnitFrom, timeUnitTo),
+				getOtherImps(timeUnitFrom, timeUnitTo), getCost(timeUnitFrom,
+						timeUnitTo));
+	}
+
+	/*
+	 * The range statistics below add the current day if the range reaches it,
+	 * as getStats does
+	 */
+
+	/**
+	 * @param timeUnitFrom
+	 *            Inclusive!
+	 * @param timeUnitTo
+	 *            Inclusive!
+	 * @return the targeted impressions of the days range
+	 */
+	public double getTargetedImps(int timeUnitFrom, int timeUnitTo) {
+		return dayStats.getTargetedImps(timeUnitFrom, timeUnitTo)
+				+ (timeUnitTo >= day ? ledger.getTargetedImps() : 0.0);
+	}
+
+	/**
+	 * @param timeUnitFrom
+	 *            Inclusive!
+	 * @param timeUnitTo
+	 *            Inclusive!
+	 * @return the untargeted impressions of the days range
+	 */
+	public double getOtherImps(int timeUnitFrom, int timeUnitTo) {
+		return dayStats.getOtherImps(timeUnitFrom, timeUnitTo)
+				+ (timeUnitTo >= day ? ledger.getOtherImps() : 0.0);
+	}
+
+	/**
+	 * @param timeUnitFrom
+	 *            Inclusive!
+	 * @param timeUnitTo
+	 *            Inclusive!
+	 * @return the cost of the days range
+	 */
+	public double getCost(int timeUnitFrom, int timeUnitTo) {
+		return dayStats.getCost(timeUnitFrom, timeUnitTo)
+				+ (timeUnitTo >= day ? ledger.getCost() : 0.0);
+	}
+
+	@Override
 	public void limitSet(CampaignLimitSet message) {
 		if ((message.getCampaignId() == id)
 				&& (message.getAdNetwork().equals(advertiser))) {
@@ -548,7 +568,7 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 
 	@Override
 	public CampaignStats getTodayStats() {
-		return todays;
+		return ledger.getStats();
 	}
 
 	@Override
@@ -569,7 +589,7 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 				+ videoCoef + ", mobileCoef=" + mobileCoef
 				+ ", advertisersBids=" + advertisersBids + ", budgetMillis=" + budgetMillis
 				+ ", advertiser=" + advertiser + ", day=" + day + ", todays="
-				+ todays + ", totals=" + totals + ", dayStats=" + dayStats
+				+ ledger.getStats() + ", totals=" + getTotals() + ", dayStats=" + getDayStats()
 				+ "]";
 	}
 
@@ -590,7 +610,22 @@ public class CampaignImpl implements Campaign, Accumulator<CampaignStats> {
 
 	@Override
 	public CampaignStats getTotals() {
-		return totals;
+		return dayStats.getTotals();
+	}
+
+	@Override
+	public double getTotalTargetedImps() {
+		return dayStats.getTotalTargetedImps();
+	}
+
+	@Override
+	public double getTotalOtherImps() {
+		return dayStats.getTotalOtherImps();
+	}
+
+	@Override
+	public double getTotalCost() {
+		return dayStats.getTotalCost();
 	}
 	
 	public boolean shouldWarnLimits() {
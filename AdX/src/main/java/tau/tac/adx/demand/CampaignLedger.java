@@ -0,0 +1,182 @@
+package tau.tac.adx.demand;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Accounts for the impressions charged to a campaign during the current day.
+ * <p>
+ * The day's cost and impression counts are kept in a single immutable entry
+ * replaced by compare-and-set, so the limit check and the charge are one
+ * atomic step and concurrent auction threads never lock: threads charging
+ * different campaigns never touch the same state, and threads charging the
+ * same campaign simply retry. A charge is accepted as long as the campaign is
+ * not over its limits before the charge (the charge that crosses a limit is
+ * therefore still accepted) and the first charge that finds the campaign over
+ * a limit during a day is reported as such, exactly once, see {@link Charge}.
+ *
+ */
+public class CampaignLedger {
+
+	/**
+	 * Outcome of {@link CampaignLedger#charge}.
+	 */
+	public enum Charge {
+		/** Charged, the campaign is still within its limits */
+		ACCEPTED(true, false),
+		/** Charged, and the campaign is now over its limits */
+		LIMIT_REACHED(true, true),
+		/** Not charged, first charge of the day found over the limits */
+		OVER_LIMIT(false, true),
+		/** Not charged, the limit was already reported today */
+		REJECTED(false, false);
+
+		private final boolean charged;
+		private final boolean limitReached;
+
+		private Charge(boolean charged, boolean limitReached) {
+			this.charged = charged;
+			this.limitReached = limitReached;
+		}
+
+		/**
+		 * @return <code>true</code> if the impression was charged
+		 */
+		public boolean isCharged() {
+			return charged;
+		}
+
+		/**
+		 * @return <code>true</code> if this charge is the one reporting that
+		 *         the campaign is over its limits today
+		 */
+		public boolean isLimitReached() {
+			return limitReached;
+		}
+	}
+
+	/** Totals of the day, never modified once published */
+	private static final class Entry {
+		final double cost;
+		final double targetedImps;
+		final double otherImps;
+		final boolean limitReported;
+
+		Entry(double cost, double targetedImps, double otherImps,
+				boolean limitReported) {
+			this.cost = cost;
+			this.targetedImps = targetedImps;
+			this.otherImps = otherImps;
+			this.limitReported = limitReported;
+		}
+
+		boolean isOver(double budgetLimit, double impressionLimit) {
+			return (budgetLimit < cost) || (impressionLimit < targetedImps);
+		}
+	}
+
+	private static final Entry EMPTY = new Entry(0.0, 0.0, 0.0, false);
+
+	private final AtomicReference<Entry> today = new AtomicReference<Entry>(
+			EMPTY);
+
+	/**
+	 * Charges an impression unless the campaign is already over its limits.
+	 *
+	 * @param cost
+	 *            the cost of the impression
+	 * @param imps
+	 *            the impressions counted, see
+	 *            {@link Campaign#getVideoCoef()} and
+	 *            {@link Campaign#getMobileCoef()}
+	 * @param targeted
+	 *            whether the user belongs to the campaign's target segment
+	 * @param budgetLimit
+	 *            the cost the campaign may exceed today
+	 * @param impressionLimit
+	 *            the targeted impressions the campaign may exceed today
+	 * @return the outcome of the charge
+	 */
+	public Charge charge(double cost, double imps, boolean targeted,
+			double budgetLimit, double impressionLimit) {
+		while (true) {
+			Entry current = today.get();
+			Entry next;
+			Charge charge;
+			if (current.isOver(budgetLimit, impressionLimit)) {
+				if (current.limitReported) {
+					return Charge.REJECTED;
+				}
+				next = new Entry(current.cost, current.targetedImps,
+						current.otherImps, true);
+				charge = Charge.OVER_LIMIT;
+			} else {
+				next = targeted ? new Entry(current.cost + cost,
+						current.targetedImps + imps, current.otherImps, false)
+						: new Entry(current.cost + cost, current.targetedImps,
+								current.otherImps + imps, false);
+				if (next.isOver(budgetLimit, impressionLimit)) {
+					next = new Entry(next.cost, next.targetedImps,
+							next.otherImps, true);
+					charge = Charge.LIMIT_REACHED;
+				} else {
+					charge = Charge.ACCEPTED;
+				}
+			}
+			if (today.compareAndSet(current, next)) {
+				return charge;
+			}
+		}
+	}
+
+	/**
+	 * @param budgetLimit
+	 *            the cost the campaign may exceed today
+	 * @param impressionLimit
+	 *            the targeted impressions the campaign may exceed today
+	 * @return <code>true</code> if the campaign is over the given limits
+	 */
+	public boolean isOver(double budgetLimit, double impressionLimit) {
+		return today.get().isOver(budgetLimit, impressionLimit);
+	}
+
+	/**
+	 * @return the cost charged today
+	 */
+	public double getCost() {
+		return today.get().cost;
+	}
+
+	/**
+	 * @return the targeted impressions charged today
+	 */
+	public double getTargetedImps() {
+		return today.get().targetedImps;
+	}
+
+	/**
+	 * @return the untargeted impressions charged today
+	 */
+	public double getOtherImps() {
+		return today.get().otherImps;
+	}
+
+	/**
+	 * @return a consistent copy of today's statistics
+	 */
+	public CampaignStats getStats() {
+		Entry entry = today.get();
+		return new CampaignStats(entry.targetedImps, entry.otherImps,
+				entry.cost);
+	}
+
+	/**
+	 * Starts a new day.
+	 *
+	 * @return the statistics of the day that ended
+	 */
+	public CampaignStats nextDay() {
+		Entry entry = today.getAndSet(EMPTY);
+		return new CampaignStats(entry.targetedImps, entry.otherImps,
+				entry.cost);
+	}
+}
@@ -0,0 +1,104 @@
+package tau.tac.adx.demand;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tau.tac.adx.messages.CampaignLimitSet;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Keeps the allocated campaigns that are still running, keyed by campaign id,
+ * and routes campaign commands posted on the simulation event bus directly to
+ * the addressed campaign. A single registry is registered on the event bus
+ * instead of every campaign, and campaigns are added when allocated and
+ * removed when they end.
+ *
+ */
+public class CampaignRegistry {
+
+	private final Logger log = Logger.getLogger(CampaignRegistry.class
+			.getName());
+
+	private final ConcurrentMap<Integer, Campaign> campaigns = new ConcurrentHashMap<Integer, Campaign>();
+
+	/**
+	 * Registers a campaign to receive the commands addressed to it.
+	 *
+	 * @param campaign
+	 *            the allocated campaign
+	 */
+	public void register(Campaign campaign) {
+		if (campaign == null)
+			throw new NullPointerException("campaign cannot be null");
+
+		Campaign previous = campaigns.put(campaign.getId(), campaign);
+		if (previous != null && previous != campaign) {
+			log.log(Level.WARNING, "Campaign #" + campaign.getId()
+					+ " replaced a registered campaign with the same id");
+		}
+	}
+
+	/**
+	 * Removes a campaign. Commands later addressed to it are ignored.
+	 *
+	 * @param campaign
+	 *            the campaign to remove
+	 * @return <code>true</code> if the campaign was registered
+	 */
+	public boolean unregister(Campaign campaign) {
+		return campaigns.remove(campaign.getId(), campaign);
+	}
+
+	/**
+	 * @param campaignId
+	 *            the campaign id
+	 * @return the registered campaign or <code>null</code> if there is none
+	 */
+	public Campaign getCampaign(int campaignId) {
+		return campaigns.get(campaignId);
+	}
+
+	/**
+	 * @return the registered campaigns
+	 */
+	public Collection<Campaign> getCampaigns() {
+		return Collections.unmodifiableCollection(campaigns.values());
+	}
+
+	/**
+	 * @return the number of registered campaigns
+	 */
+	public int size() {
+		return campaigns.size();
+	}
+
+	/**
+	 * Removes all campaigns.
+	 */
+	public void clear() {
+		campaigns.clear();
+	}
+
+	/**
+	 * Applies a daily or total limit to the addressed campaign.
+	 *
+	 * @param message
+	 *            the limit command
+	 */
+	@Subscribe
+	public void limitSet(CampaignLimitSet message) {
+		Campaign campaign = campaigns.get(message.getCampaignId());
+		if (campaign == null) {
+			log.log(Level.FINE, "Ignoring limit for unknown campaign #"
+					+ message.getCampaignId() + " from "
+					+ message.getAdNetwork());
+			return;
+		}
+		campaign.limitSet(message);
+	}
+}
@@ -45,6 +45,12 @@ public class CampaignStats {
 		this.cost = other.cost;
 	}
 
+	public void setValues(double timps, double oimps, double cost) {
+		this.tartgetedImps = timps;
+		this.otherImps = oimps;
+		this.cost = cost;
+	}
+
 	CampaignStats add(CampaignStats other) {
 		if (other != null) {
 			tartgetedImps += other.tartgetedImps;
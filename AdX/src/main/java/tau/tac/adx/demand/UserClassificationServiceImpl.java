@@ -1,14 +1,13 @@
 package tau.tac.adx.demand;
 
-import static edu.umich.eecs.tac.auction.AuctionUtils.hardSort;
-
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import tau.tac.adx.AdxManager;
+import tau.tac.adx.auction.sealed.PositionPricing;
+import tau.tac.adx.auction.sealed.SealedBidAuction;
+import tau.tac.adx.auction.sealed.SealedBidAuctionResult;
 
 /**
  * 
@@ -22,6 +21,23 @@ public class UserClassificationServiceImpl implements UserClassificationService
 	private final Map<String, UserClassificationServiceAdNetData> advertisersData = new HashMap<String, UserClassificationServiceAdNetData>();
 	private final Map<String, UserClassificationServiceAdNetData> tomorrowsAdvertisersData = new HashMap<String, UserClassificationServiceAdNetData>();
 
+	/* breaks the ties of the auction */
+	private final Random random;
+
+	/* position i gets service level UCS_PROB^i, reused every day */
+	private final SealedBidAuction<String> auction = new SealedBidAuction<String>(
+			new PositionPricing(UCS_PROB));
+
+	/**
+	 * @param random
+	 *            breaks the ties of the daily auction
+	 */
+	public UserClassificationServiceImpl(Random random) {
+		if (random == null)
+			throw new NullPointerException("random cannot be null");
+		this.random = random;
+	}
+
 	@Override
 	public void updateAdvertiserBid(String advertiser, double ucsBid, int day) {
 		UserClassificationServiceAdNetData advData = tomorrowsAdvertisersData
@@ -53,47 +69,29 @@ public class UserClassificationServiceImpl implements UserClassificationService
 					tomorrowsAdvertisersData.get(advertiser).clone());
 		}
 
-		int advCount = tomorrowsAdvertisersData.size();
-
-		if (advCount > 0) {
-			String[] advNames = new String[advCount + 1];
-			double[] bids = new double[advCount + 1];
-			int[] indices = new int[advCount + 1];
-
-			int i = 0;
-
-			List<String> advNamesList = new ArrayList<String>(
-					tomorrowsAdvertisersData.keySet());
-			Collections.shuffle(advNamesList);
-
-			for (String advName : advNamesList) {
-				advNames[i] = new String(advName);
-				bids[i] = tomorrowsAdvertisersData.get(advName).getBid();
-				indices[i] = i;
-				i++;
-			}
-
-			advNames[advCount] = "Zero";
-			bids[advCount] = 0;
-			indices[advCount] = advCount;
-
-			hardSort(bids, indices);
-
-			double ucsProb = 1.0;
-			double levelPrice = 0;
-			for (int j = 0; j < advCount; j++) {
-				String advertiser = advNames[indices[j]];
-				UserClassificationServiceAdNetData advData = tomorrowsAdvertisersData
-						.get(advertiser);
-				levelPrice = ucsProb * bids[indices[j + 1]];
-				advData.setAuctionResult(levelPrice, ucsProb, day + 1);
-				if (broadcast) {
-					AdxManager.getInstance().getSimulation()
-							.broadcastUCSWin(advertiser, levelPrice);
-				}
-				ucsProb = ucsProb * UCS_PROB;
+		if (tomorrowsAdvertisersData.isEmpty()) {
+			return;
+		}
+		auction.clear();
+		auction.addItem(0, 0);
+		for (Map.Entry<String, UserClassificationServiceAdNetData> entry : tomorrowsAdvertisersData
+				.entrySet()) {
+			auction.addBid(entry.getKey(), entry.getValue().getBid(), 1.0);
+		}
+		SealedBidAuctionResult<String> result = auction.solve(random);
+
+		/* bidders below the reserve (negative bids) get no service */
+		for (int position = 0; position < result.getBidderCount(0); position++) {
+			String advertiser = result.getBidder(0, position);
+			double price = result.getPrice(0, position);
+			tomorrowsAdvertisersData.get(advertiser).setAuctionResult(price,
+					result.getLevel(0, position), day + 1);
+			if (broadcast && result.isAllocated(0, position)) {
+				AdxManager.getInstance().getSimulation()
+						.broadcastUCSWin(advertiser, price);
 			}
 		}
+		auction.clear();
 	}
 
 	@Override
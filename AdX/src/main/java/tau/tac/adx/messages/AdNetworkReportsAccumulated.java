@@ -0,0 +1,39 @@
+package tau.tac.adx.messages;
+
+import java.util.Map;
+
+import tau.tac.adx.report.adn.AdNetworkReportAccumulator;
+
+/**
+ * Carries ad network reports accumulated outside of the
+ * {@link tau.tac.adx.report.adn.AdNetworkReportManager}, e.g., by the user
+ * activity shards, to be merged into the day's reports. The auctions they
+ * cover are posted as {@link AuctionMessage#isReported() reported}
+ * {@link AuctionMessage}s.
+ */
+public class AdNetworkReportsAccumulated implements AdxMessage {
+
+	/**
+	 * {@link AdNetworkReportAccumulator}s by ad network name.
+	 */
+	private final Map<String, AdNetworkReportAccumulator> reports;
+
+	/**
+	 * @param reports
+	 *            {@link AdNetworkReportAccumulator}s by ad network name.
+	 */
+	public AdNetworkReportsAccumulated(
+			Map<String, AdNetworkReportAccumulator> reports) {
+		if (reports == null) {
+			throw new NullPointerException("reports cannot be null");
+		}
+		this.reports = reports;
+	}
+
+	/**
+	 * @return {@link AdNetworkReportAccumulator}s by ad network name.
+	 */
+	public Map<String, AdNetworkReportAccumulator> getReports() {
+		return reports;
+	}
+}
@@ -27,6 +27,10 @@ public class AuctionMessage implements AdxMessage {
 	 * Participating {@link AdxUser}.
 	 */
 	private AdxUser user;
+	/**
+	 * Whether the auction was already added to the ad network reports.
+	 */
+	private boolean reported;
 
 	/**
 	 * @param auctionResult
@@ -35,10 +39,25 @@ public class AuctionMessage implements AdxMessage {
 	 */
 	public AuctionMessage(AdxAuctionResult auctionResult, AdxQuery query,
 			AdxUser user) {
+		this(auctionResult, query, user, false);
+	}
+
+	/**
+	 * @param auctionResult
+	 * @param query
+	 * @param user
+	 * @param reported
+	 *            <code>true</code> if the auction was already added to the ad
+	 *            network reports, e.g., by a user activity shard's own
+	 *            {@link tau.tac.adx.report.adn.AdNetworkReportAccumulator}s.
+	 */
+	public AuctionMessage(AdxAuctionResult auctionResult, AdxQuery query,
+			AdxUser user, boolean reported) {
 		super();
 		this.auctionResult = auctionResult;
 		this.query = query;
 		this.user = user;
+		this.reported = reported;
 	}
 
 	/**
@@ -61,4 +80,12 @@ public class AuctionMessage implements AdxMessage {
 	public AdxUser getUser() {
 		return user;
 	}
+
+	/**
+	 * @return <code>true</code> if the auction was already added to the ad
+	 *         network reports
+	 */
+	public boolean isReported() {
+		return reported;
+	}
 }
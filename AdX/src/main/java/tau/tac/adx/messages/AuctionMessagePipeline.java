@@ -0,0 +1,304 @@
+package tau.tac.adx.messages;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tau.tac.adx.AdxManager;
+
+import com.google.common.eventbus.EventBus;
+
+/**
+ * Delivers {@link AuctionMessage}s to their consumers (report managers, the
+ * demand agent) off the auction thread.
+ * <p>
+ * Every registered consumer gets a lane: a bounded queue of message batches,
+ * drained in order by a dedicated thread into a private {@link EventBus} the
+ * consumer is registered with. Each posting thread fills a batch of its own,
+ * without taking any shared lock, and hands it off once it holds
+ * <code>batchSize</code> messages, the same batch array being shared by all
+ * lanes; a full queue blocks the producer (backpressure). Each consumer
+ * therefore sees every message exactly once and, per posting thread, in
+ * posting order, which in particular orders the impressions of each campaign
+ * when the auctions are posted from a single thread; different consumers run
+ * concurrently. {@link #awaitCompletion()} is the end-of-day barrier: it hands
+ * off the partially filled batches and returns once every message posted
+ * before the call has been consumed.
+ * <p>
+ * With a <code>batchSize</code> of <code>0</code> the pipeline is synchronous:
+ * messages are posted straight to the simulation's {@link EventBus}, with
+ * which the consumers are already registered, and {@link #register(Object)}
+ * does nothing.
+ * <p>
+ * Note that in asynchronous mode consumers lag behind the auctions by up to a
+ * batch, e.g. a {@link CampaignLimitReached} posted by the demand agent
+ * reaches the bid tracker a few auctions later than in synchronous mode.
+ */
+public class AuctionMessagePipeline {
+
+	private static final Logger log = Logger
+			.getLogger(AuctionMessagePipeline.class.getName());
+
+	/**
+	 * Bus used in synchronous mode.
+	 */
+	private final EventBus eventBus;
+
+	/**
+	 * Messages per batch, <code>0</code> for synchronous delivery.
+	 */
+	private final int batchSize;
+
+	/**
+	 * Maximum number of batches queued per lane.
+	 */
+	private final int capacity;
+
+	private final List<Lane> lanes = new CopyOnWriteArrayList<Lane>();
+
+	/**
+	 * Batches of all threads that posted so far, flushed by
+	 * {@link #flush()}.
+	 */
+	private final Queue<Batch> batches = new ConcurrentLinkedQueue<Batch>();
+
+	/**
+	 * Batch being filled by the calling thread.
+	 */
+	private final ThreadLocal<Batch> threadBatch = new ThreadLocal<Batch>() {
+		@Override
+		protected Batch initialValue() {
+			Batch batch = new Batch();
+			batches.add(batch);
+			return batch;
+		}
+	};
+
+	/**
+	 * @param eventBus
+	 *            {@link EventBus} used in synchronous mode.
+	 * @param batchSize
+	 *            Messages per batch, <code>0</code> for synchronous delivery.
+	 * @param capacity
+	 *            Maximum number of batches queued per consumer.
+	 */
+	public AuctionMessagePipeline(EventBus eventBus, int batchSize,
+			int capacity) {
+		if (eventBus == null) {
+			throw new NullPointerException("eventBus cannot be null");
+		}
+		if (batchSize < 0) {
+			throw new IllegalArgumentException("batchSize cannot be negative");
+		}
+		if (batchSize > 0 && capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.eventBus = eventBus;
+		this.batchSize = batchSize;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return <code>true</code> if messages are delivered on consumer threads.
+	 */
+	public boolean isAsynchronous() {
+		return batchSize > 0;
+	}
+
+	/**
+	 * Registers an {@link AuctionMessage} consumer, i.e., an object with
+	 * {@link com.google.common.eventbus.Subscribe} methods accepting
+	 * {@link AuctionMessage}s. Does nothing in synchronous mode, where the
+	 * consumer receives the messages through the simulation's {@link EventBus}
+	 * . Consumers should be registered before messages are posted.
+	 *
+	 * @param consumer
+	 *            Consumer to register.
+	 */
+	public void register(Object consumer) {
+		if (!isAsynchronous()) {
+			return;
+		}
+		Lane lane = new Lane(consumer);
+		lanes.add(lane);
+		lane.thread.start();
+	}
+
+	/**
+	 * Posts an {@link AuctionMessage} to all consumers.
+	 *
+	 * @param message
+	 *            {@link AuctionMessage} to post.
+	 */
+	public void post(AuctionMessage message) {
+		if (!isAsynchronous()) {
+			eventBus.post(message);
+			return;
+		}
+		AuctionMessage[] full = threadBatch.get().add(message);
+		if (full != null) {
+			handOff(full);
+		}
+	}
+
+	/**
+	 * Hands the partially filled batches of all threads off to the consumers.
+	 */
+	public void flush() {
+		for (Batch batch : batches) {
+			AuctionMessage[] messages = batch.drain();
+			if (messages != null) {
+				handOff(messages);
+			}
+		}
+	}
+
+	/**
+	 * Flushes and waits until all messages posted before the call have been
+	 * consumed. Only the lanes are locked while waiting, so other threads can
+	 * keep posting.
+	 */
+	public void awaitCompletion() {
+		flush();
+		boolean interrupted = false;
+		for (Lane lane : lanes) {
+			synchronized (lane) {
+				long target = lane.submitted;
+				while (lane.consumed < target) {
+					try {
+						lane.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Consumes all posted messages and stops the consumer threads.
+	 */
+	public void shutdown() {
+		awaitCompletion();
+		for (Lane lane : lanes) {
+			lane.thread.interrupt();
+		}
+		lanes.clear();
+	}
+
+	private void handOff(AuctionMessage[] messages) {
+		for (Lane lane : lanes) {
+			synchronized (lane) {
+				lane.submitted++;
+			}
+			boolean interrupted = false;
+			while (true) {
+				try {
+					lane.queue.put(messages);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * A posting thread's batch. Its monitor is only contended when
+	 * {@link #flush()} drains it.
+	 */
+	private final class Batch {
+		private AuctionMessage[] messages = new AuctionMessage[batchSize];
+		private int count;
+
+		/**
+		 * @return The full batch to hand off, or <code>null</code>.
+		 */
+		public synchronized AuctionMessage[] add(AuctionMessage message) {
+			messages[count++] = message;
+			if (count < batchSize) {
+				return null;
+			}
+			AuctionMessage[] full = messages;
+			messages = new AuctionMessage[batchSize];
+			count = 0;
+			return full;
+		}
+
+		/**
+		 * @return The partial batch to hand off, or <code>null</code> if it
+		 *         is empty.
+		 */
+		public synchronized AuctionMessage[] drain() {
+			if (count == 0) {
+				return null;
+			}
+			AuctionMessage[] partial = Arrays.copyOf(messages, count);
+			Arrays.fill(messages, 0, count, null);
+			count = 0;
+			return partial;
+		}
+	}
+
+	/**
+	 * A consumer's queue, bus and thread.
+	 */
+	private final class Lane implements Runnable {
+		private final EventBus laneBus;
+		private final BlockingQueue<AuctionMessage[]> queue;
+		private final Thread thread;
+		/**
+		 * Context of the registering thread, bound to the lane's thread.
+		 */
+		private final AdxManager manager;
+		private long submitted;
+		private long consumed;
+
+		public Lane(Object consumer) {
+			String name = "auction-pipeline-"
+					+ consumer.getClass().getSimpleName();
+			laneBus = new EventBus(name);
+			laneBus.register(consumer);
+			manager = AdxManager.getInstance();
+			queue = new ArrayBlockingQueue<AuctionMessage[]>(capacity);
+			thread = new Thread(this, name);
+			thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			AdxManager.setContext(manager);
+			try {
+				while (true) {
+					AuctionMessage[] messages = queue.take();
+					try {
+						for (AuctionMessage message : messages) {
+							laneBus.post(message);
+						}
+					} catch (RuntimeException e) {
+						log.log(Level.SEVERE, "could not deliver auction messages",
+								e);
+					}
+					synchronized (this) {
+						consumed++;
+						notifyAll();
+					}
+				}
+			} catch (InterruptedException e) {
+				// Shut down
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package tau.tac.adx.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import se.sics.isl.transport.Context;
+import se.sics.isl.transport.Transportable;
+import se.sics.tasim.logtool.LogReader;
+import tau.tac.adx.props.AdxInfoContextFactory;
+import edu.umich.eecs.tac.Parser;
+
+/**
+ * Parses a log once, dispatching its content to several {@link LogAnalyzer}
+ * s.
+ */
+class AnalyzerDispatcher extends Parser {
+
+	private final LogAnalyzer[] analyzers;
+
+	private final Context context = new AdxInfoContextFactory()
+			.createContext();
+
+	/** Whether any analyzer handles the content, by transport name */
+	private final Map<String, Boolean> handledContent = new HashMap<String, Boolean>();
+
+	public AnalyzerDispatcher(LogReader reader, LogAnalyzer[] analyzers) {
+		super(reader);
+		this.analyzers = analyzers;
+		for (LogAnalyzer analyzer : analyzers) {
+			analyzer.init(reader);
+		}
+	}
+
+	@Override
+	protected boolean isContentHandled(String transportName) {
+		Boolean isHandled = handledContent.get(transportName);
+		if (isHandled == null) {
+			isHandled = isClassHandled(context.lookupClass(transportName));
+			handledContent.put(transportName, isHandled);
+		}
+		return isHandled;
+	}
+
+	private boolean isClassHandled(String className) {
+		Class<?> type;
+		try {
+			type = Class.forName(className);
+		} catch (Exception e) {
+			// Let the parser report unknown content
+			return true;
+		}
+		for (LogAnalyzer analyzer : analyzers) {
+			if (analyzer.isContentHandled(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	protected void parseStopped() {
+		for (LogAnalyzer analyzer : analyzers) {
+			analyzer.stop();
+		}
+	}
+
+	@Override
+	protected void nextDay(int date, long serverTime) {
+		for (LogAnalyzer analyzer : analyzers) {
+			analyzer.setDay(date);
+			analyzer.nextDay(date, serverTime);
+		}
+	}
+
+	@Override
+	protected void message(int sender, int receiver, Transportable content) {
+		for (LogAnalyzer analyzer : analyzers) {
+			analyzer.message(sender, receiver, content);
+		}
+	}
+
+	@Override
+	protected void dataUpdated(int agent, int type, Transportable content) {
+		for (LogAnalyzer analyzer : analyzers) {
+			analyzer.dataUpdated(agent, type, content);
+		}
+	}
+
+	@Override
+	protected void dataUpdated(int type, Transportable content) {
+		for (LogAnalyzer analyzer : analyzers) {
+			analyzer.dataUpdated(type, content);
+		}
+	}
+
+	@Override
+	protected void unhandledNode(String nodeName) {
+		// Analyzers only use the nodes dispatched above
+	}
+
+}
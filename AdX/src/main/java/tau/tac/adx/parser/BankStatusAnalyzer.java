@@ -0,0 +1,30 @@
+package tau.tac.adx.parser;
+
+import se.sics.isl.transport.Transportable;
+import tau.tac.adx.sim.TACAdxConstants;
+import edu.umich.eecs.tac.props.BankStatus;
+
+/**
+ * Extracts the bank balances of the ad networks, as reported by
+ * {@link BankStatus} messages (see {@link BankStatusParser}).
+ */
+public class BankStatusAnalyzer extends LogAnalyzer {
+
+	public BankStatusAnalyzer() {
+		super("bank", "day", "adNetwork", "balance");
+	}
+
+	@Override
+	protected boolean isContentHandled(Class<?> type) {
+		return type == BankStatus.class;
+	}
+
+	@Override
+	protected void message(int sender, int receiver, Transportable content) {
+		if (content instanceof BankStatus
+				&& getRole(receiver) == TACAdxConstants.AD_NETOWRK_ROLE_ID) {
+			addRow(getDay(), getParticipantName(receiver),
+					((BankStatus) content).getAccountBalance());
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package tau.tac.adx.parser;
+
+import se.sics.isl.transport.Transportable;
+import tau.tac.adx.demand.CampaignStats;
+import tau.tac.adx.report.demand.CampaignReport;
+import tau.tac.adx.report.demand.CampaignReportKey;
+
+/**
+ * Extracts the campaign statistics reported to the ad networks by
+ * {@link CampaignReport}s (see {@link CampaignReportParser}).
+ */
+public class CampaignReportAnalyzer extends LogAnalyzer {
+
+	public CampaignReportAnalyzer() {
+		super("campaigns", "day", "adNetwork", "campaign", "targetedImps",
+				"otherImps", "cost");
+	}
+
+	@Override
+	protected boolean isContentHandled(Class<?> type) {
+		return type == CampaignReport.class;
+	}
+
+	@Override
+	protected void message(int sender, int receiver, Transportable content) {
+		if (content instanceof CampaignReport) {
+			CampaignReport report = (CampaignReport) content;
+			String adNetwork = getParticipantName(receiver);
+			for (CampaignReportKey key : report) {
+				CampaignStats stats = report.getEntry(key).getCampaignStats();
+				addRow(getDay(), adNetwork, key.getCampaignId(),
+						stats.getTargetedImps(), stats.getOtherImps(),
+						stats.getCost());
+			}
+		}
+	}
+}
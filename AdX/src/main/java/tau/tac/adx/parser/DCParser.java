@@ -37,7 +37,7 @@ import edu.umich.eecs.tac.Parser;
  */
 public class DCParser extends Parser {
 
-	static int FEATURE_COUNT = 5 + AdxConfigurationParser.publisherNames.length;
+	static int FEATURE_COUNT = 5 + AdxConfigurationParser.getPublisherNames().length;
 
 	private int counter = 0;
 	private DataBundle.Builder builder = DataBundle.newBuilder();
@@ -45,8 +45,9 @@ public class DCParser extends Parser {
 
 	public DCParser(LogReader reader, ConfigManager configManager) {
 		super(reader);
-		for (int i = 0; i < AdxConfigurationParser.publisherNames.length; i++) {
-			publisherNameToId.put(AdxConfigurationParser.publisherNames[i], i);
+		String[] publisherNames = AdxConfigurationParser.getPublisherNames();
+		for (int i = 0; i < publisherNames.length; i++) {
+			publisherNameToId.put(publisherNames[i], i);
 		}
 	}
 
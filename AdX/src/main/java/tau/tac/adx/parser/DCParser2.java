@@ -30,7 +30,7 @@ import edu.umich.eecs.tac.Parser;
  */
 public class DCParser2 extends Parser {
 
-	static int FEATURE_COUNT = 5 + AdxConfigurationParser.publisherNames.length;
+	static int FEATURE_COUNT = 5 + AdxConfigurationParser.getPublisherNames().length;
 
 	Map<String, Integer> publisherNameToId = new HashMap<>();
 
@@ -44,8 +44,9 @@ public class DCParser2 extends Parser {
 
 	public DCParser2(LogReader reader, ConfigManager configManager) {
 		super(reader);
-		for (int i = 0; i < AdxConfigurationParser.publisherNames.length; i++) {
-			publisherNameToId.put(AdxConfigurationParser.publisherNames[i], i);
+		String[] publisherNames = AdxConfigurationParser.getPublisherNames();
+		for (int i = 0; i < publisherNames.length; i++) {
+			publisherNameToId.put(publisherNames[i], i);
 		}
 		totalRevenue = 0;
 		auctionCount = 0;
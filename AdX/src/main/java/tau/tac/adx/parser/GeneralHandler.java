@@ -28,7 +28,8 @@ public class GeneralHandler extends LogHandler {
 	protected void start(LogReader reader)
 			throws IllegalConfigurationException, IOException, ParseException {
 		GeneralParser parser = new GeneralParser(reader, getConfig());
-		parser.start();
+		parser.start(getConfig().getPropertyAsInt("fromDay", Integer.MIN_VALUE),
+				getConfig().getPropertyAsInt("toDay", Integer.MAX_VALUE));
 		parser.stop();
 	}
 }
@@ -0,0 +1,267 @@
+package tau.tac.adx.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import se.sics.isl.util.ArgumentManager;
+import se.sics.tasim.logtool.LogReader;
+
+/**
+ * Analyzes many simulation logs concurrently. Each log is read once and its
+ * content dispatched to a new instance of every registered
+ * {@link LogAnalyzer}. The rows of each analyzer are merged, in the order
+ * of the logs, into the CSV file <code>&lt;name&gt;.csv</code> of the output
+ * directory, with the simulation id as first column.
+ */
+public class LogAnalysisEngine {
+
+	private static final Logger log = Logger.getLogger(LogAnalysisEngine.class
+			.getName());
+
+	private final List<Class<? extends LogAnalyzer>> analyzers;
+
+	private final int threads;
+
+	/**
+	 * @param analyzers
+	 *            Classes of the {@link LogAnalyzer}s to run on each log.
+	 * @param threads
+	 *            Maximum number of logs analyzed concurrently.
+	 */
+	public LogAnalysisEngine(List<Class<? extends LogAnalyzer>> analyzers,
+			int threads) {
+		if (analyzers == null) {
+			throw new NullPointerException("analyzers cannot be null");
+		}
+		if (analyzers.isEmpty()) {
+			throw new IllegalArgumentException("analyzers cannot be empty");
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.analyzers = new ArrayList<Class<? extends LogAnalyzer>>(analyzers);
+		this.threads = threads;
+	}
+
+	/**
+	 * Analyzes the given logs and writes one CSV file per analyzer.
+	 *
+	 * @param logs
+	 *            Simulation log files, optionally gzipped.
+	 * @param outputDirectory
+	 *            Directory of the CSV files.
+	 * @return The number of logs that could not be analyzed.
+	 * @throws IOException
+	 *             If the CSV files could not be written.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the logs.
+	 */
+	public int analyze(List<File> logs, File outputDirectory)
+			throws IOException, InterruptedException {
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("could not create directory "
+					+ outputDirectory);
+		}
+		// One writer per table, in analyzer order
+		Map<String, PrintWriter> tables = new LinkedHashMap<String, PrintWriter>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, Math.max(logs.size(), 1)));
+		try {
+			for (LogAnalyzer analyzer : createAnalyzers()) {
+				PrintWriter out = new PrintWriter(new FileWriter(new File(
+						outputDirectory, analyzer.getName() + ".csv")));
+				tables.put(analyzer.getName(), out);
+				out.print("simulation");
+				for (String column : analyzer.getColumns()) {
+					out.print(',');
+					out.print(toCSV(column));
+				}
+				out.println();
+			}
+
+			List<Future<LogAnalyzer[]>> futures = new ArrayList<Future<LogAnalyzer[]>>(
+					logs.size());
+			for (final File file : logs) {
+				futures.add(executor.submit(new Callable<LogAnalyzer[]>() {
+					@Override
+					public LogAnalyzer[] call() throws Exception {
+						return analyze(file);
+					}
+				}));
+			}
+
+			// Rows are written in log order, as soon as available, to keep
+			// at most the unwritten logs in memory
+			int failed = 0;
+			for (int i = 0, n = futures.size(); i < n; i++) {
+				LogAnalyzer[] results;
+				try {
+					results = futures.get(i).get();
+					futures.set(i, null);
+				} catch (ExecutionException e) {
+					log.log(Level.SEVERE, "could not analyze " + logs.get(i),
+							e.getCause());
+					failed++;
+					continue;
+				}
+				for (LogAnalyzer analyzer : results) {
+					write(tables.get(analyzer.getName()), analyzer);
+				}
+			}
+			return failed;
+		} finally {
+			executor.shutdownNow();
+			for (PrintWriter out : tables.values()) {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Analyzes a single log.
+	 *
+	 * @param file
+	 *            Simulation log file, optionally gzipped.
+	 * @return The analyzers, holding the rows extracted from the log.
+	 */
+	LogAnalyzer[] analyze(File file) throws Exception {
+		LogReader reader = file.getName().endsWith(".gz") ? new LogReader(
+				new GZIPInputStream(new FileInputStream(file)))
+				: new LogReader(file);
+		return analyze(reader);
+	}
+
+	/**
+	 * Analyzes the log of a reader, and closes the reader even if an
+	 * analyzer fails.
+	 */
+	LogAnalyzer[] analyze(LogReader reader) throws Exception {
+		try {
+			LogAnalyzer[] results = createAnalyzers();
+			new AnalyzerDispatcher(reader, results).start();
+			return results;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private LogAnalyzer[] createAnalyzers() {
+		LogAnalyzer[] instances = new LogAnalyzer[analyzers.size()];
+		for (int i = 0; i < instances.length; i++) {
+			try {
+				instances[i] = analyzers.get(i).newInstance();
+			} catch (Exception e) {
+				throw new IllegalArgumentException("could not create analyzer "
+						+ analyzers.get(i).getName(), e);
+			}
+		}
+		return instances;
+	}
+
+	private static void write(PrintWriter out, LogAnalyzer analyzer) {
+		String simulation = Integer.toString(analyzer.getSimulationID());
+		for (Object[] row : analyzer.takeRows()) {
+			out.print(simulation);
+			for (Object value : row) {
+				out.print(',');
+				out.print(toCSV(value));
+			}
+			out.println();
+		}
+	}
+
+	static String toCSV(Object value) {
+		if (value == null) {
+			return "";
+		}
+		String text = value.toString();
+		if (text.indexOf(',') < 0 && text.indexOf('"') < 0
+				&& text.indexOf('\n') < 0) {
+			return text;
+		}
+		return '"' + text.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * Returns the simulation logs (<code>.slg</code> or <code>.slg.gz</code>
+	 * ) of a directory, sorted by name.
+	 */
+	public static List<File> listLogs(File directory) throws IOException {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".slg") || name.endsWith(".slg.gz");
+			}
+		});
+		if (files == null) {
+			throw new IOException("could not list directory " + directory);
+		}
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		ArgumentManager config = new ArgumentManager("LogAnalysisEngine", args);
+		config.addOption("logs", "directory",
+				"set the directory of the simulation logs");
+		config.addOption("analyzers", "classes",
+				"set the comma separated analyzer classes to run");
+		config.addOption("threads", "threads",
+				"set the number of logs to analyze concurrently");
+		config.addOption("output", "directory",
+				"set the directory of the CSV files");
+		config.addHelp("h", "show this help message");
+		config.addHelp("help");
+		config.validateArguments();
+
+		File logDirectory = new File(config.getArgument("logs", "."));
+		String[] names = config.getArgument(
+				"analyzers",
+				BankStatusAnalyzer.class.getName() + ','
+						+ CampaignReportAnalyzer.class.getName() + ','
+						+ UCSAnalyzer.class.getName()).split(",");
+		int threads = config.getArgumentAsInt("threads", Runtime.getRuntime()
+				.availableProcessors());
+		File output = new File(config.getArgument("output", "analysis"));
+		config.finishArguments();
+
+		List<Class<? extends LogAnalyzer>> analyzers = new ArrayList<Class<? extends LogAnalyzer>>();
+		for (String name : names) {
+			try {
+				analyzers.add((Class<? extends LogAnalyzer>) Class.forName(
+						name.trim()).asSubclass(LogAnalyzer.class));
+			} catch (Exception e) {
+				System.err.println("could not load analyzer " + name + ": " + e);
+				config.usage(1);
+			}
+		}
+
+		List<File> logs = listLogs(logDirectory);
+		long start = System.currentTimeMillis();
+		int failed = new LogAnalysisEngine(analyzers, threads).analyze(logs,
+				output);
+		System.out.println("Analyzed " + (logs.size() - failed) + " of "
+				+ logs.size() + " logs in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,199 @@
+package tau.tac.adx.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import se.sics.isl.transport.Transportable;
+import se.sics.tasim.logtool.LogReader;
+import se.sics.tasim.logtool.ParticipantInfo;
+
+/**
+ * Extracts a table from simulation logs for the {@link LogAnalysisEngine}.
+ * The engine reads each log once and dispatches its content to all
+ * registered analyzers. A new analyzer is created for each log, so
+ * subclasses must have a public no-argument constructor and may keep per
+ * log state in fields.
+ * <p>
+ * The rows added by an analyzer are written by the engine to the CSV file
+ * <code>&lt;name&gt;.csv</code>, preceded by the simulation id, with the rows
+ * of all logs merged in simulation log order.
+ *
+ * @see LogAnalysisEngine
+ */
+public abstract class LogAnalyzer {
+
+	private final String name;
+
+	private final String[] columns;
+
+	private final List<Object[]> rows = new ArrayList<Object[]>();
+
+	private ParticipantInfo[] participants;
+
+	private int simulationID;
+
+	private int day = 0;
+
+	/**
+	 * @param name
+	 *            Name of the table, used as output file name.
+	 * @param columns
+	 *            Names of the columns, excluding the simulation id.
+	 */
+	protected LogAnalyzer(String name, String... columns) {
+		if (name == null) {
+			throw new NullPointerException("name cannot be null");
+		}
+		if (columns.length == 0) {
+			throw new IllegalArgumentException("columns cannot be empty");
+		}
+		this.name = name;
+		this.columns = columns.clone();
+	}
+
+	/**
+	 * @return Name of the table.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Names of the columns, excluding the simulation id.
+	 */
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	final void init(LogReader reader) {
+		this.participants = reader.getParticipants();
+		this.simulationID = reader.getSimulationID();
+		start();
+	}
+
+	final void setDay(int day) {
+		this.day = day;
+	}
+
+	/**
+	 * Returns and forgets the rows added so far.
+	 */
+	final List<Object[]> takeRows() {
+		List<Object[]> taken = new ArrayList<Object[]>(rows);
+		rows.clear();
+		return taken;
+	}
+
+	// -------------------------------------------------------------------
+	// API for the analyzers
+	// -------------------------------------------------------------------
+
+	/**
+	 * Adds a row to the table.
+	 *
+	 * @param values
+	 *            One value for each column.
+	 */
+	protected final void addRow(Object... values) {
+		if (values.length != columns.length) {
+			throw new IllegalArgumentException("expected " + columns.length
+					+ " values but got " + values.length);
+		}
+		rows.add(values.clone());
+	}
+
+	/**
+	 * @return Simulation id of the log.
+	 */
+	protected int getSimulationID() {
+		return simulationID;
+	}
+
+	/**
+	 * @return The day in which the current content was logged.
+	 */
+	protected int getDay() {
+		return day;
+	}
+
+	/**
+	 * @return The participants of the simulation.
+	 */
+	protected ParticipantInfo[] getParticipants() {
+		return participants;
+	}
+
+	/**
+	 * @param index
+	 *            Participant index.
+	 * @return Name of the participant, or its address if it has no name.
+	 */
+	protected String getParticipantName(int index) {
+		ParticipantInfo info = participants[index];
+		return info.getName() != null ? info.getName() : info.getAddress();
+	}
+
+	/**
+	 * @param index
+	 *            Participant index.
+	 * @return Role of the participant.
+	 */
+	protected int getRole(int index) {
+		return participants[index].getRole();
+	}
+
+	// -------------------------------------------------------------------
+	// Callbacks, see edu.umich.eecs.tac.Parser
+	// -------------------------------------------------------------------
+
+	/**
+	 * Returns true if this analyzer uses message or data update content of
+	 * the given type. Content not used by any analyzer is never decoded,
+	 * which saves most of the parse time. The default implementation returns
+	 * true.
+	 *
+	 * @param type
+	 *            Class of the content.
+	 */
+	protected boolean isContentHandled(Class<?> type) {
+		return true;
+	}
+
+	/**
+	 * Invoked before the log is parsed.
+	 */
+	protected void start() {
+	}
+
+	/**
+	 * Invoked after the log has been parsed.
+	 */
+	protected void stop() {
+	}
+
+	/**
+	 * Invoked when a new day starts.
+	 */
+	protected void nextDay(int date, long serverTime) {
+	}
+
+	/**
+	 * Invoked when a message to a specific receiver is encountered. Messages
+	 * to roles are dispatched to each receiver with the role.
+	 */
+	protected void message(int sender, int receiver, Transportable content) {
+	}
+
+	/**
+	 * Invoked when a data update of an agent is encountered.
+	 */
+	protected void dataUpdated(int agent, int type, Transportable content) {
+	}
+
+	/**
+	 * Invoked when a general data update is encountered.
+	 */
+	protected void dataUpdated(int type, Transportable content) {
+	}
+
+}
@@ -0,0 +1,33 @@
+package tau.tac.adx.parser;
+
+import se.sics.isl.transport.Transportable;
+import tau.tac.adx.report.demand.AdNetworkDailyNotification;
+
+/**
+ * Extracts the user classification service levels and quality ratings of
+ * the ad networks from their {@link AdNetworkDailyNotification}s (see
+ * {@link UCSParser}).
+ */
+public class UCSAnalyzer extends LogAnalyzer {
+
+	public UCSAnalyzer() {
+		super("ucs", "day", "adNetwork", "effectiveDay", "serviceLevel",
+				"price", "qualityScore");
+	}
+
+	@Override
+	protected boolean isContentHandled(Class<?> type) {
+		return type == AdNetworkDailyNotification.class;
+	}
+
+	@Override
+	protected void message(int sender, int receiver, Transportable content) {
+		if (content instanceof AdNetworkDailyNotification) {
+			AdNetworkDailyNotification notification = (AdNetworkDailyNotification) content;
+			addRow(getDay(), getParticipantName(receiver),
+					notification.getEffectiveDay(),
+					notification.getServiceLevel(), notification.getPrice(),
+					notification.getQualityScore());
+		}
+	}
+}
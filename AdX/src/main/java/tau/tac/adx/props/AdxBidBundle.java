@@ -34,6 +34,7 @@ import tau.tac.adx.ads.properties.AdType;
 import tau.tac.adx.bids.BidInfo;
 import tau.tac.adx.devices.Device;
 import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.report.adn.MarketSegmentSet;
 import edu.umich.eecs.tac.props.Ad;
 
 /**
@@ -723,6 +724,13 @@ public class AdxBidBundle extends
 			return getKey().getMarketSegments();
 		}
 
+		/**
+		 * @return the marketSegment as a mask, see {@link MarketSegmentSet}
+		 */
+		public int getMarketSegmentMask() {
+			return getKey().getMarketSegmentMask();
+		}
+
 		/**
 		 * Reads the bid entry state from the reader.
 		 * 
@@ -4,7 +4,6 @@
 package tau.tac.adx.props;
 
 import java.text.ParseException;
-import java.util.HashSet;
 import java.util.Set;
 
 import se.sics.isl.transport.TransportReader;
@@ -14,6 +13,7 @@ import tau.tac.adx.ads.properties.AdType;
 import tau.tac.adx.devices.Device;
 import tau.tac.adx.publishers.AdxPublisher;
 import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.report.adn.MarketSegmentSet;
 import tau.tac.adx.users.AdxUser;
 
 import com.google.inject.Inject;
@@ -114,8 +114,8 @@ public class AdxQuery extends AbstractTransportable implements TacQuery<Adx> {
 			Device device, AdType adType) {
 		super();
 		this.publisher = publisher;
-		this.marketSegments = new HashSet<MarketSegment>();
-		this.marketSegments.add(marketSegment);
+		this.marketSegments = new MarketSegmentSet(
+				MarketSegmentSet.bit(marketSegment));
 		this.device = device;
 		this.adType = adType;
 	}
@@ -125,7 +125,7 @@ public class AdxQuery extends AbstractTransportable implements TacQuery<Adx> {
 	 */
 	public AdxQuery() {
 		super();
-		marketSegments = new HashSet<MarketSegment>();
+		marketSegments = new MarketSegmentSet();
 	}
 
 	/**
@@ -230,6 +230,13 @@ public class AdxQuery extends AbstractTransportable implements TacQuery<Adx> {
 		return marketSegments;
 	}
 
+	/**
+	 * @return the marketSegments as a mask, see {@link MarketSegmentSet}
+	 */
+	public int getMarketSegmentMask() {
+		return MarketSegmentSet.maskOf(marketSegments);
+	}
+
 	/**
 	 * @param marketSegments
 	 *            the marketSegments to set
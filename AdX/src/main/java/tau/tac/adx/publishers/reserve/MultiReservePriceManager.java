@@ -3,6 +3,7 @@
  */
 package tau.tac.adx.publishers.reserve;
 
+import java.util.Random;
 
 /**
  * An extended {@link ReservePriceManager} which generates different reserve
@@ -19,6 +20,15 @@ public interface MultiReservePriceManager<T> {
 	 */
 	public double generateReservePrice(T t);
 
+	/**
+	 * @param random
+	 *            {@link Random} to draw the reserve price with, e.g., the
+	 *            calling auctioneer's stream.
+	 * @return A random reserve price according to the <b>daily baseline
+	 *         average</b> and the <b>baseline range</b>.
+	 */
+	public double generateReservePrice(T t, Random random);
+
 	/**
 	 * Updates the {@link ReservePriceManager} with data about how many
 	 * Impressions were generated by a given <b>reserve price</b>.
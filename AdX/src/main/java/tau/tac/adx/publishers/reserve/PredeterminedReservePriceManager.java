@@ -7,60 +7,191 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
+import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.devices.Device;
 import tau.tac.adx.parser.Auctions;
 import tau.tac.adx.playground.Utils;
 import tau.tac.adx.props.AdxQuery;
+import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.report.adn.MarketSegmentSet;
 import tau.tac.adx.sim.config.AdxConfigurationParser;
 
 /**
+ * Generates reserve prices as the dot product of fixed coefficients with the
+ * query's features (see {@link Utils#getFeatures(Auctions.AdxQuery, Map)}).
+ * Since a query's features only depend on its publisher, market segments,
+ * device and ad type, the score of every such combination is precompiled into
+ * a dense table whenever the coefficients change, and pricing a query is a
+ * single array read.
+ * 
  * @author Tomer Greenwald
  *
  */
 public class PredeterminedReservePriceManager implements
 		MultiReservePriceManager<AdxQuery> {
 
+	private static final MarketSegment[] SEGMENTS = MarketSegment.values();
+
+	private static final Device[] DEVICES = Device.values();
+
+	private static final AdType[] AD_TYPES = AdType.values();
+
+	private static final int SCORES_PER_PUBLISHER = (MarketSegmentSet.ALL + 1)
+			* DEVICES.length * AD_TYPES.length;
+
 	private double[] coefficients;
 	Map<String, Integer> publisherNameToId = new HashMap<>();
 
+	/**
+	 * Precompiled reserve prices, indexed by
+	 * {@link #getIndex(int, int, Device, AdType)}.
+	 */
+	private volatile double[] scores;
+
 	/**
 	 * @param priceBundle
 	 */
 	public PredeterminedReservePriceManager(
 			double[] coefficients) {
-		this.coefficients = coefficients;
-		for (int i = 0; i < AdxConfigurationParser.publisherNames.length; i++) {
-			publisherNameToId.put(AdxConfigurationParser.publisherNames[i], i);
+		String[] publisherNames = AdxConfigurationParser.getPublisherNames();
+		for (int i = 0; i < publisherNames.length; i++) {
+			publisherNameToId.put(publisherNames[i], i);
+		}
+		setCoefficients(coefficients);
+	}
+
+	/**
+	 * Replaces the coefficients and recompiles the score table.
+	 * 
+	 * @param coefficients
+	 *            Feature coefficients.
+	 */
+	public void setCoefficients(double[] coefficients) {
+		if (coefficients == null) {
+			throw new NullPointerException("coefficients cannot be null");
 		}
+		double[] scores = new double[publisherNameToId.size()
+				* SCORES_PER_PUBLISHER];
+		for (Map.Entry<String, Integer> entry : publisherNameToId.entrySet()) {
+			for (int mask = 0; mask <= MarketSegmentSet.ALL; mask++) {
+				for (Device device : DEVICES) {
+					for (AdType adType : AD_TYPES) {
+						double[] features = Utils.getFeatures(
+								convertQuery(entry.getKey(), mask, device,
+										adType), publisherNameToId);
+						double sum = 0;
+						for (int i = 0; i < features.length; i++) {
+							sum += features[i] * coefficients[i];
+						}
+						scores[getIndex(entry.getValue(), mask, device, adType)] = sum;
+					}
+				}
+			}
+		}
+		this.coefficients = coefficients.clone();
+		this.scores = scores;
+	}
+
+	/**
+	 * @return A copy of the current coefficients.
+	 */
+	public double[] getCoefficients() {
+		return coefficients.clone();
 	}
-	
-	private Auctions.AdxQuery convertQuery(AdxQuery adxQuery) {
+
+	private static Auctions.AdxQuery convertQuery(String publisher,
+			int segmentMask, Device device, AdType adType) {
 		List<Auctions.MarketSegment> marketSegments = new LinkedList<Auctions.MarketSegment>();
-		for (tau.tac.adx.report.adn.MarketSegment marketSegment : adxQuery
-				.getMarketSegments()) {
-			marketSegments.add(Auctions.MarketSegment.valueOf(marketSegment
-					.ordinal()));
+		for (MarketSegment marketSegment : SEGMENTS) {
+			if ((segmentMask & MarketSegmentSet.bit(marketSegment)) != 0) {
+				marketSegments.add(Auctions.MarketSegment
+						.valueOf(marketSegment.ordinal()));
+			}
 		}
 		Auctions.AdxQuery protoAdxQuery = Auctions.AdxQuery.newBuilder()
-				.setPublisher(adxQuery.getPublisher())
+				.setPublisher(publisher)
 				.addAllMarketSegments(marketSegments)
-				.setDevice(Auctions.Device.valueOf(adxQuery.getDevice().ordinal()))
-				.setAdtype(Auctions.AdType.valueOf(adxQuery.getAdType().ordinal()))
+				.setDevice(Auctions.Device.valueOf(device.ordinal()))
+				.setAdtype(Auctions.AdType.valueOf(adType.ordinal()))
 				.build();
 		return protoAdxQuery;
 	}
-	
+
+	private static int getIndex(int publisherId, int segmentMask,
+			Device device, AdType adType) {
+		return ((publisherId * (MarketSegmentSet.ALL + 1) + segmentMask)
+				* DEVICES.length + device.ordinal())
+				* AD_TYPES.length + adType.ordinal();
+	}
+
+	private int getIndex(AdxQuery adxQuery) {
+		Integer publisherId = publisherNameToId.get(adxQuery.getPublisher());
+		if (publisherId == null) {
+			throw new IllegalArgumentException("Unknown publisher: "
+					+ adxQuery.getPublisher());
+		}
+		return getIndex(publisherId, adxQuery.getMarketSegmentMask(),
+				adxQuery.getDevice(), adxQuery.getAdType());
+	}
+
 	/**
 	 * @see tau.tac.adx.publishers.reserve.MultiReservePriceManager#generateReservePrice(java.lang.Object)
 	 */
 	@Override
 	public double generateReservePrice(AdxQuery adxQuery) {
-		double[] features = Utils.getFeatures(convertQuery(adxQuery), publisherNameToId);
-		double sum = 0;
-		for (int i = 0; i < features.length; i++) {
-			sum += features[i] * coefficients[i];
+		return scores[getIndex(adxQuery)];
+	}
+
+	/**
+	 * Predetermined reserve prices are not random, the {@link Random} is
+	 * ignored.
+	 * 
+	 * @see tau.tac.adx.publishers.reserve.MultiReservePriceManager#generateReservePrice(java.lang.Object,
+	 *      java.util.Random)
+	 */
+	@Override
+	public double generateReservePrice(AdxQuery adxQuery, Random random) {
+		return generateReservePrice(adxQuery);
+	}
+
+	/**
+	 * Prices a batch of queries (e.g., all queries generated in a day) against
+	 * a single snapshot of the score table.
+	 * 
+	 * @param adxQueries
+	 *            Queries to price.
+	 * @param reservePrices
+	 *            Output array, <code>reservePrices[i]</code> is set to the
+	 *            reserve price of <code>adxQueries[i]</code>.
+	 */
+	public void generateReservePrices(AdxQuery[] adxQueries,
+			double[] reservePrices) {
+		if (reservePrices.length < adxQueries.length) {
+			throw new IllegalArgumentException(
+					"reservePrices is shorter than adxQueries");
+		}
+		double[] scores = this.scores;
+		for (int i = 0; i < adxQueries.length; i++) {
+			reservePrices[i] = scores[getIndex(adxQueries[i])];
 		}
-		return sum;
+	}
+
+	/**
+	 * Prices a batch of queries (e.g., all queries generated in a day) against
+	 * a single snapshot of the score table.
+	 * 
+	 * @param adxQueries
+	 *            Queries to price.
+	 * @return The reserve prices, in the order of <code>adxQueries</code>.
+	 */
+	public double[] generateReservePrices(List<AdxQuery> adxQueries) {
+		double[] reservePrices = new double[adxQueries.size()];
+		generateReservePrices(
+				adxQueries.toArray(new AdxQuery[adxQueries.size()]),
+				reservePrices);
+		return reservePrices;
 	}
 
 	/**
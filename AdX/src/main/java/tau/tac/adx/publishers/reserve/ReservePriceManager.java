@@ -1,10 +1,11 @@
 package tau.tac.adx.publishers.reserve;
 
-import java.util.Map.Entry;
+import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
-import tau.tac.adx.util.AdxUtils;
 import edu.umich.eecs.tac.util.config.ConfigProxy;
 
 /**
@@ -21,9 +22,20 @@ import edu.umich.eecs.tac.util.config.ConfigProxy;
 public class ReservePriceManager {
 
 	/**
-	 * Number of digits after decimal point to keep.
+	 * Number of digits after decimal point to keep. Reserve prices are in the
+	 * 0.0x range, so whole cents would collapse a day into a handful of
+	 * prices.
 	 */
-	private static final int DIGITS_AFTER_DECIMAL_POINT = 2;
+	private static final int DIGITS_AFTER_DECIMAL_POINT = 4;
+	/**
+	 * Fixed-point units per 1.0 of price.
+	 */
+	private static final double PRICE_UNITS = Math.pow(10,
+			DIGITS_AFTER_DECIMAL_POINT);
+	/**
+	 * Upper bound on the number of histogram buckets of a single day.
+	 */
+	private static final int MAX_BUCKETS = 1 << 12;
 	/**
 	 * Initial daily baseline average string. Allows configuration of
 	 * {@link #dailyBaselineAverage} via a {@link ConfigProxy}.
@@ -35,7 +47,7 @@ public class ReservePriceManager {
 	 * prices in subsequent days (for ads with the similar attributes) are
 	 * adaptively set to maximize the publisher�s profit.
 	 */
-	private double dailyBaselineAverage;
+	private volatile double dailyBaselineAverage;
 	/**
 	 * Allowed variance range for generated <b>reserve prices</b> by
 	 * {@link #generateReservePrice()} from the {@link #dailyBaselineAverage}.
@@ -51,22 +63,12 @@ public class ReservePriceManager {
 	 */
 	private final double updateCoefficient;
 	/**
-	 * Sorted map between a <b>reserve price</b> and the number of impressions
-	 * it generated..
-	 */
-	private final TreeMap<Double, AtomicLong> profitMap = new TreeMap<Double, AtomicLong>();
-
-	/**
-	 * Sorted map between a <b>reserve price</b> and the number of bids it was involved in 
-	 * (even if there was no impression).
+	 * Histograms of the current day's reserve prices: the number of
+	 * impressions each price generated and the number of bids it was involved
+	 * in (even if there was no impression). Replaced upon every call to
+	 * {@link #updateDailyBaselineAverage()}.
 	 */
-	private final TreeMap<Double, AtomicLong> profitQueries = new TreeMap<Double, AtomicLong>();
-
-	/**
-	 * Number of times this service was requested per day. Re-initialized to 0
-	 * upon every call to {@link #updateDailyBaselineAverage()}
-	 */
-	private int dailyRequests;
+	private volatile PriceHistogram histogram;
 
 	/**
 	 * @param config
@@ -88,7 +90,8 @@ public class ReservePriceManager {
 				INITIAL_DAILY_BASELINE_AVERAGE, 0);
 		this.baselineRange = baselineRange;
 		this.updateCoefficient = updateCoefficient;
-		this.dailyRequests = 0;
+		this.histogram = new PriceHistogram(this.dailyBaselineAverage,
+				baselineRange);
 	}
 
 	/**
@@ -110,26 +113,59 @@ public class ReservePriceManager {
 	 */
 	public ReservePriceManager(double dailyBaselineAverage,
 			double baselineRange, double updateCoefficient) {
-		this.dailyBaselineAverage = Math.random() * dailyBaselineAverage;
+		this(dailyBaselineAverage, baselineRange, updateCoefficient,
+				ThreadLocalRandom.current());
+	}
+
+	/**
+	 * @param dailyBaselineAverage
+	 *            A daily baseline to calculate <b>reserve price</b> according
+	 *            to. The initial average reserve price is randomly chosen
+	 *            uniformly between 0 and the given value.
+	 * @param baselineRange
+	 *            Allowed variance range for generated <b>reserve prices</b> by
+	 *            {@link #generateReservePrice()} from the
+	 *            {@link #dailyBaselineAverage}.
+	 * @param updateCoefficient
+	 *            Determines how much the current {@link #dailyBaselineAverage}
+	 *            should be taken into consideration when calculating the new
+	 *            {@link #dailyBaselineAverage}.
+	 * @param random
+	 *            {@link Random} to choose the initial average reserve price
+	 *            with.
+	 */
+	public ReservePriceManager(double dailyBaselineAverage,
+			double baselineRange, double updateCoefficient, Random random) {
+		this.dailyBaselineAverage = random.nextDouble() * dailyBaselineAverage;
 		this.baselineRange = baselineRange;
 		this.updateCoefficient = updateCoefficient;
-		this.dailyRequests = 0;
+		this.histogram = new PriceHistogram(this.dailyBaselineAverage,
+				baselineRange);
 	}
 
 	/**
 	 * @return A random reserve price according to the <b>daily baseline
 	 *         average</b> and the <b>baseline range</b>.
 	 */
-	public synchronized double generateReservePrice() {
-		dailyRequests++;
-		double reserve = AdxUtils.cutDouble(Math.random() * baselineRange * 2
-				+ dailyBaselineAverage - baselineRange,
-				DIGITS_AFTER_DECIMAL_POINT);
-		if (!profitQueries.containsKey(reserve)) {
-			profitQueries.put(reserve, new AtomicLong());
-		}
-		profitQueries.get(reserve).incrementAndGet();
-		return reserve;
+	public double generateReservePrice() {
+		return generateReservePrice(ThreadLocalRandom.current());
+	}
+
+	/**
+	 * @param random
+	 *            {@link Random} to draw the reserve price with.
+	 * @return A random reserve price according to the <b>daily baseline
+	 *         average</b> and the <b>baseline range</b>.
+	 */
+	public double generateReservePrice(Random random) {
+		PriceHistogram histogram = this.histogram;
+		long units = (long) Math.floor((random.nextDouble()
+				* baselineRange
+				* 2
+				+ histogram.dailyBaselineAverage - baselineRange)
+				* PRICE_UNITS);
+		histogram.queries.incrementAndGet(histogram.index(units));
+		return units / PRICE_UNITS;
 	}
 
 	/**
@@ -139,11 +175,10 @@ public class ReservePriceManager {
 	 * @param reservePrice
 	 *            Reserve price to update data for.
 	 */
-	public synchronized void addImpressionForPrice(double reservePrice) {
-		if (!profitMap.containsKey(reservePrice)) {
-			profitMap.put(reservePrice, new AtomicLong());
-		}
-		profitMap.get(reservePrice).incrementAndGet();
+	public void addImpressionForPrice(double reservePrice) {
+		PriceHistogram histogram = this.histogram;
+		histogram.impressions.incrementAndGet(histogram.index(Math
+				.round(reservePrice * PRICE_UNITS)));
 	}
 
 	/**
@@ -157,21 +192,14 @@ public class ReservePriceManager {
 	 * @return Updated {@link #dailyBaselineAverage}.
 	 */
 	public double updateDailyBaselineAverage() {
-		if (dailyRequests == 0) {
+		if (histogram.total(histogram.queries) == 0) {
 			// do nothing
 		} else {
-			double highestProfitsPrice;
-			if (profitMap.size() == 0) {
-				highestProfitsPrice = 0;
-			} else {
-				highestProfitsPrice = getMostProfitableReservePrice();
-			}
-			profitMap.clear();
-			profitQueries.clear();
+			double highestProfitsPrice = getMostProfitableReservePrice();
 			dailyBaselineAverage = updateCoefficient * dailyBaselineAverage
 					+ (1 - updateCoefficient) * highestProfitsPrice;
 		}
-		dailyRequests = 0;
+		histogram = new PriceHistogram(dailyBaselineAverage, baselineRange);
 		return dailyBaselineAverage;
 	}
 
@@ -181,13 +209,16 @@ public class ReservePriceManager {
 	 * @return The most profitable reserve price.
 	 */
 	public double getMostProfitableReservePrice() {
+		PriceHistogram histogram = this.histogram;
 		double bestReservePrice = 0;
 		long bestReservePriceImpresssions = 0;
-		for (Entry<Double, AtomicLong> entry : profitMap.entrySet()) {
-			if (entry.getKey() * entry.getValue().get() > bestReservePrice
+		for (int i = 0; i < histogram.impressions.length(); i++) {
+			long impressions = histogram.impressions.get(i);
+			double price = histogram.price(i);
+			if (price * impressions > bestReservePrice
 					* bestReservePriceImpresssions) {
-				bestReservePrice = entry.getKey();
-				bestReservePriceImpresssions = entry.getValue().get();
+				bestReservePrice = price;
+				bestReservePriceImpresssions = impressions;
 			}
 		}
 		return bestReservePrice;
@@ -201,17 +232,76 @@ public class ReservePriceManager {
 	}
 
 	/**
-	 * @return the profitMap
+	 * @return a snapshot of the current day's map between a <b>reserve
+	 *         price</b> and the number of impressions it generated
 	 */
 	public TreeMap<Double, AtomicLong> getProfitMap() {
-		return profitMap;
+		return histogram.toMap(histogram.impressions);
 	}
 
 	/**
-	 * @return the profitQueries
+	 * @return a snapshot of the current day's map between a <b>reserve
+	 *         price</b> and the number of bids it was involved in
 	 */
 	public TreeMap<Double, AtomicLong> getProfitQueries() {
-		return profitQueries;
+		return histogram.toMap(histogram.queries);
+	}
+
+	/**
+	 * Fixed-point histograms of a single day's reserve prices. The day's
+	 * prices lie in [baseline - range, baseline + range], so the buckets are
+	 * allocated once and counted with lock-free atomic increments.
+	 */
+	private static final class PriceHistogram {
+		private final double dailyBaselineAverage;
+		private final long lowestUnits;
+		private final long unitsPerBucket;
+		private final AtomicLongArray impressions;
+		private final AtomicLongArray queries;
+
+		public PriceHistogram(double dailyBaselineAverage, double baselineRange) {
+			this.dailyBaselineAverage = dailyBaselineAverage;
+			lowestUnits = (long) Math.floor((dailyBaselineAverage - baselineRange)
+					* PRICE_UNITS);
+			long highestUnits = (long) Math
+					.ceil((dailyBaselineAverage + baselineRange) * PRICE_UNITS);
+			long span = highestUnits - lowestUnits + 1;
+			unitsPerBucket = Math.max(1, (span + MAX_BUCKETS - 1)
+					/ MAX_BUCKETS);
+			int buckets = (int) ((span + unitsPerBucket - 1) / unitsPerBucket);
+			impressions = new AtomicLongArray(buckets);
+			queries = new AtomicLongArray(buckets);
+		}
+
+		public int index(long units) {
+			long index = (units - lowestUnits) / unitsPerBucket;
+			if (index < 0) {
+				return 0;
+			}
+			return (int) Math.min(index, queries.length() - 1);
+		}
+
+		public double price(int index) {
+			return (lowestUnits + index * unitsPerBucket) / PRICE_UNITS;
+		}
+
+		public long total(AtomicLongArray counts) {
+			long total = 0;
+			for (int i = 0; i < counts.length(); i++) {
+				total += counts.get(i);
+			}
+			return total;
+		}
+
+		public TreeMap<Double, AtomicLong> toMap(AtomicLongArray counts) {
+			TreeMap<Double, AtomicLong> map = new TreeMap<Double, AtomicLong>();
+			for (int i = 0; i < counts.length(); i++) {
+				long count = counts.get(i);
+				if (count > 0) {
+					map.put(price(i), new AtomicLong(count));
+				}
+			}
+			return map;
+		}
 	}
-	
 }
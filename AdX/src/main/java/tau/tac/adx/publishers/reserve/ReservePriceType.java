@@ -29,9 +29,15 @@ class ReservePriceType {
 	 * @param reservePriceManager TODO
 	 */
 	public ReservePriceType(AdxQuery adxQuery) {
-		this.marketSegment = adxQuery.getMarketSegments();
-		this.adType = adxQuery.getAdType();
-		this.device = adxQuery.getDevice();
+		this(adxQuery.getMarketSegments(), adxQuery.getAdType(), adxQuery
+				.getDevice());
+	}
+
+	public ReservePriceType(Set<MarketSegment> marketSegment, AdType adType,
+			Device device) {
+		this.marketSegment = marketSegment;
+		this.adType = adType;
+		this.device = device;
 	}
 
 	/**
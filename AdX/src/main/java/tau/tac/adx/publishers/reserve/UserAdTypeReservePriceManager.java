@@ -3,12 +3,16 @@
  */
 package tau.tac.adx.publishers.reserve;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 
+import tau.tac.adx.ads.properties.AdType;
 import tau.tac.adx.agents.DefaultAdxUserManager;
+import tau.tac.adx.devices.Device;
 import tau.tac.adx.props.AdxQuery;
+import tau.tac.adx.report.adn.MarketSegmentSet;
+import tau.tac.adx.util.RandomStream;
 
 /**
  * A {@link MultiReservePriceManager} over an {@link AdxQuery}.
@@ -22,7 +26,16 @@ public class UserAdTypeReservePriceManager implements
 	private Logger log = Logger
 			.getLogger(DefaultAdxUserManager.class.getName());
 
-	private Map<ReservePriceType, ReservePriceManager> reservePriceManagers = new HashMap<ReservePriceType, ReservePriceManager>();
+	private static final AdType[] AD_TYPES = AdType.values();
+
+	private static final Device[] DEVICES = Device.values();
+
+	/**
+	 * {@link ReservePriceManager}s indexed by
+	 * {@link #getIndex(int, Device, AdType)}, created on first use.
+	 */
+	private final AtomicReferenceArray<ReservePriceManager> reservePriceManagers = new AtomicReferenceArray<ReservePriceManager>(
+			(MarketSegmentSet.ALL + 1) * DEVICES.length * AD_TYPES.length);
 
 	/**
 	 * A daily baseline to calculate <b>reserve price</b> according to. The
@@ -45,6 +58,12 @@ public class UserAdTypeReservePriceManager implements
 	 * @see #updateDailyBaselineAverage()
 	 */
 	private final double updateCoefficient;
+	/**
+	 * Stream the initial averages of the {@link ReservePriceManager}s are
+	 * drawn from, each from its own named stream so that the order in which
+	 * they are created does not matter.
+	 */
+	private final RandomStream randomStream;
 
 	/**
 	 * @param dailyBaselineAverage
@@ -65,9 +84,33 @@ public class UserAdTypeReservePriceManager implements
 	 */
 	public UserAdTypeReservePriceManager(double dailyBaselineAverage,
 			double baselineRange, double updateCoefficient) {
+		this(dailyBaselineAverage, baselineRange, updateCoefficient,
+				new RandomStream());
+	}
+
+	/**
+	 * @param dailyBaselineAverage
+	 *            A daily baseline to calculate <b>reserve price</b> according
+	 *            to.
+	 * @param baselineRange
+	 *            Allowed variance range for generated <b>reserve prices</b>.
+	 * @param updateCoefficient
+	 *            Determines how much the current {@link #dailyBaselineAverage}
+	 *            should be taken into consideration when calculating the new
+	 *            {@link #dailyBaselineAverage}.
+	 * @param randomStream
+	 *            {@link RandomStream} to draw the initial averages from.
+	 */
+	public UserAdTypeReservePriceManager(double dailyBaselineAverage,
+			double baselineRange, double updateCoefficient,
+			RandomStream randomStream) {
+		if (randomStream == null) {
+			throw new NullPointerException("randomStream cannot be null");
+		}
 		this.dailyBaselineAverage = dailyBaselineAverage;
 		this.baselineRange = baselineRange;
 		this.updateCoefficient = updateCoefficient;
+		this.randomStream = randomStream;
 	}
 
 	@Override
@@ -76,6 +119,12 @@ public class UserAdTypeReservePriceManager implements
 		return reservePriceManager.generateReservePrice();
 	}
 
+	@Override
+	public double generateReservePrice(AdxQuery adxQuery, Random random) {
+		ReservePriceManager reservePriceManager = getReservePriceManager(adxQuery);
+		return reservePriceManager.generateReservePrice(random);
+	}
+
 	@Override
 	public void addImpressionForPrice(double reservePrice, AdxQuery adxQuery) {
 		ReservePriceManager reservePriceManager = getReservePriceManager(adxQuery);
@@ -84,13 +133,16 @@ public class UserAdTypeReservePriceManager implements
 
 	@Override
 	public void updateDailyBaselineAverage() {
-		for (ReservePriceType priceType : reservePriceManagers.keySet()) {
+		for (int index = 0; index < reservePriceManagers.length(); index++) {
 			ReservePriceManager reservePriceManager = reservePriceManagers
-					.get(priceType);
+					.get(index);
+			if (reservePriceManager == null) {
+				continue;
+			}
 			double updateDailyBaselineAverage = reservePriceManager
 					.updateDailyBaselineAverage();
-			System.out.println("Updated reserve price for " + priceType + " to "
-					+ updateDailyBaselineAverage);
+			System.out.println("Updated reserve price for " + getType(index)
+					+ " to " + updateDailyBaselineAverage);
 		}
 	}
 
@@ -108,29 +160,55 @@ public class UserAdTypeReservePriceManager implements
 	 *            {@link AdxQuery} used for its properties.
 	 * @return The matching {@link ReservePriceManager}.
 	 */
-	private synchronized ReservePriceManager getReservePriceManager(
-			AdxQuery adxQuery) {
-		ReservePriceType type = getType(adxQuery);
-		if (!reservePriceManagers.containsKey(type)) {
-			ReservePriceManager reservePriceManager = new ReservePriceManager(
-					dailyBaselineAverage, baselineRange, updateCoefficient);
-			reservePriceManagers.put(type, reservePriceManager);
-		}
+	private ReservePriceManager getReservePriceManager(AdxQuery adxQuery) {
+		int index = getIndex(adxQuery.getMarketSegmentMask(),
+				adxQuery.getDevice(), adxQuery.getAdType());
 		ReservePriceManager reservePriceManager = reservePriceManagers
-				.get(type);
+				.get(index);
+		if (reservePriceManager == null) {
+			reservePriceManager = new ReservePriceManager(
+					dailyBaselineAverage, baselineRange, updateCoefficient,
+					randomStream.split(Integer.toString(index)));
+			if (!reservePriceManagers.compareAndSet(index, null,
+					reservePriceManager)) {
+				reservePriceManager = reservePriceManagers.get(index);
+			}
+		}
 		return reservePriceManager;
 	}
 
 	/**
-	 * Returns a {@link ReservePriceType} (a pair between user type and ad type)
-	 * for a given {@link AdxQuery}.
+	 * Returns the index of the {@link ReservePriceManager} of a (user type, ad
+	 * type) pair.
 	 * 
-	 * @param adxQuery
-	 *            {@link AdxQuery}.
+	 * @param segmentMask
+	 *            Market segment mask, see {@link MarketSegmentSet}.
+	 * @param device
+	 *            {@link Device}.
+	 * @param adType
+	 *            {@link AdType}.
+	 * @return The matching index in {@link #reservePriceManagers}.
+	 */
+	private static int getIndex(int segmentMask, Device device, AdType adType) {
+		return (segmentMask * DEVICES.length + device.ordinal())
+				* AD_TYPES.length + adType.ordinal();
+	}
+
+	/**
+	 * Returns the {@link ReservePriceType} (a pair between user type and ad
+	 * type) of a given index.
+	 * 
+	 * @param index
+	 *            Index in {@link #reservePriceManagers}.
 	 * @return The matching {@link ReservePriceType}.
 	 */
-	private static ReservePriceType getType(AdxQuery adxQuery) {
-		return new ReservePriceType(adxQuery);
+	private static ReservePriceType getType(int index) {
+		AdType adType = AD_TYPES[index % AD_TYPES.length];
+		index /= AD_TYPES.length;
+		Device device = DEVICES[index % DEVICES.length];
+		index /= DEVICES.length;
+		return new ReservePriceType(new MarketSegmentSet(index), adType,
+				device);
 	}
 
 }
@@ -0,0 +1,276 @@
+package tau.tac.adx.report.adn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.bids.BidInfo;
+import tau.tac.adx.devices.Device;
+import tau.tac.adx.messages.AuctionMessage;
+import tau.tac.adx.props.AdxQuery;
+import tau.tac.adx.users.AdxUser;
+import tau.tac.adx.users.properties.Age;
+import tau.tac.adx.users.properties.Gender;
+import tau.tac.adx.users.properties.Income;
+
+/**
+ * Accumulates a single ad network's daily {@link AdNetworkReport} in
+ * primitive columns. Each (campaign, publisher) pair the network bids on gets
+ * a block of counters indexed by user attribute class &times; {@link Device}
+ * &times; {@link AdType}, so recording a bid allocates nothing once the pair
+ * has been seen. The transportable report is materialized by
+ * {@link #toReport()}.
+ * <p>
+ * Accumulators are not thread-safe; concurrent producers, such as the user
+ * activity shards, fill accumulators of their own and {@link #merge} them.
+ */
+public class AdNetworkReportAccumulator {
+
+	private static final Logger log = Logger
+			.getLogger(AdNetworkReportAccumulator.class.getName());
+
+	private static final Gender[] GENDERS = Gender.values();
+
+	private static final Income[] INCOMES = Income.values();
+
+	private static final Age[] AGES = Age.values();
+
+	private static final Device[] DEVICES = Device.values();
+
+	private static final AdType[] AD_TYPES = AdType.values();
+
+	/**
+	 * Counters per block.
+	 */
+	private static final int BLOCK_SIZE = GENDERS.length * INCOMES.length
+			* AGES.length * DEVICES.length * AD_TYPES.length;
+
+	/**
+	 * Campaign ids by campaign slot.
+	 */
+	private int[] campaignIds = new int[4];
+
+	private int campaignCount;
+
+	/**
+	 * Publisher slots by publisher name.
+	 */
+	private final Map<String, Integer> publisherSlots = new HashMap<String, Integer>();
+
+	/**
+	 * Publisher names by publisher slot.
+	 */
+	private String[] publishers = new String[8];
+
+	/**
+	 * Counter blocks, indexed by campaign slot and publisher slot.
+	 */
+	private Block[][] blocks = new Block[4][];
+
+	/**
+	 * Records the bids of all participants of an auction, each in the
+	 * accumulator of its network.
+	 *
+	 * @param reports
+	 *            {@link AdNetworkReportAccumulator}s by ad network name,
+	 *            missing ones are added.
+	 * @param message
+	 *            {@link AuctionMessage} of the auction.
+	 */
+	public static void addAuction(
+			Map<String, AdNetworkReportAccumulator> reports,
+			AuctionMessage message) {
+		BidInfo winningBidInfo = message.getAuctionResult()
+				.getWinningBidInfo();
+		for (BidInfo bidInfo : message.getAuctionResult().getBidInfos()) {
+			String participant = bidInfo.getBidder().getName();
+			AdNetworkReportAccumulator report = reports.get(participant);
+			if (report == null) {
+				report = new AdNetworkReportAccumulator();
+				reports.put(participant, report);
+			}
+			boolean hasWon = false;
+			if (winningBidInfo != null) {
+				hasWon = winningBidInfo.getBidder().getName()
+						.equals(participant);
+			}
+			if (!bidInfo.getCampaign().getAdvertiser().equals(participant)) {
+				log.log(Level.SEVERE, participant
+						+ " placed a bid for campaign  #"
+						+ bidInfo.getCampaign().getId() + " which belongs to "
+						+ bidInfo.getCampaign().getAdvertiser());
+			}
+			report.addBid(message, bidInfo.getCampaign().getId(), hasWon);
+		}
+	}
+
+	/**
+	 * Adds the bids recorded by another accumulator of the same network.
+	 *
+	 * @param other
+	 *            {@link AdNetworkReportAccumulator} to add.
+	 */
+	public void merge(AdNetworkReportAccumulator other) {
+		for (int otherCampaignSlot = 0; otherCampaignSlot < other.campaignCount; otherCampaignSlot++) {
+			int campaignSlot = campaignSlot(other.campaignIds[otherCampaignSlot]);
+			Block[] otherBlocks = other.blocks[otherCampaignSlot];
+			for (int otherPublisherSlot = 0; otherPublisherSlot < otherBlocks.length; otherPublisherSlot++) {
+				Block otherBlock = otherBlocks[otherPublisherSlot];
+				if (otherBlock == null) {
+					continue;
+				}
+				Block block = getBlock(campaignSlot,
+						publisherSlot(other.publishers[otherPublisherSlot]));
+				for (int index = 0; index < BLOCK_SIZE; index++) {
+					block.bidCounts[index] += otherBlock.bidCounts[index];
+					block.winCounts[index] += otherBlock.winCounts[index];
+					block.costs[index] += otherBlock.costs[index];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records a bid of the network in an auction.
+	 *
+	 * @param message
+	 *            {@link AuctionMessage} of the auction.
+	 * @param campaignId
+	 *            Id of the campaign the network bid for.
+	 * @param hasWon
+	 *            Whether the network won the auction.
+	 */
+	public void addBid(AuctionMessage message, int campaignId, boolean hasWon) {
+		AdxQuery query = message.getQuery();
+		int index = getIndex(message.getUser(), query.getDevice(),
+				query.getAdType());
+		Block block = getBlock(campaignSlot(campaignId),
+				publisherSlot(query.getPublisher()));
+		block.bidCounts[index]++;
+		if (hasWon) {
+			block.winCounts[index]++;
+			block.costs[index] += message.getAuctionResult().getWinningPrice();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if no bids were recorded.
+	 */
+	public boolean isEmpty() {
+		return campaignCount == 0;
+	}
+
+	/**
+	 * Materializes the accumulated bids as an {@link AdNetworkReport}, with an
+	 * entry for every key that was bid on.
+	 *
+	 * @return The {@link AdNetworkReport}.
+	 */
+	public AdNetworkReport toReport() {
+		AdNetworkReport report = new AdNetworkReport();
+		for (int campaignSlot = 0; campaignSlot < campaignCount; campaignSlot++) {
+			Block[] publisherBlocks = blocks[campaignSlot];
+			for (int publisherSlot = 0; publisherSlot < publisherBlocks.length; publisherSlot++) {
+				Block block = publisherBlocks[publisherSlot];
+				if (block == null) {
+					continue;
+				}
+				for (int index = 0; index < BLOCK_SIZE; index++) {
+					if (block.bidCounts[index] == 0) {
+						continue;
+					}
+					AdNetworkReportEntry entry = report
+							.addReportEntry(createKey(index,
+									publishers[publisherSlot],
+									campaignIds[campaignSlot]));
+					entry.setBidCount(block.bidCounts[index]);
+					entry.setWinCount(block.winCounts[index]);
+					entry.setCost(block.costs[index]);
+				}
+			}
+		}
+		return report;
+	}
+
+	private static int getIndex(AdxUser user, Device device, AdType adType) {
+		int attributeClass = (user.getGender().ordinal() * INCOMES.length + user
+				.getIncome().ordinal()) * AGES.length + user.getAge().ordinal();
+		return (attributeClass * DEVICES.length + device.ordinal())
+				* AD_TYPES.length + adType.ordinal();
+	}
+
+	private static AdNetworkKey createKey(int index, String publisher,
+			int campaignId) {
+		AdNetworkKey key = new AdNetworkKey();
+		key.setAdType(AD_TYPES[index % AD_TYPES.length]);
+		index /= AD_TYPES.length;
+		key.setDevice(DEVICES[index % DEVICES.length]);
+		index /= DEVICES.length;
+		key.setAge(AGES[index % AGES.length]);
+		index /= AGES.length;
+		key.setIncome(INCOMES[index % INCOMES.length]);
+		index /= INCOMES.length;
+		key.setGender(GENDERS[index]);
+		key.setPublisher(publisher);
+		key.setCampaignId(campaignId);
+		return key;
+	}
+
+	/**
+	 * An ad network bids for few campaigns, so they are found by a linear
+	 * scan.
+	 */
+	private int campaignSlot(int campaignId) {
+		for (int slot = 0; slot < campaignCount; slot++) {
+			if (campaignIds[slot] == campaignId) {
+				return slot;
+			}
+		}
+		if (campaignCount == campaignIds.length) {
+			campaignIds = Arrays.copyOf(campaignIds, campaignCount * 2);
+			blocks = Arrays.copyOf(blocks, campaignCount * 2);
+		}
+		campaignIds[campaignCount] = campaignId;
+		blocks[campaignCount] = new Block[publishers.length];
+		return campaignCount++;
+	}
+
+	private int publisherSlot(String publisher) {
+		Integer slot = publisherSlots.get(publisher);
+		if (slot == null) {
+			slot = publisherSlots.size();
+			if (slot == publishers.length) {
+				publishers = Arrays.copyOf(publishers, slot * 2);
+			}
+			publishers[slot] = publisher;
+			publisherSlots.put(publisher, slot);
+		}
+		return slot;
+	}
+
+	private Block getBlock(int campaignSlot, int publisherSlot) {
+		Block[] publisherBlocks = blocks[campaignSlot];
+		if (publisherSlot >= publisherBlocks.length) {
+			publisherBlocks = Arrays.copyOf(publisherBlocks, publishers.length);
+			blocks[campaignSlot] = publisherBlocks;
+		}
+		Block block = publisherBlocks[publisherSlot];
+		if (block == null) {
+			block = new Block();
+			publisherBlocks[publisherSlot] = block;
+		}
+		return block;
+	}
+
+	/**
+	 * Counters of a single (campaign, publisher) pair.
+	 */
+	private static final class Block {
+		private final int[] bidCounts = new int[BLOCK_SIZE];
+		private final int[] winCounts = new int[BLOCK_SIZE];
+		private final double[] costs = new double[BLOCK_SIZE];
+	}
+}
@@ -27,12 +27,12 @@ package tau.tac.adx.report.adn;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import tau.tac.adx.AdxManager;
-import tau.tac.adx.bids.BidInfo;
+import tau.tac.adx.messages.AdNetworkReportsAccumulated;
 import tau.tac.adx.messages.AuctionMessage;
+import tau.tac.adx.sim.TACAdxSimulation;
 
 import com.google.common.eventbus.Subscribe;
 
@@ -48,9 +48,9 @@ public class AdNetworkReportManagerImpl implements AdNetworkReportManager {
 			.getName());
 
 	/**
-	 * {@link AdNetworkReport}s, each matches and <b>AdNetwork</b>.
+	 * {@link AdNetworkReportAccumulator}s, each matches and <b>AdNetwork</b>.
 	 */
-	private final Map<String, AdNetworkReport> adNetworkReports = new HashMap<String, AdNetworkReport>();
+	private final Map<String, AdNetworkReportAccumulator> adNetworkReports = new HashMap<String, AdNetworkReportAccumulator>();
 
 	/**
 	 * The {@link AdNetworkReportSender}.
@@ -66,7 +66,11 @@ public class AdNetworkReportManagerImpl implements AdNetworkReportManager {
 	public AdNetworkReportManagerImpl(
 			AdNetworkReportSender adNetworkReportSender) {
 		this.adNetworkReportSender = adNetworkReportSender;
-		AdxManager.getInstance().getSimulation().getEventBus().register(this);
+		TACAdxSimulation simulation = AdxManager.getInstance().getSimulation();
+		simulation.getEventBus().register(this);
+		if (simulation.getAuctionMessagePipeline() != null) {
+			simulation.getAuctionMessagePipeline().register(this);
+		}
 		log.info("AdxQueryReportManager created.");
 	}
 
@@ -85,28 +89,29 @@ public class AdNetworkReportManagerImpl implements AdNetworkReportManager {
 	 */
 	@Subscribe
 	public void auctionPerformed(AuctionMessage message) {
-		for (BidInfo bidInfo : message.getAuctionResult().getBidInfos()) {
-			String participant = bidInfo.getBidder().getName();
-			AdNetworkReport report = adNetworkReports.get(participant );
+		if (message.isReported()) {
+			return;
+		}
+		AdNetworkReportAccumulator.addAuction(adNetworkReports, message);
+	}
+
+	/**
+	 * Merges reports accumulated elsewhere, e.g., by the user activity shards.
+	 * 
+	 * @param message
+	 *            {@link AdNetworkReportsAccumulated}.
+	 */
+	@Subscribe
+	public void reportsAccumulated(AdNetworkReportsAccumulated message) {
+		for (Entry<String, AdNetworkReportAccumulator> entry : message
+				.getReports().entrySet()) {
+			AdNetworkReportAccumulator report = adNetworkReports.get(entry
+					.getKey());
 			if (report == null) {
-				report = new AdNetworkReport();
-				adNetworkReports.put(participant, report);
+				report = new AdNetworkReportAccumulator();
+				adNetworkReports.put(entry.getKey(), report);
 			}
-			boolean hasWon = false;
-			BidInfo winningBidInfo = message.getAuctionResult()
-					.getWinningBidInfo();
-			if (winningBidInfo != null) {
-				hasWon = winningBidInfo.getBidder().getName()
-						.equals(participant);
-			}
-			if (!bidInfo.getCampaign().getAdvertiser()
-					.equals(bidInfo.getBidder().getName())) {
-				log.log(Level.SEVERE, bidInfo.getBidder().getName()
-						+ " placed a bid for campaign  #"
-						+ bidInfo.getCampaign().getId() + " which belongs to "
-						+ bidInfo.getCampaign().getAdvertiser());
-			}
-			report.addBid(message, bidInfo.getCampaign().getId(), hasWon);
+			report.merge(entry.getValue());
 		}
 	}
 
@@ -115,17 +120,24 @@ public class AdNetworkReportManagerImpl implements AdNetworkReportManager {
 	 */
 	@Override
 	public void sendReportsToAll() {
-		for (Entry<String, AdNetworkReport> entry : adNetworkReports.entrySet()) {
+		for (Entry<String, AdNetworkReportAccumulator> entry : adNetworkReports
+				.entrySet()) {
 			adNetworkReportSender.broadcastAdNetowrkReport(entry.getKey(),
-					entry.getValue());
+					entry.getValue().toReport());
 		}
 		adNetworkReports.clear();
 	}
 	
 	/**
-	 * @return the adNetworkReports
+	 * @return the current day's {@link AdNetworkReport}s, materialized from
+	 *         the accumulated bids
 	 */
 	public Map<String, AdNetworkReport> getAdNetworkReports() {
-		return adNetworkReports;
+		Map<String, AdNetworkReport> reports = new HashMap<String, AdNetworkReport>();
+		for (Entry<String, AdNetworkReportAccumulator> entry : adNetworkReports
+				.entrySet()) {
+			reports.put(entry.getKey(), entry.getValue().toReport());
+		}
+		return reports;
 	}
 }
@@ -2,7 +2,6 @@ package tau.tac.adx.report.adn;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -36,28 +35,17 @@ import tau.tac.adx.users.properties.Income;
 public enum MarketSegment {
 
 	MALE, FEMALE, YOUNG, OLD, LOW_INCOME, HIGH_INCOME;
-	
-	private static final Random RANDOM = new Random();
 
 	public static Set<MarketSegment> compundMarketSegment1(MarketSegment s1) {
-		List<MarketSegment> marketSegments = new ArrayList<MarketSegment>();
-		marketSegments.add(s1);
-		return new HashSet<MarketSegment>(marketSegments);
+		return new MarketSegmentSet(MarketSegmentSet.bit(s1));
 	}
 	
 	public static Set<MarketSegment> compundMarketSegment2(MarketSegment s1, MarketSegment s2) {
-		List<MarketSegment> marketSegments = new ArrayList<MarketSegment>();
-		marketSegments.add(s1);
-		marketSegments.add(s2);
-		return new HashSet<MarketSegment>(marketSegments);
+		return new MarketSegmentSet(MarketSegmentSet.bit(s1) | MarketSegmentSet.bit(s2));
 	}
 
 	public static Set<MarketSegment> compundMarketSegment3(MarketSegment s1, MarketSegment s2, MarketSegment s3) {
-		List<MarketSegment> marketSegments = new ArrayList<MarketSegment>();
-		marketSegments.add(s1);
-		marketSegments.add(s2);
-		marketSegments.add(s3);
-		return new HashSet<MarketSegment>(marketSegments);
+		return new MarketSegmentSet(MarketSegmentSet.bit(s1) | MarketSegmentSet.bit(s2) | MarketSegmentSet.bit(s3));
 	}
 	//                                         0:MLY                   1:MLO                    2:FLY               3:FLO                    4:MHY                5:MHO                   6:FHY            7:FHO	
 	private static int[] uc = {526+263+371+71+322+283, 290+284+461+280+245+235, 546+460+403+52+264+255,457+450+827+275+228+164, 11+140+185+5+51+125, 197+157+103+163+121+67,6+75+104+3+21+47, 122+109+53+57+48+18};
@@ -128,12 +116,12 @@ public enum MarketSegment {
 	private static  Map<Set<MarketSegment>,Integer> segmentsUsersMap = usersInMarketSegments();
 	private static  List<Set<MarketSegment>>        segmentsList = marketSegments();
 	
-	public static Set<MarketSegment> randomMarketSegment() {
-		return 	segmentsList.get(RANDOM.nextInt(segmentsList.size()));
+	public static Set<MarketSegment> randomMarketSegment(Random random) {
+		return 	segmentsList.get(random.nextInt(segmentsList.size()));
 	}	
 
-	public static Set<MarketSegment> randomMarketSegment2() {
-		return 	segmentsList.get(6+RANDOM.nextInt(12));
+	public static Set<MarketSegment> randomMarketSegment2(Random random) {
+		return 	segmentsList.get(6+random.nextInt(12));
 	}	
 
 	public static Integer marketSegmentSize(Set<MarketSegment> segment) {
@@ -148,6 +136,45 @@ public enum MarketSegment {
 		return ret;
 	}
 	
+	/**
+	 * Segment masks (see {@link MarketSegmentSet}) of every user attribute
+	 * triple, indexed by {@link Gender}, {@link Income} and {@link Age}
+	 * ordinals.
+	 */
+	private static final int[][][] USER_SEGMENT_MASKS = new int[Gender
+			.values().length][Income.values().length][Age.values().length];
+
+	static {
+		for (Gender gender : Gender.values()) {
+			for (Income income : Income.values()) {
+				for (Age age : Age.values()) {
+					int mask = MarketSegmentSet
+							.bit(gender == Gender.male ? MALE : FEMALE);
+					mask |= MarketSegmentSet.bit(income == Income.low
+							|| income == Income.medium ? LOW_INCOME
+							: HIGH_INCOME);
+					mask |= MarketSegmentSet.bit(age == Age.Age_18_24
+							|| age == Age.Age_25_34 || age == Age.Age_35_44 ? YOUNG
+							: OLD);
+					USER_SEGMENT_MASKS[gender.ordinal()][income.ordinal()][age
+							.ordinal()] = mask;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the precomputed segment mask of a given {@link AdxUser user}.
+	 * 
+	 * @param user
+	 *            {@link AdxUser}.
+	 * @return Segment mask of the user, see {@link MarketSegmentSet}.
+	 */
+	public static int extractSegmentMask(AdxUser user) {
+		return USER_SEGMENT_MASKS[user.getGender().ordinal()][user.getIncome()
+				.ordinal()][user.getAge().ordinal()];
+	}
+
 	/**
 	 * Generates a list of matching {@link MarketSegment}s according to a given
 	 * {@link AdxUser user}.
@@ -157,24 +184,7 @@ public enum MarketSegment {
 	 * @return {@link List} of {@link MarketSegment}s.
 	 */
 	public static Set<MarketSegment> extractSegment(AdxUser user) {
-		Set<MarketSegment> marketSegments = new HashSet<MarketSegment>();
-		if (user.getGender() == Gender.male) {
-			marketSegments.add(MALE);
-		} else {
-			marketSegments.add(FEMALE);
-		}
-		if (user.getIncome() == Income.low || user.getIncome() == Income.medium) {
-			marketSegments.add(LOW_INCOME);
-		} else {
-			marketSegments.add(HIGH_INCOME);
-		}
-		if (user.getAge() == Age.Age_18_24 || user.getAge() == Age.Age_25_34
-				|| user.getAge() == Age.Age_35_44) {
-			marketSegments.add(MarketSegment.YOUNG);
-		} else {
-			marketSegments.add(MarketSegment.OLD);
-		}
-		return marketSegments;
+		return new MarketSegmentSet(extractSegmentMask(user));
 	}
 
 }
@@ -0,0 +1,246 @@
+package tau.tac.adx.report.adn;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link Set} of {@link MarketSegment}s backed by a bit mask, in which bit
+ * <code>i</code> is set iff the segment with ordinal <code>i</code> is a member.
+ * Since there are only six segments, subset and intersection checks reduce to
+ * a single AND/compare of two <code>int</code>s.
+ * <p>
+ * The set honors the {@link Set} contract for {@link #equals(Object)} and
+ * {@link #hashCode()}, so it can be mixed freely with other {@link Set}
+ * implementations (e.g. as a {@link java.util.HashMap} key).
+ *
+ * @author greenwald
+ */
+public class MarketSegmentSet extends AbstractSet<MarketSegment> {
+
+	/**
+	 * Mask containing all (six) {@link MarketSegment}s. This is a constant
+	 * rather than derived from {@link MarketSegment#values()}, since
+	 * {@link MarketSegment}'s static initializer creates
+	 * {@link MarketSegmentSet}s and would otherwise see an uninitialized mask
+	 * when this class is loaded first.
+	 */
+	public static final int ALL = (1 << 6) - 1;
+
+	/**
+	 * Lazily initialized {@link MarketSegment} tables.
+	 */
+	private static final class Segments {
+		private static final MarketSegment[] VALUES = MarketSegment.values();
+
+		/**
+		 * {@link Set#hashCode()} of every possible mask, i.e., the sum of the
+		 * member segments' hash codes.
+		 */
+		private static final int[] HASH_CODES = new int[ALL + 1];
+
+		static {
+			for (int mask = 0; mask <= ALL; mask++) {
+				int hashCode = 0;
+				for (MarketSegment segment : VALUES) {
+					if ((mask & bit(segment)) != 0) {
+						hashCode += segment.hashCode();
+					}
+				}
+				HASH_CODES[mask] = hashCode;
+			}
+		}
+	}
+
+	/**
+	 * Bit mask of the member segments.
+	 */
+	private int mask;
+
+	/**
+	 * Creates an empty {@link MarketSegmentSet}.
+	 */
+	public MarketSegmentSet() {
+		this(0);
+	}
+
+	/**
+	 * Creates a {@link MarketSegmentSet} from a segment mask.
+	 *
+	 * @param mask
+	 *            Bit mask of the member segments.
+	 */
+	public MarketSegmentSet(int mask) {
+		if ((mask & ~ALL) != 0) {
+			throw new IllegalArgumentException("Invalid market segment mask: "
+					+ mask);
+		}
+		this.mask = mask;
+	}
+
+	/**
+	 * Creates a {@link MarketSegmentSet} containing the given segments.
+	 *
+	 * @param segments
+	 *            Member segments.
+	 */
+	public MarketSegmentSet(Collection<MarketSegment> segments) {
+		this(maskOf(segments));
+	}
+
+	/**
+	 * @param segment
+	 *            {@link MarketSegment}.
+	 * @return The bit of the given segment.
+	 */
+	public static int bit(MarketSegment segment) {
+		return 1 << segment.ordinal();
+	}
+
+	/**
+	 * Returns the segment mask of the given collection. This is a field read
+	 * for a {@link MarketSegmentSet}.
+	 *
+	 * @param segments
+	 *            {@link MarketSegment}s, may be <code>null</code>.
+	 * @return The segment mask of the given collection.
+	 */
+	public static int maskOf(Collection<MarketSegment> segments) {
+		if (segments == null) {
+			return 0;
+		}
+		if (segments instanceof MarketSegmentSet) {
+			return ((MarketSegmentSet) segments).mask;
+		}
+		int mask = 0;
+		for (MarketSegment segment : segments) {
+			mask |= bit(segment);
+		}
+		return mask;
+	}
+
+	/**
+	 * @param superMask
+	 *            Candidate superset mask.
+	 * @param subMask
+	 *            Candidate subset mask.
+	 * @return <code>true</code> if every segment of <code>subMask</code> is
+	 *         in <code>superMask</code>.
+	 */
+	public static boolean containsAll(int superMask, int subMask) {
+		return (subMask & ~superMask) == 0;
+	}
+
+	/**
+	 * @param first
+	 *            {@link MarketSegment}s.
+	 * @param second
+	 *            {@link MarketSegment}s.
+	 * @return A new {@link MarketSegmentSet} holding the segments common to
+	 *         both collections.
+	 */
+	public static MarketSegmentSet intersection(
+			Collection<MarketSegment> first, Collection<MarketSegment> second) {
+		return new MarketSegmentSet(maskOf(first) & maskOf(second));
+	}
+
+	/**
+	 * @return The bit mask of the member segments.
+	 */
+	public int getMask() {
+		return mask;
+	}
+
+	@Override
+	public int size() {
+		return Integer.bitCount(mask);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return mask == 0;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof MarketSegment
+				&& (mask & bit((MarketSegment) o)) != 0;
+	}
+
+	@Override
+	public boolean add(MarketSegment segment) {
+		int old = mask;
+		mask |= bit(segment);
+		return mask != old;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof MarketSegment)) {
+			return false;
+		}
+		int old = mask;
+		mask &= ~bit((MarketSegment) o);
+		return mask != old;
+	}
+
+	@Override
+	public void clear() {
+		mask = 0;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (c instanceof MarketSegmentSet) {
+			return containsAll(mask, ((MarketSegmentSet) c).mask);
+		}
+		return super.containsAll(c);
+	}
+
+	@Override
+	public Iterator<MarketSegment> iterator() {
+		return new Iterator<MarketSegment>() {
+			private int remaining = mask;
+			private int last = -1;
+
+			@Override
+			public boolean hasNext() {
+				return remaining != 0;
+			}
+
+			@Override
+			public MarketSegment next() {
+				if (remaining == 0) {
+					throw new NoSuchElementException();
+				}
+				last = Integer.numberOfTrailingZeros(remaining);
+				remaining &= remaining - 1;
+				return Segments.VALUES[last];
+			}
+
+			@Override
+			public void remove() {
+				if (last < 0) {
+					throw new IllegalStateException();
+				}
+				mask &= ~(1 << last);
+				last = -1;
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof MarketSegmentSet) {
+			return mask == ((MarketSegmentSet) o).mask;
+		}
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return Segments.HASH_CODES[mask];
+	}
+}
@@ -82,4 +82,28 @@ public class CampaignReport extends
 			reportEntry.setCampaignStats(campaignStats);
 		}
 	}
+
+	/**
+	 * Adds the statistics of a campaign, unless already reported, without
+	 * creating an intermediate {@link CampaignStats}.
+	 * 
+	 * @param campaignId
+	 *            the campaign id
+	 * @param targetedImps
+	 *            the targeted impressions
+	 * @param otherImps
+	 *            the untargeted impressions
+	 * @param cost
+	 *            the cost
+	 */
+	public void addStatsEntry(int campaignId, double targetedImps,
+			double otherImps, double cost) {
+		/* not getKey(int), which looks the key up by index */
+		CampaignReportKey key = new CampaignReportKey(campaignId);
+		CampaignReportEntry reportEntry = getCampaignReportEntry(key);
+		if (reportEntry == null) {
+			reportEntry = addReportEntry(key);
+			reportEntry.setCampaignStats(targetedImps, otherImps, cost);
+		}
+	}
 }
@@ -52,6 +52,19 @@ public class CampaignReportEntry extends
 		stats.setValues(other);
 	}
 
+	/**
+	 * @param targetedImps
+	 *            the targeted impressions
+	 * @param otherImps
+	 *            the untargeted impressions
+	 * @param cost
+	 *            the cost
+	 */
+	public void setCampaignStats(double targetedImps, double otherImps,
+			double cost) {
+		stats.setValues(targetedImps, otherImps, cost);
+	}
+
 	/**
 	 * Reads the pricing information from the reader.
 	 * 
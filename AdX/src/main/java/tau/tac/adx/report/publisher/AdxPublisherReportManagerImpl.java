@@ -28,6 +28,7 @@ import java.util.logging.Logger;
 
 import tau.tac.adx.AdxManager;
 import tau.tac.adx.messages.AuctionMessage;
+import tau.tac.adx.sim.TACAdxSimulation;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
@@ -64,7 +65,11 @@ public class AdxPublisherReportManagerImpl implements AdxPublisherReportManager
 	public AdxPublisherReportManagerImpl(
 			AdxPublisherReportSender publisherReportSender, EventBus eventBus) {
 		this.publisherReportSender = publisherReportSender;
-		AdxManager.getInstance().getSimulation().getEventBus().register(this);
+		TACAdxSimulation simulation = AdxManager.getInstance().getSimulation();
+		simulation.getEventBus().register(this);
+		if (simulation.getAuctionMessagePipeline() != null) {
+			simulation.getAuctionMessagePipeline().register(this);
+		}
 		log.info("AdxQueryReportManager created.");
 	}
 
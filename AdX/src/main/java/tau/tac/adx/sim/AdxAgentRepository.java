@@ -38,6 +38,7 @@ import tau.tac.adx.users.AdxUser;
 import com.google.common.eventbus.EventBus;
 
 import edu.umich.eecs.tac.props.AdvertiserInfo;
+import edu.umich.eecs.tac.util.sampling.SamplerFactory;
 
 /**
  * The agent repository holds references to all agents in the TAC/AA simulation.
@@ -121,4 +122,9 @@ public interface AdxAgentRepository {
 	 * @return {@link AdxBidTracker}.
 	 */
 	AdxBidTracker getAdxBidTracker();
+
+	/**
+	 * @return {@link SamplerFactory}.
+	 */
+	SamplerFactory getSamplerFactory();
 }
@@ -1,5 +1,7 @@
 package tau.tac.adx.sim;
 
+import java.util.Random;
+
 import tau.tac.adx.auction.AdxAuctionResult;
 import tau.tac.adx.props.AdxQuery;
 
@@ -17,6 +19,19 @@ public interface AdxAuctioneer {
 	 */
 	AdxAuctionResult runAuction(AdxQuery query);
 
+	/**
+	 * Runs an auction for a given {@link AdxQuery}, drawing all of the
+	 * auction's random choices (user classification, bid sampling and tie
+	 * breaking) from the given {@link Random}.
+	 * 
+	 * @param query
+	 *            {@link AdxQuery} to run auction for.
+	 * @param random
+	 *            {@link Random} used by the auction.
+	 * @return {@link AdxAuctionResult}.
+	 */
+	AdxAuctionResult runAuction(AdxQuery query, Random random);
+
 	/**
 	 * Applies bid updates.
 	 */
@@ -0,0 +1,324 @@
+package tau.tac.adx.sim;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import se.sics.isl.util.ArgumentManager;
+import se.sics.isl.util.ConfigManager;
+import se.sics.tasim.is.SimulationInfo;
+import se.sics.tasim.sim.LocalSimulationHost;
+import tau.tac.adx.AdxManager;
+import tau.tac.adx.util.RandomStream;
+
+/**
+ * Plays independent {@link TACAdxSimulation}s concurrently in a single JVM,
+ * without server or network. All ad networks are builtin agents configured
+ * by <code>dummy.adnetwork.*</code> in the simulation configuration (e.g.
+ * {@link tau.tac.adx.agents.SampleAdNetwork} or
+ * {@link tau.tac.adx.agents.GreedyLuckyAdNetwork}), which exchange messages
+ * with the simulation in memory.
+ * <p>
+ * Each game runs in its own {@link AdxManager} context, writes its own
+ * simulation log and yields a {@link GameResult} holding the final bank
+ * balances of the ad networks. Unless configured otherwise, days are event
+ * driven (<code>game.eventDrivenDays</code>), so a game lasts as long as its
+ * agents take to bid.
+ * <p>
+ * If <code>game.seed</code> is configured, each game is seeded with a seed
+ * derived from it and the game's simulation id, so a batch can be replayed
+ * game by game.
+ */
+public class BatchSimulationRunner {
+
+	private static final Logger log = Logger
+			.getLogger(BatchSimulationRunner.class.getName());
+
+	private static final String SERVER_NAME = "batch";
+
+	private final ConfigManager config;
+
+	private final File logDirectory;
+
+	private final int threads;
+
+	/**
+	 * @param config
+	 *            Simulation configuration shared by all games.
+	 * @param logDirectory
+	 *            Directory of the simulation logs.
+	 * @param threads
+	 *            Maximum number of games played concurrently.
+	 */
+	public BatchSimulationRunner(ConfigManager config, File logDirectory,
+			int threads) {
+		if (config == null) {
+			throw new NullPointerException("config cannot be null");
+		}
+		if (logDirectory == null) {
+			throw new NullPointerException("logDirectory cannot be null");
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.config = new ConfigManager(config);
+		if (config.getProperty("game.eventDrivenDays") == null) {
+			this.config.setProperty("game.eventDrivenDays", "true");
+		}
+		this.logDirectory = logDirectory;
+		this.threads = threads;
+	}
+
+	/**
+	 * Plays the games with simulation ids <code>firstSimulationID</code> to
+	 * <code>firstSimulationID + games - 1</code>.
+	 *
+	 * @param firstSimulationID
+	 *            Simulation id of the first game.
+	 * @param games
+	 *            Number of games to play.
+	 * @return The {@link GameResult}s, in simulation id order.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the games.
+	 */
+	public List<GameResult> run(int firstSimulationID, int games)
+			throws InterruptedException {
+		if (!logDirectory.isDirectory() && !logDirectory.mkdirs()) {
+			throw new IllegalStateException("could not create directory "
+					+ logDirectory);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, Math.max(games, 1)));
+		try {
+			List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>(
+					games);
+			for (int i = 0; i < games; i++) {
+				final int simulationID = firstSimulationID + i;
+				futures.add(executor.submit(new Callable<GameResult>() {
+					@Override
+					public GameResult call() {
+						return play(simulationID);
+					}
+				}));
+			}
+			List<GameResult> results = new ArrayList<GameResult>(games);
+			for (Future<GameResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					// play() reports failures in the result
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param simulationID
+	 *            Simulation id of the game.
+	 * @return The configuration of the game, with its own
+	 *         <code>game.seed</code> if the batch is seeded.
+	 */
+	private ConfigManager createGameConfig(int simulationID) {
+		if (config.getProperty("game.seed") == null) {
+			return config;
+		}
+		ConfigManager gameConfig = new ConfigManager(config);
+		gameConfig.setProperty("game.seed", Long.toString(RandomStream.seed(
+				config.getPropertyAsLong("game.seed", 0), simulationID)));
+		return gameConfig;
+	}
+
+	/**
+	 * Plays a single game in a new {@link AdxManager} context of the calling
+	 * thread.
+	 *
+	 * @param simulationID
+	 *            Simulation id of the game.
+	 * @return The {@link GameResult}.
+	 */
+	public GameResult play(int simulationID) {
+		String logFile = new File(logDirectory, "sim" + simulationID + ".slg")
+				.getPath();
+		AdxManager.createContext();
+		try {
+			ConfigManager gameConfig = createGameConfig(simulationID);
+			TACAdxSimulation simulation = new TACAdxSimulation(gameConfig);
+			SimulationInfo info = new SimulationInfo(simulationID,
+					TACAdxConstants.SUPPORTED_TYPES[0], null, gameConfig
+							.getPropertyAsInt("game.length", 600) * 1000);
+			info.setSimulationID(simulationID);
+			new LocalSimulationHost(gameConfig, SERVER_NAME).run(simulation,
+					info, logFile);
+
+			Map<String, Double> balances = new TreeMap<String, Double>();
+			for (String adNetwork : simulation.getAdvertiserInfo().keySet()) {
+				balances.put(adNetwork,
+						simulation.getBank().getAccountStatus(adNetwork));
+			}
+			return new GameResult(simulationID, logFile, balances, null);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new GameResult(simulationID, logFile, null, e);
+		} catch (Exception e) {
+			log.log(Level.SEVERE, "could not play simulation " + simulationID,
+					e);
+			return new GameResult(simulationID, logFile, null, e);
+		} finally {
+			AdxManager.clearContext();
+		}
+	}
+
+	/**
+	 * Writes the scores of the given games as CSV lines
+	 * <code>simulation,adNetwork,balance</code>.
+	 *
+	 * @param results
+	 *            {@link GameResult}s.
+	 * @param out
+	 *            Target writer.
+	 */
+	public static void writeScores(List<GameResult> results, PrintWriter out) {
+		out.println("simulation,adNetwork,balance");
+		for (GameResult result : results) {
+			for (Map.Entry<String, Double> entry : result.getBalances()
+					.entrySet()) {
+				out.println(result.getSimulationID() + "," + entry.getKey()
+						+ "," + entry.getValue());
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * The outcome of a single game.
+	 */
+	public static class GameResult {
+
+		private final int simulationID;
+
+		private final String logFile;
+
+		private final Map<String, Double> balances;
+
+		private final Exception error;
+
+		GameResult(int simulationID, String logFile,
+				Map<String, Double> balances, Exception error) {
+			this.simulationID = simulationID;
+			this.logFile = logFile;
+			this.balances = balances == null ? Collections
+					.<String, Double> emptyMap() : Collections
+					.unmodifiableMap(balances);
+			this.error = error;
+		}
+
+		/**
+		 * @return The simulation id of the game.
+		 */
+		public int getSimulationID() {
+			return simulationID;
+		}
+
+		/**
+		 * @return The name of the game's simulation log file.
+		 */
+		public String getLogFile() {
+			return logFile;
+		}
+
+		/**
+		 * @return Final bank balance by ad network address, empty if the game
+		 *         failed.
+		 */
+		public Map<String, Double> getBalances() {
+			return balances;
+		}
+
+		/**
+		 * @return The error that ended the game, or <code>null</code> if it
+		 *         was played.
+		 */
+		public Exception getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return "GameResult [simulationID=" + simulationID + ", balances="
+					+ balances + ", error=" + error + "]";
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException,
+			IOException {
+		ArgumentManager config = new ArgumentManager("BatchSimulationRunner",
+				args);
+		config.addOption("config", "configfile",
+				"set the simulation config file to use");
+		config.addOption("games", "games", "set the number of games to play");
+		config.addOption("threads", "threads",
+				"set the number of games to play concurrently");
+		config.addOption("firstSimulation", "id",
+				"set the simulation id of the first game");
+		config.addOption("logDirectory", "directory",
+				"set the directory of the simulation logs and scores");
+		config.addOption("seed", "seed",
+				"set the seed the seeds of the games are derived from");
+		config.addHelp("h", "show this help message");
+		config.addHelp("help");
+		config.validateArguments();
+
+		String configFile = config.getArgument("config",
+				"config/tac13adx_sim.conf");
+		try {
+			config.loadConfiguration(configFile);
+			config.removeArgument("config");
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			config.usage(1);
+		}
+		int games = config.getArgumentAsInt("games", 1);
+		int threads = config.getArgumentAsInt("threads", Runtime.getRuntime()
+				.availableProcessors());
+		int firstSimulation = config.getArgumentAsInt("firstSimulation", 1);
+		File logDirectory = new File(config.getArgument("logDirectory",
+				"logs/batch"));
+		String seed = config.getArgument("seed");
+		if (seed != null) {
+			config.setProperty("game.seed", seed);
+		}
+		config.finishArguments();
+
+		BatchSimulationRunner runner = new BatchSimulationRunner(config,
+				logDirectory, threads);
+		List<GameResult> results = runner.run(firstSimulation, games);
+		PrintWriter out = new PrintWriter(new FileWriter(new File(
+				logDirectory, "scores.csv")));
+		try {
+			writeScores(results, out);
+		} finally {
+			out.close();
+		}
+		for (GameResult result : results) {
+			System.out.println(result);
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,131 @@
+package tau.tac.adx.sim;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import tau.tac.adx.props.AdxBidBundle;
+import tau.tac.adx.report.demand.AdNetBidMessage;
+
+/**
+ * Tracks which ad networks have submitted their bids for the current day, so
+ * that event driven days can end as soon as all of them have.
+ * <p>
+ * An ad network answers the {@link se.sics.tasim.props.SimulationStatus} that
+ * ends each day with one {@link AdxBidBundle}. Bundles carry no day, so they
+ * are attributed to days in order: a bundle received while the sender has not
+ * yet answered the previous day answers that day, i.e., it is late and does
+ * not count toward the current one. {@link AdNetBidMessage}s only count if
+ * they bid for the campaign offered during the current day. The received sets
+ * are keyed by day and discarded as the days advance.
+ * <p>
+ * An ad network that skips a day is therefore considered late from then on,
+ * which only makes the following days wait for their timeout. Accessed on the
+ * simulation's message dispatcher thread.
+ */
+class DailyBidTracker {
+
+	/**
+	 * Indices of the ad networks that have answered each day with an
+	 * {@link AdxBidBundle}, for the current and the previous day.
+	 */
+	private final Map<Integer, Set<Integer>> bidBundleSenders = new HashMap<Integer, Set<Integer>>();
+
+	/**
+	 * Last day answered with an {@link AdxBidBundle}, by ad network index.
+	 */
+	private final Map<Integer, Integer> answeredDays = new HashMap<Integer, Integer>();
+
+	/**
+	 * Indices of the ad networks that have bid for the current day's campaign
+	 * opportunity.
+	 */
+	private final Set<Integer> adNetBidSenders = new HashSet<Integer>();
+
+	private int day = -1;
+
+	private boolean campaignOpportunityOffered;
+
+	private int campaignOpportunityId;
+
+	/**
+	 * Starts tracking a new day.
+	 * 
+	 * @param day
+	 *            The day that started.
+	 */
+	public void dayStarted(int day) {
+		this.day = day;
+		for (Iterator<Integer> it = bidBundleSenders.keySet().iterator(); it
+				.hasNext();) {
+			if (it.next() < day - 1) {
+				it.remove();
+			}
+		}
+		adNetBidSenders.clear();
+		campaignOpportunityOffered = false;
+	}
+
+	/**
+	 * Records that a campaign opportunity was offered during the current day,
+	 * in which case the ad networks are expected to bid for it.
+	 * 
+	 * @param campaignId
+	 *            Id of the offered campaign.
+	 */
+	public void campaignOpportunityOffered(int campaignId) {
+		campaignOpportunityOffered = true;
+		campaignOpportunityId = campaignId;
+		adNetBidSenders.clear();
+	}
+
+	/**
+	 * Records an {@link AdxBidBundle}.
+	 * 
+	 * @param sender
+	 *            Index of the ad network.
+	 */
+	public void bidBundleReceived(int sender) {
+		Integer answered = answeredDays.get(sender);
+		int answeredDay = day;
+		if (answered != null && answered < day - 1) {
+			answeredDay = day - 1;
+		}
+		answeredDays.put(sender, answeredDay);
+		Set<Integer> senders = bidBundleSenders.get(answeredDay);
+		if (senders == null) {
+			senders = new HashSet<Integer>();
+			bidBundleSenders.put(answeredDay, senders);
+		}
+		senders.add(sender);
+	}
+
+	/**
+	 * Records an {@link AdNetBidMessage}.
+	 * 
+	 * @param sender
+	 *            Index of the ad network.
+	 * @param campaignId
+	 *            Id of the campaign bid for.
+	 */
+	public void adNetBidReceived(int sender, int campaignId) {
+		if (campaignOpportunityOffered && campaignId == campaignOpportunityId) {
+			adNetBidSenders.add(sender);
+		}
+	}
+
+	/**
+	 * @param adNetworkCount
+	 *            Number of ad networks.
+	 * @return <code>true</code> if all ad networks have submitted their bids
+	 *         for the current day.
+	 */
+	public boolean isComplete(int adNetworkCount) {
+		Set<Integer> senders = bidBundleSenders.get(day);
+		int bidBundles = senders == null ? 0 : senders.size();
+		return bidBundles >= adNetworkCount
+				&& (!campaignOpportunityOffered || adNetBidSenders.size() >= adNetworkCount);
+	}
+}
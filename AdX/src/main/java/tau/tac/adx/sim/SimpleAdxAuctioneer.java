@@ -3,8 +3,8 @@
  */
 package tau.tac.adx.sim;
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
@@ -25,6 +25,7 @@ import tau.tac.adx.props.AdxQuery;
 import tau.tac.adx.publishers.reserve.MultiReservePriceManager;
 import tau.tac.adx.publishers.reserve.UserAdTypeReservePriceManager;
 import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.util.RandomStream;
 
 import com.google.common.eventbus.EventBus;
 import com.google.inject.Inject;
@@ -57,13 +58,17 @@ public class SimpleAdxAuctioneer implements AdxAuctioneer, TimeListener {
 	 *            {@link BidManager}.
 	 * @param eventBus
 	 *            {@link EventBus}.
+	 * @param randomStream
+	 *            The simulation's {@link RandomStream}, from which the
+	 *            auctioneer's own stream is split.
 	 */
 	@Inject
 	public SimpleAdxAuctioneer(AuctionManager auctionManager,
-			AdxBidManager bidManager, EventBus eventBus) {
+			AdxBidManager bidManager, EventBus eventBus,
+			RandomStream randomStream) {
 		this.auctionManager = auctionManager;
 		this.bidManager = bidManager;
-		this.random = new Random();
+		this.random = randomStream.split("auctioneer");
 		eventBus.register(this);
 	}
 
@@ -72,14 +77,23 @@ public class SimpleAdxAuctioneer implements AdxAuctioneer, TimeListener {
 	 */
 	@Override
 	public AdxAuctionResult runAuction(AdxQuery query) {
-		List<BidInfo> bidInfos = generateBidInfos(query);
+		return runAuction(query, random);
+	}
+
+	/**
+	 * @see AdxAuctioneer#runAuction(AdxQuery, Random)
+	 */
+	@Override
+	public AdxAuctionResult runAuction(AdxQuery query, Random random) {
+		List<BidInfo> bidInfos = generateBidInfos(query, random);
 
 		MultiReservePriceManager<AdxQuery> reservePriceManager = AdxManager.getInstance()
 				.getPublisher(query.getPublisher()).getReservePriceManager();
-		double reservePrice = reservePriceManager.generateReservePrice(query);
+		double reservePrice = reservePriceManager.generateReservePrice(query,
+				random);
 		AuctionData auctionData = new AuctionData(AuctionOrder.HIGHEST_WINS,
 				AuctionPriceType.GENERALIZED_SECOND_PRICE, bidInfos,
-				reservePrice);
+				reservePrice, random);
 		AdxAuctionResult auctionResult = auctionManager.runAuction(auctionData, query);
 		if (auctionResult.getAuctionState() == AuctionState.AUCTION_COPMLETED) {
 			reservePriceManager.addImpressionForPrice(reservePrice, query);
@@ -87,14 +101,15 @@ public class SimpleAdxAuctioneer implements AdxAuctioneer, TimeListener {
 		return auctionResult;
 	}
 
-	private List<BidInfo> generateBidInfos(AdxQuery query) {
-		List<BidInfo> bidInfos = new LinkedList<BidInfo>();
+	private List<BidInfo> generateBidInfos(AdxQuery query, Random random) {
 		String[] advertisers = AdxManager.getInstance().getSimulation()
 				.getAdxAdvertiserAddresses();
+		List<BidInfo> bidInfos = new ArrayList<BidInfo>(advertisers.length);
 		for (final String advertiser : advertisers) {
-			AdxQuery classifiedQuery = getClassifiedQuery(advertiser, query);
-			BidInfo bidInfo = bidManager
-					.getBidInfo(advertiser, classifiedQuery);
+			AdxQuery classifiedQuery = getClassifiedQuery(advertiser, query,
+					random);
+			BidInfo bidInfo = bidManager.getBidInfo(advertiser,
+					classifiedQuery, random);
 			if (bidInfo != null) {
 				bidInfos.add(bidInfo);
 			}
@@ -103,6 +118,11 @@ public class SimpleAdxAuctioneer implements AdxAuctioneer, TimeListener {
 	}
 
 	protected AdxQuery getClassifiedQuery(String advertiser, AdxQuery query) {
+		return getClassifiedQuery(advertiser, query, random);
+	}
+
+	protected AdxQuery getClassifiedQuery(String advertiser, AdxQuery query,
+			Random random) {
 		UserClassificationService userClassificationService = AdxManager
 				.getInstance().getUserClassificationService();
 		UserClassificationServiceAdNetData adNetData = userClassificationService
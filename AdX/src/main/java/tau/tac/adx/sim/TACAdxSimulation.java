@@ -42,6 +42,8 @@ import java.util.logging.Logger;
 import se.sics.isl.transport.Transportable;
 import se.sics.isl.util.ConfigManager;
 import se.sics.isl.util.IllegalConfigurationException;
+import se.sics.isl.util.MemoryTelemetry;
+import se.sics.tasim.aw.Agent;
 import se.sics.tasim.aw.Message;
 import se.sics.tasim.is.EventWriter;
 import se.sics.tasim.is.SimulationInfo;
@@ -56,16 +58,20 @@ import tau.tac.adx.AdxManager;
 import tau.tac.adx.ads.properties.AdType;
 import tau.tac.adx.agents.DefaultAdxUsers;
 import tau.tac.adx.agents.DemandAgent;
+import tau.tac.adx.agents.SeededAgent;
 import tau.tac.adx.auction.manager.AdxBidManager;
 import tau.tac.adx.auction.tracker.AdxBidTracker;
 import tau.tac.adx.auction.tracker.AdxBidTrackerImpl;
 import tau.tac.adx.devices.Device;
+import tau.tac.adx.messages.AuctionMessage;
+import tau.tac.adx.messages.AuctionMessagePipeline;
 import tau.tac.adx.props.AdxBidBundle;
 import tau.tac.adx.props.PublisherCatalog;
 import tau.tac.adx.props.ReservePriceInfo;
 import tau.tac.adx.report.adn.AdNetworkKey;
 import tau.tac.adx.report.adn.AdNetworkReport;
 import tau.tac.adx.report.adn.AdNetworkReportSender;
+import tau.tac.adx.report.demand.AdNetBidMessage;
 import tau.tac.adx.report.demand.AdNetworkDailyNotification;
 import tau.tac.adx.report.demand.CampaignOpportunityMessage;
 import tau.tac.adx.report.demand.CampaignReport;
@@ -76,6 +82,7 @@ import tau.tac.adx.report.publisher.AdxPublisherReportSender;
 import tau.tac.adx.sim.config.AdxConfigurationParser;
 import tau.tac.adx.users.AdxUser;
 import tau.tac.adx.util.AdxModule;
+import tau.tac.adx.util.RandomStream;
 
 import com.botbox.util.ArrayUtils;
 import com.google.common.eventbus.EventBus;
@@ -86,6 +93,9 @@ import edu.umich.eecs.tac.props.AdvertiserInfo;
 import edu.umich.eecs.tac.props.BankStatus;
 import edu.umich.eecs.tac.sim.Bank;
 import edu.umich.eecs.tac.sim.BankStatusSender;
+import edu.umich.eecs.tac.util.sampling.AliasSamplerFactory;
+import edu.umich.eecs.tac.util.sampling.SamplerFactory;
+import edu.umich.eecs.tac.util.sampling.WheelSamplerFactory;
 
 /**
  * @author Lee Callender, Patrick Jordan, Ben Cassell
@@ -121,14 +131,18 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 	private Map<Device, Integer> deviceDistributionMap;
 	private Map<AdType, Integer> adTypeDistributionMap;
 
-	private final Random random;
+	/**
+	 * Root of the simulation's random streams, seeded by
+	 * <code>game.seed</code>.
+	 */
+	private RandomStream randomStream;
 
 	public String[] getAdxAdvertiserAddresses() {
 		return adxAdvertiserAddresses;
 	}
 
 	private Competition competition;
-	private final Injector injector = Guice.createInjector(new AdxModule());
+	private Injector injector;
 
 	private final Runnable afterTickTarget = new Runnable() {
 		@Override
@@ -141,28 +155,70 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 	 * The system's main event bus.
 	 */
 	private EventBus eventBus;
+
+	/**
+	 * Delivers {@link AuctionMessage}s to their consumers.
+	 */
+	private AuctionMessagePipeline auctionMessagePipeline;
+
+	/**
+	 * Records the memory usage of each day and requests garbage collections
+	 * according to the configured policy.
+	 */
+	private MemoryTelemetry memoryTelemetry;
 	
 
 	private boolean recoverAgents = false;
 	private AdxAuctioneer auctioneer;
 
+	/**
+	 * Maximal length of a day in milliseconds when days are event driven, i.e.,
+	 * end as soon as all ad networks have submitted their bids. <code>0</code>
+	 * if days are paced at <code>secondsPerDay</code>.
+	 */
+	private int maxMillisPerEventDrivenDay;
+
+	/**
+	 * Server time at which the current day started.
+	 */
+	private long dayStartTime;
+
+	/**
+	 * The ad networks' bids for each day, ending event driven days.
+	 */
+	private final DailyBidTracker dailyBidTracker = new DailyBidTracker();
+
+	/**
+	 * Phases of a day recorded by the {@link MemoryTelemetry}.
+	 */
+	public static final int PHASE_USER_ACTIVITY = 0;
+	public static final int PHASE_REPORTS = 1;
+	public static final int PHASE_DEMAND = 2;
+	private static final String[] PHASE_NAMES = { "user activity",
+			"reports", "demand" };
+
 	private static final Logger log = Logger.getLogger(TACAdxSimulation.class
 			.getName());
 	private DefaultAdxUsers adxAgent;
 	private DemandAgent demandAgent;
 
+	/**
+	 * The {@link AdxManager} of this simulation's context.
+	 */
+	private final AdxManager adxManager;
+
 	public TACAdxSimulation(ConfigManager config, Competition competition) {
 		super(config);
 		this.setCompetition(competition);
-		random = new Random();
-		AdxManager.getInstance().setSimulation(this);
+		adxManager = AdxManager.getInstance();
+		adxManager.setSimulation(this);
 	}
 
 	public TACAdxSimulation(ConfigManager config) {
 		super(config);
 
-		random = new Random();
-		AdxManager.getInstance().setSimulation(this);
+		adxManager = AdxManager.getInstance();
+		adxManager.setSimulation(this);
 	}
 
 	/**
@@ -173,6 +229,54 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 		return eventBus;
 	}
 
+	/**
+	 * @return the {@link AdxManager} of this simulation
+	 */
+	public AdxManager getAdxManager() {
+		return adxManager;
+	}
+
+	@Override
+	protected void dispatcherStarted() {
+		AdxManager.setContext(adxManager);
+	}
+
+	/**
+	 * @return the root {@link RandomStream} of this simulation, from which
+	 *         each component splits its own named stream
+	 */
+	public RandomStream getRandomStream() {
+		return randomStream;
+	}
+
+	/**
+	 * Gives each builtin {@link SeededAgent} its own stream, split from the
+	 * simulation's stream by the agent's name.
+	 */
+	@Override
+	protected SimulationAgent registerAgent(Agent agent, String name,
+			int role, int participantID) {
+		if (agent instanceof SeededAgent) {
+			((SeededAgent) agent).setRandom(randomStream
+					.split("agent." + name));
+		}
+		return super.registerAgent(agent, name, role, participantID);
+	}
+
+	/**
+	 * @return the {@link MemoryTelemetry} of this simulation
+	 */
+	public MemoryTelemetry getMemoryTelemetry() {
+		return memoryTelemetry;
+	}
+
+	/**
+	 * @return the {@link AuctionMessagePipeline}
+	 */
+	public AuctionMessagePipeline getAuctionMessagePipeline() {
+		return auctionMessagePipeline;
+	}
+
 	@Override
 	public Map<String, AdvertiserInfo> getAdvertiserInfo() {
 		return getAdvertiserInfoMap();
@@ -180,13 +284,44 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 
 	@Override
 	protected void setupSimulation() throws IllegalConfigurationException {
+		ConfigManager config = getConfig();
+		SimulationInfo info = getSimulationInfo();
+		long seed = config.getPropertyAsLong("game.seed",
+				new Random().nextLong());
+		log.info("Simulation " + info.getSimulationID() + " uses seed " + seed);
+		randomStream = new RandomStream(seed);
+		String sampler = config.getProperty("adxusers.sampler", "wheel");
+		Class<? extends SamplerFactory> samplerFactory;
+		if ("wheel".equals(sampler)) {
+			samplerFactory = WheelSamplerFactory.class;
+		} else if ("alias".equals(sampler)) {
+			samplerFactory = AliasSamplerFactory.class;
+		} else {
+			throw new IllegalConfigurationException("unknown sampler: "
+					+ sampler);
+		}
+		injector = Guice.createInjector(new AdxModule(randomStream,
+				samplerFactory));
 		eventBus = new EventBus(
 				TACAdxConstants.ADX_EVENT_BUS_NAME);
 		auctioneer = injector.getInstance(AdxAuctioneer.class);
-		ConfigManager config = getConfig();
-		SimulationInfo info = getSimulationInfo();
+		auctionMessagePipeline = new AuctionMessagePipeline(eventBus,
+				config.getPropertyAsInt("adx.auctionpipeline.batchsize", 0),
+				config.getPropertyAsInt("adx.auctionpipeline.capacity", 16));
+		try {
+			memoryTelemetry = new MemoryTelemetry("Simulation "
+					+ info.getSimulationID(), PHASE_NAMES,
+					MemoryTelemetry.CollectionPolicy.parse(config.getProperty(
+							"memory.collection", "none")), config
+							.getPropertyAsDouble("memory.collection.threshold",
+									0.9));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalConfigurationException(
+					"illegal memory collection configuration: "
+							+ e.getMessage());
+		}
 		AdxConfigurationParser adxConfigurationParser = new AdxConfigurationParser(
-				config);
+				config, randomStream.split("configuration"));
 
 		int seconds = info.getParameter("secondsPerDay", 0);
 		this.secondsPerDay = seconds <= 1 ? config.getPropertyAsInt(
@@ -197,6 +332,13 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 		if (this.secondsPerDay < 1)
 			this.secondsPerDay = 1;
 
+		if (config.getPropertyAsBoolean("game.eventDrivenDays", false)) {
+			this.maxMillisPerEventDrivenDay = config.getPropertyAsInt(
+					"game.eventDrivenDays.timeout", secondsPerDay * 1000);
+			if (this.maxMillisPerEventDrivenDay < 1)
+				this.maxMillisPerEventDrivenDay = secondsPerDay * 1000;
+		}
+
 		this.numberOfDays = // Make sure this is correct.
 		info.getSimulationLength() / (this.secondsPerDay * 1000);
 
@@ -259,7 +401,7 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 		// Simulation setup needs to be called after advertisers have been
 		// initialized
 
-		AdxManager.getInstance().setup();
+		adxManager.setup();
 
 		SimulationAgent adxSimulationAgent = getAgents(ADX_AGENT_ROLE_ID)[0];
 		adxAgent = (DefaultAdxUsers) adxSimulationAgent.getAgent();
@@ -320,7 +462,12 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 					TACAdxConstants.DU_ADVERTISER_INFO, entry.getValue());
 		}
 
-		startTickTimer(simInfo.getStartTime(), secondsPerDay * 1000);
+		if (maxMillisPerEventDrivenDay > 0) {
+			startEventDrivenTicks(simInfo.getStartTime(),
+					maxMillisPerEventDrivenDay);
+		} else {
+			startTickTimer(simInfo.getStartTime(), secondsPerDay * 1000);
+		}
 
 		logWriter.commit();
 
@@ -365,6 +512,8 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 	 */
 	@Override
 	protected void completeStopSimulation() {
+		auctionMessagePipeline.shutdown();
+		memoryTelemetry.endDay();
 		LogWriter writer = getLogWriter();
 		writer.commit();
 	}
@@ -373,7 +522,12 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 	protected void preNextTimeUnit(int timeUnit) {
 		auctioneer.applyBidUpdates();
 		adxAgent.preNextTimeUnit(timeUnit);
-		demandAgent.preNextTimeUnit(timeUnit);
+		memoryTelemetry.startPhase(PHASE_DEMAND);
+		try {
+			demandAgent.preNextTimeUnit(timeUnit);
+		} finally {
+			memoryTelemetry.endPhase(PHASE_DEMAND);
+		}
 		if (timeUnit < numberOfDays) {
 			// Let the bank send their first messages
 			getBank().sendBankStatusToAll();
@@ -390,6 +544,9 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 	@Override
 	protected void nextTimeUnitStarted(int timeUnit) {
 		this.currentTimeUnit = timeUnit;
+		this.dayStartTime = getServerTime();
+		memoryTelemetry.startDay(timeUnit);
+		dailyBidTracker.dayStarted(timeUnit);
 
 		LogWriter writer = getLogWriter();
 		writer.nextTimeUnit(timeUnit, getServerTime());
@@ -410,9 +567,15 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 	@Override
 	protected void nextTimeUnitFinished(int timeUnit) {
 		if (timeUnit < numberOfDays) {
-			int millisConsumed = (int) (getServerTime()
-					- getSimulationInfo().getStartTime() - timeUnit
-					* secondsPerDay * 1000);
+			// Event driven days do not start at multiples of secondsPerDay
+			int millisConsumed;
+			if (isEventDrivenTicks()) {
+				millisConsumed = (int) (getServerTime() - dayStartTime);
+			} else {
+				millisConsumed = (int) (getServerTime()
+						- getSimulationInfo().getStartTime() - timeUnit
+						* secondsPerDay * 1000);
+			}
 
 			SimulationStatus status = new SimulationStatus(timeUnit,
 					millisConsumed);
@@ -462,12 +625,10 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 			}
 		}
 
-		// Since all day start handling now is finished for this day and
-		// the manufacturer agents will have some time to respond when
-		// requesting pings, it is a good time to do some memory
-		// management.
-		System.gc();
-		System.gc();
+		// Since all day start handling now is finished for this day, it
+		// is the time to request a garbage collection if the configured
+		// policy requires one. By default collections are left to the JVM.
+		memoryTelemetry.collectIfNeeded();
 	}
 
 	private void validateConfiguration() throws IllegalConfigurationException {
@@ -627,10 +788,44 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 		if (type != TYPE_NONE) {
 			getEventWriter().interaction(senderIndex, receiverIndex, type);
 		}
+
+		if (senderAgent != null
+				&& senderAgent.getRole() == AD_NETOWRK_ROLE_ID) {
+			bidsReceived(senderIndex, content);
+		}
 		return true;
 
 	}
 
+	/**
+	 * Records the bids of an ad network for the current day and, when days are
+	 * event driven, ends the day once every ad network has submitted its bid
+	 * bundle and, if a campaign opportunity was offered, its campaign bids.
+	 * 
+	 * @param senderIndex
+	 *            the index of the ad network
+	 * @param content
+	 *            the message content
+	 */
+	private void bidsReceived(int senderIndex, Transportable content) {
+		if (content instanceof AdxBidBundle) {
+			dailyBidTracker.bidBundleReceived(senderIndex);
+		} else if (content instanceof AdNetBidMessage) {
+			dailyBidTracker.adNetBidReceived(senderIndex,
+					((AdNetBidMessage) content).getCampaignId());
+		} else {
+			return;
+		}
+
+		if (isEventDrivenTicks()) {
+			SimulationAgent[] adNetworks = getAgents(AD_NETOWRK_ROLE_ID);
+			int count = adNetworks == null ? 0 : adNetworks.length;
+			if (dailyBidTracker.isComplete(count)) {
+				requestNextTimeUnit(currentTimeUnit);
+			}
+		}
+	}
+
 	/**
 	 * Validates this message to ensure that it may be broadcasted to all agents
 	 * with the specified role.
@@ -778,6 +973,8 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 
 	public final void sendCampaignOpportunity(
 			CampaignOpportunityMessage campaignOpportunityMessage) {
+		dailyBidTracker.campaignOpportunityOffered(campaignOpportunityMessage
+				.getId());
 		sendToRole(AD_NETOWRK_ROLE_ID, campaignOpportunityMessage);
 		getEventWriter().dataUpdated(TACAdxConstants.DU_CAMPAIGN_OPPORTUNITY,
 				campaignOpportunityMessage);
@@ -947,4 +1144,9 @@ public class TACAdxSimulation extends Simulation implements AdxAgentRepository,
 		return injector.getInstance(AdxBidTracker.class);
 	}
 
+	@Override
+	public SamplerFactory getSamplerFactory() {
+		return injector.getInstance(SamplerFactory.class);
+	}
+
 }
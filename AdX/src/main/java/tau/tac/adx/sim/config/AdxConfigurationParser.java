@@ -2,8 +2,10 @@ package tau.tac.adx.sim.config;
 
 import static tau.tac.adx.sim.TACAdxConstants.AD_NETOWRK_ROLE_ID;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -29,6 +31,7 @@ import tau.tac.adx.users.properties.AdxUserAttributeProbabilityMaps;
 import tau.tac.adx.users.properties.Age;
 import tau.tac.adx.users.properties.Gender;
 import tau.tac.adx.users.properties.Income;
+import tau.tac.adx.util.RandomStream;
 import edu.umich.eecs.tac.props.AdvertiserInfo;
 
 /**
@@ -39,9 +42,9 @@ import edu.umich.eecs.tac.props.AdvertiserInfo;
 public class AdxConfigurationParser {
 
 	private final ConfigManager config;
-	private Random random;
+	private final Random random;
 
-	public static String[] publisherNames = { "yahoo", "cnn", "nyt", "hfn",
+	private static final String[] PUBLISHER_NAMES = { "yahoo", "cnn", "nyt", "hfn",
 			"msn", "fox", "amazon", "ebay", "wallmart", "target", "bestbuy",
 			"sears", "webmd", "ehow", "ask", "tripadvisor", "cnet", "weather" };
 
@@ -98,12 +101,23 @@ public class AdxConfigurationParser {
 	private static double RESERVE_PRICE_VARIANCE = 0.02;
 	private static double RESERVE_PRICE_LEARN_RATE = 0.2;
 
+	/**
+	 * @return A copy of the names of the publishers, indexed by publisher id.
+	 */
+	public static String[] getPublisherNames() {
+		return PUBLISHER_NAMES.clone();
+	}
+
 	/**
 	 * @param config
+	 *            {@link ConfigManager}.
+	 * @param random
+	 *            {@link Random} the user population and the publishers are
+	 *            drawn with.
 	 */
-	public AdxConfigurationParser(ConfigManager config) {
+	public AdxConfigurationParser(ConfigManager config, Random random) {
 		this.config = config;
-		random = new Random();
+		this.random = random;
 	}
 
 	/**
@@ -114,7 +128,9 @@ public class AdxConfigurationParser {
 	 * @return An {@link AdType} distribution {@link Map}.
 	 */
 	public Map<AdType, Integer> createAdTypeDistributionMap() {
-		Map<AdType, Integer> deviceDistribution = new HashMap<AdType, Integer>();
+		// Enum order keeps the generated queries reproducible
+		Map<AdType, Integer> deviceDistribution = new EnumMap<AdType, Integer>(
+				AdType.class);
 		deviceDistribution.put(AdType.text,
 				config.getPropertyAsInt("adxusers.adtype.text", 0));
 		deviceDistribution.put(AdType.video,
@@ -130,7 +146,9 @@ public class AdxConfigurationParser {
 	 * @return A {@link Device} distribution {@link Map}.
 	 */
 	public Map<Device, Integer> createDeviceDistributionMap() {
-		Map<Device, Integer> deviceDistribution = new HashMap<Device, Integer>();
+		// Enum order keeps the generated queries reproducible
+		Map<Device, Integer> deviceDistribution = new EnumMap<Device, Integer>(
+				Device.class);
 		deviceDistribution.put(Device.pc,
 				config.getPropertyAsInt("adxusers.device.pc", 0));
 		deviceDistribution.put(Device.mobile,
@@ -147,7 +165,8 @@ public class AdxConfigurationParser {
 	 * @return {@link List} of {@link AdxUser}s.
 	 */
 	public List<AdxUser> createUserPopulation() {
-		Map<AdxUser, Integer> weights = new HashMap<AdxUser, Integer>();
+		/* user hash codes vary between runs, keep the configuration order */
+		Map<AdxUser, Integer> weights = new LinkedHashMap<AdxUser, Integer>();
 		int populationSize = config.getPropertyAsInt(
 				"adxusers.population_size", 0);
 
@@ -168,7 +187,8 @@ public class AdxConfigurationParser {
 			weights.put(adxUser, probability);
 		}
 
-		PopulationUserGenerator generator = new PopulationUserGenerator(weights);
+		PopulationUserGenerator generator = new PopulationUserGenerator(
+				weights, random);
 		return generator.generate(populationSize);
 	}
 
@@ -178,8 +198,6 @@ public class AdxConfigurationParser {
 	 * @return {@link PublisherCatalog} parsed from the configuration file.
 	 */
 	public PublisherCatalog createPublisherCatalog() {
-		Random r = new Random();
-
 		PublisherCatalog catalog = new PublisherCatalog();
 		String[] skus1 = config.getPropertyAsArray("publishers.list.1");
 		String[] skus2 = config.getPropertyAsArray("publishers.list.2");
@@ -193,13 +211,13 @@ public class AdxConfigurationParser {
 		int subsetsize = config.getPropertyAsInt("publishers.subset.size", 2);
 
 		while (subsetskus.size() < subsetsize) {
-			subsetskus.add(Integer.parseInt(skus1[r.nextInt(skus1.length)]));
+			subsetskus.add(Integer.parseInt(skus1[random.nextInt(skus1.length)]));
 		}
 		while (subsetskus.size() < 2 * subsetsize) {
-			subsetskus.add(Integer.parseInt(skus2[r.nextInt(skus2.length)]));
+			subsetskus.add(Integer.parseInt(skus2[random.nextInt(skus2.length)]));
 		}
 		while (subsetskus.size() < 3 * subsetsize) {
-			subsetskus.add(Integer.parseInt(skus3[r.nextInt(skus3.length)]));
+			subsetskus.add(Integer.parseInt(skus3[random.nextInt(skus3.length)]));
 		}
 
 		int reservePriceManagerType = config.getPropertyAsInt(
@@ -213,7 +231,7 @@ public class AdxConfigurationParser {
 		catalog.reservePriceType = ReservePriceType.values()[reservePriceManagerType];
 
 		for (Integer sku : subsetskus) {
-			String name = publisherNames[sku];
+			String name = PUBLISHER_NAMES[sku];
 			double rating = ratings[sku];
 
 			AdAttributeProbabilityMaps adAttributeProbabilityMaps = extractAdTypeAffiliation(sku);
@@ -241,7 +259,8 @@ public class AdxConfigurationParser {
 					0, 0, 0, 0, 0 });
 		case 1:
 			return new UserAdTypeReservePriceManager(RESERVE_PRICE_INIT,
-					RESERVE_PRICE_VARIANCE, RESERVE_PRICE_LEARN_RATE);
+					RESERVE_PRICE_VARIANCE, RESERVE_PRICE_LEARN_RATE,
+					new RandomStream(random.nextLong()));
 		case 2:
 			ReservePriceManagerBundle priceBundle;
 			double[] coefficients = new double[reservePriceManagerConfig.length];
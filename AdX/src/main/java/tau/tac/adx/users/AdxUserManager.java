@@ -44,4 +44,10 @@ public interface AdxUserManager extends TimeListener {
 	public PublisherCatalog getPublisherCatalog();
 
 	public void messageReceived(Message message);
+
+	/**
+	 * Releases the manager's resources, e.g., worker threads, once the
+	 * simulation has stopped.
+	 */
+	public void shutdown();
 }
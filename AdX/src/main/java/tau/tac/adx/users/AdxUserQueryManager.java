@@ -24,6 +24,8 @@
  */
 package tau.tac.adx.users;
 
+import java.util.Random;
+
 import se.sics.tasim.aw.TimeListener;
 import tau.tac.adx.props.AdxQuery;
 
@@ -39,4 +41,13 @@ public interface AdxUserQueryManager extends TimeListener {
 	 * @return Generate {@link AdxQuery}.
 	 */
 	public AdxQuery generateQuery(AdxUser user);
+
+	/**
+	 * @param user
+	 *            An {@link AdxUser}.
+	 * @param random
+	 *            {@link Random} to draw the query with.
+	 * @return Generate {@link AdxQuery}.
+	 */
+	public AdxQuery generateQuery(AdxUser user, Random random);
 }
@@ -47,6 +47,7 @@ public class AdxUserQueryManagerBuilder implements
 		return new DefaultAdxUserQueryManager(repository.getPublisherCatalog(),
 				repository.getUserPopulation(),
 				repository.getDeviceDistributionMap(),
-				repository.getAdTypeDistributionMap(), random);
+				repository.getAdTypeDistributionMap(), random,
+				repository.getSamplerFactory());
 	}
 }
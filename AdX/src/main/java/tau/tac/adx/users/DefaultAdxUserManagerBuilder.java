@@ -40,6 +40,11 @@ public class DefaultAdxUserManagerBuilder implements
 	private static final String ADX_BASE = "adx_usermanager";
 	private static final String POPULATION_SIZE_KEY = "populationsize";
 	private static final int POPULATION_SIZE_DEFAULT = 10000;
+	private static final String SHARDS_KEY = "shards";
+	private static final int SHARDS_DEFAULT = 1;
+	private static final String SHARD_ROUND_SIZE_KEY = "shardroundsize";
+	private static final int SHARD_ROUND_SIZE_DEFAULT = 128;
+	private static final String SEED_KEY = "seed";
 	private static final String VIEW_MANAGER_KEY = "viewmanager";
 	private static final String QUERY_MANAGER_KEY = "querymanager";
 	private static final String ADX_QUERY_MANAGER_DEFAULT = AdxUserQueryManagerBuilder.class
@@ -58,9 +63,16 @@ public class DefaultAdxUserManagerBuilder implements
 
 			int populationSize = userConfigProxy.getPropertyAsInt(ADX_BASE
 					+ '.' + POPULATION_SIZE_KEY, POPULATION_SIZE_DEFAULT);
+			int shards = userConfigProxy.getPropertyAsInt(ADX_BASE + '.'
+					+ SHARDS_KEY, SHARDS_DEFAULT);
+			int shardRoundSize = userConfigProxy.getPropertyAsInt(ADX_BASE
+					+ '.' + SHARD_ROUND_SIZE_KEY, SHARD_ROUND_SIZE_DEFAULT);
+			long seed = userConfigProxy.getPropertyAsLong(ADX_BASE + '.'
+					+ SEED_KEY, random.nextLong());
 			return new DefaultAdxUserManager(repository.getPublisherCatalog(),
 					repository.getUserPopulation(), queryManager,
-					populationSize, repository.getEventBus());
+					populationSize, repository.getEventBus(), shards,
+					shardRoundSize, seed);
 		} catch (ClassNotFoundException e) {
 			throw new RuntimeException(e);
 		} catch (InstantiationException e) {
@@ -36,13 +36,17 @@ import tau.tac.adx.props.AdxQuery;
 import tau.tac.adx.props.PublisherCatalog;
 import tau.tac.adx.props.PublisherCatalogEntry;
 import tau.tac.adx.publishers.AdxPublisher;
+import tau.tac.adx.users.properties.Age;
+import tau.tac.adx.users.properties.Gender;
+import tau.tac.adx.users.properties.Income;
 import tau.tac.adx.util.EnumGenerator;
 
 import com.google.inject.Inject;
 
-import edu.umich.eecs.tac.user.User;
+import edu.umich.eecs.tac.util.sampling.MutableSampler;
 import edu.umich.eecs.tac.util.sampling.Sampler;
-import edu.umich.eecs.tac.util.sampling.WheelSampler;
+import edu.umich.eecs.tac.util.sampling.SamplerFactory;
+import edu.umich.eecs.tac.util.sampling.WheelSamplerFactory;
 
 /**
  * {@link AdxUserQueryManager} implementation.
@@ -53,10 +57,12 @@ import edu.umich.eecs.tac.util.sampling.WheelSampler;
 public class DefaultAdxUserQueryManager implements AdxUserQueryManager {
 
 	/**
-	 * {@link Map} between {@link User}s and an {@link AdxQuery} {@link Sampler}
-	 * .
+	 * {@link AdxQuery} {@link Sampler}s of every user attribute class, indexed
+	 * by {@link #classIndex(AdxUser)}. A user's query distribution only depends
+	 * on its {@link Age}, {@link Gender} and {@link Income}, so the samplers
+	 * scale with the number of user types rather than the population size.
 	 */
-	private final Map<AdxUser, Sampler<AdxQuery>> querySamplers;
+	private final Sampler<AdxQuery>[] querySamplers;
 
 	/**
 	 * {@link Device} distribution map. Each {@link Device} is associated with
@@ -83,10 +89,35 @@ public class DefaultAdxUserQueryManager implements AdxUserQueryManager {
 	 * @param random
 	 *            {@link Random}.
 	 */
-	@Inject
 	public DefaultAdxUserQueryManager(PublisherCatalog catalog,
 			List<AdxUser> users, Map<Device, Integer> deviceDistributionMap,
 			Map<AdType, Integer> adTypeDistributionMap, Random random) {
+		this(catalog, users, deviceDistributionMap, adTypeDistributionMap,
+				random, new WheelSamplerFactory());
+	}
+
+	/**
+	 * @param catalog
+	 *            {@link PublisherCatalog}.
+	 * @param users
+	 *            {@link List} of {@link AdxUser}s.
+	 * @param deviceDistributionMap
+	 *            {@link Device} distribution map. Each {@link Device} is
+	 *            associated with its relative popularity.
+	 * @param adTypeDistributionMap
+	 *            {@link AdType} distribution map. Each {@link AdType} is
+	 *            associated with its relative popularity.
+	 * @param random
+	 *            {@link Random}.
+	 * @param samplerFactory
+	 *            {@link SamplerFactory} creating the users' query
+	 *            {@link Sampler}s.
+	 */
+	@Inject
+	public DefaultAdxUserQueryManager(PublisherCatalog catalog,
+			List<AdxUser> users, Map<Device, Integer> deviceDistributionMap,
+			Map<AdType, Integer> adTypeDistributionMap, Random random,
+			SamplerFactory samplerFactory) {
 		if (catalog == null) {
 			throw new NullPointerException("Publisher catalog cannot be null");
 		}
@@ -109,9 +140,14 @@ public class DefaultAdxUserQueryManager implements AdxUserQueryManager {
 			throw new NullPointerException(
 					"Ad Type distribution map cannot be null");
 		}
+
+		if (samplerFactory == null) {
+			throw new NullPointerException("Sampler factory cannot be null");
+		}
 		this.deviceDeistributionMap = deviceDistributionMap;
 		this.adTypeDeistributionMap = adTypeDistributionMap;
-		querySamplers = buildQuerySamplers(catalog, users, random);
+		querySamplers = buildQuerySamplers(catalog, users, random,
+				samplerFactory);
 	}
 
 	/**
@@ -119,13 +155,26 @@ public class DefaultAdxUserQueryManager implements AdxUserQueryManager {
 	 */
 	@Override
 	public AdxQuery generateQuery(AdxUser user) {
-		Sampler<AdxQuery> sampler = querySamplers.get(user);
+		Sampler<AdxQuery> sampler = querySamplers[classIndex(user)];
 		if (sampler == null) {
 			return null;
 		}
 		return sampler.getSample();
 	}
 
+	/**
+	 * @see tau.tac.adx.users.AdxUserQueryManager#generateQuery(AdxUser,
+	 *      Random)
+	 */
+	@Override
+	public AdxQuery generateQuery(AdxUser user, Random random) {
+		Sampler<AdxQuery> sampler = querySamplers[classIndex(user)];
+		if (sampler == null) {
+			return null;
+		}
+		return sampler.getSample(random);
+	}
+
 	/**
 	 * @see se.sics.tasim.aw.TimeListener#nextTimeUnit(int)
 	 */
@@ -135,8 +184,23 @@ public class DefaultAdxUserQueryManager implements AdxUserQueryManager {
 	}
 
 	/**
-	 * Builds a {@link Map} between {@link User}s and an {@link AdxQuery}
-	 * {@link Sampler}.
+	 * @param user
+	 *            {@link AdxUser}.
+	 * @return Index of the user's attribute class in {@link #querySamplers}.
+	 */
+	private static int classIndex(AdxUser user) {
+		return (user.getGender().ordinal() * Income.values().length + user
+				.getIncome().ordinal())
+				* Age.values().length
+				+ user.getAge().ordinal();
+	}
+
+	/**
+	 * Builds an {@link AdxQuery} {@link Sampler} for every user attribute
+	 * class present in the population. The {@link Device} and {@link AdType}
+	 * are drawn once per (class, publisher) and the resulting queries are
+	 * interned, so classes sharing the same market segments share the same
+	 * {@link AdxQuery} instances.
 	 * 
 	 * @param catalog
 	 *            {@link PublisherCatalog}.
@@ -144,32 +208,48 @@ public class DefaultAdxUserQueryManager implements AdxUserQueryManager {
 	 *            {@link List} of {@link AdxUser}s.
 	 * @param random
 	 *            {@link Random}.
-	 * @return A {@link Map} between {@link User}s and an {@link AdxQuery}
-	 *         {@link Sampler}.
+	 * @param samplerFactory
+	 *            {@link SamplerFactory}.
+	 * @return {@link AdxQuery} {@link Sampler}s indexed by
+	 *         {@link #classIndex(AdxUser)}.
 	 */
-	private Map<AdxUser, Sampler<AdxQuery>> buildQuerySamplers(
-			PublisherCatalog catalog, List<AdxUser> users, Random random) {
+	private Sampler<AdxQuery>[] buildQuerySamplers(PublisherCatalog catalog,
+			List<AdxUser> users, Random random, SamplerFactory samplerFactory) {
 		EnumGenerator<Device> deviceGenerator = new EnumGenerator<Device>(
-				deviceDeistributionMap);
+				deviceDeistributionMap, random);
 		EnumGenerator<AdType> adTypeGenerator = new EnumGenerator<AdType>(
-				adTypeDeistributionMap);
-		Map<AdxUser, Sampler<AdxQuery>> samplingMap = new HashMap<AdxUser, Sampler<AdxQuery>>();
+				adTypeDeistributionMap, random);
+		@SuppressWarnings("unchecked")
+		Sampler<AdxQuery>[] samplers = new Sampler[Gender.values().length
+				* Income.values().length * Age.values().length];
+		Map<AdxQuery, AdxQuery> internedQueries = new HashMap<AdxQuery, AdxQuery>();
 
 		for (AdxUser user : users) {
-			WheelSampler<AdxQuery> sampler = new WheelSampler<AdxQuery>(random);
+			int classIndex = classIndex(user);
+			if (samplers[classIndex] != null) {
+				continue;
+			}
+			MutableSampler<AdxQuery> sampler = samplerFactory
+					.createSampler(random);
 			for (PublisherCatalogEntry publisherEntry : catalog) {
 				Device device = deviceGenerator.randomType();
 				AdType adType = adTypeGenerator.randomType();
 				AdxQuery query = new AdxQuery(
 						publisherEntry.getPublisherName(), user, device, adType);
+				AdxQuery interned = internedQueries.get(query);
+				if (interned == null) {
+					internedQueries.put(query, query);
+				} else {
+					query = interned;
+				}
 				AdxPublisher publisher = AdxManager.getInstance().getPublisher(publisherEntry
 						.getPublisherName());
 				double weight = publisher.userAffiliation(user);
 				sampler.addState(weight, query);
 			}
-			samplingMap.put(user, sampler);
+			samplers[classIndex] = sampler;
 		}
-		return samplingMap;
+		return samplers;
 
 	}
 
@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.logging.Logger;
 
 import tau.tac.adx.generators.GenericGenerator;
@@ -36,6 +37,17 @@ public class PopulationUserGenerator implements AdxUserGenerator {
 		userGenerator = new EnumGenerator<AdxUser>(weights);
 	}
 
+	/**
+	 * @param weights
+	 *            Weights of the user types.
+	 * @param random
+	 *            {@link Random} to draw the users with.
+	 */
+	public PopulationUserGenerator(Map<AdxUser, Integer> weights,
+			Random random) {
+		userGenerator = new EnumGenerator<AdxUser>(weights, random);
+	}
+
 	/**
 	 * @see GenericGenerator#generate(int)
 	 */
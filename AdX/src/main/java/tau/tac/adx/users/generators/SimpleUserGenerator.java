@@ -28,8 +28,22 @@ public class SimpleUserGenerator implements AdxUserGenerator {
 	/** User Continuation Probability. */
 	private double pContinue;
 
+	/** Draws the user attributes. */
+	private final Random random;
+
 	public SimpleUserGenerator(double pContinue) {
+		this(pContinue, new Random());
+	}
+
+	/**
+	 * @param pContinue
+	 *            User continuation probability.
+	 * @param random
+	 *            {@link Random} to draw the user attributes with.
+	 */
+	public SimpleUserGenerator(double pContinue, Random random) {
 		this.pContinue = pContinue;
+		this.random = random;
 	}
 
 	/**
@@ -81,7 +95,6 @@ public class SimpleUserGenerator implements AdxUserGenerator {
 	 * @return A random {@link Income}.
 	 */
 	private Income randomIncome() {
-		Random random = new Random();
 		return Income.values()[(random.nextInt(Income.values().length))];
 	}
 
@@ -89,7 +102,6 @@ public class SimpleUserGenerator implements AdxUserGenerator {
 	 * @return A random {@link Gender}.
 	 */
 	private Gender randomGender() {
-		Random random = new Random();
 		return Gender.values()[(random.nextInt(Gender.values().length))];
 	}
 
@@ -97,7 +109,6 @@ public class SimpleUserGenerator implements AdxUserGenerator {
 	 * @return A random {@link Age}.
 	 */
 	private Age randomAge() {
-		Random random = new Random();
 		return Age.values()[(random.nextInt(Age.values().length))];
 	}
 
@@ -23,6 +23,9 @@ import tau.tac.adx.sim.SimpleAdxAuctioneer;
 import com.google.inject.AbstractModule;
 import com.google.inject.Singleton;
 
+import edu.umich.eecs.tac.util.sampling.SamplerFactory;
+import edu.umich.eecs.tac.util.sampling.WheelSamplerFactory;
+
 /**
  * A simple {@link AbstractModule} implementation used for testing. All vlaues
  * are generated randomly.
@@ -32,11 +35,51 @@ import com.google.inject.Singleton;
  */
 public class AdxModule extends AbstractModule {
 
+	/**
+	 * Root of the simulation's {@link RandomStream}s, from which the bound
+	 * components split their own streams.
+	 */
+	private final RandomStream randomStream;
+
+	/**
+	 * {@link SamplerFactory} implementation bound.
+	 */
+	private final Class<? extends SamplerFactory> samplerFactory;
+
+	/**
+	 * Creates a module binding the {@link WheelSamplerFactory}.
+	 * 
+	 * @param randomStream
+	 *            Root of the simulation's {@link RandomStream}s.
+	 */
+	public AdxModule(RandomStream randomStream) {
+		this(randomStream, WheelSamplerFactory.class);
+	}
+
+	/**
+	 * @param randomStream
+	 *            Root of the simulation's {@link RandomStream}s.
+	 * @param samplerFactory
+	 *            {@link SamplerFactory} implementation to bind.
+	 */
+	public AdxModule(RandomStream randomStream,
+			Class<? extends SamplerFactory> samplerFactory) {
+		if (randomStream == null) {
+			throw new NullPointerException("randomStream cannot be null");
+		}
+		if (samplerFactory == null) {
+			throw new NullPointerException("samplerFactory cannot be null");
+		}
+		this.randomStream = randomStream;
+		this.samplerFactory = samplerFactory;
+	}
+
 	/**
 	 * @see com.google.inject.AbstractModule#configure()
 	 */
 	@Override
 	protected void configure() {
+		bind(RandomStream.class).toInstance(randomStream);
 		bind(AdxPublisherGenerator.class).to(SimplePublisherGenerator.class);
 		bind(AdTypeGenerator.class).to(SimpleAdTypeGenerator.class);
 		bind(DeviceGenerator.class).to(SimpleDeviceGenerator.class);
@@ -50,5 +93,7 @@ public class AdxModule extends AbstractModule {
 				Singleton.class);
 		bind(AuctionManager.class).to(SimpleAuctionManager.class).in(
 				Singleton.class);
+		bind(SamplerFactory.class).to(samplerFactory).in(
+				Singleton.class);
 	}
 }
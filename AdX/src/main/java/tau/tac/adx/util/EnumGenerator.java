@@ -25,14 +25,27 @@ public class EnumGenerator<T> {
 	/**
 	 * An instance of the {@link Random} class.
 	 */
-	private final Random random = new Random();
+	private final Random random;
 
 	/**
 	 * @param weights
 	 *            A distribution {@link Map} of values and their weight.
 	 */
 	public EnumGenerator(Map<T, Integer> weights) {
+		this(weights, new Random());
+	}
+
+	/**
+	 * @param weights
+	 *            A distribution {@link Map} of values and their weight. Its
+	 *            iteration order should be stable for the generated sequence to
+	 *            be reproducible.
+	 * @param random
+	 *            {@link Random} to draw the types with.
+	 */
+	public EnumGenerator(Map<T, Integer> weights, Random random) {
 		this.weights = weights;
+		this.random = random;
 		size = AdxUtils.sum(weights.values());
 	}
 
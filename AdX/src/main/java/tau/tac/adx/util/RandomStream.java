@@ -0,0 +1,161 @@
+package tau.tac.adx.util;
+
+import java.util.Random;
+
+/**
+ * A splittable {@link Random} following the SplitMix64 algorithm of Java 8's
+ * <code>java.util.SplittableRandom</code>, which is not available on the
+ * Java versions the simulation supports.
+ * <p>
+ * A simulation creates a root stream from its seed and hands each subsystem
+ * its own stream with {@link #split(String)}, which depends only on the root
+ * seed and the subsystem's name, so subsystems may be created in any order.
+ * Subsystems working in parallel (e.g., user activity shards) {@link #split()}
+ * one stream per worker. For a given seed every stream therefore produces the
+ * same sequence in every run.
+ * <p>
+ * Unlike {@link Random}, instances are not thread-safe: each stream must be
+ * used by one thread at a time, so draws never contend on a shared atomic.
+ */
+public class RandomStream extends Random {
+
+	private static final long serialVersionUID = -4573915331834717291L;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+	/**
+	 * Seed this stream was created with, from which named streams are split.
+	 */
+	private final long origin;
+
+	private final long gamma;
+
+	private long state;
+
+	/**
+	 * Creates a stream with a random seed.
+	 */
+	public RandomStream() {
+		this(new Random().nextLong());
+	}
+
+	/**
+	 * @param seed
+	 *            Seed of the stream.
+	 */
+	public RandomStream(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private RandomStream(long seed, long gamma) {
+		super(0L);
+		this.origin = seed;
+		this.gamma = gamma;
+		this.state = seed;
+	}
+
+	/**
+	 * @return The seed this stream was created with.
+	 */
+	public long getSeed() {
+		return origin;
+	}
+
+	/**
+	 * Creates a new stream from this stream's current state, advancing it.
+	 *
+	 * @return A new, statistically independent, stream.
+	 */
+	public RandomStream split() {
+		return new RandomStream(nextLong(), mixGamma(nextSeed()));
+	}
+
+	/**
+	 * Creates the named child stream of this stream. The child only depends
+	 * on this stream's seed and the name, and this stream is not advanced.
+	 *
+	 * @param name
+	 *            Name of the child stream, e.g., of a subsystem.
+	 * @return A new stream, the same for every call with the same name.
+	 */
+	public RandomStream split(String name) {
+		long hash = 0;
+		for (int i = 0; i < name.length(); i++) {
+			hash = 31 * hash + name.charAt(i);
+		}
+		long seed = mix64(origin ^ mix64(hash + GOLDEN_GAMMA));
+		return new RandomStream(mix64(seed), mixGamma(seed + GOLDEN_GAMMA));
+	}
+
+	/**
+	 * Derives the seed of a member of a series, e.g., of the games of a batch,
+	 * from the series' seed.
+	 *
+	 * @param seed
+	 *            Seed of the series.
+	 * @param index
+	 *            Index of the member.
+	 * @return The seed of the member.
+	 */
+	public static long seed(long seed, long index) {
+		return mix64(seed + index * GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Restarts the sequence of this stream from the given seed. Named streams
+	 * are still split from the seed the stream was created with.
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		super.setSeed(seed);
+		// gamma is odd once constructed, Random's constructor calls this before
+		if (gamma != 0) {
+			state = seed;
+		}
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	@Override
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	private long nextSeed() {
+		return state += gamma;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
@@ -0,0 +1,108 @@
+package com.botbox.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ThreadPool}.
+ */
+public class ThreadPoolTest {
+
+	private static final int TIMEOUT = 10;
+
+	private static void awaitFinished(ThreadPool pool, long jobs)
+			throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (pool.getCompletedJobs() + pool.getFailedJobs() < jobs
+				&& System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testInvokeLater() throws InterruptedException {
+		ThreadPool pool = new ThreadPool("test");
+		pool.setMaxThreads(4);
+		final CountDownLatch done = new CountDownLatch(100);
+		final AtomicInteger jobsWithStatus = new AtomicInteger();
+		for (int i = 0; i < 100; i++) {
+			pool.invokeLater(new Runnable() {
+				public void run() {
+					JobStatus status = ThreadPool.getJobStatus();
+					if (status != null
+							&& "job".equals(status.getDescription())) {
+						status.stillAlive();
+						jobsWithStatus.incrementAndGet();
+					}
+					done.countDown();
+				}
+			}, "job");
+		}
+		assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+		awaitFinished(pool, 100);
+
+		assertEquals(100, jobsWithStatus.get());
+		assertEquals(100, pool.getInvokedJobs());
+		assertEquals(100, pool.getCompletedJobs());
+		assertEquals(0, pool.getFailedJobs());
+		assertEquals(0, pool.getRejectedJobs());
+		assertTrue(pool.getThreads() <= 4);
+		assertNull(ThreadPool.getJobStatus());
+	}
+
+	@Test
+	public void testFailedJob() throws InterruptedException {
+		ThreadPool pool = new ThreadPool("test");
+		pool.setMaxThreads(1);
+		pool.invokeLater(new Runnable() {
+			public void run() {
+				throw new IllegalStateException("expected by test");
+			}
+		});
+		final CountDownLatch done = new CountDownLatch(1);
+		pool.execute(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+		awaitFinished(pool, 2);
+		assertEquals(1, pool.getCompletedJobs());
+		assertEquals(1, pool.getFailedJobs());
+	}
+
+	@Test
+	public void testBlockingJobs() throws InterruptedException {
+		ThreadPool pool = new ThreadPool("test");
+		pool.setMaxThreads(2);
+		// Each job blocks until all jobs are running at the same time
+		final CountDownLatch running = new CountDownLatch(6);
+		final CountDownLatch done = new CountDownLatch(6);
+		for (int i = 0; i < 6; i++) {
+			pool.invokeBlocking(new Runnable() {
+				public void run() {
+					running.countDown();
+					try {
+						if (running.await(TIMEOUT, TimeUnit.SECONDS)) {
+							done.countDown();
+						}
+					} catch (InterruptedException e) {
+						// Fails the test below
+					}
+				}
+			}, "blocking");
+		}
+		assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+		awaitFinished(pool, 6);
+		assertEquals(6, pool.getCompletedJobs());
+		assertNotNull(pool.getThreadStatus());
+	}
+}
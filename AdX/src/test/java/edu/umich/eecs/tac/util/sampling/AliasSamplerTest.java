@@ -0,0 +1,117 @@
+/*
+ * AliasSamplerTest.java
+ *
+ * COPYRIGHT  2008
+ * THE REGENTS OF THE UNIVERSITY OF MICHIGAN
+ * ALL RIGHTS RESERVED
+ *
+ * PERMISSION IS GRANTED TO USE, COPY, CREATE DERIVATIVE WORKS AND REDISTRIBUTE THIS
+ * SOFTWARE AND SUCH DERIVATIVE WORKS FOR NONCOMMERCIAL EDUCATION AND RESEARCH
+ * PURPOSES, SO LONG AS NO FEE IS CHARGED, AND SO LONG AS THE COPYRIGHT NOTICE
+ * ABOVE, THIS GRANT OF PERMISSION, AND THE DISCLAIMER BELOW APPEAR IN ALL COPIES
+ * MADE; AND SO LONG AS THE NAME OF THE UNIVERSITY OF MICHIGAN IS NOT USED IN ANY
+ * ADVERTISING OR PUBLICITY PERTAINING TO THE USE OR DISTRIBUTION OF THIS SOFTWARE
+ * WITHOUT SPECIFIC, WRITTEN PRIOR AUTHORIZATION.
+ *
+ * THIS SOFTWARE IS PROVIDED AS IS, WITHOUT REPRESENTATION FROM THE UNIVERSITY OF
+ * MICHIGAN AS TO ITS FITNESS FOR ANY PURPOSE, AND WITHOUT WARRANTY BY THE
+ * UNIVERSITY OF MICHIGAN OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT
+ * LIMITATION THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE. THE REGENTS OF THE UNIVERSITY OF MICHIGAN SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES, INCLUDING SPECIAL, INDIRECT, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, WITH
+ * RESPECT TO ANY CLAIM ARISING OUT OF OR IN CONNECTION WITH THE USE OF THE SOFTWARE,
+ * EVEN IF IT HAS BEEN OR IS HEREAFTER ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ */
+package edu.umich.eecs.tac.util.sampling;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+public class AliasSamplerTest {
+
+	@Test
+	public void testConstructors() {
+		AliasSampler sampler = new AliasSampler();
+		assertNotNull(sampler);
+
+		sampler = new AliasSampler(new Random());
+		assertNotNull(sampler);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeWeight() {
+		AliasSampler sampler = new AliasSampler();
+
+		sampler.addState(-1.0, new Object());
+	}
+
+	@Test
+	public void testSample() {
+		AliasSampler<Number> sampler = new AliasSampler<Number>(new Random(1));
+
+		// Test zero-slot sampler
+		assertNull(sampler.getSample());
+
+		// Test one-slot sampler
+		sampler.addState(1.0, 1);
+		assertEquals(1, sampler.getSample());
+
+		// Test zero-weight slots are never sampled
+		sampler.addState(0.0, 2);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(1, sampler.getSample());
+		}
+
+		// Test degenerate distribution
+		AliasSampler<Number> zero = new AliasSampler<Number>(new Random(1));
+		zero.addState(0.0, 1);
+		zero.addState(0.0, 2);
+		assertEquals(1, zero.getSample());
+	}
+
+	/**
+	 * Draws from an {@link AliasSampler} and a {@link WheelSampler} over the
+	 * same weights and checks with a two-sample chi-square test that the
+	 * resulting histograms come from the same distribution.
+	 */
+	@Test
+	public void testEquivalentToWheelSampler() {
+		Random weightRandom = new Random(7);
+		int states = 20;
+		AliasSampler<Integer> alias = new AliasSampler<Integer>(new Random(11));
+		WheelSampler<Integer> wheel = new WheelSampler<Integer>(new Random(13));
+		for (int i = 0; i < states; i++) {
+			double weight = i % 5 == 0 ? 0.0 : weightRandom.nextDouble() * 10;
+			alias.addState(weight, i);
+			wheel.addState(weight, i);
+		}
+
+		int draws = 200000;
+		long[] aliasCounts = new long[states];
+		long[] wheelCounts = new long[states];
+		for (int i = 0; i < draws; i++) {
+			aliasCounts[alias.getSample()]++;
+			wheelCounts[wheel.getSample()]++;
+		}
+
+		double chiSquare = 0.0;
+		int degreesOfFreedom = -1;
+		for (int i = 0; i < states; i++) {
+			long total = aliasCounts[i] + wheelCounts[i];
+			if (total == 0) {
+				continue;
+			}
+			double difference = aliasCounts[i] - wheelCounts[i];
+			chiSquare += difference * difference / total;
+			degreesOfFreedom++;
+		}
+
+		assertEquals(0, aliasCounts[0] + aliasCounts[5] + aliasCounts[10]
+				+ aliasCounts[15]);
+		// 15 degrees of freedom: the 0.999 quantile is 37.70
+		assertEquals(15, degreesOfFreedom);
+		assertTrue("chi-square " + chiSquare, chiSquare < 37.70);
+	}
+}
@@ -0,0 +1,75 @@
+package edu.umich.eecs.tac.util.sampling;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH comparison of {@link AliasSampler} against {@link WheelSampler}. The
+ * state counts cover a user's publisher sampler (6 to 18 publishers) and a
+ * large bid table. Run with the test classpath, e.g.
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=edu.umich.eecs.tac.util.sampling.SamplerBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplerBenchmark {
+
+	@Param({ "6", "18", "128" })
+	public int states;
+
+	private WheelSampler<Integer> wheel;
+
+	private AliasSampler<Integer> alias;
+
+	private Random random;
+
+	@Setup
+	public void setup() {
+		Random weights = new Random(0);
+		wheel = new WheelSampler<Integer>(new Random(1));
+		alias = new AliasSampler<Integer>(new Random(1));
+		for (int i = 0; i < states; i++) {
+			double weight = weights.nextDouble();
+			wheel.addState(weight, i);
+			alias.addState(weight, i);
+		}
+		random = new Random(2);
+	}
+
+	@Benchmark
+	public Integer wheelSampler() {
+		return wheel.getSample(random);
+	}
+
+	@Benchmark
+	public Integer aliasSampler() {
+		return alias.getSample(random);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(
+				SamplerBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,304 @@
+package se.sics.isl.tact;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TACTConnection} served by a {@link TACTReactor}.
+ */
+public class TACTConnectionTest {
+
+	private static final int TIMEOUT = 10;
+
+	/** Echoes or collects the messages read and signals when closed */
+	private static class TestConnection extends TACTConnection {
+
+		final BlockingQueue<byte[]> messages = new LinkedBlockingQueue<byte[]>();
+
+		final CountDownLatch closed = new CountDownLatch(1);
+
+		/** Counted down when a message handler has been entered */
+		final CountDownLatch entered = new CountDownLatch(1);
+
+		private final boolean isEcho;
+
+		/** Released before any message is handled, if not null */
+		private final CountDownLatch release;
+
+		TestConnection(SocketChannel channel, TACTReactor reactor,
+				boolean isEcho, CountDownLatch release) {
+			super("server", channel, reactor);
+			this.isEcho = isEcho;
+			this.release = release;
+		}
+
+		protected void connectionOpened() {
+		}
+
+		protected void connectionClosed() {
+			closed.countDown();
+		}
+
+		protected void dataRead(byte[] data, int start, int len) {
+			entered.countDown();
+			if (release != null) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			byte[] message = new byte[len];
+			System.arraycopy(data, start, message, 0, len);
+			if (isEcho) {
+				// Echo the message in two parts
+				byte[] first = new byte[len / 2];
+				byte[] second = new byte[len - first.length];
+				System.arraycopy(message, 0, first, 0, first.length);
+				System.arraycopy(message, first.length, second, 0,
+						second.length);
+				write(new byte[][] { first, second });
+			} else {
+				messages.add(message);
+			}
+		}
+	}
+
+	private ServerSocketChannel serverChannel;
+
+	private TACTReactor reactor;
+
+	private Socket client;
+
+	private DataInputStream input;
+
+	private DataOutputStream output;
+
+	@Before
+	public void setUp() throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress("localhost", 0));
+		reactor = new TACTReactor("test", 2);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (client != null) {
+			client.close();
+		}
+		reactor.shutdown();
+		serverChannel.close();
+	}
+
+	private TestConnection accept(boolean isEcho) throws IOException {
+		return accept(isEcho, null);
+	}
+
+	private TestConnection accept(boolean isEcho, CountDownLatch release)
+			throws IOException {
+		TestConnection server = new TestConnection(serverChannel.accept(),
+				reactor, isEcho, release);
+		server.start();
+		return server;
+	}
+
+	/** Connects as an agent does, see tau.tac.adx.agentware */
+	private void connect() throws IOException {
+		client = new Socket("localhost", serverChannel.socket()
+				.getLocalPort());
+		input = new DataInputStream(client.getInputStream());
+		output = new DataOutputStream(new BufferedOutputStream(client
+				.getOutputStream()));
+		output.write(new byte[] { 'T', 'A', 'C', 'T', 0, 0, 0, 0 });
+	}
+
+	private void send(byte[] message) throws IOException {
+		output.writeInt(message.length);
+		output.write(message);
+	}
+
+	private byte[] receive() throws IOException {
+		byte[] message = new byte[input.readInt()];
+		input.readFully(message);
+		return message;
+	}
+
+	private static byte[][] createMessages() {
+		Random random = new Random(0);
+		// Both smaller and larger than the read buffer
+		int[] sizes = { 1, 10, 100, 16 * 1024, 100 * 1024, 5, 300 * 1024, 7 };
+		byte[][] messages = new byte[sizes.length][];
+		for (int i = 0; i < sizes.length; i++) {
+			messages[i] = new byte[sizes[i]];
+			random.nextBytes(messages[i]);
+		}
+		return messages;
+	}
+
+	@Test
+	public void testEcho() throws Exception {
+		connect();
+		TestConnection server = accept(true);
+		assertEquals(client.getLocalPort(), server.getRemotePort());
+
+		byte[][] messages = createMessages();
+		// Sent together to be read several messages at a time
+		for (byte[] message : messages) {
+			send(message);
+		}
+		output.flush();
+		for (byte[] message : messages) {
+			assertArrayEquals(message, receive());
+		}
+
+		client.close();
+		assertTrue(server.closed.await(TIMEOUT, TimeUnit.SECONDS));
+		assertTrue(server.isClosed());
+	}
+
+	@Test
+	public void testCloseAfterWrite() throws Exception {
+		connect();
+		TestConnection server = accept(false);
+		send(new byte[] { 1, 2, 3 });
+		output.flush();
+		assertArrayEquals(new byte[] { 1, 2, 3 }, server.messages.poll(
+				TIMEOUT, TimeUnit.SECONDS));
+
+		byte[][] messages = createMessages();
+		for (int i = 0; i < 3; i++) {
+			for (byte[] message : messages) {
+				server.write(message);
+			}
+		}
+		// The queued messages are written before the connection is closed
+		server.close();
+		for (int i = 0; i < 3; i++) {
+			for (byte[] message : messages) {
+				assertArrayEquals(message, receive());
+			}
+		}
+		assertEquals(-1, input.read());
+		assertTrue(server.closed.await(TIMEOUT, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testBlockedHandlerDoesNotDelayOtherConnections()
+			throws Exception {
+		// Both connections are served by the same selector thread
+		reactor.shutdown();
+		reactor = new TACTReactor("test", 1);
+
+		CountDownLatch release = new CountDownLatch(1);
+		connect();
+		TestConnection blocked = accept(false, release);
+		Socket other = new Socket("localhost", serverChannel.socket()
+				.getLocalPort());
+		try {
+			DataOutputStream otherOutput = new DataOutputStream(other
+					.getOutputStream());
+			otherOutput.write(new byte[] { 'T', 'A', 'C', 'T', 0, 0, 0, 0 });
+			TestConnection server = accept(false);
+
+			send(new byte[] { 1 });
+			output.flush();
+			assertTrue(blocked.entered.await(TIMEOUT, TimeUnit.SECONDS));
+
+			otherOutput.writeInt(1);
+			otherOutput.write(2);
+			otherOutput.flush();
+			assertArrayEquals(new byte[] { 2 }, server.messages.poll(TIMEOUT,
+					TimeUnit.SECONDS));
+			assertTrue(blocked.messages.isEmpty());
+
+			release.countDown();
+			assertArrayEquals(new byte[] { 1 }, blocked.messages.poll(
+					TIMEOUT, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			other.close();
+		}
+	}
+
+	@Test
+	public void testReadingSuspendedWhileHandlerCatchesUp() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		connect();
+		TestConnection server = accept(false, release);
+		server.setMaxBuffer(100);
+
+		byte[][] messages = new byte[20][60];
+		for (int i = 0; i < messages.length; i++) {
+			messages[i][0] = (byte) i;
+			send(messages[i]);
+		}
+		output.flush();
+		assertTrue(server.entered.await(TIMEOUT, TimeUnit.SECONDS));
+		release.countDown();
+		for (byte[] message : messages) {
+			assertArrayEquals(message, server.messages.poll(TIMEOUT,
+					TimeUnit.SECONDS));
+		}
+		assertFalse(server.isClosed());
+	}
+
+	@Test
+	public void testCloseWhileReadingSuspended() throws Exception {
+		// Both connections are served by the same selector thread
+		reactor.shutdown();
+		reactor = new TACTReactor("test", 1);
+
+		CountDownLatch release = new CountDownLatch(1);
+		connect();
+		TestConnection suspended = accept(false, release);
+		suspended.setMaxBuffer(100);
+		Socket other = new Socket("localhost", serverChannel.socket()
+				.getLocalPort());
+		try {
+			DataOutputStream otherOutput = new DataOutputStream(other
+					.getOutputStream());
+			otherOutput.write(new byte[] { 'T', 'A', 'C', 'T', 0, 0, 0, 0 });
+			TestConnection server = accept(false);
+
+			for (int i = 0; i < 20; i++) {
+				send(new byte[60]);
+			}
+			output.flush();
+			assertTrue(suspended.entered.await(TIMEOUT, TimeUnit.SECONDS));
+			// Closed while reading is suspended, then resumed by the handler
+			suspended.closeImmediately();
+			assertTrue(suspended.closed.await(TIMEOUT, TimeUnit.SECONDS));
+			release.countDown();
+
+			otherOutput.writeInt(1);
+			otherOutput.write(2);
+			otherOutput.flush();
+			assertArrayEquals(new byte[] { 2 }, server.messages.poll(TIMEOUT,
+					TimeUnit.SECONDS));
+			assertFalse(server.isClosed());
+		} finally {
+			release.countDown();
+			other.close();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package se.sics.isl.transport;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.devices.Device;
+import tau.tac.adx.props.AdxInfoContextFactory;
+import tau.tac.adx.report.adn.AdNetworkKey;
+import tau.tac.adx.report.adn.AdNetworkReport;
+import tau.tac.adx.report.adn.AdNetworkReportEntry;
+import tau.tac.adx.users.properties.Age;
+import tau.tac.adx.users.properties.Gender;
+import tau.tac.adx.users.properties.Income;
+
+/**
+ * JMH benchmark of {@link BinaryTransportReader} decoding a daily
+ * {@link AdNetworkReport}, encoded once by {@link BinaryTransportWriter} as
+ * it is sent to an ad network. Run with the test classpath, e.g.
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=se.sics.isl.transport.BinaryTransportReaderBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryTransportReaderBenchmark {
+
+	private static final String[] PUBLISHERS = { "yahoo", "cnn", "nyt",
+			"hfn", "msn", "fox", "amazon", "ebay", "wallmart", "target" };
+
+	private byte[] payload;
+
+	private ByteBuffer directPayload;
+
+	private BinaryTransportReader reader;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(0);
+		AdNetworkReport report = new AdNetworkReport();
+		for (String publisher : PUBLISHERS) {
+			for (Device device : Device.values()) {
+				for (AdType adType : AdType.values()) {
+					for (Age age : Age.values()) {
+						AdNetworkKey key = new AdNetworkKey();
+						key.setPublisher(publisher);
+						key.setDevice(device);
+						key.setAdType(adType);
+						key.setAge(age);
+						key.setGender(Gender.values()[random.nextInt(Gender
+								.values().length)]);
+						key.setIncome(Income.values()[random.nextInt(Income
+								.values().length)]);
+						key.setCampaignId(random.nextInt(10));
+						AdNetworkReportEntry entry = report
+								.addReportEntry(key);
+						entry.setBidCount(random.nextInt(1000));
+						entry.setWinCount(random.nextInt(100));
+						entry.setCost(random.nextDouble());
+					}
+				}
+			}
+		}
+		BinaryTransportWriter writer = new BinaryTransportWriter();
+		writer.write(report);
+		writer.finish();
+		payload = writer.getBytes();
+		directPayload = ByteBuffer.allocateDirect(payload.length);
+		directPayload.put(payload);
+		directPayload.flip();
+
+		reader = new BinaryTransportReader();
+		reader.setContext(new AdxInfoContextFactory().createContext());
+	}
+
+	@Benchmark
+	public Transportable decodeHeap() throws ParseException {
+		reader.setMessage(payload);
+		reader.nextNode(true);
+		return reader.readTransportable();
+	}
+
+	@Benchmark
+	public Transportable decodeDirect() throws ParseException {
+		reader.setMessage(directPayload);
+		reader.nextNode(true);
+		return reader.readTransportable();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(
+				BinaryTransportReaderBenchmark.class.getSimpleName()).build())
+				.run();
+	}
+}
@@ -0,0 +1,114 @@
+package se.sics.isl.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.ParseException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BinaryTransportReader}.
+ */
+public class BinaryTransportReaderTest {
+
+	private byte[] message;
+
+	private BinaryTransportReader reader;
+
+	@Before
+	public void setUp() {
+		BinaryTransportWriter writer = new BinaryTransportWriter();
+		for (int i = 0; i < 2; i++) {
+			writer.node("entry").attr("publisher", "yahoo")
+					.attr("count", 1000 + i).attr("time", 1L << 40)
+					.attr("ratio", 0.25f).attr("cost", 0.1 + i)
+					.attr("ids", new int[] { 1, 2, 3 }).endNode("entry");
+		}
+		writer.finish();
+		message = writer.getBytes();
+		reader = new BinaryTransportReader();
+	}
+
+	private void assertMessage() throws ParseException {
+		for (int i = 0; i < 2; i++) {
+			assertTrue(reader.nextNode("entry", false));
+			assertEquals("yahoo", reader.getAttribute("publisher"));
+			assertEquals(1000 + i, reader.getAttributeAsInt("count"));
+			assertEquals(1L << 40, reader.getAttributeAsLong("time"));
+			assertEquals(0.25f, reader.getAttributeAsFloat("ratio"), 0f);
+			assertEquals(0.1 + i, reader.getAttributeAsDouble("cost"), 0.0);
+			assertArrayEquals(new int[] { 1, 2, 3 },
+					reader.getAttributeAsIntArray("ids"));
+		}
+		assertFalse(reader.nextNode(false));
+	}
+
+	@Test
+	public void testHeapBuffer() throws ParseException {
+		reader.setMessage(message);
+		assertMessage();
+
+		// A buffer with the message in its middle
+		byte[] data = new byte[message.length + 20];
+		System.arraycopy(message, 0, data, 10, message.length);
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.position(10);
+		buffer.limit(10 + message.length);
+		reader.setMessage(buffer);
+		assertMessage();
+	}
+
+	@Test
+	public void testDirectBuffer() throws ParseException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(message.length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(message);
+		buffer.flip();
+		reader.setMessage(buffer);
+		assertMessage();
+		assertEquals(0, buffer.position());
+		assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+	}
+
+	@Test
+	public void testNumericConversions() throws ParseException {
+		reader.setMessage(message);
+		assertTrue(reader.nextNode("entry", false));
+		assertEquals(1000L, reader.getAttributeAsLong("count"));
+		assertEquals(1000.0, reader.getAttributeAsDouble("count"), 0.0);
+		assertEquals(0.25, reader.getAttributeAsDouble("ratio"), 0.0);
+		assertEquals(0.1f, reader.getAttributeAsFloat("cost"), 0f);
+		// Same as parsing the string value, which is out of range
+		assertEquals(-1, reader.getAttributeAsInt("time", -1));
+		assertEquals(-1, reader.getAttributeAsInt("publisher", -1));
+		assertEquals(-1, reader.getAttributeAsInt("missing", -1));
+		try {
+			reader.getAttributeAsInt("missing");
+			fail("missing attribute");
+		} catch (ParseException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testInternedStrings() throws ParseException {
+		reader.setMessage(message);
+		assertTrue(reader.nextNode("entry", false));
+		String publisher = reader.getAttribute("publisher");
+		assertTrue(reader.nextNode("entry", false));
+		assertSame(publisher, reader.getAttribute("publisher"));
+
+		// Also across messages
+		reader.setMessage(message.clone());
+		assertTrue(reader.nextNode("entry", false));
+		assertSame(publisher, reader.getAttribute("publisher"));
+	}
+}
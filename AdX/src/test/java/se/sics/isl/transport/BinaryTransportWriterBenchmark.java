@@ -0,0 +1,120 @@
+package se.sics.isl.transport;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import se.sics.tasim.aw.Message;
+import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.props.PublisherCatalogEntry;
+import tau.tac.adx.report.publisher.AdxPublisherReport;
+import tau.tac.adx.report.publisher.AdxPublisherReportEntry;
+
+/**
+ * JMH benchmark of sending an {@link AdxPublisherReport} to all ad networks,
+ * as done by the server at each day boundary, either encoding it for each
+ * connection or once for all connections. Run with the test classpath, e.g.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=se.sics.isl.transport.BinaryTransportWriterBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryTransportWriterBenchmark {
+
+	private static final int AGENTS = 8;
+
+	private static final int PUBLISHERS = 60;
+
+	private AdxPublisherReport report;
+
+	private BinaryTransportWriter[] writers;
+
+	private BinaryTransportWriter[] sharedWriters;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(0);
+		report = new AdxPublisherReport();
+		for (int i = 0; i < PUBLISHERS; i++) {
+			PublisherCatalogEntry publisher = new PublisherCatalogEntry(
+					"publisher" + i);
+			AdxPublisherReportEntry entry = new AdxPublisherReportEntry(
+					publisher);
+			entry.setPopularity(random.nextInt(10000));
+			Map<AdType, Integer> orientation = new HashMap<AdType, Integer>();
+			orientation.put(AdType.text, random.nextInt(5000));
+			orientation.put(AdType.video, random.nextInt(5000));
+			entry.setAdTypeOrientation(orientation);
+			entry.setReservePriceBaseline(random.nextDouble());
+			report.addPublisherReportEntry(publisher, entry);
+		}
+
+		AliasTable aliasTable = new AliasTable();
+		writers = new BinaryTransportWriter[AGENTS];
+		sharedWriters = new BinaryTransportWriter[AGENTS];
+		for (int i = 0; i < AGENTS; i++) {
+			writers[i] = new BinaryTransportWriter();
+			sharedWriters[i] = new BinaryTransportWriter(aliasTable);
+			writers[i].setSupported(BinaryTransportWriter.SUPPORT_TABLES, true);
+			sharedWriters[i].setSupported(
+					BinaryTransportWriter.SUPPORT_TABLES, true);
+		}
+	}
+
+	private static byte[][] getBytes(BinaryTransportWriter writer,
+			Message message) {
+		writer.node("message");
+		message.write(writer);
+		writer.endNode("message");
+		writer.finish();
+		byte[][] data = writer.getByteParts();
+		writer.clear();
+		return data;
+	}
+
+	@Benchmark
+	public void broadcastPerConnection(Blackhole blackhole) {
+		for (int i = 0; i < AGENTS; i++) {
+			blackhole.consume(getBytes(writers[i], new Message("lim",
+					"agent" + i, report)));
+		}
+	}
+
+	@Benchmark
+	public void broadcastShared(Blackhole blackhole) {
+		SharedTransportable shared = new SharedTransportable(report);
+		for (int i = 0; i < AGENTS; i++) {
+			blackhole.consume(getBytes(sharedWriters[i], new Message("lim",
+					"agent" + i, shared)));
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(
+				BinaryTransportWriterBenchmark.class.getSimpleName()).build())
+				.run();
+	}
+}
@@ -0,0 +1,157 @@
+package se.sics.isl.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BinaryTransportWriter}.
+ */
+public class BinaryTransportWriterTest {
+
+	/** Content with many similar rows, written as a table if supported */
+	private static class Rows implements Transportable {
+		private final int count;
+
+		public Rows(int count) {
+			this.count = count;
+		}
+
+		public String getTransportName() {
+			return "rows";
+		}
+
+		public void read(TransportReader reader) throws ParseException {
+			throw new UnsupportedOperationException();
+		}
+
+		public void write(TransportWriter writer) {
+			writer.attr("count", count);
+			for (int i = 0; i < count; i++) {
+				writer.node("row").attr("index", i)
+						.attr("name", "publisher" + (i % 10))
+						.attr("cost", i / 4.0).endNode("row");
+			}
+		}
+	}
+
+	private static void assertRows(BinaryTransportReader reader, int count)
+			throws ParseException {
+		assertTrue(reader.nextNode("rows", false));
+		assertEquals(count, reader.getAttributeAsInt("count"));
+		reader.enterNode();
+		for (int i = 0; i < count; i++) {
+			assertTrue(reader.nextNode("row", false));
+			assertEquals(i, reader.getAttributeAsInt("index"));
+			assertEquals("publisher" + (i % 10), reader.getAttribute("name"));
+			assertEquals(i / 4.0, reader.getAttributeAsDouble("cost"), 0.0);
+		}
+		assertFalse(reader.nextNode(false));
+		reader.exitNode();
+	}
+
+	private static byte[] concat(byte[][] parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.write(part, 0, part.length);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testLargeMessage() throws ParseException, IOException {
+		BinaryTransportWriter writer = new BinaryTransportWriter();
+		writer.write(new Rows(5000));
+		writer.finish();
+		byte[] bytes = writer.getBytes();
+		assertEquals(writer.size(), bytes.length);
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		writer.write(stream);
+		assertArrayEquals(bytes, stream.toByteArray());
+		ByteBuffer buffer = ByteBuffer.allocate(writer.size());
+		writer.write(buffer);
+		assertArrayEquals(bytes, buffer.array());
+		assertArrayEquals(bytes, concat(writer.getByteParts()));
+
+		BinaryTransportReader reader = new BinaryTransportReader();
+		reader.setMessage(bytes);
+		assertRows(reader, 5000);
+
+		// The writer can be reused after being cleared
+		writer.clear();
+		writer.write(new Rows(3));
+		writer.finish();
+		reader.setMessage(writer.getBytes());
+		assertRows(reader, 3);
+	}
+
+	@Test
+	public void testSharedContent() throws ParseException {
+		AliasTable aliasTable = new AliasTable();
+		SharedTransportable shared = new SharedTransportable(new Rows(100));
+		for (boolean isTablesSupported : new boolean[] { false, true }) {
+			BinaryTransportWriter[] writers = new BinaryTransportWriter[2];
+			BinaryTransportReader[] readers = new BinaryTransportReader[2];
+			byte[] sharedPart = null;
+			for (int i = 0; i < writers.length; i++) {
+				BinaryTransportWriter writer = writers[i] = new BinaryTransportWriter(
+						aliasTable);
+				writer.setSupported(BinaryTransportWriter.SUPPORT_TABLES,
+						isTablesSupported);
+				readers[i] = new BinaryTransportReader();
+
+				// Different aliases are already known by each connection
+				writer.node("hello" + i).attr("count", i).endNode("hello" + i);
+				writer.finish();
+				readers[i].setMessage(writer.getBytes());
+				assertTrue(readers[i].nextNode("hello" + i, false));
+				writer.clear();
+
+				writer.node("message").attr("receiver", "agent" + i);
+				writer.write(shared);
+				writer.endNode("message");
+				writer.finish();
+				byte[][] parts = writer.getByteParts();
+				writer.clear();
+				assertEquals(3, parts.length);
+				if (sharedPart == null) {
+					sharedPart = parts[1];
+				} else {
+					// Encoded once and not copied
+					assertSame(sharedPart, parts[1]);
+				}
+
+				BinaryTransportReader reader = readers[i];
+				reader.setMessage(concat(parts));
+				assertTrue(reader.nextNode("message", false));
+				assertEquals("agent" + i, reader.getAttribute("receiver"));
+				reader.enterNode();
+				assertRows(reader, 100);
+				reader.exitNode();
+				assertFalse(reader.nextNode(false));
+			}
+		}
+	}
+
+	@Test
+	public void testSharedContentWithoutAliasTable() throws ParseException {
+		BinaryTransportWriter writer = new BinaryTransportWriter();
+		writer.write(new SharedTransportable(new Rows(10)));
+		writer.finish();
+		assertEquals(1, writer.getByteParts().length);
+
+		BinaryTransportReader reader = new BinaryTransportReader();
+		reader.setMessage(writer.getBytes());
+		assertRows(reader, 10);
+	}
+}
@@ -0,0 +1,122 @@
+package se.sics.isl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import se.sics.isl.util.MemoryTelemetry.CollectionPolicy;
+
+/**
+ * Tests for {@link MemoryTelemetry}.
+ */
+public class MemoryTelemetryTest {
+
+	private static final String[] PHASES = { "first", "second" };
+
+	/** Keeps the allocations from being optimized away */
+	private byte[][] allocated;
+
+	@Test
+	public void testDayStatistics() {
+		MemoryTelemetry telemetry = new MemoryTelemetry("test", PHASES,
+				CollectionPolicy.NONE, 0.9);
+		assertEquals(-1, telemetry.getLastDay());
+
+		telemetry.startDay(3);
+		telemetry.startPhase(1);
+		allocated = new byte[16][];
+		for (int i = 0; i < allocated.length; i++) {
+			allocated[i] = new byte[64 * 1024];
+		}
+		telemetry.endPhase(1);
+		telemetry.startDay(4);
+		assertEquals(3, telemetry.getLastDay());
+
+		if (telemetry.getDayAllocatedBytes() >= 0) {
+			// Allocation recording is supported by the JVM
+			assertTrue(telemetry.getPhaseAllocatedBytes(1) >= 16 * 64 * 1024);
+			assertTrue(telemetry.getDayAllocatedBytes() >= telemetry
+					.getPhaseAllocatedBytes(1));
+			assertEquals(0, telemetry.getPhaseAllocatedBytes(0));
+		}
+		assertTrue(telemetry.getHeapUsed() > 0);
+
+		telemetry.endDay();
+		assertEquals(4, telemetry.getLastDay());
+		assertTrue(MemoryTelemetry.getMemoryStatus().contains("test day 4"));
+	}
+
+	@Test
+	public void testWorkerThreads() throws InterruptedException {
+		MemoryTelemetry telemetry = new MemoryTelemetry("workers", PHASES,
+				CollectionPolicy.NONE, 0.9);
+		final CountDownLatch done = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread worker = new Thread() {
+			@Override
+			public void run() {
+				allocated = new byte[16][];
+				for (int i = 0; i < allocated.length; i++) {
+					allocated[i] = new byte[64 * 1024];
+				}
+				done.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					// Terminate
+				}
+			}
+		};
+		telemetry.addThread(worker);
+		telemetry.startDay(0);
+		telemetry.startPhase(0);
+		worker.start();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		telemetry.endPhase(0);
+		release.countDown();
+		worker.join();
+		telemetry.startDay(1);
+
+		if (telemetry.getDayAllocatedBytes() >= 0) {
+			// Allocation recording is supported by the JVM
+			assertTrue(telemetry.getPhaseAllocatedBytes(0) >= 16 * 64 * 1024);
+			assertTrue(telemetry.getDayAllocatedBytes() >= telemetry
+					.getPhaseAllocatedBytes(0));
+
+			// The allocations of the terminated worker are kept
+			telemetry.endDay();
+			assertTrue(telemetry.getDayAllocatedBytes() >= 0);
+			assertTrue(telemetry.getDayAllocatedBytes() < 16 * 64 * 1024);
+		}
+	}
+
+	@Test
+	public void testCollectionPolicy() {
+		assertEquals(CollectionPolicy.HEAP, CollectionPolicy.parse(" Heap"));
+
+		MemoryTelemetry none = new MemoryTelemetry("none", PHASES,
+				CollectionPolicy.NONE, 0.9);
+		assertFalse(none.collectIfNeeded());
+		assertEquals(0, none.getRequestedCollections());
+
+		MemoryTelemetry daily = new MemoryTelemetry("daily", PHASES,
+				CollectionPolicy.DAILY, 0.9);
+		assertTrue(daily.collectIfNeeded());
+		assertEquals(1, daily.getRequestedCollections());
+
+		// Far below any threshold
+		MemoryTelemetry heap = new MemoryTelemetry("heap", PHASES,
+				CollectionPolicy.HEAP, 1.0);
+		assertFalse(heap.collectIfNeeded());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegalThreshold() {
+		new MemoryTelemetry("test", PHASES, CollectionPolicy.HEAP, 0);
+	}
+}
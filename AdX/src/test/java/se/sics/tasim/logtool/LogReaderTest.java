@@ -0,0 +1,161 @@
+package se.sics.tasim.logtool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import se.sics.isl.transport.TransportReader;
+import se.sics.tasim.is.EventWriter;
+import se.sics.tasim.sim.LogWriter;
+
+/**
+ * Reads logs written by {@link LogWriter} in both log formats.
+ */
+public class LogReaderTest {
+
+	private static final int DAYS = 5;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testOriginalFormat() throws IOException, ParseException {
+		File file = writeLog(false);
+		LogReader reader = new LogReader(new FileInputStream(file));
+		assertFalse(reader.isIndexed());
+		assertEquals(7, reader.getSimulationID());
+		assertEquals(Arrays.asList(expectedNodes(0)), readNodes(reader));
+		assertTrue(reader.isComplete());
+
+		reader = new LogReader(file);
+		assertFalse(reader.isSeekable());
+		assertEquals(Arrays.asList(expectedNodes(0)), readNodes(reader));
+	}
+
+	@Test
+	public void testCloseReleasesMappedFile() throws IOException,
+			ParseException {
+		LogReader reader = new LogReader(writeLog(false));
+		assertTrue(reader.hasMoreChunks());
+		TransportReader chunk = reader.nextChunk();
+		reader.close();
+		// The chunk no longer refers to the mapped file
+		assertFalse(chunk.nextNode(false));
+		assertFalse(reader.hasMoreChunks());
+		reader.close();
+	}
+
+	@Test
+	public void testIndexedFormatAsStream() throws IOException,
+			ParseException {
+		File file = writeLog(true);
+		LogReader reader = new LogReader(new FileInputStream(file));
+		assertTrue(reader.isIndexed());
+		assertFalse(reader.isSeekable());
+		assertEquals(7, reader.getSimulationID());
+		assertEquals(2, reader.getParticipants().length);
+		assertEquals(Arrays.asList(expectedNodes(0)), readNodes(reader));
+		assertTrue(reader.isComplete());
+	}
+
+	@Test
+	public void testSeekToTimeUnit() throws IOException, ParseException {
+		File file = writeLog(true);
+		for (int day = 0; day < DAYS; day++) {
+			LogReader reader = new LogReader(file);
+			assertTrue(reader.isSeekable());
+			assertArrayEquals(new int[] { 0, 1, 2, 3, 4 },
+					reader.getTimeUnits());
+			reader.seekToTimeUnit(day);
+			// Aliases defined in earlier days must still be resolved
+			assertEquals(Arrays.asList(expectedNodes(day)), readNodes(reader));
+			assertTrue(reader.isComplete());
+		}
+	}
+
+	@Test
+	public void testSeekTwice() throws IOException, ParseException {
+		LogReader reader = new LogReader(writeLog(true));
+		reader.seekToTimeUnit(3);
+		assertEquals(Arrays.asList("nextTimeUnit:3", "intUpdated:3"),
+				readNodes(reader.nextChunk(), new ArrayList<String>()));
+		reader.seekToTimeUnit(1);
+		assertEquals(Arrays.asList(expectedNodes(1)), readNodes(reader));
+	}
+
+	private File writeLog(boolean isIndexed) throws IOException {
+		File file = folder.newFile();
+		LogWriter writer = new LogWriter(mock(EventWriter.class),
+				new FileOutputStream(file), isIndexed);
+		synchronized (writer) {
+			writer.node("simulation").attr("simID", 7).attr("id", 70).attr(
+					"type", "test").attr("startTime", 0L).attr("length", 60);
+			writer.node("participant").attr("index", 1).attr("role", 1).attr(
+					"address", "adnet1").endNode("participant");
+			writer.endNode("simulation");
+			writer.commit();
+		}
+		for (int day = 0; day < DAYS; day++) {
+			writer.nextTimeUnit(day, day * 1000L);
+			writer.dataUpdated(1, 0, day);
+			writer.commit();
+			synchronized (writer) {
+				// A node name first used on day 2
+				writer.node(day >= 2 ? "late" : "early").attr("day", day)
+						.endNode(day >= 2 ? "late" : "early");
+			}
+			writer.commit();
+		}
+		writer.close();
+		return file;
+	}
+
+	private static String[] expectedNodes(int firstDay) {
+		List<String> nodes = new ArrayList<String>();
+		for (int day = firstDay; day < DAYS; day++) {
+			nodes.add("nextTimeUnit:" + day);
+			nodes.add("intUpdated:" + day);
+			nodes.add((day >= 2 ? "late:" : "early:") + day);
+		}
+		return nodes.toArray(new String[nodes.size()]);
+	}
+
+	private static List<String> readNodes(LogReader reader)
+			throws IOException, ParseException {
+		List<String> nodes = new ArrayList<String>();
+		while (reader.hasMoreChunks()) {
+			readNodes(reader.nextChunk(), nodes);
+		}
+		return nodes;
+	}
+
+	private static List<String> readNodes(TransportReader chunk,
+			List<String> nodes) throws ParseException {
+		while (chunk.nextNode(false)) {
+			String name = chunk.getNodeName();
+			if (name.equals("nextTimeUnit")) {
+				nodes.add(name + ':' + chunk.getAttributeAsInt("unit"));
+			} else if (name.equals("intUpdated")) {
+				nodes.add(name + ':' + chunk.getAttributeAsInt("value"));
+			} else if (!name.equals("simulation")) {
+				nodes.add(name + ':' + chunk.getAttributeAsInt("day"));
+			}
+		}
+		return nodes;
+	}
+}
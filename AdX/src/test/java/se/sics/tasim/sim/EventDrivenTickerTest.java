@@ -0,0 +1,103 @@
+package se.sics.tasim.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EventDrivenTicker}.
+ */
+public class EventDrivenTickerTest {
+
+	/**
+	 * Records the started time units and their start times.
+	 */
+	private static class RecordingTicker extends EventDrivenTicker {
+		private final BlockingQueue<long[]> ticks = new LinkedBlockingQueue<long[]>();
+
+		public RecordingTicker(int maxMillisPerTimeUnit) {
+			super(maxMillisPerTimeUnit);
+		}
+
+		@Override
+		protected void tick(int timeUnit) {
+			ticks.add(new long[] { timeUnit, System.nanoTime() });
+		}
+
+		public long[] next(long timeoutMillis) throws InterruptedException {
+			return ticks.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private RecordingTicker ticker;
+
+	@After
+	public void tearDown() {
+		if (ticker != null) {
+			ticker.stop();
+		}
+	}
+
+	@Test
+	public void testEarlyAdvance() throws InterruptedException {
+		ticker = new RecordingTicker(60000);
+		ticker.start(0);
+		assertEquals(0, ticker.next(5000)[0]);
+		for (int timeUnit = 0; timeUnit < 5; timeUnit++) {
+			assertTrue(ticker.request(timeUnit));
+			assertEquals(timeUnit + 1, ticker.next(5000)[0]);
+		}
+	}
+
+	@Test
+	public void testTimeoutFallback() throws InterruptedException {
+		ticker = new RecordingTicker(100);
+		ticker.start(0);
+		long[] previous = ticker.next(5000);
+		assertEquals(0, previous[0]);
+		for (int timeUnit = 1; timeUnit < 4; timeUnit++) {
+			long[] tick = ticker.next(5000);
+			assertEquals(timeUnit, tick[0]);
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(tick[1] - previous[1]) >= 90);
+			previous = tick;
+		}
+	}
+
+	@Test
+	public void testLateRequestIgnored() throws InterruptedException {
+		ticker = new RecordingTicker(60000);
+		ticker.start(0);
+		assertEquals(0, ticker.next(5000)[0]);
+		assertTrue(ticker.request(0));
+		assertEquals(1, ticker.next(5000)[0]);
+		// A second request for the completed time unit must not skip one
+		assertFalse(ticker.request(0));
+		assertFalse(ticker.request(5));
+		assertNull(ticker.next(200));
+	}
+
+	@Test
+	public void testNoTicksAfterStop() throws InterruptedException {
+		ticker = new RecordingTicker(50);
+		ticker.start(0);
+		assertEquals(0, ticker.next(5000)[0]);
+		ticker.stop();
+		assertFalse(ticker.request(0));
+		// A tick may have been taken just before the stop
+		ticker.next(100);
+		assertNull(ticker.next(200));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonPositiveMaxMillis() {
+		new RecordingTicker(0);
+	}
+}
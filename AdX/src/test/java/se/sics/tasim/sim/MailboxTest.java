@@ -0,0 +1,94 @@
+package se.sics.tasim.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Mailbox}.
+ */
+public class MailboxTest {
+
+	private static class Item extends Mailbox.Node {
+		private final int producer;
+		private final int sequence;
+
+		public Item(int producer, int sequence) {
+			this.producer = producer;
+			this.sequence = sequence;
+		}
+	}
+
+	@Test
+	public void testTakeTimesOutWhenEmpty() {
+		Mailbox mailbox = new Mailbox(Thread.currentThread());
+		assertEquals(0, mailbox.take(new Mailbox.Node[4], 10));
+		assertEquals(0, mailbox.getDepth());
+	}
+
+	@Test
+	public void testBatchDraining() {
+		Mailbox mailbox = new Mailbox(Thread.currentThread());
+		for (int i = 0; i < 10; i++) {
+			mailbox.offer(new Item(0, i));
+		}
+		assertEquals(10, mailbox.getDepth());
+
+		Mailbox.Node[] batch = new Mailbox.Node[4];
+		int expected = 0;
+		for (int size : new int[] { 4, 4, 2, 0 }) {
+			assertEquals(size, mailbox.drain(batch));
+			for (int i = 0; i < size; i++) {
+				assertEquals(expected++, ((Item) batch[i]).sequence);
+			}
+		}
+		assertEquals(0, mailbox.getDepth());
+		assertEquals(10, mailbox.getMaxDepth());
+		assertEquals(10, mailbox.getTaken());
+		assertEquals(3, mailbox.getBatches());
+	}
+
+	@Test
+	public void testConcurrentProducers() throws InterruptedException {
+		final int producers = 4;
+		final int items = 20000;
+		final Mailbox mailbox = new Mailbox(Thread.currentThread());
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < items; i++) {
+						mailbox.offer(new Item(producer, i));
+					}
+				}
+			}.start();
+		}
+		start.countDown();
+
+		// Every item arrives exactly once and in order per producer
+		int[] next = new int[producers];
+		Mailbox.Node[] batch = new Mailbox.Node[64];
+		int received = 0;
+		while (received < producers * items) {
+			int count = mailbox.take(batch, 10000);
+			assertTrue("timed out", count > 0);
+			for (int i = 0; i < count; i++) {
+				Item item = (Item) batch[i];
+				assertEquals(next[item.producer]++, item.sequence);
+			}
+			received += count;
+		}
+		assertEquals(0, mailbox.getDepth());
+		assertEquals(producers * items, mailbox.getTaken());
+	}
+}
@@ -0,0 +1,76 @@
+package tau.tac.adx;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the per-simulation contexts of {@link AdxManager}.
+ */
+public class AdxManagerTest {
+
+	@After
+	public void tearDown() {
+		AdxManager.clearContext();
+	}
+
+	@Test
+	public void testContextIsNotInheritedByStartedThreads()
+			throws InterruptedException {
+		AdxManager defaultManager = AdxManager.getInstance();
+		AdxManager manager = AdxManager.createContext();
+		assertNotSame(defaultManager, manager);
+		assertSame(manager, AdxManager.getInstance());
+		assertSame(defaultManager, getInstanceInNewThread());
+
+		AdxManager.clearContext();
+		assertSame(defaultManager, AdxManager.getInstance());
+	}
+
+	@Test
+	public void testSetContext() {
+		AdxManager defaultManager = AdxManager.getInstance();
+		AdxManager manager = AdxManager.createContext();
+		AdxManager.clearContext();
+
+		assertNull(AdxManager.setContext(manager));
+		assertSame(manager, AdxManager.getInstance());
+		assertSame(manager, AdxManager.setContext(null));
+		assertSame(defaultManager, AdxManager.getInstance());
+	}
+
+	@Test
+	public void testContextsAreIsolated() throws InterruptedException {
+		final AtomicReference<AdxManager> other = new AtomicReference<AdxManager>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				other.set(AdxManager.createContext());
+			}
+		};
+		thread.start();
+		thread.join();
+		AdxManager manager = AdxManager.createContext();
+		assertNotSame(other.get(), manager);
+		assertSame(manager, AdxManager.getInstance());
+	}
+
+	private static AdxManager getInstanceInNewThread()
+			throws InterruptedException {
+		final AtomicReference<AdxManager> instance = new AtomicReference<AdxManager>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				instance.set(AdxManager.getInstance());
+			}
+		};
+		thread.start();
+		thread.join();
+		return instance.get();
+	}
+}
@@ -25,17 +25,26 @@
 package tau.tac.adx.agents;
 
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -44,10 +53,18 @@ import org.mockito.Mockito;
 import tau.tac.adx.AdxManager;
 import tau.tac.adx.ads.properties.AdType;
 import tau.tac.adx.auction.AdxAuctionResult;
+import tau.tac.adx.auction.data.AuctionState;
+import tau.tac.adx.bids.BidInfo;
+import tau.tac.adx.bids.Bidder;
+import tau.tac.adx.demand.Campaign;
 import tau.tac.adx.devices.Device;
+import tau.tac.adx.messages.AdNetworkReportsAccumulated;
+import tau.tac.adx.messages.AuctionMessage;
 import tau.tac.adx.props.AdxQuery;
 import tau.tac.adx.props.PublisherCatalog;
 import tau.tac.adx.publishers.AdxPublisher;
+import tau.tac.adx.report.adn.AdNetworkReport;
+import tau.tac.adx.report.adn.MarketSegmentSet;
 import tau.tac.adx.sim.AdxAuctioneer;
 import tau.tac.adx.sim.TACAdxConstants;
 import tau.tac.adx.sim.TACAdxSimulation;
@@ -66,19 +83,28 @@ import edu.umich.eecs.tac.props.Product;
  * @author greenwald
  */
 public class DefaultAdxUserManagerTest {
-	private final class AdxAuctioneerSpy implements AdxAuctioneer {
-		public int count = 0;
+	private class AdxAuctioneerSpy implements AdxAuctioneer {
+		public final AtomicInteger count = new AtomicInteger();
 
 		@Override
 		public AdxAuctionResult runAuction(AdxQuery query) {
-			count++;
-			return null;
+			count.incrementAndGet();
+			return EMPTY_RESULT;
+		}
+
+		@Override
+		public AdxAuctionResult runAuction(AdxQuery query, Random random) {
+			count.incrementAndGet();
+			return EMPTY_RESULT;
 		}
 
 		@Override
 		public void applyBidUpdates() {}
 	}
 
+	private static final AdxAuctionResult EMPTY_RESULT = new AdxAuctionResult(
+			AuctionState.NO_BIDS, null, 0.0, new ArrayList<BidInfo>());
+
 	private DefaultAdxUserManager userManager;
 
 	private AdxUserQueryManager queryManager;
@@ -120,38 +146,38 @@ public class DefaultAdxUserManagerTest {
 
 		eventBus = new EventBus(TACAdxConstants.ADX_EVENT_BUS_NAME);
 		userManager = new DefaultAdxUserManager(publisherCatalog, users,
-				queryManager, populationSize, eventBus);
+				queryManager, populationSize, eventBus, 1, 1, 0);
 	}
 
 	@Test
 	public void testConstuctor() {
 		assertNotNull(userManager);
 		assertNotNull(new DefaultAdxUserManager(publisherCatalog, users,
-				queryManager, populationSize, eventBus));
+				queryManager, populationSize, eventBus, 1, 1, 0));
 	}
 
 	@Test(expected = NullPointerException.class)
 	public void testConstuctorPublisherCatalogNull() {
 		new DefaultAdxUserManager(null, users, queryManager, populationSize,
-				eventBus);
+				eventBus, 1, 1, 0);
 	}
 
 	@Test(expected = NullPointerException.class)
 	public void testConstuctorUsersNull() {
 		new DefaultAdxUserManager(publisherCatalog, null, queryManager,
-				populationSize, eventBus);
+				populationSize, eventBus, 1, 1, 0);
 	}
 
 	@Test(expected = NullPointerException.class)
 	public void testConstuctorQueryManagerNull() {
 		new DefaultAdxUserManager(publisherCatalog, users, null,
-				populationSize, eventBus);
+				populationSize, eventBus, 1, 1, 0);
 	}
 
 	@Test(expected = IllegalArgumentException.class)
 	public void testConstuctorNegativePopulationSize() {
 		new DefaultAdxUserManager(publisherCatalog, users, queryManager, -1,
-				eventBus);
+				eventBus, 1, 1, 0);
 	}
 
 	@Test
@@ -166,6 +192,164 @@ public class DefaultAdxUserManagerTest {
 				(AdxQuery) Mockito.any());
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstuctorNonPositiveShardCount() {
+		new DefaultAdxUserManager(publisherCatalog, users, queryManager,
+				populationSize, eventBus, 0, 1, 0);
+	}
+
+	@Test
+	public void testTriggerBehaviorSharded() {
+		TACAdxSimulation simulation = mock(TACAdxSimulation.class,
+				Mockito.RETURNS_DEEP_STUBS);
+		AdxManager.getInstance().setSimulation(simulation);
+		DefaultAdxUserManager shardedManager = new DefaultAdxUserManager(
+				publisherCatalog, users, queryManager, populationSize,
+				eventBus, 4, 100, 0);
+		AdxAuctioneerSpy auctioneerSpy = new AdxAuctioneerSpy();
+		shardedManager.triggerBehavior(auctioneerSpy);
+		assertThat(populationSize, lessThanOrEqualTo(auctioneerSpy.count.get()));
+	}
+
+	@Test
+	public void testTriggerBehaviorShardedReproducible() {
+		TACAdxSimulation simulation = mock(TACAdxSimulation.class,
+				Mockito.RETURNS_DEEP_STUBS);
+		AdxManager.getInstance().setSimulation(simulation);
+		List<AdxQuery> first = runShardedDay(12345);
+		List<AdxQuery> second = runShardedDay(12345);
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void testTriggerBehaviorShardedReports() {
+		TACAdxSimulation simulation = mock(TACAdxSimulation.class,
+				Mockito.RETURNS_DEEP_STUBS);
+		AdxManager.getInstance().setSimulation(simulation);
+		final List<Object> events = new ArrayList<Object>();
+		when(simulation.getEventBus()).thenReturn(new EventBus() {
+			@Override
+			public void post(Object event) {
+				events.add(event);
+			}
+		});
+		when(simulation.getAuctionMessagePipeline()).thenReturn(null);
+		Bidder bidder = mock(Bidder.class);
+		when(bidder.getName()).thenReturn("adn");
+		Campaign campaign = mock(Campaign.class);
+		when(campaign.getAdvertiser()).thenReturn("adn");
+		when(campaign.getId()).thenReturn(1);
+		BidInfo bidInfo = new BidInfo(2.0, bidder, null,
+				new MarketSegmentSet(), campaign);
+		final AdxAuctionResult result = new AdxAuctionResult(
+				AuctionState.AUCTION_COPMLETED, bidInfo, 1.0,
+				Collections.singletonList(bidInfo));
+		AdxAuctioneer auctioneer = new AdxAuctioneerSpy() {
+			@Override
+			public AdxAuctionResult runAuction(AdxQuery query, Random random) {
+				return result;
+			}
+		};
+		DefaultAdxUserManager shardedManager = new DefaultAdxUserManager(
+				publisherCatalog, users, queryManager, populationSize,
+				eventBus, 4, 100, 0);
+		shardedManager.triggerBehavior(auctioneer);
+		shardedManager.shutdown();
+
+		int auctions = 0;
+		AdNetworkReportsAccumulated accumulated = null;
+		for (Object event : events) {
+			if (event instanceof AuctionMessage) {
+				assertTrue(((AuctionMessage) event).isReported());
+				auctions++;
+			} else {
+				assertNull(accumulated);
+				accumulated = (AdNetworkReportsAccumulated) event;
+			}
+		}
+		assertThat(populationSize, lessThanOrEqualTo(auctions));
+		assertNotNull(accumulated);
+		AdNetworkReport report = accumulated.getReports().get("adn").toReport();
+		int bids = 0;
+		int wins = 0;
+		for (int i = 0; i < report.size(); i++) {
+			bids += report.getEntry(i).getBidCount();
+			wins += report.getEntry(i).getWinCount();
+		}
+		assertEquals(auctions, bids);
+		assertEquals(auctions, wins);
+		// Prices are per mille
+		assertEquals(auctions / 1000.0, report.getDailyCost(), 1e-6);
+	}
+
+	@Test
+	public void testShardsBindCallerContext() {
+		final Set<AdxManager> seen = Collections
+				.newSetFromMap(new ConcurrentHashMap<AdxManager, Boolean>());
+		AdxAuctioneer auctioneer = new AdxAuctioneerSpy() {
+			@Override
+			public AdxAuctionResult runAuction(AdxQuery query, Random random) {
+				seen.add(AdxManager.getInstance());
+				return EMPTY_RESULT;
+			}
+		};
+		DefaultAdxUserManager shardedManager = new DefaultAdxUserManager(
+				publisherCatalog, users, queryManager, populationSize,
+				eventBus, 4, 100, 0);
+		try {
+			// The pool's threads are started in the first context
+			for (int i = 0; i < 2; i++) {
+				AdxManager manager = AdxManager.createContext();
+				try {
+					manager.setSimulation(mock(TACAdxSimulation.class,
+							Mockito.RETURNS_DEEP_STUBS));
+					seen.clear();
+					shardedManager.triggerBehavior(auctioneer);
+					assertEquals(Collections.singleton(manager), seen);
+				} finally {
+					AdxManager.clearContext();
+				}
+			}
+		} finally {
+			shardedManager.shutdown();
+		}
+	}
+
+	private List<AdxQuery> runShardedDay(long seed) {
+		final List<AdxQuery> queries = new ArrayList<AdxQuery>();
+		AdxAuctioneer recorder = new AdxAuctioneer() {
+			@Override
+			public AdxAuctionResult runAuction(AdxQuery query) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public synchronized AdxAuctionResult runAuction(AdxQuery query,
+					Random random) {
+				return EMPTY_RESULT;
+			}
+
+			@Override
+			public void applyBidUpdates() {}
+		};
+		EventBus recordingBus = new EventBus() {
+			@Override
+			public void post(Object event) {
+				if (event instanceof AuctionMessage) {
+					queries.add(((AuctionMessage) event).getQuery());
+				}
+			}
+		};
+		Mockito.when(
+				AdxManager.getInstance().getSimulation().getEventBus())
+				.thenReturn(recordingBus);
+		List<AdxUser> population = new ArrayList<AdxUser>(users);
+		new DefaultAdxUserManager(publisherCatalog, population, queryManager,
+				populationSize, eventBus, 3, 50, seed)
+				.triggerBehavior(recorder);
+		return queries;
+	}
+
 	@Test
 	public void testHandleSearch() {
 		for (AdxUser user : users) {
@@ -191,14 +375,14 @@ public class DefaultAdxUserManagerTest {
 			when(queryManager.generateQuery(adxUser)).thenReturn(mock(AdxQuery.class));
 			DefaultAdxUserManager manager = new DefaultAdxUserManager(
 					mock(PublisherCatalog.class), mock(List.class),
-					queryManager, 100000, mock(EventBus.class));
+					queryManager, 100000, mock(EventBus.class), 1, 1, i);
 			AdxAuctioneerSpy adxAuctioneerSpy = new AdxAuctioneerSpy();
 			//test
 			manager.handleUserActivity(adxUser, adxAuctioneerSpy);
 			//validate MAX_USER_DAILY_IMPRESSION (6)
-			org.junit.Assert.assertThat(adxAuctioneerSpy.count, lessThanOrEqualTo(contimueMax));
-			if (adxAuctioneerSpy.count <= counts.length) {
-				counts[adxAuctioneerSpy.count]++;
+			assertThat(adxAuctioneerSpy.count.get(), lessThanOrEqualTo(contimueMax));
+			if (adxAuctioneerSpy.count.get() <= counts.length) {
+				counts[adxAuctioneerSpy.count.get()]++;
 			}
 		}
 		//validate User Continuation Probability (0.3)
@@ -207,7 +391,7 @@ public class DefaultAdxUserManagerTest {
 			if(i == counts.length) {
 				probability /= (1-pContinue); //The last slot gets every option
 			}
-			org.junit.Assert.assertEquals("Cycle " + i, probability * times, counts[i], times * 0.05);
+			assertEquals("Cycle " + i, probability * times, counts[i], times * 0.05);
 		}
 	}
 
@@ -0,0 +1,128 @@
+package tau.tac.adx.auction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.auction.data.AuctionData;
+import tau.tac.adx.auction.data.AuctionOrder;
+import tau.tac.adx.auction.data.AuctionPriceType;
+import tau.tac.adx.bids.BidInfo;
+import tau.tac.adx.devices.Device;
+import tau.tac.adx.props.AdxQuery;
+import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.report.adn.MarketSegmentSet;
+
+import com.google.common.collect.Sets;
+
+/**
+ * JMH comparison of {@link SimpleAuctionManager#runAuction} against the
+ * previous shuffle-based auction ({@link #legacyAuction()}, which shuffles a
+ * {@link LinkedList}, scans with sentinel {@link BidInfo}s and intersects
+ * segments with a Guava view). Run with the test classpath, e.g.
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=tau.tac.adx.auction.AuctionKernelBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuctionKernelBenchmark {
+
+	@Param({ "8", "32", "128" })
+	public int bidders;
+
+	private SimpleAuctionManager auctionManager;
+
+	private AdxQuery query;
+
+	private List<BidInfo> bidInfos;
+
+	private Random random;
+
+	@Setup
+	public void setup() {
+		Random bids = new Random(0);
+		bidInfos = new ArrayList<BidInfo>(bidders);
+		for (int i = 0; i < bidders; i++) {
+			// Bids are in millis, with ties at the top.
+			bidInfos.add(new BidInfo(Math.min(bids.nextInt(1000), 900),
+					null, null, new MarketSegmentSet(bids
+							.nextInt(MarketSegmentSet.ALL + 1)), null));
+		}
+		query = new AdxQuery("yahoo", MarketSegment.MALE, Device.pc,
+				AdType.text);
+		auctionManager = new SimpleAuctionManager();
+		random = new Random(1);
+	}
+
+	private AuctionData auctionData(List<BidInfo> bidInfos) {
+		return new AuctionData(AuctionOrder.HIGHEST_WINS,
+				AuctionPriceType.GENERALIZED_SECOND_PRICE, bidInfos, 0.1,
+				random);
+	}
+
+	@Benchmark
+	public AdxAuctionResult kernelAuction() {
+		return auctionManager.runAuction(auctionData(bidInfos), query);
+	}
+
+	@Benchmark
+	public AdxAuctionResult legacyAuction() {
+		AuctionData auctionData = auctionData(new LinkedList<BidInfo>(
+				bidInfos));
+		AuctionOrder auctionOrder = auctionData.getAuctionOrder();
+		BidInfo winningBid = SimpleAuctionManager
+				.initializeByAuctionOrder(auctionOrder);
+		BidInfo secondBid = SimpleAuctionManager
+				.initializeByAuctionOrder(auctionOrder);
+		List<BidInfo> bidInfos = auctionData.getBidInfos();
+		Collections.shuffle(bidInfos, auctionData.getRandom());
+		for (BidInfo bidInfo : bidInfos) {
+			if (SimpleAuctionManager.betterBid(bidInfo, winningBid,
+					auctionOrder)) {
+				secondBid = winningBid;
+				winningBid = bidInfo;
+			} else if (SimpleAuctionManager.betterBid(bidInfo, secondBid,
+					auctionOrder)) {
+				secondBid = bidInfo;
+			}
+		}
+		BidInfo adjustedWinningBid = (BidInfo) winningBid.clone();
+		Set<MarketSegment> marketSegments = Sets.intersection(
+				query.getMarketSegments(), winningBid.getMarketSegments());
+		adjustedWinningBid.setMarketSegments(marketSegments);
+		return SimpleAuctionManager.calculateAuctionResult(
+				adjustedWinningBid, secondBid, auctionData);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(
+				AuctionKernelBenchmark.class.getSimpleName()).build()).run();
+	}
+}
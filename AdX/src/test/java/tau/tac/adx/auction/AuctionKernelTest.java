@@ -0,0 +1,59 @@
+package tau.tac.adx.auction;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import tau.tac.adx.auction.data.AuctionOrder;
+
+/**
+ * Tests for {@link AuctionKernel}.
+ */
+public class AuctionKernelTest {
+
+	@Test
+	public void testHighestWins() {
+		AuctionKernel kernel = new AuctionKernel();
+		double[] bids = { 3, 7, 1, 5, 0 };
+		assertEquals(1, kernel.solve(bids, bids.length,
+				AuctionOrder.HIGHEST_WINS, new Random(0)));
+		assertEquals(7, kernel.getWinningBid(), 0);
+		assertEquals(5, kernel.getSecondBid(), 0);
+		assertEquals(2, kernel.solve(bids, 3, AuctionOrder.LOWEST_WINS,
+				new Random(0)));
+		assertEquals(1, kernel.getWinningBid(), 0);
+		assertEquals(3, kernel.getSecondBid(), 0);
+	}
+
+	@Test
+	public void testNoWinner() {
+		AuctionKernel kernel = new AuctionKernel();
+		double[] bids = { 0, 0 };
+		assertEquals(-1, kernel.solve(bids, bids.length,
+				AuctionOrder.HIGHEST_WINS, new Random(0)));
+		assertEquals(-1, kernel.getWinner());
+		assertEquals(-1, kernel.solve(bids, 0, AuctionOrder.LOWEST_WINS,
+				new Random(0)));
+	}
+
+	@Test
+	public void testTiesAreUniform() {
+		AuctionKernel kernel = new AuctionKernel();
+		double[] bids = { 5, 1, 5, 5, 2, 5 };
+		int[] wins = new int[bids.length];
+		Random random = new Random(0);
+		int rounds = 40000;
+		for (int i = 0; i < rounds; i++) {
+			wins[kernel.solve(bids, bids.length, AuctionOrder.HIGHEST_WINS,
+					random)]++;
+			assertEquals(5, kernel.getSecondBid(), 0);
+		}
+		assertEquals(0, wins[1]);
+		assertEquals(0, wins[4]);
+		for (int i : new int[] { 0, 2, 3, 5 }) {
+			assertEquals(rounds / 4, wins[i], rounds / 40);
+		}
+	}
+}
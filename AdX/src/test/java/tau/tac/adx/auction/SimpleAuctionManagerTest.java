@@ -12,6 +12,7 @@ import static org.mockito.Mockito.when;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -47,7 +48,7 @@ public class SimpleAuctionManagerTest {
 			when(auctionData.getReservePrice()).thenReturn(reservePrice);
 			BidInfo lowBid = mock(BidInfo.class);
 			BidInfo highBid = new BidInfo(high, null, null,
-					MarketSegment.randomMarketSegment(), null);
+					MarketSegment.randomMarketSegment(new Random()), null);
 			when(lowBid.getBid()).thenReturn(low);
 
 			when(auctionData.getAuctionOrder()).thenReturn(
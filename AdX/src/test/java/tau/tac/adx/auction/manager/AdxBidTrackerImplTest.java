@@ -26,6 +26,7 @@ package tau.tac.adx.auction.manager;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 
 import java.util.Collection;
@@ -33,16 +34,25 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import tau.tac.adx.AdxManager;
+import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.bids.BidInfo;
+import tau.tac.adx.devices.Device;
+import tau.tac.adx.messages.CampaignLimitReached;
 import tau.tac.adx.auction.tracker.AdxBidTrackerImpl;
 import tau.tac.adx.props.AdxBidBundle;
 import tau.tac.adx.props.AdxQuery;
 import tau.tac.adx.props.generators.AdxQueryGenerator;
+import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.report.adn.MarketSegmentSet;
 import tau.tac.adx.sim.TACAdxSimulation;
 import tau.tac.adx.util.Utils;
+import com.google.common.eventbus.EventBus;
+
 import edu.umich.eecs.tac.props.Ad;
 
 /**
@@ -50,6 +60,15 @@ import edu.umich.eecs.tac.props.Ad;
  */
 public class AdxBidTrackerImplTest {
 
+	/**
+	 * Each tracked advertiser's bids register to the simulation's event bus.
+	 */
+	@Before
+	public void setUp() {
+		AdxManager.getInstance().setSimulation(
+				mock(TACAdxSimulation.class, Mockito.RETURNS_DEEP_STUBS));
+	}
+
 	@Test
 	public void testConstructor() {
 		AdxBidTrackerImpl AdxBidTracker = new AdxBidTrackerImpl();
@@ -203,4 +222,50 @@ public class AdxBidTrackerImplTest {
 		// 1.0, 0.0);
 	}
 
+	@Test
+	public void testGetBidInfoIndexed() {
+		TACAdxSimulation simulation = mock(TACAdxSimulation.class,
+				Mockito.RETURNS_DEEP_STUBS);
+		EventBus eventBus = new EventBus();
+		Mockito.when(simulation.getEventBus()).thenReturn(eventBus);
+		AdxManager.getInstance().setSimulation(simulation);
+		AdxBidTrackerImpl adxBidTracker = new AdxBidTrackerImpl();
+
+		String advertiser = "alice";
+		AdxBidBundle bundle = new AdxBidBundle();
+		bundle.addQuery(new AdxQuery("pub", MarketSegment.MALE, Device.pc,
+				AdType.text), 1.0, new Ad(), 1, 1);
+		bundle.addQuery(new AdxQuery("pub", new MarketSegmentSet(),
+				Device.pc, AdType.text), 2.0, new Ad(), 2, 1);
+		bundle.addQuery(new AdxQuery("pub", MarketSegment.FEMALE, Device.pc,
+				AdType.text), 3.0, new Ad(), 3, 1);
+		adxBidTracker.updateBids(advertiser, bundle);
+
+		AdxQuery maleQuery = new AdxQuery("pub", MarketSegment.MALE,
+				Device.pc, AdType.text);
+		Set<Double> bids = new HashSet<Double>();
+		for (int i = 0; i < 200; i++) {
+			bids.add(adxBidTracker.getBidInfo(advertiser, maleQuery).getBid());
+		}
+		assertEquals(2, bids.size());
+		assertEquals(true, bids.contains(1.0) && bids.contains(2.0));
+
+		assertNull(adxBidTracker.getBidInfo(advertiser, new AdxQuery("pub",
+				MarketSegment.MALE, Device.mobile, AdType.text)));
+		assertNull(adxBidTracker.getBidInfo(advertiser, new AdxQuery("other",
+				MarketSegment.MALE, Device.pc, AdType.text)));
+
+		eventBus.post(new CampaignLimitReached(2, advertiser));
+		for (int i = 0; i < 50; i++) {
+			BidInfo bidInfo = adxBidTracker.getBidInfo(advertiser, maleQuery);
+			assertEquals(1.0, bidInfo.getBid(), 0);
+		}
+		assertNull(adxBidTracker.getBidInfo(advertiser, new AdxQuery("pub",
+				new MarketSegmentSet(), Device.pc, AdType.text)));
+
+		adxBidTracker.updateBids(advertiser, bundle);
+		assertNotNull(adxBidTracker.getBidInfo(advertiser, new AdxQuery(
+				"pub", new MarketSegmentSet(), Device.pc, AdType.text)));
+	}
+
 }
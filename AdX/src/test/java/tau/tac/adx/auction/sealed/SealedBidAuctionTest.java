@@ -0,0 +1,153 @@
+package tau.tac.adx.auction.sealed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SealedBidAuction}.
+ */
+public class SealedBidAuctionTest {
+
+	@Test
+	public void testQualityScoreSecondPrice() {
+		SealedBidAuction<String> auction = new SealedBidAuction<String>(
+				new QualityScorePricing());
+		auction.addItem(1.0 / 100, 0);
+		auction.addBid("a1", 80, 1.0);
+		auction.addBid("a2", 50, 1.0);
+		auction.addBid("a3", 120, 1.0);
+		SealedBidAuctionResult<String> result = auction.solve(new Random(1));
+
+		assertEquals(1, result.getItemCount());
+		assertEquals(3, result.getBidderCount(0));
+		assertEquals(0, result.getWinner(0));
+		assertFalse(result.isRandomAllocation(0));
+		assertEquals("a2", result.getBidder(0, 0));
+		assertEquals(80, result.getPrice(0, 0), 1e-9);
+		assertEquals("a1", result.getBidder(0, 1));
+		assertFalse(result.isAllocated(0, 1));
+		// Below the reserve score
+		assertEquals("a3", result.getBidder(0, 2));
+	}
+
+	@Test
+	public void testReserve() {
+		SealedBidAuction<String> auction = new SealedBidAuction<String>(
+				new QualityScorePricing());
+		auction.addItem(1.0 / 100, 0);
+		auction.addBid("a1", 80, 1.0);
+		SealedBidAuctionResult<String> result = auction.solve(new Random(1));
+		assertEquals(100, result.getPrice(0, 0), 1e-9);
+
+		auction.clear();
+		auction.addItem(1.0 / 100, 0);
+		auction.addBid("a1", 150, 1.0);
+		result = auction.solve(new Random(1));
+		assertEquals(-1, result.getWinner(0));
+		assertFalse(result.isAllocated(0, 0));
+	}
+
+	@Test
+	public void testPositionPricing() {
+		SealedBidAuction<String> auction = new SealedBidAuction<String>(
+				new PositionPricing(0.5));
+		auction.addItem(0, 0);
+		auction.addBid("a1", 1.0, 1.0);
+		auction.addBid("a2", 4.0, 1.0);
+		auction.addBid("a3", 2.0, 1.0);
+		auction.addBid("a4", -1.0, 1.0);
+		SealedBidAuctionResult<String> result = auction.solve(new Random(1));
+
+		assertEquals("a2", result.getBidder(0, 0));
+		assertEquals(1.0, result.getLevel(0, 0), 0.0);
+		assertEquals(2.0, result.getPrice(0, 0), 1e-9);
+		assertEquals("a3", result.getBidder(0, 1));
+		assertEquals(0.5, result.getLevel(0, 1), 0.0);
+		assertEquals(0.5, result.getPrice(0, 1), 1e-9);
+		assertEquals("a1", result.getBidder(0, 2));
+		assertEquals(0.25, result.getLevel(0, 2), 0.0);
+		assertEquals(0.0, result.getPrice(0, 2), 0.0);
+		assertEquals("a4", result.getBidder(0, 3));
+		assertFalse(result.isAllocated(0, 3));
+		assertEquals(0.0, result.getLevel(0, 3), 0.0);
+	}
+
+	@Test
+	public void testBatchedItems() {
+		SealedBidAuction<Integer> auction = new SealedBidAuction<Integer>(
+				new PositionPricing(1.0));
+		Random random = new Random(7);
+		int items = 20;
+		for (int item = 0; item < items; item++) {
+			auction.addItem(0, 0);
+			// Enough bids to grow the arrays and merge sort
+			for (int i = 0; i < item * 3; i++) {
+				auction.addBid(Integer.valueOf(i), random.nextInt(50), 1.0);
+			}
+		}
+		SealedBidAuctionResult<Integer> result = auction.solve(random);
+		assertEquals(items, result.getItemCount());
+		for (int item = 0; item < items; item++) {
+			assertEquals(item * 3, result.getBidderCount(item));
+			assertEquals(item == 0 ? -1 : 0, result.getWinner(item));
+			boolean[] seen = new boolean[item * 3];
+			for (int position = 0; position < item * 3; position++) {
+				seen[result.getBidder(item, position).intValue()] = true;
+				if (position > 0) {
+					assertTrue(result.getBid(item, position - 1) >= result
+							.getBid(item, position));
+				}
+			}
+			for (boolean s : seen) {
+				assertTrue(s);
+			}
+		}
+	}
+
+	@Test
+	public void testTiesBrokenAtRandom() {
+		SealedBidAuction<String> auction = new SealedBidAuction<String>(
+				new QualityScorePricing());
+		Random random = new Random(3);
+		int[] wins = new int[3];
+		int loops = 3000;
+		for (int i = 0; i < loops; i++) {
+			auction.clear();
+			auction.addItem(0, 0);
+			auction.addBid("0", 10, 1.0);
+			auction.addBid("1", 10, 1.0);
+			auction.addBid("2", 10, 1.0);
+			SealedBidAuctionResult<String> result = auction.solve(random);
+			wins[Integer.parseInt(result.getBidder(0, result.getWinner(0)))]++;
+		}
+		for (int win : wins) {
+			assertEquals(1.0 / 3, 1.0 * win / loops, 0.05);
+		}
+	}
+
+	@Test
+	public void testRandomAllocation() {
+		SealedBidAuction<String> auction = new SealedBidAuction<String>(
+				new QualityScorePricing());
+		auction.addItem(1.0, 1.0);
+		auction.addBid("a1", 80, 1.0);
+		auction.addBid("a2", 50, 1.0);
+		SealedBidAuctionResult<String> result = auction.solve(new Random(1));
+		assertTrue(result.isRandomAllocation(0));
+		int winner = result.getWinner(0);
+		assertTrue(result.isAllocated(0, winner));
+		// The winner pays its bid, regardless of the reserve
+		assertEquals(result.getBid(0, winner), result.getPrice(0, winner), 0.0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testBidWithoutItem() {
+		new SealedBidAuction<String>(new QualityScorePricing()).addBid("a1",
+				1, 1);
+	}
+}
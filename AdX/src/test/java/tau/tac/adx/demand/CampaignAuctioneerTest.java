@@ -0,0 +1,56 @@
+package tau.tac.adx.demand;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import tau.tac.adx.report.demand.campaign.auction.CampaignAuctionReport;
+
+/**
+ * Tests for {@link CampaignAuctioneer}.
+ */
+public class CampaignAuctioneerTest {
+
+	@Test
+	public void testBatch() {
+		QualityManager qualityManager = mock(QualityManager.class);
+		when(qualityManager.getQualityScore("a1")).thenReturn(1.0);
+		when(qualityManager.getQualityScore("a2")).thenReturn(1.0);
+		Random random = new Random(0);
+		CampaignImpl first = new CampaignImpl(qualityManager, 100, 1, 5,
+				null, 0, 0, random);
+		CampaignImpl second = new CampaignImpl(qualityManager, 200, 1, 5,
+				null, 0, 0, random);
+		CampaignImpl third = new CampaignImpl(qualityManager, 100, 1, 5,
+				null, 0, 0, random);
+		for (CampaignImpl campaign : Arrays.asList(first, second, third)) {
+			campaign.setRandomAllocPr(0.0);
+		}
+		first.addAdvertiserBid("a1", 80L);
+		first.addAdvertiserBid("a2", 50L);
+		second.addAdvertiserBid("a1", 150L);
+
+		List<CampaignAuctionReport> reports = new CampaignAuctioneer(
+				new Random(1)).auction(Arrays.asList(first, second, third));
+
+		assertEquals(3, reports.size());
+		assertEquals("a2", first.getAdvertiser());
+		assertEquals(80, first.getBudgetMillis());
+		assertEquals("a2", reports.get(0).getWinner());
+		assertFalse(reports.get(0).isRandomAllocation());
+		assertEquals(2, reports.get(0).size());
+		assertEquals("a1", second.getAdvertiser());
+		assertEquals(200, second.getBudgetMillis());
+		assertEquals("", third.getAdvertiser());
+		assertFalse(third.isAllocated());
+		assertNull(reports.get(2));
+	}
+}
@@ -0,0 +1,53 @@
+package tau.tac.adx.demand;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CampaignDayStats}.
+ */
+public class CampaignDayStatsTest {
+
+	@Test
+	public void testRanges() {
+		CampaignDayStats stats = new CampaignDayStats(5, 7);
+		stats.add(5, new CampaignStats(1, 10, 0.5));
+		stats.add(6, new CampaignStats(2, 20, 1.0));
+		stats.add(7, new CampaignStats(4, 40, 2.0));
+		assertEquals(3, stats.getDays());
+
+		assertEquals(7.0, stats.getTotalTargetedImps(), 0.0);
+		assertEquals(70.0, stats.getTotalOtherImps(), 0.0);
+		assertEquals(3.5, stats.getTotalCost(), 0.0);
+		assertEquals(6.0, stats.getTargetedImps(6, 7), 0.0);
+		assertEquals(20.0, stats.getOtherImps(6, 6), 0.0);
+		assertEquals(1.5, stats.getCost(0, 6), 0.0);
+		// Days outside of the stored days are empty
+		assertEquals(4.0, stats.getTargetedImps(7, 60), 0.0);
+		assertEquals(0.0, stats.getTargetedImps(8, 60), 0.0);
+		assertEquals(0.0, stats.getTargetedImps(0, 4), 0.0);
+		assertEquals(0.0, stats.getTargetedImps(7, 6), 0.0);
+	}
+
+	@Test
+	public void testSkippedAndRepeatedDays() {
+		CampaignDayStats stats = new CampaignDayStats(1, 1);
+		stats.add(1, new CampaignStats(1, 0, 0));
+		stats.add(1, new CampaignStats(2, 0, 0));
+		// Beyond the expected days
+		stats.add(4, new CampaignStats(4, 0, 0));
+		stats.add(9, new CampaignStats(8, 0, 0));
+		assertEquals(9, stats.getDays());
+
+		assertEquals(3.0, stats.getTargetedImps(1, 1), 0.0);
+		assertEquals(0.0, stats.getTargetedImps(2, 3), 0.0);
+		assertEquals(12.0, stats.getTargetedImps(2, 9), 0.0);
+		assertEquals(15.0, stats.getTotals().getTargetedImps(), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDayBeforeFirstDay() {
+		new CampaignDayStats(3, 5).add(2, new CampaignStats(0, 0, 0));
+	}
+}
@@ -8,6 +8,8 @@ import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 import tau.tac.adx.report.demand.campaign.auction.CampaignAuctionReport;
@@ -28,6 +30,7 @@ public class CampaignImplTest {
 		int loops = 10000;
 		int randomAllocations = 0;
 		int noAuctions = 0;
+		Random random = new Random(0);
 		for (int loopCounter = 0; loopCounter < loops; loopCounter++) {
 			// set up
 			QualityManager qualityManager = mock(QualityManager.class);
@@ -40,7 +43,7 @@ public class CampaignImplTest {
 			double bestEffectiveBid = Double.NEGATIVE_INFINITY;
 
 			CampaignImpl campaignImpl = new CampaignImpl(qualityManager,
-					expectedReach, 0, 0, null, 0, 0);
+					expectedReach, 0, 0, null, 0, 0, random);
 			for (int i = 0; i < 8; i++) {
 				qualityRatings[i] = Math.random();
 				when(qualityManager.getQualityScore(advertiserPrefix + i))
@@ -0,0 +1,84 @@
+package tau.tac.adx.demand;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import tau.tac.adx.demand.CampaignLedger.Charge;
+
+/**
+ * Tests for {@link CampaignLedger}.
+ */
+public class CampaignLedgerTest {
+
+	@Test
+	public void testCharge() {
+		CampaignLedger ledger = new CampaignLedger();
+		assertEquals(Charge.ACCEPTED, ledger.charge(1.0, 2.0, true, 2.5, 10));
+		assertEquals(Charge.ACCEPTED, ledger.charge(1.0, 3.0, false, 2.5, 10));
+		// Crosses the budget limit, still charged
+		assertEquals(Charge.LIMIT_REACHED,
+				ledger.charge(1.0, 1.0, true, 2.5, 10));
+		assertEquals(Charge.REJECTED, ledger.charge(1.0, 1.0, true, 2.5, 10));
+		assertEquals(3.0, ledger.getCost(), 0.0);
+		assertEquals(3.0, ledger.getTargetedImps(), 0.0);
+		assertEquals(3.0, ledger.getOtherImps(), 0.0);
+		assertTrue(ledger.isOver(2.5, 10));
+
+		CampaignStats day = ledger.nextDay();
+		assertEquals(3.0, day.getCost(), 0.0);
+		assertEquals(0.0, ledger.getCost(), 0.0);
+		assertFalse(ledger.isOver(2.5, 10));
+
+		// Over the impression limit before any charge of the day
+		assertEquals(Charge.ACCEPTED, ledger.charge(0.5, 4.0, true, 10, 5));
+		assertEquals(Charge.OVER_LIMIT, ledger.charge(0.5, 1.0, true, 10, 3));
+		assertEquals(Charge.REJECTED, ledger.charge(0.5, 1.0, true, 10, 3));
+		assertEquals(0.5, ledger.getCost(), 0.0);
+	}
+
+	@Test
+	public void testConcurrentCharges() throws InterruptedException {
+		final CampaignLedger ledger = new CampaignLedger();
+		final AtomicInteger charged = new AtomicInteger();
+		final AtomicInteger limitReached = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < 10000; j++) {
+						Charge charge = ledger.charge(0.001, 1.0, true,
+								Double.POSITIVE_INFINITY, 5000);
+						if (charge.isCharged()) {
+							charged.incrementAndGet();
+						}
+						if (charge.isLimitReached()) {
+							limitReached.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		// The charge reaching 5001 impressions crosses the limit
+		assertEquals(5001, charged.get());
+		assertEquals(1, limitReached.get());
+		assertEquals(5001.0, ledger.getTargetedImps(), 0.0);
+	}
+}
@@ -0,0 +1,82 @@
+package tau.tac.adx.demand;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import tau.tac.adx.messages.CampaignLimitSet;
+
+import com.google.common.eventbus.EventBus;
+
+/**
+ * Tests for {@link CampaignRegistry}.
+ */
+public class CampaignRegistryTest {
+
+	private static CampaignImpl createCampaign(String advertiser) {
+		CampaignImpl campaign = new CampaignImpl(mock(QualityManager.class),
+				1000, 1, 5, null, 1.0, 1.0, new Random(0));
+		campaign.allocateToAdvertiser(advertiser);
+		return campaign;
+	}
+
+	@Test
+	public void testLimitDispatch() {
+		EventBus eventBus = new EventBus();
+		CampaignRegistry registry = new CampaignRegistry();
+		eventBus.register(registry);
+
+		CampaignImpl first = createCampaign("adv1");
+		CampaignImpl second = createCampaign("adv2");
+		registry.register(first);
+		registry.register(second);
+		assertEquals(2, registry.size());
+		assertSame(first, registry.getCampaign(first.getId()));
+
+		eventBus.post(new CampaignLimitSet(false, first.getId(), "adv1", 100,
+				2.5));
+		eventBus.post(new CampaignLimitSet(true, second.getId(), "adv2", 500,
+				7.5));
+		assertEquals(2.5, first.getTomorrowsBudgetLimit(), 0.0);
+		assertEquals(100, first.getTomorrowsImpressionLimit());
+		assertEquals(Integer.MAX_VALUE, first.getTotalImpressionLimit());
+		assertEquals(7.5, second.getTotalBudgetlimit(), 0.0);
+		assertEquals(500, second.getTotalImpressionLimit());
+		assertEquals(Integer.MAX_VALUE, second.getTomorrowsImpressionLimit());
+
+		// Commands from another ad network are ignored by the campaign
+		eventBus.post(new CampaignLimitSet(false, first.getId(), "adv2", 1,
+				1.0));
+		assertEquals(100, first.getTomorrowsImpressionLimit());
+	}
+
+	@Test
+	public void testUnregister() {
+		EventBus eventBus = new EventBus();
+		CampaignRegistry registry = new CampaignRegistry();
+		eventBus.register(registry);
+
+		CampaignImpl campaign = createCampaign("adv1");
+		registry.register(campaign);
+		assertTrue(registry.unregister(campaign));
+		assertFalse(registry.unregister(campaign));
+		assertNull(registry.getCampaign(campaign.getId()));
+		assertEquals(0, registry.size());
+
+		eventBus.post(new CampaignLimitSet(false, campaign.getId(), "adv1",
+				100, 2.5));
+		assertEquals(Integer.MAX_VALUE, campaign.getTomorrowsImpressionLimit());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testRegisterNull() {
+		new CampaignRegistry().register(null);
+	}
+}
@@ -7,6 +7,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Before;
@@ -25,7 +26,8 @@ public class CampaignTest {
 	int dayStart = 5;
 	int dayEnd = 12;
 	// #FIXME fix this test
-	Set<MarketSegment> targetSegment = MarketSegment.randomMarketSegment();
+	Set<MarketSegment> targetSegment = MarketSegment
+			.randomMarketSegment(new Random(0));
 	MarketSegment nonTargetSegment = MarketSegment.OLD;
 
 	double vcoef = 2.5;
@@ -45,7 +47,7 @@ public class CampaignTest {
 		// #FIXME fix this test
 		//
 		campaign = new CampaignImpl(qualityMgr, reachImps, dayStart, dayEnd,
-				targetSegment, vcoef, mcoef);
+				targetSegment, vcoef, mcoef, new Random(0));
 		campaign.setRandomAllocPr(new Double(0.0));
 
 		assertNotNull(campaign);
@@ -20,8 +20,9 @@ public class UserClassificationServiceImplTest {
 	 */
 	@Test
 	public void testUCS() {
-		UserClassificationServiceImpl impl = new UserClassificationServiceImpl();
 		Random random = new Random();
+		UserClassificationServiceImpl impl = new UserClassificationServiceImpl(
+				random);
 		double bid1 = random.nextDouble() * 10;
 		double bid2 = bid1 / 2;
 		impl.updateAdvertiserBid("hello", bid1, 1);
@@ -0,0 +1,196 @@
+package tau.tac.adx.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import tau.tac.adx.AdxManager;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Tests for {@link AuctionMessagePipeline}.
+ */
+public class AuctionMessagePipelineTest {
+
+	/**
+	 * Records the received messages and their delivering thread.
+	 */
+	public static class Consumer {
+		private final List<AuctionMessage> messages = new ArrayList<AuctionMessage>();
+		private volatile Thread thread;
+
+		@Subscribe
+		public void auctionPerformed(AuctionMessage message) {
+			thread = Thread.currentThread();
+			messages.add(message);
+		}
+	}
+
+	private static List<AuctionMessage> messages(int count) {
+		List<AuctionMessage> messages = new ArrayList<AuctionMessage>();
+		for (int i = 0; i < count; i++) {
+			messages.add(new AuctionMessage(null, null, null));
+		}
+		return messages;
+	}
+
+	@Test
+	public void testSynchronous() {
+		EventBus eventBus = new EventBus();
+		Consumer consumer = new Consumer();
+		eventBus.register(consumer);
+		AuctionMessagePipeline pipeline = new AuctionMessagePipeline(eventBus,
+				0, 0);
+		assertFalse(pipeline.isAsynchronous());
+		pipeline.register(new Consumer());
+		List<AuctionMessage> messages = messages(10);
+		for (AuctionMessage message : messages) {
+			pipeline.post(message);
+		}
+		assertEquals(messages, consumer.messages);
+		assertSame(Thread.currentThread(), consumer.thread);
+	}
+
+	@Test
+	public void testOrderedDeliveryToEveryConsumer() {
+		EventBus eventBus = new EventBus();
+		Consumer ignored = new Consumer();
+		eventBus.register(ignored);
+		AuctionMessagePipeline pipeline = new AuctionMessagePipeline(eventBus,
+				7, 1);
+		assertTrue(pipeline.isAsynchronous());
+		Consumer first = new Consumer();
+		Consumer second = new Consumer();
+		pipeline.register(first);
+		pipeline.register(second);
+		for (int day = 0; day < 3; day++) {
+			List<AuctionMessage> messages = messages(100);
+			for (AuctionMessage message : messages) {
+				pipeline.post(message);
+			}
+			pipeline.awaitCompletion();
+			assertEquals(messages, first.messages);
+			assertEquals(messages, second.messages);
+			first.messages.clear();
+			second.messages.clear();
+		}
+		assertNotSame(Thread.currentThread(), first.thread);
+		assertNotSame(first.thread, second.thread);
+		assertTrue(ignored.messages.isEmpty());
+		pipeline.shutdown();
+	}
+
+	@Test
+	public void testConcurrentProducers() throws InterruptedException {
+		final AuctionMessagePipeline pipeline = new AuctionMessagePipeline(
+				new EventBus(), 5, 2);
+		Consumer consumer = new Consumer();
+		pipeline.register(consumer);
+		final List<List<AuctionMessage>> posted = new ArrayList<List<AuctionMessage>>();
+		Thread[] producers = new Thread[4];
+		for (int i = 0; i < producers.length; i++) {
+			final List<AuctionMessage> messages = messages(1003);
+			posted.add(messages);
+			producers[i] = new Thread() {
+				@Override
+				public void run() {
+					for (AuctionMessage message : messages) {
+						pipeline.post(message);
+					}
+				}
+			};
+			producers[i].start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		pipeline.awaitCompletion();
+
+		assertEquals(producers.length * 1003, consumer.messages.size());
+		for (List<AuctionMessage> messages : posted) {
+			// Each producer's messages arrive in posting order
+			List<AuctionMessage> received = new ArrayList<AuctionMessage>(
+					consumer.messages);
+			received.retainAll(messages);
+			assertEquals(messages, received);
+		}
+		pipeline.shutdown();
+	}
+
+	@Test
+	public void testPostWhileAwaitingCompletion() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AuctionMessagePipeline pipeline = new AuctionMessagePipeline(
+				new EventBus(), 1, 4);
+		pipeline.register(new Object() {
+			@Subscribe
+			public void auctionPerformed(AuctionMessage message)
+					throws InterruptedException {
+				release.await();
+			}
+		});
+		pipeline.post(new AuctionMessage(null, null, null));
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				pipeline.awaitCompletion();
+			}
+		};
+		waiter.start();
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				pipeline.post(new AuctionMessage(null, null, null));
+			}
+		};
+		producer.start();
+		producer.join(5000);
+		try {
+			assertFalse(producer.isAlive());
+			assertTrue(waiter.isAlive());
+		} finally {
+			release.countDown();
+		}
+		waiter.join(5000);
+		assertFalse(waiter.isAlive());
+		pipeline.shutdown();
+	}
+
+	@Test
+	public void testLaneBindsRegisteringContext() {
+		AdxManager manager = AdxManager.createContext();
+		try {
+			AuctionMessagePipeline pipeline = new AuctionMessagePipeline(
+					new EventBus(), 1, 1);
+			final AtomicReference<AdxManager> seen = new AtomicReference<AdxManager>();
+			pipeline.register(new Object() {
+				@Subscribe
+				public void auctionPerformed(AuctionMessage message) {
+					seen.set(AdxManager.getInstance());
+				}
+			});
+			pipeline.post(new AuctionMessage(null, null, null));
+			pipeline.awaitCompletion();
+			assertSame(manager, seen.get());
+			pipeline.shutdown();
+		} finally {
+			AdxManager.clearContext();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new AuctionMessagePipeline(new EventBus(), 10, 0);
+	}
+}
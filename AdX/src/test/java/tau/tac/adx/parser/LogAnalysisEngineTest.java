@@ -0,0 +1,148 @@
+package tau.tac.adx.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import se.sics.tasim.is.EventWriter;
+import se.sics.tasim.logtool.LogReader;
+import se.sics.tasim.props.SimulationStatus;
+import se.sics.tasim.sim.LogWriter;
+import tau.tac.adx.sim.TACAdxConstants;
+import edu.umich.eecs.tac.props.BankStatus;
+
+/**
+ * Tests for {@link LogAnalysisEngine}.
+ */
+public class LogAnalysisEngineTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMergesLogsInOrder() throws Exception {
+		File logs = folder.newFolder("logs");
+		// Both log formats
+		writeLog(new File(logs, "sim2.slg"), 2, true);
+		writeLog(new File(logs, "sim1.slg"), 1, false);
+		File output = folder.newFolder("output");
+
+		List<Class<? extends LogAnalyzer>> analyzers = new ArrayList<Class<? extends LogAnalyzer>>();
+		analyzers.add(BankStatusAnalyzer.class);
+		analyzers.add(UCSAnalyzer.class);
+		int failed = new LogAnalysisEngine(analyzers, 2).analyze(
+				LogAnalysisEngine.listLogs(logs), output);
+
+		assertEquals(0, failed);
+		assertEquals(Arrays.asList("simulation,day,adNetwork,balance",
+				"1,0,adnet1,10.0", "1,1,adnet1,11.0", "1,1,adnet2,21.0",
+				"2,0,adnet1,20.0", "2,1,adnet1,22.0", "2,1,adnet2,42.0"),
+				read(new File(output, "bank.csv")));
+		assertEquals(Arrays.asList("simulation,day,adNetwork,effectiveDay,"
+				+ "serviceLevel,price,qualityScore"), read(new File(output,
+				"ucs.csv")));
+	}
+
+	@Test
+	public void testFailedLogsAreSkipped() throws Exception {
+		File logs = folder.newFolder("logs");
+		writeLog(new File(logs, "sim1.slg"), 1, true);
+		Files.write(new File(logs, "sim2.slg").toPath(), new byte[] { 'T',
+				'A', 'C', 'T', 0, 0, 0, 0, 0, 0 });
+		File output = folder.newFolder("output");
+
+		List<Class<? extends LogAnalyzer>> analyzers = new ArrayList<Class<? extends LogAnalyzer>>();
+		analyzers.add(BankStatusAnalyzer.class);
+		int failed = new LogAnalysisEngine(analyzers, 1).analyze(
+				LogAnalysisEngine.listLogs(logs), output);
+
+		assertEquals(1, failed);
+		assertEquals(4, read(new File(output, "bank.csv")).size());
+	}
+
+	@Test
+	public void testReaderClosedWhenAnalyzerFails() throws Exception {
+		File log = folder.newFile("sim1.slg");
+		writeLog(log, 1, true);
+		LogReader reader = new LogReader(log);
+
+		List<Class<? extends LogAnalyzer>> analyzers = new ArrayList<Class<? extends LogAnalyzer>>();
+		analyzers.add(FailingAnalyzer.class);
+		try {
+			new LogAnalysisEngine(analyzers, 1).analyze(reader);
+			fail("expected the analyzer to fail");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		try {
+			reader.seekToTimeUnit(1);
+			fail("expected the reader to be closed");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testToCSV() {
+		assertEquals("", LogAnalysisEngine.toCSV(null));
+		assertEquals("1.5", LogAnalysisEngine.toCSV(1.5));
+		assertEquals("\"a,b\"", LogAnalysisEngine.toCSV("a,b"));
+		assertEquals("\"say \"\"hi\"\"\"", LogAnalysisEngine.toCSV("say \"hi\""));
+	}
+
+	public static class FailingAnalyzer extends LogAnalyzer {
+
+		public FailingAnalyzer() {
+			super("failing", "day");
+		}
+
+		@Override
+		protected void start() {
+			throw new IllegalStateException("analyzer failed");
+		}
+	}
+
+	private static void writeLog(File file, int simulationID, boolean isIndexed)
+			throws IOException {
+		LogWriter writer = new LogWriter(mock(EventWriter.class),
+				new FileOutputStream(file), isIndexed);
+		synchronized (writer) {
+			writer.node("simulation").attr("simID", simulationID).attr("id",
+					simulationID).attr("type", "tac13adx").attr("startTime",
+					0L).attr("length", 60);
+			for (int index = 1; index <= 2; index++) {
+				writer.node("participant").attr("index", index).attr("role",
+						TACAdxConstants.AD_NETOWRK_ROLE_ID).attr("address",
+						"adnet" + index).endNode("participant");
+			}
+			writer.endNode("simulation");
+			writer.commit();
+		}
+		writer.nextTimeUnit(0, 0L);
+		writer.message(0, 1, new BankStatus(10 * simulationID), 0L);
+		// Not used by the analyzers
+		writer.message(0, 1, new SimulationStatus(0, 0), 0L);
+		writer.commit();
+		writer.nextTimeUnit(1, 1000L);
+		writer.message(0, 1, new BankStatus(11 * simulationID), 1000L);
+		writer.message(0, 2, new BankStatus(21 * simulationID), 1000L);
+		writer.close();
+	}
+
+	private static List<String> read(File file) throws IOException {
+		return Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+	}
+}
@@ -0,0 +1,111 @@
+package tau.tac.adx.publishers.reserve;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.devices.Device;
+import tau.tac.adx.parser.Auctions;
+import tau.tac.adx.playground.Utils;
+import tau.tac.adx.props.AdxQuery;
+import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.report.adn.MarketSegmentSet;
+import tau.tac.adx.sim.config.AdxConfigurationParser;
+
+/**
+ * Tests for {@link PredeterminedReservePriceManager}.
+ */
+public class PredeterminedReservePriceManagerTest {
+
+	private static final double[] COEFFICIENTS = { 0.1, -0.2, 0.3, 0.05,
+			-0.07, 0.01, 0.02, 0.03 };
+
+	@Test
+	public void testScoresMatchFeatures() {
+		PredeterminedReservePriceManager manager = new PredeterminedReservePriceManager(
+				COEFFICIENTS);
+		for (AdxQuery adxQuery : allQueries()) {
+			assertEquals(score(adxQuery, COEFFICIENTS),
+					manager.generateReservePrice(adxQuery), 1e-12);
+		}
+	}
+
+	@Test
+	public void testSetCoefficients() {
+		PredeterminedReservePriceManager manager = new PredeterminedReservePriceManager(
+				new double[COEFFICIENTS.length]);
+		AdxQuery adxQuery = allQueries().get(100);
+		assertEquals(0, manager.generateReservePrice(adxQuery), 0);
+		manager.setCoefficients(COEFFICIENTS);
+		assertEquals(score(adxQuery, COEFFICIENTS),
+				manager.generateReservePrice(adxQuery), 1e-12);
+		assertArrayEquals(COEFFICIENTS, manager.getCoefficients(), 0);
+	}
+
+	@Test
+	public void testBatch() {
+		PredeterminedReservePriceManager manager = new PredeterminedReservePriceManager(
+				COEFFICIENTS);
+		List<AdxQuery> adxQueries = allQueries();
+		double[] reservePrices = manager.generateReservePrices(adxQueries);
+		assertEquals(adxQueries.size(), reservePrices.length);
+		for (int i = 0; i < reservePrices.length; i++) {
+			assertEquals(manager.generateReservePrice(adxQueries.get(i)),
+					reservePrices[i], 0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownPublisher() {
+		new PredeterminedReservePriceManager(COEFFICIENTS)
+				.generateReservePrice(new AdxQuery("unknown",
+						MarketSegment.MALE, Device.pc, AdType.text));
+	}
+
+	private static List<AdxQuery> allQueries() {
+		List<AdxQuery> adxQueries = new ArrayList<AdxQuery>();
+		for (String publisher : AdxConfigurationParser.getPublisherNames()) {
+			for (int mask = 0; mask <= MarketSegmentSet.ALL; mask++) {
+				for (Device device : Device.values()) {
+					for (AdType adType : AdType.values()) {
+						adxQueries.add(new AdxQuery(publisher,
+								new MarketSegmentSet(mask), device, adType));
+					}
+				}
+			}
+		}
+		return adxQueries;
+	}
+
+	private static double score(AdxQuery adxQuery, double[] coefficients) {
+		Map<String, Integer> publisherNameToId = new HashMap<String, Integer>();
+		String[] publisherNames = AdxConfigurationParser.getPublisherNames();
+		for (int i = 0; i < publisherNames.length; i++) {
+			publisherNameToId.put(publisherNames[i], i);
+		}
+		Auctions.AdxQuery.Builder builder = Auctions.AdxQuery.newBuilder()
+				.setPublisher(adxQuery.getPublisher())
+				.setDevice(
+						Auctions.Device.valueOf(adxQuery.getDevice().ordinal()))
+				.setAdtype(
+						Auctions.AdType.valueOf(adxQuery.getAdType().ordinal()));
+		for (MarketSegment marketSegment : adxQuery.getMarketSegments()) {
+			builder.addMarketSegments(Auctions.MarketSegment
+					.valueOf(marketSegment.ordinal()));
+		}
+		double[] features = Utils.getFeatures(builder.build(),
+				publisherNameToId);
+		double sum = 0;
+		for (int i = 0; i < features.length; i++) {
+			sum += features[i] * coefficients[i];
+		}
+		return sum;
+	}
+}
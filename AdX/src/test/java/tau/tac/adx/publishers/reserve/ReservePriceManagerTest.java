@@ -0,0 +1,65 @@
+package tau.tac.adx.publishers.reserve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ReservePriceManager}.
+ */
+public class ReservePriceManagerTest {
+
+	private static final double BASELINE_RANGE = 0.02;
+
+	@Test
+	public void testGenerateReservePrice() {
+		ReservePriceManager manager = new ReservePriceManager(0.05,
+				BASELINE_RANGE, 0.5);
+		double baseline = manager.getDailyBaselineAverage();
+		for (int i = 0; i < 10000; i++) {
+			double price = manager.generateReservePrice();
+			assertTrue(price >= baseline - BASELINE_RANGE - 1e-4);
+			assertTrue(price <= baseline + BASELINE_RANGE);
+		}
+		long queries = 0;
+		for (AtomicLong count : manager.getProfitQueries().values()) {
+			queries += count.get();
+		}
+		assertEquals(10000, queries);
+	}
+
+	@Test
+	public void testUpdateDailyBaselineAverage() {
+		ReservePriceManager manager = new ReservePriceManager(0.05,
+				BASELINE_RANGE, 0.5);
+		double baseline = manager.getDailyBaselineAverage();
+		for (int i = 0; i < 1000; i++) {
+			manager.generateReservePrice();
+		}
+		double profitablePrice = baseline + BASELINE_RANGE / 2;
+		manager.addImpressionForPrice(baseline - BASELINE_RANGE / 2);
+		for (int i = 0; i < 3; i++) {
+			manager.addImpressionForPrice(profitablePrice);
+		}
+		Entry<Double, AtomicLong> best = manager.getProfitMap().lastEntry();
+		assertEquals(3, best.getValue().get());
+		assertEquals(profitablePrice, manager.getMostProfitableReservePrice(),
+				1e-4);
+		assertEquals(0.5 * baseline + 0.5 * profitablePrice,
+				manager.updateDailyBaselineAverage(), 1e-4);
+		assertTrue(manager.getProfitMap().isEmpty());
+		assertTrue(manager.getProfitQueries().isEmpty());
+	}
+
+	@Test
+	public void testUpdateWithoutQueriesKeepsBaseline() {
+		ReservePriceManager manager = new ReservePriceManager(0.05,
+				BASELINE_RANGE, 0.5);
+		double baseline = manager.getDailyBaselineAverage();
+		assertEquals(baseline, manager.updateDailyBaselineAverage(), 0);
+	}
+}
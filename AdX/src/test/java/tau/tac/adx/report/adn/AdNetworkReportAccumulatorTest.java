@@ -0,0 +1,110 @@
+package tau.tac.adx.report.adn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import tau.tac.adx.ads.properties.AdType;
+import tau.tac.adx.auction.AdxAuctionResult;
+import tau.tac.adx.auction.data.AuctionState;
+import tau.tac.adx.devices.Device;
+import tau.tac.adx.messages.AuctionMessage;
+import tau.tac.adx.props.AdxQuery;
+import tau.tac.adx.users.AdxUser;
+import tau.tac.adx.users.generators.SimpleUserGenerator;
+
+/**
+ * Tests for {@link AdNetworkReportAccumulator}.
+ */
+public class AdNetworkReportAccumulatorTest {
+
+	private static final String[] PUBLISHERS = { "yahoo", "cnn", "nyt",
+			"hfn", "msn", "fox", "amazon", "ebay", "wallmart", "target" };
+
+	@Test
+	public void testMatchesAdNetworkReport() {
+		Random random = new Random(0);
+		List<AdxUser> users = new SimpleUserGenerator(0.5).generate(50);
+		AdNetworkReportAccumulator accumulator = new AdNetworkReportAccumulator();
+		AdNetworkReport expected = new AdNetworkReport();
+		assertTrue(accumulator.isEmpty());
+		for (int i = 0; i < 5000; i++) {
+			AdxQuery query = new AdxQuery(
+					PUBLISHERS[random.nextInt(PUBLISHERS.length)],
+					new MarketSegmentSet(),
+					Device.values()[random.nextInt(Device.values().length)],
+					AdType.values()[random.nextInt(AdType.values().length)]);
+			AuctionMessage message = new AuctionMessage(new AdxAuctionResult(
+					AuctionState.AUCTION_COPMLETED, null, random.nextDouble(),
+					null), query, users.get(random.nextInt(users.size())));
+			int campaignId = random.nextInt(12);
+			boolean hasWon = random.nextBoolean();
+			accumulator.addBid(message, campaignId, hasWon);
+			expected.addBid(message, campaignId, hasWon);
+		}
+		AdNetworkReport report = accumulator.toReport();
+		assertEquals(expected.size(), report.size());
+		assertEquals(entries(expected), entries(report));
+		assertEquals(expected.getDailyCost(), report.getDailyCost(), 1e-9);
+	}
+
+	@Test
+	public void testMerge() {
+		Random random = new Random(1);
+		List<AdxUser> users = new SimpleUserGenerator(0.5).generate(50);
+		AdNetworkReportAccumulator whole = new AdNetworkReportAccumulator();
+		AdNetworkReportAccumulator[] parts = {
+				new AdNetworkReportAccumulator(),
+				new AdNetworkReportAccumulator() };
+		for (int i = 0; i < 5000; i++) {
+			AdxQuery query = new AdxQuery(
+					PUBLISHERS[random.nextInt(PUBLISHERS.length)],
+					new MarketSegmentSet(),
+					Device.values()[random.nextInt(Device.values().length)],
+					AdType.values()[random.nextInt(AdType.values().length)]);
+			AuctionMessage message = new AuctionMessage(new AdxAuctionResult(
+					AuctionState.AUCTION_COPMLETED, null, random.nextDouble(),
+					null), query, users.get(random.nextInt(users.size())));
+			int campaignId = random.nextInt(12);
+			boolean hasWon = random.nextBoolean();
+			whole.addBid(message, campaignId, hasWon);
+			// The parts see campaigns and publishers in different orders
+			parts[random.nextInt(parts.length)].addBid(message, campaignId,
+					hasWon);
+		}
+		AdNetworkReportAccumulator merged = new AdNetworkReportAccumulator();
+		merged.merge(parts[0]);
+		merged.merge(parts[1]);
+		AdNetworkReport expected = whole.toReport();
+		AdNetworkReport report = merged.toReport();
+		assertEquals(expected.size(), report.size());
+		assertEquals(counts(expected), counts(report));
+		assertEquals(expected.getDailyCost(), report.getDailyCost(), 1e-9);
+	}
+
+	private static Map<AdNetworkKey, String> counts(AdNetworkReport report) {
+		Map<AdNetworkKey, String> counts = new HashMap<AdNetworkKey, String>();
+		for (int i = 0; i < report.size(); i++) {
+			AdNetworkReportEntry entry = report.getEntry(i);
+			counts.put(entry.getKey(), entry.getBidCount() + "/"
+					+ entry.getWinCount());
+		}
+		return counts;
+	}
+
+	private static Map<AdNetworkKey, String> entries(AdNetworkReport report) {
+		Map<AdNetworkKey, String> entries = new HashMap<AdNetworkKey, String>();
+		for (int i = 0; i < report.size(); i++) {
+			AdNetworkReportEntry entry = report.getEntry(i);
+			entries.put(entry.getKey(), entry.getBidCount() + "/"
+					+ entry.getWinCount() + "/" + entry.getCost());
+		}
+		return entries;
+	}
+}
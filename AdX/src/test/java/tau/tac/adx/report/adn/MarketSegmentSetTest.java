@@ -0,0 +1,107 @@
+package tau.tac.adx.report.adn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+
+import tau.tac.adx.users.AdxUser;
+import tau.tac.adx.users.properties.Age;
+import tau.tac.adx.users.properties.Gender;
+import tau.tac.adx.users.properties.Income;
+
+/**
+ * Tests for {@link MarketSegmentSet}.
+ *
+ * @author greenwald
+ */
+public class MarketSegmentSetTest {
+
+	@Test
+	public void testAllMask() {
+		assertEquals((1 << MarketSegment.values().length) - 1,
+				MarketSegmentSet.ALL);
+	}
+
+	@Test
+	public void testSetContract() {
+		for (int mask = 0; mask <= MarketSegmentSet.ALL; mask++) {
+			MarketSegmentSet segmentSet = new MarketSegmentSet(mask);
+			Set<MarketSegment> hashSet = new HashSet<MarketSegment>(segmentSet);
+			assertEquals(Integer.bitCount(mask), hashSet.size());
+			assertEquals(hashSet, segmentSet);
+			assertEquals(segmentSet, hashSet);
+			assertEquals(hashSet.hashCode(), segmentSet.hashCode());
+			assertEquals(mask, MarketSegmentSet.maskOf(hashSet));
+		}
+	}
+
+	@Test
+	public void testContainsAllAndIntersection() {
+		for (int first = 0; first <= MarketSegmentSet.ALL; first++) {
+			for (int second = 0; second <= MarketSegmentSet.ALL; second++) {
+				MarketSegmentSet firstSet = new MarketSegmentSet(first);
+				Set<MarketSegment> secondSet = new HashSet<MarketSegment>(
+						new MarketSegmentSet(second));
+				assertEquals(new HashSet<MarketSegment>(firstSet)
+						.containsAll(secondSet),
+						firstSet.containsAll(new MarketSegmentSet(second)));
+				assertEquals(firstSet.containsAll(secondSet),
+						MarketSegmentSet.containsAll(first, second));
+				Set<MarketSegment> expected = new HashSet<MarketSegment>(
+						firstSet);
+				expected.retainAll(secondSet);
+				assertEquals(expected,
+						MarketSegmentSet.intersection(firstSet, secondSet));
+			}
+		}
+	}
+
+	@Test
+	public void testMutation() {
+		MarketSegmentSet segmentSet = new MarketSegmentSet();
+		assertTrue(segmentSet.isEmpty());
+		assertTrue(segmentSet.add(MarketSegment.MALE));
+		assertFalse(segmentSet.add(MarketSegment.MALE));
+		assertTrue(segmentSet.add(MarketSegment.OLD));
+		assertEquals(EnumSet.of(MarketSegment.MALE, MarketSegment.OLD),
+				segmentSet);
+		assertTrue(segmentSet.remove(MarketSegment.MALE));
+		assertFalse(segmentSet.remove(MarketSegment.MALE));
+		Iterator<MarketSegment> iterator = segmentSet.iterator();
+		assertEquals(MarketSegment.OLD, iterator.next());
+		iterator.remove();
+		assertFalse(iterator.hasNext());
+		assertTrue(segmentSet.isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMask() {
+		new MarketSegmentSet(MarketSegmentSet.ALL + 1);
+	}
+
+	@Test
+	public void testExtractSegment() {
+		for (Gender gender : Gender.values()) {
+			for (Income income : Income.values()) {
+				for (Age age : Age.values()) {
+					AdxUser user = new AdxUser(age, gender, income, 0.5, 0);
+					Set<MarketSegment> expected = EnumSet.of(
+							gender == Gender.male ? MarketSegment.MALE
+									: MarketSegment.FEMALE,
+							income == Income.low || income == Income.medium ? MarketSegment.LOW_INCOME
+									: MarketSegment.HIGH_INCOME,
+							age.ordinal() <= Age.Age_35_44.ordinal() ? MarketSegment.YOUNG
+									: MarketSegment.OLD);
+					assertEquals(expected, MarketSegment.extractSegment(user));
+				}
+			}
+		}
+	}
+}
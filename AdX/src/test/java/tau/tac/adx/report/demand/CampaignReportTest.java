@@ -0,0 +1,29 @@
+package tau.tac.adx.report.demand;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import tau.tac.adx.demand.CampaignStats;
+
+/**
+ * Tests for {@link CampaignReport}.
+ */
+public class CampaignReportTest {
+
+	@Test
+	public void testAddStatsEntry() {
+		CampaignReport report = new CampaignReport();
+		report.addStatsEntry(1234567, 10.0, 2.0, 0.5);
+		report.addStatsEntry(Integer.valueOf(42), new CampaignStats(1, 1, 1));
+		// Already reported
+		report.addStatsEntry(1234567, 0.0, 0.0, 0.0);
+		assertEquals(2, report.size());
+
+		CampaignStats stats = report.getCampaignReportEntry(
+				new CampaignReportKey(1234567)).getCampaignStats();
+		assertEquals(10.0, stats.getTargetedImps(), 0.0);
+		assertEquals(2.0, stats.getOtherImps(), 0.0);
+		assertEquals(0.5, stats.getCost(), 0.0);
+	}
+}
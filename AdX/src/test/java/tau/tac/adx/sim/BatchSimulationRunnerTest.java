@@ -0,0 +1,126 @@
+package tau.tac.adx.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import se.sics.isl.util.ConfigManager;
+import tau.tac.adx.AdxManager;
+import tau.tac.adx.sim.BatchSimulationRunner.GameResult;
+
+/**
+ * Tests for {@link BatchSimulationRunner}.
+ */
+public class BatchSimulationRunnerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ConfigManager config;
+
+	@Before
+	public void setUp() {
+		config = new ConfigManager();
+		assertTrue(config
+				.loadConfiguration("adx-server/config/tac13adx_sim.conf"));
+		// Five days
+		config.setProperty("game.length", "50");
+	}
+
+	@Test
+	public void testTwoGameBatchScores() throws InterruptedException,
+			IOException {
+		File logDirectory = folder.getRoot();
+		List<GameResult> results = new BatchSimulationRunner(config,
+				logDirectory, 2).run(1, 2);
+
+		assertEquals(2, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			GameResult result = results.get(i);
+			assertEquals(i + 1, result.getSimulationID());
+			assertNull(result.getError());
+			assertFalse(result.getBalances().isEmpty());
+			assertTrue(new File(result.getLogFile()).isFile());
+		}
+		assertEquals(results.get(0).getBalances().keySet(), results.get(1)
+				.getBalances().keySet());
+
+		File scores = new File(logDirectory, "scores.csv");
+		PrintWriter out = new PrintWriter(new FileWriter(scores));
+		try {
+			BatchSimulationRunner.writeScores(results, out);
+		} finally {
+			out.close();
+		}
+		List<String> lines = readLines(scores);
+		int adNetworks = results.get(0).getBalances().size();
+		assertEquals(1 + 2 * adNetworks, lines.size());
+		assertEquals("simulation,adNetwork,balance", lines.get(0));
+		for (int i = 1; i < lines.size(); i++) {
+			String[] fields = lines.get(i).split(",");
+			assertEquals(3, fields.length);
+			GameResult result = results.get(i <= adNetworks ? 0 : 1);
+			assertEquals(Integer.toString(result.getSimulationID()), fields[0]);
+			assertEquals(result.getBalances().get(fields[1]),
+					Double.valueOf(fields[2]));
+		}
+	}
+
+	@Test
+	public void testGamesUseTheirOwnContexts() throws InterruptedException {
+		AdxManager manager = AdxManager.getInstance();
+		TACAdxSimulation simulation = manager.getSimulation();
+		List<GameResult> results = new BatchSimulationRunner(config,
+				folder.getRoot(), 2).run(1, 2);
+		for (GameResult result : results) {
+			assertNull(result.getError());
+		}
+		// Neither the games nor their threads touched the caller's context
+		assertSame(manager, AdxManager.getInstance());
+		assertSame(simulation, manager.getSimulation());
+	}
+
+	@Test
+	public void testSeededGamesAreReproducible() throws InterruptedException,
+			IOException {
+		config.setProperty("game.seed", "42");
+		List<GameResult> first = new BatchSimulationRunner(config,
+				folder.newFolder("first"), 1).run(1, 1);
+		List<GameResult> second = new BatchSimulationRunner(config,
+				folder.newFolder("second"), 1).run(1, 1);
+		assertNull(first.get(0).getError());
+		assertNull(second.get(0).getError());
+		assertFalse(first.get(0).getBalances().isEmpty());
+		assertEquals(first.get(0).getBalances(), second.get(0).getBalances());
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,64 @@
+package tau.tac.adx.sim;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link DailyBidTracker}.
+ */
+public class DailyBidTrackerTest {
+
+	@Test
+	public void testCompleteOnceAllBundlesReceived() {
+		DailyBidTracker tracker = new DailyBidTracker();
+		for (int day = 0; day < 3; day++) {
+			tracker.dayStarted(day);
+			assertFalse(tracker.isComplete(2));
+			tracker.bidBundleReceived(1);
+			assertFalse(tracker.isComplete(2));
+			tracker.bidBundleReceived(2);
+			assertTrue(tracker.isComplete(2));
+		}
+	}
+
+	@Test
+	public void testLateBundleCountsForPreviousDay() {
+		DailyBidTracker tracker = new DailyBidTracker();
+		tracker.dayStarted(0);
+		tracker.bidBundleReceived(1);
+		tracker.bidBundleReceived(2);
+		tracker.dayStarted(1);
+		tracker.bidBundleReceived(1);
+		// Day 1 times out before network 2 answers it
+		tracker.dayStarted(2);
+		// Network 2's bundle for day 1 arrives late
+		tracker.bidBundleReceived(2);
+		tracker.bidBundleReceived(1);
+		assertFalse(tracker.isComplete(2));
+		// Network 2's bundle for day 2
+		tracker.bidBundleReceived(2);
+		assertTrue(tracker.isComplete(2));
+	}
+
+	@Test
+	public void testCampaignBids() {
+		DailyBidTracker tracker = new DailyBidTracker();
+		tracker.dayStarted(0);
+		tracker.dayStarted(1);
+		tracker.campaignOpportunityOffered(10);
+		tracker.bidBundleReceived(1);
+		assertFalse(tracker.isComplete(1));
+		tracker.adNetBidReceived(1, 10);
+		assertTrue(tracker.isComplete(1));
+		tracker.dayStarted(2);
+		tracker.campaignOpportunityOffered(11);
+		// A late bid for the previous day's campaign
+		tracker.adNetBidReceived(1, 10);
+		tracker.bidBundleReceived(1);
+		assertFalse(tracker.isComplete(1));
+		tracker.adNetBidReceived(1, 11);
+		assertTrue(tracker.isComplete(1));
+	}
+}
@@ -7,6 +7,8 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Random;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -15,6 +17,7 @@ import tau.tac.adx.demand.UserClassificationService;
 import tau.tac.adx.demand.UserClassificationServiceAdNetData;
 import tau.tac.adx.props.AdxQuery;
 import tau.tac.adx.report.adn.MarketSegment;
+import tau.tac.adx.util.RandomStream;
 
 import com.google.common.eventbus.EventBus;
 
@@ -33,9 +36,10 @@ public class SimpleAdxAuctioneerTest {
 	public void testGetClassifiedQuery() {
 		EventBus eventBus = new EventBus();
 		SimpleAdxAuctioneer auctioneer = new SimpleAdxAuctioneer(null, null,
-				eventBus);
+				eventBus, new RandomStream(0));
 		AdxQuery adxQuery = new AdxQuery();
-		adxQuery.setMarketSegments(MarketSegment.randomMarketSegment());
+		adxQuery.setMarketSegments(MarketSegment
+				.randomMarketSegment(new Random()));
 		UserClassificationService userClassificationService = mock(UserClassificationService.class);
 		UserClassificationServiceAdNetData ucsAdNetData = mock(UserClassificationServiceAdNetData.class);
 		String advertiser = "adv1";
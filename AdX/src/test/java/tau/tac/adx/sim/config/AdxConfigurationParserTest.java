@@ -22,6 +22,7 @@ import tau.tac.adx.users.AdxUser;
 import tau.tac.adx.users.properties.Age;
 import tau.tac.adx.users.properties.Gender;
 import tau.tac.adx.users.properties.Income;
+import tau.tac.adx.util.RandomStream;
 
 /**
  * @author Tomer
@@ -35,7 +36,7 @@ public class AdxConfigurationParserTest {
 	public void setUp() {
 		ConfigManager configManager = new ConfigManager();
 		configManager.loadConfiguration("adx-server/config/tac13adx_sim.conf");
-		parser = new AdxConfigurationParser(configManager);
+		parser = new AdxConfigurationParser(configManager, new RandomStream(0));
 	}
 
 	/**
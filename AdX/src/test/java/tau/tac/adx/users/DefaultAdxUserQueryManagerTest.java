@@ -26,6 +26,7 @@ package tau.tac.adx.users;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 import java.util.HashMap;
 import java.util.List;
@@ -128,4 +129,18 @@ public class DefaultAdxUserQueryManagerTest {
 		//FIXME: sometimes this test fails
 		assertNotNull(isQuery);
 	}
+
+	@Test
+	public void testQueriesSharedByUserClass() {
+		DefaultAdxUserQueryManager manager = new DefaultAdxUserQueryManager(
+				catalog, users, deviceDistributionMap, adTypeDistributionMap,
+				random);
+		for (AdxUser user : users) {
+			AdxQuery query = manager.generateQuery(user);
+			assertNotNull(query);
+			AdxUser sameClass = new AdxUser(user.getAge(), user.getGender(),
+					user.getIncome(), 0.9, -1);
+			assertSame(query, manager.generateQuery(sameClass, random));
+		}
+	}
 }
@@ -0,0 +1,38 @@
+package tau.tac.adx.util;
+
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.google.inject.Guice;
+
+import edu.umich.eecs.tac.util.sampling.AliasSamplerFactory;
+import edu.umich.eecs.tac.util.sampling.SamplerFactory;
+import edu.umich.eecs.tac.util.sampling.WheelSamplerFactory;
+
+/**
+ * Tests for {@link AdxModule}.
+ */
+public class AdxModuleTest {
+
+	@Test
+	public void testWheelSamplerByDefault() {
+		SamplerFactory samplerFactory = Guice.createInjector(
+				new AdxModule(new RandomStream(1))).getInstance(
+				SamplerFactory.class);
+		assertSame(WheelSamplerFactory.class, samplerFactory.getClass());
+	}
+
+	@Test
+	public void testAliasSamplerOptIn() {
+		SamplerFactory samplerFactory = Guice.createInjector(
+				new AdxModule(new RandomStream(1), AliasSamplerFactory.class))
+				.getInstance(SamplerFactory.class);
+		assertSame(AliasSamplerFactory.class, samplerFactory.getClass());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNullSamplerFactory() {
+		new AdxModule(new RandomStream(1), null);
+	}
+}
@@ -31,6 +31,9 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 
+import edu.umich.eecs.tac.util.sampling.SamplerFactory;
+import edu.umich.eecs.tac.util.sampling.WheelSamplerFactory;
+
 /**
  * A simple {@link AbstractModule} implementation used for testing. All vlaues
  * are generated randomly.
@@ -77,5 +80,6 @@ public class AdxTestModule extends AbstractModule {
 		bind(AdxSpendTracker.class).to(AdxSpendTrackerImpl.class);
 		bind(AdxBidTracker.class).to(AdxBidTrackerImpl.class);
 		bind(AuctionManager.class).to(SimpleAuctionManager.class);
+		bind(SamplerFactory.class).to(WheelSamplerFactory.class);
 	}
 }
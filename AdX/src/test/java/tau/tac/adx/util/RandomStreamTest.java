@@ -0,0 +1,80 @@
+package tau.tac.adx.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RandomStream}.
+ */
+public class RandomStreamTest {
+
+	@Test
+	public void testSameSeedSameSequence() {
+		RandomStream first = new RandomStream(42);
+		RandomStream second = new RandomStream(42);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(first.nextLong(), second.nextLong());
+			assertEquals(first.nextInt(17), second.nextInt(17));
+			assertEquals(first.nextDouble(), second.nextDouble(), 0.0);
+		}
+		assertFalse(new RandomStream(42).nextLong() == new RandomStream(43)
+				.nextLong());
+	}
+
+	@Test
+	public void testNamedSplit() {
+		RandomStream root = new RandomStream(7);
+		long users = root.split("users").nextLong();
+		// Drawing from and splitting the root does not change named streams
+		root.nextLong();
+		root.split();
+		assertEquals(users, root.split("users").nextLong());
+		assertEquals(users, new RandomStream(7).split("users").nextLong());
+		assertFalse(users == root.split("demand").nextLong());
+		assertFalse(users == new RandomStream(8).split("users").nextLong());
+	}
+
+	@Test
+	public void testSplitIsReproducible() {
+		RandomStream first = new RandomStream(3).split();
+		RandomStream second = new RandomStream(3).split();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(first.nextLong(), second.nextLong());
+		}
+	}
+
+	@Test
+	public void testSetSeed() {
+		RandomStream stream = new RandomStream(5);
+		long value = stream.nextLong();
+		stream.setSeed(5);
+		assertEquals(value, stream.nextLong());
+		assertEquals(5, stream.getSeed());
+	}
+
+	@Test
+	public void testBounds() {
+		RandomStream stream = new RandomStream(11);
+		boolean[] seen = new boolean[5];
+		for (int i = 0; i < 1000; i++) {
+			double d = stream.nextDouble();
+			assertTrue(d >= 0.0 && d < 1.0);
+			int n = stream.nextInt(5);
+			assertTrue(n >= 0 && n < 5);
+			seen[n] = true;
+		}
+		for (boolean s : seen) {
+			assertTrue(s);
+		}
+	}
+
+	@Test
+	public void testSeries() {
+		assertEquals(RandomStream.seed(1, 2), RandomStream.seed(1, 2));
+		assertFalse(RandomStream.seed(1, 2) == RandomStream.seed(1, 3));
+		assertFalse(RandomStream.seed(1, 2) == RandomStream.seed(2, 2));
+	}
+}